@@ -1,7 +1,12 @@
 #include <jni.h>
 #include <math.h>
+#include <pthread.h>
 #include "../fftw3/api/fftw3.h"
 
+//Only fftwf_execute is thread-safe. Creating and destroying plans has to be serialized as
+//independent analysis modules may call these functions concurrently.
+static pthread_mutex_t planLock = PTHREAD_MUTEX_INITIALIZER;
+
 extern "C" {
 
     JNIEXPORT void JNICALL Java_de_rwth_1aachen_phyphox_Analysis_nativePower(JNIEnv *env, jobject obj, jdoubleArray a, jdoubleArray b) {
@@ -37,9 +42,13 @@ extern "C" {
         fftwf_complex *fftwa = (fftwf_complex*)a;
 
         fftwf_plan p;
+        pthread_mutex_lock(&planLock);
         p = fftwf_plan_dft_1d(n, fftwa, fftwa, FFTW_FORWARD, FFTW_ESTIMATE);
+        pthread_mutex_unlock(&planLock);
         fftwf_execute(p);
+        pthread_mutex_lock(&planLock);
         fftwf_destroy_plan(p);
+        pthread_mutex_unlock(&planLock);
 
         env->ReleaseFloatArrayElements(xy, a, 0);
     }
@@ -51,8 +60,11 @@ extern "C" {
         float n2 = (float)n*(float)n;
 
         fftwf_plan pa, pb, pr;
+        pthread_mutex_lock(&planLock);
         pa = fftwf_plan_r2r_1d(n, a, a, FFTW_R2HC, FFTW_ESTIMATE);
         pb = fftwf_plan_r2r_1d(n, b, b, FFTW_R2HC, FFTW_ESTIMATE);
+        pr = fftwf_plan_r2r_1d(n, a, a, FFTW_HC2R, FFTW_ESTIMATE);
+        pthread_mutex_unlock(&planLock);
         fftwf_execute(pa);
         fftwf_execute(pb);
         float c, d, e, f;
@@ -67,12 +79,13 @@ extern "C" {
             a[n-i] = (d*e - c*f)/n2;
         }
 
-        pr = fftwf_plan_r2r_1d(n, a, a, FFTW_HC2R, FFTW_ESTIMATE);
         fftwf_execute(pr);
 
+        pthread_mutex_lock(&planLock);
         fftwf_destroy_plan(pa);
         fftwf_destroy_plan(pb);
         fftwf_destroy_plan(pr);
+        pthread_mutex_unlock(&planLock);
 
         env->ReleaseFloatArrayElements(x, a, 0);
         env->ReleaseFloatArrayElements(y, b, 0);
@@ -82,7 +95,10 @@ extern "C" {
         jfloat *a = env->GetFloatArrayElements(x, 0);
 
         fftwf_plan pa, pr;
+        pthread_mutex_lock(&planLock);
         pa = fftwf_plan_r2r_1d(n, a, a, FFTW_R2HC, FFTW_ESTIMATE);
+        pr = fftwf_plan_r2r_1d(n, a, a, FFTW_HC2R, FFTW_ESTIMATE);
+        pthread_mutex_unlock(&planLock);
         fftwf_execute(pa);
 
         a[0] = a[0]*a[0];
@@ -92,16 +108,16 @@ extern "C" {
             a[n-i] = 0.f;
         }
 
-        pr = fftwf_plan_r2r_1d(n, a, a, FFTW_HC2R, FFTW_ESTIMATE);
-
         for (int i = 0; i < n; i++) {
             a[i] /= (float)n;
         }
 
         fftwf_execute(pr);
 
+        pthread_mutex_lock(&planLock);
         fftwf_destroy_plan(pa);
         fftwf_destroy_plan(pr);
+        pthread_mutex_unlock(&planLock);
 
         env->ReleaseFloatArrayElements(x, a, 0);
     }
@@ -7,7 +7,9 @@ import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.locks.Lock;
 
 import de.rwth_aachen.phyphox.Helper.Helper;
 
@@ -33,128 +35,49 @@ public class Analysis {
     public static native void fftw3crosscorrelation(float[] x, float[] y, int n);
     public static native void fftw3autocorrelation(float[] x, int n);
 
-    public static class FFT implements Serializable {
-        private int n, logn; //input size, power-of-two filled size, log2 of input size (integer)
-        private double [] cos, sin; //Lookup table
-
-        public int np2;
-
-        FFT() {
-            n = 0;
-        }
-
-        public void prepare(int n) {
-            this.n = n;
-            if (n < 2)
-                return;
-
-            logn = (int)(Math.log(n)/Math.log(2)); //log of input size
-            if (n != (1 << logn)) {
-                logn++;
-                np2 = (1 << logn); //power of two after zero filling
-            } else
-                np2 = n; //n is already power of two
-
-            //Create buffer of sine and cosine values
-            cos = new double[np2/2];
-            sin = new double[np2/2];
-            for (int i = 0; i < np2 / 2; i++) {
-                cos[i] = Math.cos(-2 * Math.PI * i / np2);
-                sin[i] = Math.sin(-2 * Math.PI * i / np2);
-            }
-        }
-
-        public void calculate(Double[] x, Double[] y) {
-            if (n < 2)
-                return;
-
-            /***************************************************************
-             * fft.c
-             * Douglas L. Jones
-             * University of Illinois at Urbana-Champaign
-             * January 19, 1992
-             * http://cnx.rice.edu/content/m12016/latest/
-             * <p/>
-             * fft: in-place radix-2 DIT DFT of a complex input
-             * <p/>
-             * input:
-             * n: length of FFT: must be a power of two
-             * m: n = 2**m
-             * input/output
-             * x: double array of length n with real part of data
-             * y: double array of length n with imag part of data
-             * <p/>
-             * Permission to copy and use this program is granted
-             * as long as this header is included.
-             ****************************************************************/
-
-            int j, k, n1, n2, a;
-            double c, s, t1, t2;
-
-            j = 0; /* bit-reverse */
-            n2 = np2 / 2;
-            for(int i = 1; i < np2 - 1; i++)
-
-            {
-                n1 = n2;
-                while (j >= n1) {
-                    j = j - n1;
-                    n1 = n1 / 2;
-                }
-                j = j + n1;
-
-                if (i < j) {
-                    t1 = x[i];
-                    x[i] = x[j];
-                    x[j] = t1;
-                    t1 = y[i];
-                    y[i] = y[j];
-                    y[j] = t1;
-                }
-            }
-
-            n2 = 1;
-
-            for(int i = 0; i < logn; i++)
-
-            {
-                n1 = n2;
-                n2 = n2 + n2;
-                a = 0;
-
-                for (j = 0; j < n1; j++) {
-                    c = cos[a];
-                    s = sin[a];
-                    a += 1 << (logn - i - 1);
-
-                    for (k = j; k < np2; k = k + n2) {
-                        t1 = c * x[k + n1] - s * y[k + n1];
-                        t2 = s * x[k + n1] + c * y[k + n1];
-                        x[k + n1] = x[k] - t1;
-                        y[k + n1] = y[k] - t2;
-                        x[k] = x[k] + t1;
-                        y[k] = y[k] + t2;
-                    }
-                }
-            }
-        }
-
-    }
-
     //analysisModule is is the prototype from which each analysis module inherits its interface
     public static class AnalysisModule implements Serializable, BufferNotification {
         private Vector<DataInput> inputsOriginal; //The key of input dataBuffers, note that this is private, so derived classes cannot access this directly, but have to use the copy
         protected Vector<DataInput> inputs = new Vector<>(); //The local copy of the input data when the analysis module starts its update
         protected Vector<Double[]> inputArrays = new Vector<>(); //The local copy of the input data when the analysis module starts its update
         protected Vector<Integer> inputArraySizes = new Vector<>(); //The local copy of the input data when the analysis module starts its update
+        protected Vector<DoubleView> inputViews = new Vector<>(); //Read-only views on the input data when the analysis module starts its update. Used instead of copies if useView is set.
         protected Vector<DataOutput> outputs; //The keys of outputBuffers
         protected PhyphoxExperiment experiment; //experiment reference to access buffers
         protected boolean isStatic = false; //If a module is defined as static, it will only be executed once. This is used to save performance if data does not change
         protected boolean executed = false; //This takes track if the module has been executed at all. Used for static modules.
 
         protected boolean useArray = false;
+        protected boolean useView = false;
         protected boolean clearInModule = false;
 
+        //Incremental execution
+        //Modules whose results for existing input values do not change when new values are appended
+        //can set "incremental". If all inputs have only received new values since the last update
+        //(no clear, no values dropped from the front) and nobody else has touched the outputs since,
+        //the outputs are not cleared and the module only appends the results for the new values.
+        protected boolean incremental = false;
+        protected boolean incrementalRun = false; //Set during update() if the module should continue its previous results
+        protected int[] lastInputSizes = null; //Number of values of each input at the previous update. Only valid during an incremental or continued run.
+
+        //Streaming
+        //Modules that reduce their inputs to a few values (like min and max) rebuild their outputs
+        //on every update, but can keep the state of their scan through the inputs. If "streaming" is
+        //set, "continueRun" tells them during update() if all inputs have only received new values
+        //since the previous update, so they only need to scan the values after lastInputSizes.
+        //Clearing or resetting an input (or a failed update) starts over.
+        protected boolean streaming = false;
+        protected boolean continueRun = false;
+        private long[] inputClearCounts = null;
+        private long[] inputAppendCounts = null;
+        private long[] outputClearCounts = null;
+        private long[] outputAppendCounts = null;
+
+        private transient Lock inputLock = null;
+        private transient Lock outputLock = null;
+
+        final AnalysisMetrics.ModuleMetrics metrics = new AnalysisMetrics.ModuleMetrics();
+
         public static class CycleRange {
             int start = -1;
             int stop = -1;
@@ -199,6 +122,22 @@ public class Analysis {
             this.cycles = cycles;
         }
 
+        //Collect the buffers this module reads from and the buffers it modifies. Inputs that are
+        //cleared after reading count as both. Used by the AnalysisScheduler to find independent modules.
+        void collectBuffers(Set<DataBuffer> reads, Set<DataBuffer> writes) {
+            for (DataInput input : inputsOriginal) {
+                if (input == null || !input.isBuffer)
+                    continue;
+                reads.add(input.buffer);
+                if (!input.keep && !input.buffer.isStatic)
+                    writes.add(input.buffer);
+            }
+            for (DataOutput output : outputs) {
+                if (output != null)
+                    writes.add(output.buffer);
+            }
+        }
+
         //Called when one of the input buffers is updated
         public void notifyUpdate(boolean clear, boolean reset) {
             if (reset) {
@@ -206,6 +145,135 @@ public class Analysis {
             }
         }
 
+        //Check if the inputs have only received new values since the last update and remember their
+        //current state for the next check. Has to be called before inputs are cleared.
+        private boolean inputsOnlyAppended() {
+            int n = inputsOriginal.size();
+            boolean appendOnly = true;
+            if (inputAppendCounts == null || inputAppendCounts.length != n) {
+                inputClearCounts = new long[n];
+                inputAppendCounts = new long[n];
+                lastInputSizes = new int[n];
+                appendOnly = false;
+            }
+            for (int i = 0; i < n; i++) {
+                DataInput input = inputsOriginal.get(i);
+                if (input == null || !input.isBuffer) {
+                    lastInputSizes[i] = input == null ? 0 : input.getFilledSize(); //Constant values never change
+                    continue;
+                }
+                long clears = input.buffer.getClearCount();
+                long appends = input.buffer.getAppendCount();
+                if (clears != inputClearCounts[i] || appends < inputAppendCounts[i] || input.buffer.getFilledSize() != appends)
+                    appendOnly = false;
+                lastInputSizes[i] = (int)inputAppendCounts[i];
+                inputClearCounts[i] = clears;
+                inputAppendCounts[i] = appends;
+            }
+            return appendOnly;
+        }
+
+        //Check if the outputs are in the state in which this module has left them at the last update
+        private boolean outputsUntouched() {
+            if (outputAppendCounts == null || outputAppendCounts.length != outputs.size())
+                return false;
+            for (int i = 0; i < outputs.size(); i++) {
+                DataOutput output = outputs.get(i);
+                if (output == null)
+                    continue;
+                if (output.append || output.buffer.getClearCount() != outputClearCounts[i] || output.buffer.getAppendCount() != outputAppendCounts[i])
+                    return false;
+            }
+            return true;
+        }
+
+        private void rememberOutputs() {
+            outputClearCounts = new long[outputs.size()];
+            outputAppendCounts = new long[outputs.size()];
+            for (int i = 0; i < outputs.size(); i++) {
+                DataOutput output = outputs.get(i);
+                if (output == null)
+                    continue;
+                outputClearCounts[i] = output.buffer.getClearCount();
+                outputAppendCounts[i] = output.buffer.getAppendCount();
+            }
+        }
+
+        //Incremental modules can override this to reject an incremental run for reasons that are
+        //specific to the module. Called after the inputs have been read and before the outputs are cleared.
+        protected boolean canUpdateIncrementally() {
+            return true;
+        }
+
+        //Number of values this module has appended to an output since it has last been cleared
+        protected int getOutputCount(int i) {
+            return (int)outputs.get(i).buffer.getAppendCount();
+        }
+
+        //Modules that fill up shorter inputs with their last value can only continue if none of the
+        //inputs that were too short for the previous results has received new values. Otherwise,
+        //results that were calculated from the last value of such an input would change.
+        protected boolean paddedInputsUnchanged(int resultCount) {
+            for (int i = 0; i < inputViews.size(); i++) {
+                DoubleView in = inputViews.get(i);
+                if (in != null && lastInputSizes[i] < resultCount && in.size() != lastInputSizes[i])
+                    return false;
+            }
+            return true;
+        }
+
+        //Number of values from which on large calculations are split across several threads (see ParallelKernels)
+        protected int parallelThreshold() {
+            return experiment.parallelThreshold;
+        }
+
+        //Element-wise combination of all input views, where shorter inputs are filled up with their
+        //last value: result = op(...op(op(first, in0), in1)..., inN) or op(...op(in0, in1)..., inN)
+        //if applyToFirst is false. Returns the results from index start up to the length of the
+        //longest input or nothing if any input is empty. Large inputs are calculated in parallel.
+        protected double[] combinePadded(final int start, final boolean applyToFirst, final double first, final ParallelKernels.BinaryOperation op) {
+            final int n = inputViews.size();
+            final DoubleView[] in = new DoubleView[n];
+            final int[] last = new int[n];
+            int size = 0;
+            for (int j = 0; j < n; j++) {
+                in[j] = inputViews.get(j);
+                int s = in[j] != null ? in[j].size() : 0;
+                if (s == 0)
+                    return new double[0];
+                last[j] = s - 1;
+                size = Math.max(size, s);
+            }
+            final double[] result = new double[Math.max(size - start, 0)];
+            ParallelKernels.forEach(0, result.length, parallelThreshold(), new ParallelKernels.Kernel() {
+                @Override
+                public void run(int s, int e) {
+                    for (int i = s; i < e; i++) {
+                        double r = first;
+                        for (int j = 0; j < n; j++) {
+                            double v = in[j].get(Math.min(start + i, last[j]));
+                            r = (j == 0 && !applyToFirst) ? v : op.apply(r, v);
+                        }
+                        result[i] = r;
+                    }
+                }
+            });
+            return result;
+        }
+
+        protected void appendResults(double[] values) {
+            outputs.get(0).append(values);
+        }
+
+        protected boolean isBufferInput(int i) {
+            return i < inputsOriginal.size() && inputsOriginal.get(i) != null && inputsOriginal.get(i).isBuffer;
+        }
+
+        //Is the input cleared after every update, so the module only ever sees new values?
+        protected boolean isConsumedInput(int i) {
+            return isBufferInput(i) && !inputsOriginal.get(i).keep && !inputsOriginal.get(i).buffer.isStatic;
+        }
+
         private boolean runInCycle(int thisCycle) {
             if (cycles.size() == 0)
                 return true;
@@ -219,54 +287,124 @@ public class Analysis {
             return false;
         }
 
+        //The module only locks the buffers it uses (see BufferLock.java). The inputs (and outputs,
+        //to check if they have been modified) are only locked while reading them. During the
+        //actual calculation only the outputs are locked.
+        private void createLocks() {
+            Vector<DataBuffer> buffers = new Vector<>();
+            for (DataOutput output : outputs) {
+                if (output != null)
+                    buffers.add(output.buffer);
+            }
+            outputLock = experiment.getBufferLock(buffers);
+            for (DataInput input : inputsOriginal) {
+                if (input != null && input.isBuffer)
+                    buffers.add(input.buffer);
+            }
+            inputLock = experiment.getBufferLock(buffers);
+        }
+
         //Wrapper to update the module only if it is not static or has never been executed and to clear the buffer if required
         protected void updateIfNotStatic(int thisCycle) {
             if (!runInCycle(thisCycle))
                 return;
 
             if (!(isStatic && executed)) {
-//                long updateStart = System.nanoTime();
+                long t0 = System.nanoTime();
+
+                if (inputLock == null)
+                    createLocks();
+
+                int inputSize = 0;
+                int outputSize = 0;
 
-                experiment.dataLock.lock();
+                incrementalRun = false;
+                continueRun = false;
+                inputLock.lock();
+                long t1 = System.nanoTime();
+                long t2, t3;
                 try {
-                    if (useArray) {
-                        inputArrays.setSize(inputsOriginal.size());
-                        inputArraySizes.setSize(inputsOriginal.size());
-                    } else
-                        inputs.setSize(inputsOriginal.size());
-                    for (int i = 0; i < inputsOriginal.size(); i++) {
-                        if (inputsOriginal.get(i) == null) {
-                            if (useArray) {
-                                inputArrays.set(i, null);
-                                inputArraySizes.set(i, 0);
-                            } else
-                                inputs.set(i, null);
-                        } else {
-                            if (useArray) {
-                                inputArrays.set(i, inputsOriginal.get(i).getArray());
-                                inputArraySizes.set(i, inputsOriginal.get(i).getFilledSize());
-                            } else
-                                inputs.set(i, inputsOriginal.get(i).copy());
-                            if (inputsOriginal.get(i).isBuffer && !inputsOriginal.get(i).keep && !inputsOriginal.get(i).buffer.isStatic)
-                                inputsOriginal.get(i).clear(false);
+                    try {
+                        boolean inputsAppendOnly = (incremental || streaming) && inputsOnlyAppended();
+                        if (useView) {
+                            inputViews.setSize(inputsOriginal.size());
+                        } else if (useArray) {
+                            inputArrays.setSize(inputsOriginal.size());
+                            inputArraySizes.setSize(inputsOriginal.size());
+                        } else
+                            inputs.setSize(inputsOriginal.size());
+                        for (int i = 0; i < inputsOriginal.size(); i++) {
+                            if (inputsOriginal.get(i) == null) {
+                                if (useView) {
+                                    inputViews.set(i, null);
+                                } else if (useArray) {
+                                    inputArrays.set(i, null);
+                                    inputArraySizes.set(i, 0);
+                                } else
+                                    inputs.set(i, null);
+                            } else {
+                                inputSize += inputsOriginal.get(i).getFilledSize();
+                                if (useView) {
+                                    inputViews.set(i, inputsOriginal.get(i).getView());
+                                } else if (useArray) {
+                                    inputArrays.set(i, inputsOriginal.get(i).getArray());
+                                    inputArraySizes.set(i, inputsOriginal.get(i).getFilledSize());
+                                } else
+                                    inputs.set(i, inputsOriginal.get(i).copy());
+                                if (inputsOriginal.get(i).isBuffer && !inputsOriginal.get(i).keep && !inputsOriginal.get(i).buffer.isStatic)
+                                    inputsOriginal.get(i).clear(false);
+                            }
                         }
+                        incrementalRun = incremental && inputsAppendOnly && executed && outputsUntouched();
+                        continueRun = streaming && inputsAppendOnly && executed;
+                    } finally {
+                        inputLock.unlock();
                     }
-                } finally {
-                    experiment.dataLock.unlock();
-                }
 
-                if (!clearInModule) {
-                    for (DataOutput output : outputs)
-                        if (output != null && !output.append)
-                            output.buffer.clear(false);
-                }
+                    if (incrementalRun)
+                        incrementalRun = canUpdateIncrementally();
+
+                    t2 = System.nanoTime();
+                    outputLock.lock();
+                    t3 = System.nanoTime();
+                    try {
+                        //The outputs were unlocked for a moment, so make sure that nobody else has written to them
+                        if (incrementalRun)
+                            incrementalRun = outputsUntouched();
+
+                        if (!clearInModule && !incrementalRun) {
+                            for (DataOutput output : outputs)
+                                if (output != null && !output.append)
+                                    output.buffer.clear(false);
+                        }
 
+                        outputAppendCounts = null; //If the update fails, the next one has to start from scratch
+                        update();
+                        if (incremental)
+                            rememberOutputs();
 
-                update();
+                        for (int i = 0; i < outputs.size(); i++) {
+                            if (outputs.get(i) != null) {
+                                outputs.get(i).markSet();
+                                outputSize += outputs.get(i).buffer.getFilledSize();
+                            }
+                        }
+                    } finally {
+                        outputLock.unlock();
+                    }
+                } finally {
+                    if (useView) {
+                        for (int i = 0; i < inputViews.size(); i++) {
+                            if (inputViews.get(i) != null) {
+                                inputViews.get(i).release();
+                                inputViews.set(i, null);
+                            }
+                        }
+                    }
+                }
 
-//                long time = System.nanoTime() - updateStart;
-//                if (time > 1e6)
-//                    Log.d("AnalysisDebug", this.toString() + " update: " + (time*1e-6) + "ms");
+                long t4 = System.nanoTime();
+                metrics.record((t1 - t0) + (t3 - t2), t2 - t1, t4 - t3, inputSize, outputSize);
 
 
 
@@ -287,11 +425,6 @@ public class Analysis {
                         Log.d("AnalysisDebug", output.buffer.name + " => " + output.getValue() + " (length " + output.getFilledSize() + ")");
 
 */
-                for (int i = 0; i < outputs.size(); i++) {
-                    if (outputs.get(i) != null) {
-                        outputs.get(i).markSet();
-                    }
-                }
                 executed = true;
 
             }
@@ -350,14 +483,27 @@ public class Analysis {
 
         protected formulaAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, String formula) throws FormulaParser.FormulaException {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
             this.formula = new FormulaParser(formula);
         }
 
+        @Override
+        protected boolean canUpdateIncrementally() {
+            //Without any [n_] every result depends on the last values, which change with every new value
+            if (!formula.hasArrayRefs)
+                return false;
+            for (int i : formula.singleRefs) {
+                if (i < inputViews.size() && inputViews.get(i) != null && inputViews.get(i).size() != lastInputSizes[i])
+                    return false;
+            }
+            return true;
+        }
+
         @Override
         protected void update() {
             if (outputs.size() > 0)
-            formula.execute(inputArrays, outputs.get(0));
+                formula.execute(inputViews, outputs.get(0), incrementalRun ? getOutputCount(0) : 0);
         }
     }
 
@@ -467,39 +613,24 @@ public class Analysis {
 
         protected addAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
         }
 
         @Override
-        protected void update() {
-
-            boolean anyInput = true; //Is there any buffer left with values?
-            int i = 0;
-            while (anyInput) { //For each value of output buffer
-                double result = 0;
-                anyInput = false;
+        protected boolean canUpdateIncrementally() {
+            return paddedInputsUnchanged(getOutputCount(0));
+        }
 
-                for (int j = 0; j < inputArrays.size(); j++) { //For each input buffer
-                    Double in[] = inputArrays.get(j);
-                    int size = inputArraySizes.get(j);
-                    if (in == null || size == 0) {
-                        anyInput = false;
-                        break;
-                    }
-                    if (i < size) { //New value from this iterator
-                        result += in[i];
-                        anyInput = true;
-                    } else {
-                        result += in[size-1];
-                    }
+        @Override
+        protected void update() {
+            int start = incrementalRun ? getOutputCount(0) : 0;
+            appendResults(combinePadded(start, true, 0, new ParallelKernels.BinaryOperation() {
+                @Override
+                public double apply(double x, double y) {
+                    return x + y;
                 }
-                if (anyInput) //There was a new value. Append the result.
-                    outputs.get(0).append(result);
-                else //No values left. Let's stop here...
-                    break;
-                i++;
-            }
-
+            }));
         }
     }
 
@@ -554,37 +685,24 @@ public class Analysis {
 
         protected multiplyAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
         }
 
         @Override
-        protected void update() {
-            boolean anyInput = true; //Is there any buffer left with values?
-            int i = 0;
-            while (anyInput) { //For each value of output buffer
-                double result = 1.;
-                anyInput = false;
+        protected boolean canUpdateIncrementally() {
+            return paddedInputsUnchanged(getOutputCount(0));
+        }
 
-                for (int j = 0; j < inputArrays.size(); j++) { //For each input buffer
-                    Double in[] = inputArrays.get(j);
-                    int size = inputArraySizes.get(j);
-                    if (in == null || size == 0) {
-                        anyInput = false;
-                        break;
-                    }
-                    if (i < size) { //New value from this iterator
-                        result *= in[i];
-                        anyInput = true;
-                    } else {
-                        result *= in[size-1];
-                    }
+        @Override
+        protected void update() {
+            int start = incrementalRun ? getOutputCount(0) : 0;
+            appendResults(combinePadded(start, true, 1., new ParallelKernels.BinaryOperation() {
+                @Override
+                public double apply(double x, double y) {
+                    return x * y;
                 }
-                if (anyInput) //There was a new value. Append the result.
-                    outputs.get(0).append(result);
-                else //No values left. Let's stop here...
-                    break;
-                i++;
-            }
+            }));
         }
     }
 
@@ -641,77 +759,32 @@ public class Analysis {
 
         protected powerAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
         protected void update() {
             if (nativeLib) {
-                if (inputArraySizes.size() < 2)
+                if (inputViews.size() < 2 || inputViews.get(0) == null || inputViews.get(1) == null)
                     return;
 
-                int sizeA = inputArraySizes.get(0);
-                int sizeB = inputArraySizes.get(1);
-
-                Double[] a = inputArrays.get(0);
-                Double[] b = inputArrays.get(1);
-
-                final double ad[] = new double[sizeA];
-                final double bd[] = new double[sizeB];
-
-                for (int i = 0; i < sizeA; i++) {
-                    ad[i] = a[i];
-                }
-                for (int i = 0; i < sizeB; i++) {
-                    bd[i] = b[i];
-                }
+                final double ad[] = inputViews.get(0).toArray();
+                final double bd[] = inputViews.get(1).toArray();
 
                 nativePower(ad, bd);
 
-                if (sizeA > sizeB) {
-                    for (int i = 0; i < sizeA; i++) {
-                        outputs.get(0).append(ad[i]);
-                    }
+                if (ad.length > bd.length) {
+                    appendResults(ad);
                 } else {
-                    for (int i = 0; i < sizeB; i++) {
-                        outputs.get(0).append(bd[i]);
-                    }
+                    appendResults(bd);
                 }
             } else {
-
-                boolean anyInput = true; //Is there any buffer left with values?
-                int i = 0;
-                while (anyInput) { //For each value of output buffer
-                    double result = 1.;
-                    anyInput = false;
-
-                    for (int j = 0; j < inputArrays.size(); j++) { //For each input buffer
-                        Double in[] = inputArrays.get(j);
-                        int size = inputArraySizes.get(j);
-                        if (in == null || size == 0) {
-                            anyInput = false;
-                            break;
-                        }
-                        if (i < size) { //New value from this iterator
-                            if (j == 0)
-                                result = in[i];
-                            else
-                                result = Math.pow(result, in[i]);
-                            anyInput = true;
-                        } else {
-                            if (j == 0)
-                                result = in[size-1];
-                            else
-                                result = Math.pow(result, in[size-1]);
-                        }
+                appendResults(combinePadded(0, false, 1., new ParallelKernels.BinaryOperation() {
+                    @Override
+                    public double apply(double x, double y) {
+                        return Math.pow(x, y);
                     }
-                    if (anyInput) //There was a new value. Append the result.
-                        outputs.get(0).append(result);
-                    else //No values left. Let's stop here...
-                        break;
-                    i++;
-                }
-
+                }));
             }
         }
     }
@@ -899,20 +972,29 @@ public class Analysis {
 
         protected sinAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
-            int size = inputArraySizes.get(0);
+            DoubleView array = inputViews.get(0);
+            int start = incrementalRun ? lastInputSizes[0] : 0;
             if (deg) {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.sin(Math.PI / 180. * array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return Math.sin(Math.PI / 180. * x);
+                    }
+                }));
             } else {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.sin(array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return Math.sin(x);
+                    }
+                }));
             }
         }
     }
@@ -924,20 +1006,29 @@ public class Analysis {
 
         protected cosAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
-            int size = inputArraySizes.get(0);
+            DoubleView array = inputViews.get(0);
+            int start = incrementalRun ? lastInputSizes[0] : 0;
             if (deg) {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.cos(Math.PI / 180. * array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return Math.cos(Math.PI / 180. * x);
+                    }
+                }));
             } else {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.cos(array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return Math.cos(x);
+                    }
+                }));
             }
         }
     }
@@ -950,20 +1041,29 @@ public class Analysis {
 
         protected tanAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
-            int size = inputArraySizes.get(0);
+            DoubleView array = inputViews.get(0);
+            int start = incrementalRun ? lastInputSizes[0] : 0;
             if (deg) {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.tan(Math.PI / 180. * array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return Math.tan(Math.PI / 180. * x);
+                    }
+                }));
             } else {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.tan(array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return Math.tan(x);
+                    }
+                }));
             }
         }
     }
@@ -971,15 +1071,20 @@ public class Analysis {
     public static class sinhAM extends AnalysisModule implements Serializable {
         protected sinhAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
-            int size = inputArraySizes.get(0);
-            for (int i = 0; i < size; i++)
-                outputs.get(0).append(Math.sinh(array[i]));
+            DoubleView array = inputViews.get(0);
+            int start = incrementalRun ? lastInputSizes[0] : 0;
+            appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                @Override
+                public double apply(double x) {
+                    return Math.sinh(x);
+                }
+            }));
         }
     }
 
@@ -987,15 +1092,20 @@ public class Analysis {
 
         protected coshAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
-            int size = inputArraySizes.get(0);
-            for (int i = 0; i < size; i++)
-                outputs.get(0).append(Math.cosh(array[i]));
+            DoubleView array = inputViews.get(0);
+            int start = incrementalRun ? lastInputSizes[0] : 0;
+            appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                @Override
+                public double apply(double x) {
+                    return Math.cosh(x);
+                }
+            }));
         }
     }
 
@@ -1003,15 +1113,20 @@ public class Analysis {
 
         protected tanhAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
-            int size = inputArraySizes.get(0);
-            for (int i = 0; i < size; i++)
-                outputs.get(0).append(Math.tanh(array[i]));
+            DoubleView array = inputViews.get(0);
+            int start = incrementalRun ? lastInputSizes[0] : 0;
+            appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                @Override
+                public double apply(double x) {
+                    return Math.tanh(x);
+                }
+            }));
         }
     }
 
@@ -1020,20 +1135,29 @@ public class Analysis {
 
         protected asinAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
-            int size = inputArraySizes.get(0);
+            DoubleView array = inputViews.get(0);
+            int start = incrementalRun ? lastInputSizes[0] : 0;
             if (deg) {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(180. / Math.PI * Math.asin(array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return 180. / Math.PI * Math.asin(x);
+                    }
+                }));
             } else {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.asin(array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return Math.asin(x);
+                    }
+                }));
             }
         }
     }
@@ -1043,20 +1167,29 @@ public class Analysis {
 
         protected acosAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
-            int size = inputArraySizes.get(0);
+            DoubleView array = inputViews.get(0);
+            int start = incrementalRun ? lastInputSizes[0] : 0;
             if (deg) {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(180. / Math.PI * Math.acos(array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return 180. / Math.PI * Math.acos(x);
+                    }
+                }));
             } else {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.acos(array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return Math.acos(x);
+                    }
+                }));
             }
         }
     }
@@ -1066,20 +1199,29 @@ public class Analysis {
 
         protected atanAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
-            int size = inputArraySizes.get(0);
+            DoubleView array = inputViews.get(0);
+            int start = incrementalRun ? lastInputSizes[0] : 0;
             if (deg) {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(180. / Math.PI * Math.atan(array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return 180. / Math.PI * Math.atan(x);
+                    }
+                }));
             } else {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.atan(array[i]));
+                appendResults(ParallelKernels.map(array, start, parallelThreshold(), new ParallelKernels.UnaryOperation() {
+                    @Override
+                    public double apply(double x) {
+                        return Math.atan(x);
+                    }
+                }));
             }
         }
     }
@@ -1089,23 +1231,31 @@ public class Analysis {
 
         protected atan2AM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean deg) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            incremental = true;
             this.deg = deg;
         }
 
         @Override
         protected void update() {
-            Double array[] = inputArrays.get(0);
-            Double array2[] = inputArrays.get(1);
-            int size = inputArraySizes.get(0);
-            if (size > inputArraySizes.get(1))
-                size = inputArraySizes.get(1);
+            DoubleView array = inputViews.get(0);
+            DoubleView array2 = inputViews.get(1);
+            int size = Math.min(array.size(), array2.size());
+            int start = incrementalRun ? Math.min(lastInputSizes[0], lastInputSizes[1]) : 0;
             if (deg) {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(180. / Math.PI * Math.atan2(array[i], array2[i]));
+                appendResults(ParallelKernels.map(array, array2, start, size, parallelThreshold(), new ParallelKernels.BinaryOperation() {
+                    @Override
+                    public double apply(double x, double y) {
+                        return 180. / Math.PI * Math.atan2(x, y);
+                    }
+                }));
             } else {
-                for (int i = 0; i < size; i++)
-                    outputs.get(0).append(Math.atan2(array[i], array2[i]));
+                appendResults(ParallelKernels.map(array, array2, start, size, parallelThreshold(), new ParallelKernels.BinaryOperation() {
+                    @Override
+                    public double apply(double x, double y) {
+                        return Math.atan2(x, y);
+                    }
+                }));
             }
         }
     }
@@ -1130,79 +1280,138 @@ public class Analysis {
         }
     }
 
-    //Get the maximum of the whole dataset.
-    //input1 is y
-    //input2 is x (if ommitted, it will be filled with 1, 2, 3, ...)
-    //output1 will receive a single value, the maximum y
-    //output2 (if used) will receive a single value, the x of the maximum
-    //input1 and output1 are mandatory, input1 and input2 are optional.
-    //If the parameter "multiple" is set, this module will output multiple local maxima (and their positions)
-    //In multiple mode input3 may set a threshold: A local maximum will be searched in ranges of consecutive values above the threshold, Default: 0
-    public static class maxAM extends AnalysisModule implements Serializable {
-        private boolean multiple = false;
-
-        protected maxAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean multiple) {
-            super(experiment, inputs, outputs);
+    //Search for the maximum or minimum of y (with its position x) for maxAM and minAM
+    //The state of the search is kept between updates, so if y and x only got new values, only
+    //these have to be scanned. The outputs (the extremum or the list of local extrema) are written
+    //again from the state after each update.
+    static class ExtremumSearch implements Serializable {
+        final boolean max;
+        final boolean multiple;
+        private boolean valid = false; //False if the state is not consistent with the scanned values (update has been interrupted)
+        private int scanned = 0; //Number of values of y that have been scanned
+        private int xSize = 0; //Number of values of x when the last value was scanned
+        private double threshold = Double.NaN;
+        private double value, x; //The current extremum and its position
+        private double currentX = -1; //Position of the last scanned value
+        private double[] values = new double[16]; //Completed local extrema in multiple mode
+        private double[] positions = new double[16];
+        private int count = 0;
+
+        ExtremumSearch(boolean max, boolean multiple) {
+            this.max = max;
             this.multiple = multiple;
         }
 
-        @Override
-        protected void update() {
-            double threshold = 0.;
+        private void start(double threshold) {
+            this.threshold = threshold;
+            scanned = 0;
+            xSize = 0;
+            value = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            x = Double.NEGATIVE_INFINITY;
+            currentX = -1;
+            count = 0;
+        }
 
-            //Get iterators, values do not make sense here.
-            Vector<Iterator> its = new Vector<>();
-            for (int i = 0; i < 2; i++) {
-                if (inputs.get(i) != null)
-                    its.add(inputs.get(i).getIterator());
-                else
-                    its.add(null);
-            }
+        //Positions after the end of x have been counted up from its last value. If x has received
+        //new values since, they are no longer valid.
+        private boolean positionsValid(DoubleView xIn) {
+            return xIn == null || scanned <= xSize || xIn.size() == xSize;
+        }
 
-            if (multiple && inputs.size() > 2 && inputs.get(2) != null)
-                threshold = inputs.get(2).getValue();
+        private void addExtremum() {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, 2 * count);
+                positions = Arrays.copyOf(positions, 2 * count);
+            }
+            values[count] = value;
+            positions[count] = x;
+            count++;
+        }
 
-            double max = Double.NEGATIVE_INFINITY; //This will hold the maximum value
-            double x = Double.NEGATIVE_INFINITY; //The x location of the maximum
-            double currentX = -1; //Current x during iteration
+        //continueRun: The inputs have only received new values since the previous update
+        void update(DoubleView yIn, DoubleView xIn, double threshold, boolean continueRun) {
+            if (!(continueRun && valid && Double.compare(threshold, this.threshold) == 0 && positionsValid(xIn)))
+                start(threshold);
+            valid = false;
 
-            while (its.get(1).hasNext()) { //For each value of input1
-                double v = (double)its.get(1).next();
+            int n = yIn.size();
+            int xn = xIn == null ? 0 : xIn.size();
+            for (int i = scanned; i < n; i++) {
+                double v = yIn.get(i);
 
-                //if input2 is given set x to this value. Otherwise generate x by incrementing it by 1.
-                if (its.get(0) != null && its.get(0).hasNext())
-                    currentX = (double)its.get(0).next();
+                //if x is given set x to this value. Otherwise generate x by incrementing it by 1.
+                if (i < xn)
+                    currentX = xIn.get(i);
                 else
                     currentX += 1;
 
-                if (multiple && v < threshold) {
+                if (multiple && (max ? v < threshold : v > threshold)) {
                     if (!Double.isInfinite(x)) {
-                        if (outputs.size() > 0 && outputs.get(0) != null) {
-                            outputs.get(0).append(max);
-                        }
-                        if (outputs.size() > 1 && outputs.get(1) != null) {
-                            outputs.get(1).append(x);
-                        }
-                        max = Double.NEGATIVE_INFINITY;
+                        addExtremum();
+                        value = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
                         x = Double.NEGATIVE_INFINITY;
                     }
-                } else if (v > max) {
-                    //Set maximum and location of maximum
-                    max = v;
+                } else if (max ? v > value : v < value) {
+                    //Set extremum and its location
+                    value = v;
                     x = currentX;
                 }
             }
+            if (n > scanned) {
+                scanned = n;
+                xSize = xn;
+            }
+            valid = true;
+        }
 
-            //Done. Append result to output1 and output2 if used.
+        void write(Vector<DataOutput> outputs) {
+            DataOutput valueOut = outputs.size() > 0 ? outputs.get(0) : null;
+            DataOutput positionOut = outputs.size() > 1 ? outputs.get(1) : null;
+            for (int i = 0; i < count; i++) {
+                if (valueOut != null)
+                    valueOut.append(values[i]);
+                if (positionOut != null)
+                    positionOut.append(positions[i]);
+            }
+            //The current extremum (the last one in multiple mode, which might continue with new values)
             if (!Double.isInfinite(x)) {
-                if (outputs.size() > 0 && outputs.get(0) != null) {
-                    outputs.get(0).append(max);
-                }
-                if (outputs.size() > 1 && outputs.get(1) != null) {
-                    outputs.get(1).append(x);
-                }
+                if (valueOut != null)
+                    valueOut.append(value);
+                if (positionOut != null)
+                    positionOut.append(x);
             }
+        }
+    }
+
+    //Get the maximum of the whole dataset.
+    //input1 is y
+    //input2 is x (if ommitted, it will be filled with 1, 2, 3, ...)
+    //output1 will receive a single value, the maximum y
+    //output2 (if used) will receive a single value, the x of the maximum
+    //input1 and output1 are mandatory, input1 and input2 are optional.
+    //If the parameter "multiple" is set, this module will output multiple local maxima (and their positions)
+    //In multiple mode input3 may set a threshold: A local maximum will be searched in ranges of consecutive values above the threshold, Default: 0
+    //If the inputs only receive new values, only these are scanned (see ExtremumSearch).
+    public static class maxAM extends AnalysisModule implements Serializable {
+        private boolean multiple = false;
+        private final ExtremumSearch search;
+
+        protected maxAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean multiple) {
+            super(experiment, inputs, outputs);
+            this.multiple = multiple;
+            search = new ExtremumSearch(true, multiple);
+            useView = true;
+            streaming = true;
+        }
 
+        @Override
+        protected void update() {
+            double threshold = 0.;
+            if (multiple && inputViews.size() > 2 && inputViews.get(2) != null)
+                threshold = inputViews.get(2).last();
+
+            search.update(inputViews.get(1), inputViews.get(0), threshold, continueRun);
+            search.write(outputs);
         }
     }
 
@@ -1214,71 +1423,27 @@ public class Analysis {
     //input1 and output1 are mandatory, input1 and input2 are optional.
     //If the parameter "multiple" is set, this module will output multiple local minima (and their positions)
     //In multiple mode input3 may set a threshold: A local minimum will be searched in ranges of consecutive values below the threshold, Default: 0
+    //If the inputs only receive new values, only these are scanned (see ExtremumSearch).
     public static class minAM extends AnalysisModule implements Serializable {
         private boolean multiple = false;
+        private final ExtremumSearch search;
 
         protected minAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean multiple) {
             super(experiment, inputs, outputs);
             this.multiple = multiple;
+            search = new ExtremumSearch(false, multiple);
+            useView = true;
+            streaming = true;
         }
 
         @Override
-        protected void update() {
-            double threshold = 0.;
-
-            //Get iterators, values do not make sense here.
-            Vector<Iterator> its = new Vector<>();
-            for (int i = 0; i < 2; i++) {
-                if (inputs.get(i) != null)
-                    its.add(inputs.get(i).getIterator());
-                else
-                    its.add(null);
-            }
-
-            if (multiple && inputs.size() > 2 && inputs.get(2) != null)
-                threshold = inputs.get(2).getValue();
-
-            double min = Double.POSITIVE_INFINITY; //This will hold the minimum value
-            double x = Double.NEGATIVE_INFINITY; //The x location of the minimum
-            double currentX = -1; //Current x during iteration
-
-            while (its.get(1).hasNext()) { //For each value of input1
-                double v = (double)its.get(1).next();
-
-                //if input2 is given set x to this value. Otherwise generate x by incrementing it by 1.
-                if (its.get(0) != null && its.get(0).hasNext())
-                    currentX = (double)its.get(0).next();
-                else
-                    currentX += 1;
-
-                if (multiple && v > threshold) {
-                    if (!Double.isInfinite(x)) {
-                        if (outputs.size() > 0 && outputs.get(0) != null) {
-                            outputs.get(0).append(min);
-                        }
-                        if (outputs.size() > 1 && outputs.get(1) != null) {
-                            outputs.get(1).append(x);
-                        }
-                        min = Double.POSITIVE_INFINITY;
-                        x = Double.NEGATIVE_INFINITY;
-                    }
-                } else if (v < min) {
-                    //Set maximum and location of maximum
-                    min = v;
-                    x = currentX;
-                }
-            }
-
-            //Done. Append result to output1 and output2 if used.
-            if (!Double.isInfinite(x)) {
-                if (outputs.size() > 0 && outputs.get(0) != null) {
-                    outputs.get(0).append(min);
-                }
-                if (outputs.size() > 1 && outputs.get(1) != null) {
-                    outputs.get(1).append(x);
-                }
-            }
+        protected void update() {
+            double threshold = 0.;
+            if (multiple && inputViews.size() > 2 && inputViews.get(2) != null)
+                threshold = inputViews.get(2).last();
 
+            search.update(inputViews.get(1), inputViews.get(0), threshold, continueRun);
+            search.write(outputs);
         }
     }
 
@@ -1288,115 +1453,134 @@ public class Analysis {
     //output1 will receive the x value of the point the threshold is crossed
     //The threshold is set by input3 (it defaults to 0)
     //The constructor parameter falling select positive or negative edge triggering (loaded with rising as default)
+    //The search continues where it stopped in the previous update if the inputs only received new
+    //values. Once the threshold has been crossed, the result does not change anymore.
     public static class thresholdAM extends AnalysisModule implements Serializable {
         boolean falling = false; //Falling or rising trigger?
 
+        private boolean valid = false; //State of the search, see ExtremumSearch
+        private boolean found = false;
+        private int scanned = 0;
+        private int xSize = 0;
+        private double threshold = Double.NaN;
+        private double last = Double.NaN; //Last value that did not trigger. Start with a NaN as result
+        private double currentX = -1; //Position of last no-trigger value.
+
         //Extended constructor which receives the threshold and falling as well.
         protected thresholdAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean falling) {
             super(experiment, inputs, outputs);
             this.falling = falling;
+            useView = true;
+            streaming = true;
         }
 
         @Override
         protected void update() {
             //Update the threshold from buffer or convert numerical string
             double vthreshold = Double.NaN;
-            if (inputs.size() > 2)
-                vthreshold = inputs.get(2).getValue();
+            if (inputViews.size() > 2 && inputViews.get(2) != null)
+                vthreshold = inputViews.get(2).last();
             if (Double.isNaN(vthreshold))
                 vthreshold = 0.;
 
-            //Get iterators
-            Vector<Iterator> its = new Vector<>();
-            for (int i = 0; i < 2; i++) {
-                if (inputs.get(i) != null)
-                    its.add(inputs.get(i).getIterator());
-                else
-                    its.add(null);
+            DoubleView yIn = inputViews.get(1);
+            DoubleView xIn = inputViews.get(0);
+            int xn = xIn == null ? 0 : xIn.size();
+
+            //Positions after the end of x have been counted up from its last value, so start over if x got new values
+            boolean positionsValid = xIn == null || scanned <= xSize || xn == xSize;
+            if (!(continueRun && valid && vthreshold == threshold && positionsValid)) {
+                threshold = vthreshold;
+                found = false;
+                scanned = 0;
+                xSize = 0;
+                last = Double.NaN;
+                currentX = -1;
             }
+            valid = false;
 
-            double last = Double.NaN; //Last value that did not trigger. Start with a NaN as result
-            double currentX = -1; //Position of last no-trigger value.
-            while (its.get(1).hasNext()) { //For each value of input1
-                double v = (double)its.get(1).next();
+            int n = yIn.size();
+            for (int i = scanned; i < n && !found; i++) {
+                double v = yIn.get(i);
 
                 //if input2 exists, use this as x value, otherwise generate x by incrementing by 1
-                if (its.get(0) != null && its.get(0).hasNext())
-                    currentX = (double)its.get(0).next();
+                if (i < xn)
+                    currentX = xIn.get(i);
                 else
                     currentX += 1;
+                scanned = i + 1;
+                xSize = xn;
 
                 //Only trigger if the last and the current value are valid,
                 if (!(Double.isNaN(last) || Double.isNaN(v))) {
                     if (falling) {
                         if (last >= vthreshold && v < vthreshold) {
-                            //Falling trigger and value went below threshold -> break
+                            //Falling trigger and value went below threshold -> stop
+                            found = true;
                             break;
                         }
                     } else {
                         if (last <= vthreshold && v > vthreshold) {
-                            //Rising trigger and value went above threshold -> break
+                            //Rising trigger and value went above threshold -> stop
+                            found = true;
                             break;
                         }
                     }
                 }
                 last = v;
             }
+            valid = true;
             outputs.get(0).append(currentX); //Append final x position to output1
 
         }
     }
 
     //Binning: get number of elements that fall into the intervals x0..x0+dx..x0+2dx.. (default: x0 = 0, dx = 1)
+    //If the number of bins is given (input4), there are always exactly this many bins starting at x0
+    //and values outside of x0..x0+bins*dx are ignored. Otherwise the bins cover the range of the values.
+    //The histogram is kept between updates, so if the input only receives new values, only these are counted.
     public static class binningAM extends AnalysisModule implements Serializable {
+        private Histogram histogram = null;
 
         protected binningAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
+            useView = true;
+            streaming = true;
+        }
+
+        private double getValue(int i, double defaultValue) {
+            double v = Double.NaN;
+            if (inputViews.size() > i && inputViews.get(i) != null)
+                v = inputViews.get(i).last();
+            return Double.isNaN(v) ? defaultValue : v;
         }
 
         @Override
         protected void update() {
-            Iterator it = inputs.get(0).getIterator();
-            double x0 = 0.;
-            if (inputs.size() > 1 && inputs.get(1) != null)
-                x0 = inputs.get(1).getValue();
-            if (Double.isNaN(x0))
-                x0 = 0.;
-
-            double dx = 1.;
-            if (inputs.size() > 2 && inputs.get(2) != null)
-                dx = inputs.get(2).getValue();
-            if (Double.isNaN(dx))
-                dx = 1.;
+            DoubleView in = inputViews.get(0);
+            double x0 = getValue(1, 0.);
+            double dx = getValue(2, 1.);
+            int bins = (int)getValue(3, 0.);
 
-            Vector<Double> binStarts = new Vector<>();
-            Vector<Double> binCounts = new Vector<>();
+            Histogram h = histogram;
+            histogram = null; //Start over if this update does not finish
+            int start = 0;
+            if (continueRun && h != null && h.hasParameters(x0, dx, bins))
+                start = lastInputSizes[0];
+            else
+                h = new Histogram(x0, dx, bins);
+            h.add(in, start, in.size());
+            histogram = h;
 
-            while (it.hasNext()) {
-                double v = (double)it.next();
-                if (Double.isNaN(v) || Double.isInfinite(v))
-                    continue;
-                int binIndex = (int)((v-x0)/dx);
-                if (binStarts.size() == 0) {
-                    binStarts.add(x0+binIndex*dx);
-                    binCounts.add(1.);
-                } else {
-                    int firstBinIndex = (int)Math.round((binStarts.get(0)-x0)/dx);
-                    while (binIndex > firstBinIndex + binStarts.size() - 1) {
-                        binStarts.add(x0+(firstBinIndex+binStarts.size())*dx);
-                        binCounts.add(0.);
-                    }
-                    while (binIndex < firstBinIndex) {
-                        binStarts.insertElementAt(x0+(firstBinIndex-1)*dx,0);
-                        binCounts.insertElementAt(0.,0);
-                        firstBinIndex = (int)Math.round((binStarts.get(0)-x0)/dx);
-                    }
-                    binCounts.set(binIndex-firstBinIndex,binCounts.get(binIndex-firstBinIndex)+1);
-                }
+            int n = h.size();
+            double[] binStarts = new double[n];
+            double[] binCounts = new double[n];
+            for (int i = 0; i < n; i++) {
+                binStarts[i] = h.binStart(i);
+                binCounts[i] = h.count(i);
             }
-
-            outputs.get(0).append(binStarts.toArray(new Double[0]), binStarts.size());
-            outputs.get(1).append(binCounts.toArray(new Double[0]), binCounts.size());
+            outputs.get(0).append(binStarts, 0, n);
+            outputs.get(1).append(binCounts, 0, n);
 
         }
     }
@@ -1425,81 +1609,109 @@ public class Analysis {
 
         ZMode zMode = ZMode.count;
 
+        //The grid is kept between updates, so if x, y and z only receive new values, only these are added
+        private Histogram.Grid grid = null;
+        private int scanned = 0;
+
         protected mapAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, ZMode zMode) {
             super(experiment, inputs, outputs);
             this.zMode = zMode;
-            useArray = true;
+            useView = true;
+            streaming = true;
+        }
+
+        private int size(int i) {
+            return inputViews.get(i) == null ? 0 : inputViews.get(i).size();
         }
 
         @Override
         protected void update() {
-            if ((inputArrays.size() < 9 && zMode != ZMode.count) || inputArrays.size() < 8)
+            if ((inputViews.size() < 9 && zMode != ZMode.count) || inputViews.size() < 8)
                 return;
 
-            if (inputArraySizes.get(0) < 1 || inputArraySizes.get(1) < 1 || inputArraySizes.get(2) < 1
-                || inputArraySizes.get(3) < 1 || inputArraySizes.get(4) < 1 || inputArraySizes.get(5) < 1)
+            if (size(0) < 1 || size(1) < 1 || size(2) < 1 || size(3) < 1 || size(4) < 1 || size(5) < 1)
                 return;
 
-            int mapWidth = inputArrays.get(0)[0].intValue();
-            double minx = inputArrays.get(1)[0];
-            double maxx = inputArrays.get(2)[0];
+            int mapWidth = (int)inputViews.get(0).get(0);
+            double minx = inputViews.get(1).get(0);
+            double maxx = inputViews.get(2).get(0);
 
-            int mapHeight = inputArrays.get(3)[0].intValue();
-            double miny = inputArrays.get(4)[0];
-            double maxy = inputArrays.get(5)[0];
+            int mapHeight = (int)inputViews.get(3).get(0);
+            double miny = inputViews.get(4).get(0);
+            double maxy = inputViews.get(5).get(0);
 
-            int n = Math.min(inputArraySizes.get(6), inputArraySizes.get(7));
+            int n = Math.min(size(6), size(7));
             if (zMode != ZMode.count)
-                n = Math.min(n, inputArraySizes.get(8));
+                n = Math.min(n, size(8));
 
-            Double[] xin = inputArrays.get(6);
-            Double[] yin = inputArrays.get(7);
-            Double[] zin = inputArrays.get(8);
+            DoubleView xin = inputViews.get(6);
+            DoubleView yin = inputViews.get(7);
+            DoubleView zin = zMode != ZMode.count ? inputViews.get(8) : null;
 
-            double[] zsumout = new double[mapHeight*mapWidth];
-            int[] nout = new int[mapHeight*mapWidth];
+            Histogram.Grid g = grid;
+            grid = null; //Start over if this update does not finish
+            int start = 0;
+            if (continueRun && g != null && g.hasParameters(mapWidth, mapHeight, minx, maxx, miny, maxy) && scanned <= n)
+                start = scanned;
+            else
+                g = new Histogram.Grid(mapWidth, mapHeight, minx, maxx, miny, maxy, zMode != ZMode.count);
+
+            //Many points are binned in parallel into one grid per thread. Every partial grid has to
+            //be allocated and merged, so this is only done if there are more points than grid cells.
+            if (ParallelKernels.worthSplitting(n - start, parallelThreshold()) && (long)g.counts.length * ParallelKernels.getParallelism() < n - start) {
+                final Histogram.Grid template = g;
+                final DoubleView x = xin, y = yin, z = zin;
+                g.merge(ParallelKernels.reduce(start, n, parallelThreshold(), new ParallelKernels.Reduction<Histogram.Grid>() {
+                    @Override
+                    public Histogram.Grid create() {
+                        return template.emptyCopy();
+                    }
 
-            for (int i = 0; i < n; i++) {
-                int x = (int)Math.round((mapWidth-1)*(xin[i]-minx)/(maxx-minx));
-                int y = (int)Math.round((mapHeight-1)*(yin[i]-miny)/(maxy-miny));
-                if (x < 0 || x >= mapWidth || y < 0 || y >= mapHeight)
-                    continue;
-                int index = x + y*mapWidth;
-                if (zMode != ZMode.count) {
-                    zsumout[index] += zin[i];
-                }
-                nout[index]++;
+                    @Override
+                    public void accumulate(Histogram.Grid partial, int start, int end) {
+                        partial.add(x, y, z, start, end);
+                    }
+
+                    @Override
+                    public void merge(Histogram.Grid into, Histogram.Grid from) {
+                        into.merge(from);
+                    }
+                }));
+            } else
+                g.add(xin, yin, zin, start, n);
+            scanned = n;
+            grid = g;
+
+            //Write the grid row by row
+            int cells = g.width * g.height;
+            if (outputs.size() > 0 && outputs.get(0) != null) {
+                double[] xs = new double[cells];
+                for (int y = 0; y < g.height; y++)
+                    for (int x = 0; x < g.width; x++)
+                        xs[y*g.width + x] = g.x(x);
+                outputs.get(0).append(xs);
             }
 
-            DataOutput xout = null;
-            if (outputs.size() > 0)
-                xout = outputs.get(0);
-
-            DataOutput yout = null;
-            if (outputs.size() > 1)
-                yout = outputs.get(1);
-
-            DataOutput zout = null;
-            if (outputs.size() > 2)
-                zout = outputs.get(2);
-
-            for (int y = 0; y < mapHeight; y++) {
-                for (int x = 0; x < mapWidth; x++) {
-                    if (xout != null)
-                        xout.append(minx + x*(maxx-minx)/((double)(mapWidth-1)));
-                    if (yout != null)
-                        yout.append(miny + y*(maxy-miny)/((double)(mapHeight-1)));
-                    if (zout != null) {
-                        switch (zMode) {
-                            case count:   zout.append(nout[y*mapWidth + x]);
-                                          break;
-                            case sum:     zout.append(zsumout[y*mapWidth + x]);
-                                          break;
-                            case average: zout.append(zsumout[y*mapWidth + x] / (double)nout[y*mapWidth + x]);
-                                          break;
-                        }
+            if (outputs.size() > 1 && outputs.get(1) != null) {
+                double[] ys = new double[cells];
+                for (int y = 0; y < g.height; y++)
+                    Arrays.fill(ys, y*g.width, (y+1)*g.width, g.y(y));
+                outputs.get(1).append(ys);
+            }
+
+            if (outputs.size() > 2 && outputs.get(2) != null) {
+                double[] zs = new double[cells];
+                for (int index = 0; index < cells; index++) {
+                    switch (zMode) {
+                        case count:   zs[index] = g.counts[index];
+                                      break;
+                        case sum:     zs[index] = g.sums[index];
+                                      break;
+                        case average: zs[index] = g.sums[index] / (double)g.counts[index];
+                                      break;
                     }
                 }
+                outputs.get(2).append(zs);
             }
 
         }
@@ -1618,80 +1830,80 @@ public class Analysis {
     }
 
     //Calculate FFT of single input
-    //If the input length is not a power of two the input will be filled with zeros until it is a power of two
+    //The transform has exactly the size of the input, which does not need to be a power of two (see FFT.java)
     public static class fftAM extends AnalysisModule implements Serializable {
         private FFT fft;
+        private double[] x, y; //Work arrays, reused as long as the input size does not grow
 
         protected fftAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
 
-            useArray = true;
+            useView = true;
             if (!nativeLib)
                 fft = new FFT();
         }
 
         @Override
         protected void update() {
+            if (inputViews.size() == 0 || inputViews.get(0) == null)
+                return;
 
-            if (nativeLib) {
+            DoubleView re = inputViews.get(0);
+            DoubleView im = inputViews.size() > 1 ? inputViews.get(1) : null;
 
-                if (inputArrays.size() == 0)
-                    return;
+            if (nativeLib) {
 
-                int size = inputArraySizes.get(0);
+                int size = re.size();
                 if (size < 2)
                     return;
 
                 final float xy[] = new float[2 * size];
 
-                for (int i = 0; i < size; i++) {
-                    xy[2 * i] = inputArrays.get(0)[i].floatValue();
-                    xy[2 * i + 1] = (inputArrays.size() > 1 && inputArraySizes.get(1) > i ? inputArrays.get(1)[i].floatValue() : 0.f);
-                }
+                int imSize = im != null ? Math.min(im.size(), size) : 0;
+                for (int i = 0; i < size; i++)
+                    xy[2 * i] = (float)re.get(i);
+                for (int i = 0; i < imSize; i++)
+                    xy[2 * i + 1] = (float)im.get(i);
 
                 fftw3complex(xy, size);
 
                 //Append the real part of the result to output1 and the imaginary part to output2 (if used)
+                double[] reOut = new double[size];
+                double[] imOut = new double[size];
                 for (int i = 0; i < size; i++) {
-                    if (outputs.size() > 0 && outputs.get(0) != null)
-                        outputs.get(0).append(xy[2 * i]);
-                    if (outputs.size() > 1 && outputs.get(1) != null)
-                        outputs.get(1).append(xy[2 * i + 1]);
+                    reOut[i] = xy[2 * i];
+                    imOut[i] = xy[2 * i + 1];
                 }
+                if (outputs.size() > 0 && outputs.get(0) != null)
+                    outputs.get(0).append(reOut);
+                if (outputs.size() > 1 && outputs.get(1) != null)
+                    outputs.get(1).append(imOut);
             } else {
 
-                int size = inputArrays.get(0).length;
+                int size = re.size();
                 if (size < 2)
                     return;
 
-                if (fft.n != size) {
-                    fft.prepare(size);
-                }
-
-                Double x[] = Arrays.copyOf(inputArrays.get(0), fft.np2);
-                Double y[];
-                if (inputArrays.size() > 1)
-                    y = Arrays.copyOf(inputArrays.get(1), fft.np2);
-                else
-                    y = new Double[fft.np2];
-
-                //Fill any unused inputs with zeros
-                for (int i = 0; i < fft.np2; i++) {
-                    if (x[i] == null)
-                        x[i] = 0.;
-                    if (y[i] == null)
-                        y[i] = 0.;
+                if (x == null || x.length < size) {
+                    x = new double[size];
+                    y = new double[size];
                 }
 
-                fft.calculate(x, y);
+                //Copy the input. Without an imaginary part, we can use the faster transform of real values.
+                re.copyTo(0, x, 0, size);
+                int imSize = im != null ? Math.min(im.size(), size) : 0;
+                if (imSize > 0) {
+                    im.copyTo(0, y, 0, imSize);
+                    Arrays.fill(y, imSize, size, 0.);
+                    fft.transform(x, y, size);
+                } else
+                    fft.realTransform(x, size, x, y);
 
                 //Append the real part of the result to output1 and the imaginary part to output2 (if used)
-                for (int i = 0; i < size; i++) {
-                    if (outputs.size() > 0 && outputs.get(0) != null)
-                        outputs.get(0).append(x[i]);
-                    if (outputs.size() > 1 && outputs.get(1) != null)
-                        outputs.get(1).append(y[i]);
-                }
+                if (outputs.size() > 0 && outputs.get(0) != null)
+                    outputs.get(0).append(x, 0, size);
+                if (outputs.size() > 1 && outputs.get(1) != null)
+                    outputs.get(1).append(y, 0, size);
 
             }
         }
@@ -1704,10 +1916,14 @@ public class Analysis {
     //output2 is relative x (displacement of autocorrelation in units of input2)
     //A min and max can be set through inputs as well, which limit the x-range used for calculation
     public static class autocorrelationAM extends AnalysisModule implements Serializable {
+        private double[] y; //Work array for the input values, reused across updates
+        private double[] c; //Work array for the correlation
+        private FFT fft = new FFT();
+        private final DataOutput.Builder yOut = new DataOutput.Builder(), xOut = new DataOutput.Builder();
 
         protected autocorrelationAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
@@ -1715,54 +1931,176 @@ public class Analysis {
             double mint, maxt;
 
             //Update min and max as they might come from a dataBuffer
-            if (inputArrays.size() < 3 || inputArrays.get(2) == null || inputArraySizes.get(2) == 0)
+            if (inputViews.size() < 3 || inputViews.get(2) == null || inputViews.get(2).size() == 0)
                 mint = Double.NEGATIVE_INFINITY; //not set by user, set to -inf so it has no effect
             else
-                mint = inputArrays.get(2)[inputArraySizes.get(2)-1];
+                mint = inputViews.get(2).last();
 
-            if (inputArrays.size() < 4 || inputArrays.get(3) == null || inputArraySizes.get(3) == 0)
+            if (inputViews.size() < 4 || inputViews.get(3) == null || inputViews.get(3).size() == 0)
                 maxt = Double.POSITIVE_INFINITY; //not set by user, set to +inf so it has no effect
             else
-                maxt = inputArrays.get(3)[inputArraySizes.get(3)-1];
-
-            Double y[] = inputArrays.get(1);
-
-            int size = inputArraySizes.get(1);
-            Double x[];
-            if (inputArrays.get(0) != null) {
-                x = inputArrays.get(0);
-                if (x.length < size)
-                    size = x.length;
-                for (int i = 1; i < size; i++) {
-                    x[i] -= x[0];
-                }
-                if (size > 0)
-                    x[0] = 0.;
-            } else {
-                x = new Double[size]; //Relative x (the displacement in the autocorrelation). This has to be filled from input2 or manually with 1,2,3...
-                //There is no input2. Let's fill it with 0,1,2,3,4....
-                for (int i = 0; i < size; i++) {
-                    x[i] = (double)i;
-                }
+                maxt = inputViews.get(3).last();
+
+            //The inner loop reads every value many times, so we want a plain array here
+            int size = inputViews.get(1).size();
+            y = inputViews.get(1).toArray(y);
+
+            //Relative x (the displacement in the autocorrelation). This is taken from input2 or, if there is no input2, it is 0,1,2,3,4....
+            DoubleView xin = inputViews.get(0);
+            if (xin != null && xin.size() < size)
+                size = xin.size();
+            double x0 = (xin != null && size > 0) ? xin.get(0) : 0.;
+
+            //Find the displacements we actually need and how many products the direct calculation would take
+            int count = 0;
+            long products = 0;
+            for (int i = 0; i < size; i++) {
+                double xi = xin != null ? xin.get(i) - x0 : i;
+                if (xi < mint || xi > maxt)
+                    continue;
+                count = i + 1;
+                products += size - i;
+            }
+
+            //For larger inputs we get all displacements at once via FFT, small ones or a narrow range are calculated directly
+            boolean useFFT = FFT.correlationPrefersFFT(products, size, size, count);
+            if (useFFT) {
+                if (c == null || c.length < count)
+                    c = new double[count];
+                fft.correlate(y, size, y, size, count, c);
             }
 
             //The actual calculation
-            for (int i = 0; i < size; i++) { //Displacement i for each value of input1
-                if (x[i] < mint || x[i] > maxt) //Skip this, if it should be filtered
+            for (int i = 0; i < count; i++) { //Displacement i for each value of input1
+                double xi = xin != null ? xin.get(i) - x0 : i;
+                if (xi < mint || xi > maxt) //Skip this, if it should be filtered
                     continue;
 
                 double sum = 0.;
-                for (int j = 0; j < size-i; j++) { //For each value of input1 minus the current displacement
-                    sum += y[j]*y[j+i]; //Product of normal and displaced data
+                if (useFFT)
+                    sum = c[i];
+                else {
+                    for (int j = 0; j < size - i; j++) { //For each value of input1 minus the current displacement
+                        sum += y[j] * y[j + i]; //Product of normal and displaced data
+                    }
                 }
                 sum /= (double)(size-i); //Normalize to the number of values at this displacement
 
-                //Append y output to output1 and x to output2 (if used)
-                if (outputs.size() > 0 && outputs.get(0) != null)
-                    outputs.get(0).append(sum);
-                if (outputs.size() > 1 && outputs.get(1) != null)
-                    outputs.get(1).append(x[i]);
+                //Collect y output for output1 and x for output2
+                yOut.add(sum);
+                xOut.add(xi);
+            }
+
+            if (outputs.size() > 0 && outputs.get(0) != null)
+                outputs.get(0).append(yOut);
+            if (outputs.size() > 1 && outputs.get(1) != null)
+                outputs.get(1).append(xOut);
+            yOut.clear();
+            xOut.clear();
+        }
+    }
+
+    //Search for the period in one window of the input for periodicityAM
+    //The autocorrelation of the window is scanned for its first maximum after the first negative
+    //value (or for the maximum within the range selected by the user). If the period is short, only
+    //a few displacements are needed and these are calculated directly. Once the direct calculation
+    //has taken as many products as an FFT of the whole window would take, the remaining
+    //displacements are taken from a single FFT-based autocorrelation. So, a scan never takes more
+    //than about twice the time of the faster method, without knowing the period beforehand.
+    //Each thread needs its own instance.
+    static class PeriodScan implements Serializable {
+        private final FFT fft = new FFT();
+        private transient double[] window, c; //Work arrays for the window and its autocorrelation
+
+        //Autocorrelation sum (not normalized) of y[x1..x2) at displacement i
+        private double direct(double[] y, int x1, int x2, int i) {
+            double sum = 0.;
+            for (int j = x1; j < x2 - i; j++) { //For each value of input1 minus the current displacement
+                sum += y[j] * y[j + i]; //Product of normal and displaced data
+            }
+            return sum;
+        }
+
+        //Period in units of x of the window x1..x2 or NaN if none has been found
+        double period(double[] y, DoubleView x, int x1, int x2, int minPeriod, int maxPeriod, boolean userSelectedRange) {
+            int size = x2 - x1;
+
+            //Products we can calculate directly before the FFT becomes cheaper
+            long budget = maxPeriod > 0 ? FFT.correlationCost(size, size, maxPeriod) : 0;
+            long products = 0;
+            boolean useFFT = false;
+            if (userSelectedRange) {
+                //We know all displacements we need beforehand
+                long needed = 0;
+                for (int i = minPeriod; i < maxPeriod; i++)
+                    needed += size - i;
+                if (needed > budget)
+                    useFFT = correlateWindow(y, x1, size, maxPeriod);
+            }
+
+            int firstNegative = -1;
+            int maxPosition = -1;
+            double maxValue = Double.NEGATIVE_INFINITY;
+            double maxValueLeft = Double.NEGATIVE_INFINITY;
+            double maxValueRight = Double.NEGATIVE_INFINITY;
+            double lastSum = Double.NEGATIVE_INFINITY;
+
+            double step = 1;
+            if (!userSelectedRange)
+                step = 2; //Until we find the first negative value, we can go faster...
+
+            for (int i = minPeriod; i < maxPeriod; i += step) { //Displacement i for each value of input1
+                if (!useFFT && products + size - i > budget)
+                    useFFT = correlateWindow(y, x1, size, maxPeriod);
+                double sum;
+                if (useFFT)
+                    sum = c[i];
+                else {
+                    sum = direct(y, x1, x2, i);
+                    products += size - i;
+                }
+                sum /= (double) (size-i); //Normalize to the number of values at this displacement
+
+                if (!userSelectedRange && firstNegative < 0) {
+                    if (sum < 0) { //So, this is the first negative one... We can now skip ahead to 3 times this position and work more precisely from there.
+                        firstNegative = i;
+                        i = 3*firstNegative+1;
+                        step = 1;
+                    }
+                } else if (!userSelectedRange && i > 5 * firstNegative) { //We have passed the first period. Further maxima can only be found on the next period and we are not interested in this...
+                    break;
+                } else if (userSelectedRange || i > 3 * firstNegative) {
+                    if (sum > maxValue) {
+                        maxValue = sum;
+                        maxPosition = i;
+                        maxValueLeft = lastSum;
+                        maxValueRight = Double.NEGATIVE_INFINITY;
+                    } else if (i == maxPosition + 1) {
+                        maxValueRight = sum;
+                    }
+                }
+                lastSum = sum;
+            }
+
+            double xMax = Double.NaN;
+            if (maxPosition > 0 && maxValue > 0 && maxValueLeft > 0 && maxValueRight > 0) {
+                double dy = 0.5 * (maxValueRight - maxValueLeft);
+                double d2y = 2*maxValue - maxValueLeft - maxValueRight;
+                double m = dy / d2y;
+                xMax = x.get(x1+maxPosition) + 0.5*m*(x.get(x1+maxPosition+1) - x.get(x1+maxPosition-1)) - x.get(x1);
             }
+            return xMax;
+        }
+
+        //Calculate the displacements 0..count-1 of the window at once
+        private boolean correlateWindow(double[] y, int x1, int size, int count) {
+            if (window == null || window.length < size)
+                window = new double[size];
+            if (c == null || c.length < count)
+                c = new double[count];
+            System.arraycopy(y, x1, window, 0, size);
+            fft.correlate(window, size, window, size, count, c);
+            return true;
         }
     }
 
@@ -1775,112 +2113,116 @@ public class Analysis {
     //input6 is the maximum period in samples (optional, default: +Inf)
     //input6 is the precision in samples (optional, default: 1)
     //output1 is the periodicity in units of input1
+    //The windows are independent, so large inputs are split across threads. If the inputs have only
+    //received new values since the last update, the results of all windows that have been complete
+    //before are kept and only the windows at the end are calculated.
     public static class periodicityAM extends AnalysisModule implements Serializable {
+        private double[] y; //Work array for the input values, reused across updates
+        private final PeriodScan scan = new PeriodScan(); //Used if the windows are not split across threads
+
+        //Results of the previous update
+        private double[] times = new double[0], periods = new double[0];
+        private int completeWindows = 0; //Number of windows that did not reach the end of the data and will not change
+        private int lastDx, lastOverlap, lastMinPeriod, lastMaxPeriod;
+        private boolean lastUserSelectedRange;
 
         protected periodicityAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
+            useView = true;
+            streaming = true;
         }
 
         @Override
         protected void update() {
-            //Get arrays for random access
-            Double x[] = inputs.get(0).buffer.getArray();
-            Double y[] = inputs.get(1).buffer.getArray();
-
-            int n = inputs.get(1).buffer.getFilledSize();
+            final DoubleView x = inputViews.get(0);
+            int n = inputViews.get(1).size();
 
             //Get dx and overlap
-            int dx = (int)inputs.get(2).getValue();
+            final int dx = (int)inputViews.get(2).last();
             if (dx <= 0)
                 return;
 
             //Overlap is optional...
             int overlap = 0;
-            if (inputs.size() >= 4 && inputs.get(3) != null)
-                overlap = (int)inputs.get(3).getValue();
+            if (inputViews.size() >= 4 && inputViews.get(3) != null)
+                overlap = (int)inputViews.get(3).last();
 
             boolean userSelectedRange = false;
 
             //min period is optional...
             int minPeriod = 0;
-            if (inputs.size() >= 5 && inputs.get(4) != null) {
-                minPeriod = (int) Math.floor(inputs.get(4).getValue());
+            if (inputViews.size() >= 5 && inputViews.get(4) != null) {
+                minPeriod = Math.max((int) Math.floor(inputViews.get(4).last()), 0);
                 userSelectedRange = true;
             }
 
             //max period is optional...
             int maxPeriod = Integer.MAX_VALUE;
-            if (inputs.size() >= 6 && inputs.get(5) != null) {
-                maxPeriod = (int) Math.ceil(inputs.get(5).getValue());
+            if (inputViews.size() >= 6 && inputViews.get(5) != null) {
+                maxPeriod = (int) Math.ceil(inputViews.get(5).last());
                 userSelectedRange = true;
             }
+            int maxPeriodParameter = maxPeriod;
 
-            //The actual calculation
-            for (int stepX = 0; stepX <= n - dx; stepX += dx) {
+            //Windows at stepX = k*dx
+            int windowCount = n >= dx ? (n - dx) / dx + 1 : 0;
+            final int[] x1s = new int[windowCount];
+            final int[] x2s = new int[windowCount];
+            final int[] maxPeriods = new int[windowCount];
+            for (int k = 0; k < windowCount; k++) {
+                int stepX = k * dx;
                 //Calculate actual autocorrelation range as it might be cut off at the edges
-                int x1 = stepX - overlap;
-                if (x1 < 0)
-                    x1 = 0;
-
-                int x2 = stepX + dx + overlap;
-                if (x2 > n)
-                    x2 = n;
-
-                if (maxPeriod > x2-x1)
-                    maxPeriod = x2-x1;
-
-                int firstNegative = -1;
-                int maxPosition = -1;
-                double maxValue = Double.NEGATIVE_INFINITY;
-                double maxValueLeft = Double.NEGATIVE_INFINITY;
-                double maxValueRight = Double.NEGATIVE_INFINITY;
-                double lastSum = Double.NEGATIVE_INFINITY;
-
-                double step = 1;
-                if (!userSelectedRange)
-                    step = 2; //Until we find the first negative value, we can go faster...
-
-                for (int i = minPeriod; i < maxPeriod; i += step) { //Displacement i for each value of input1
-                    double sum = 0.;
-                    for (int j = x1; j < x2 - i; j++) { //For each value of input1 minus the current displacement
-                        sum += y[j] * y[j + i]; //Product of normal and displaced data
-                    }
-                    sum /= (double) (x2-x1-i); //Normalize to the number of values at this displacement
+                x1s[k] = Math.max(stepX - overlap, 0);
+                x2s[k] = (int)Math.min((long)stepX + dx + overlap, n);
+                //The range is never extended again once a window has limited it
+                if (maxPeriod > x2s[k]-x1s[k])
+                    maxPeriod = x2s[k]-x1s[k];
+                maxPeriods[k] = maxPeriod;
+            }
+
+            //Keep the windows of the last update, which had all their values
+            int reused = 0;
+            if (continueRun && dx == lastDx && overlap == lastOverlap && minPeriod == lastMinPeriod && maxPeriodParameter == lastMaxPeriod && userSelectedRange == lastUserSelectedRange)
+                reused = Math.min(completeWindows, windowCount);
+            long work = 0;
+            for (int k = reused; k < windowCount; k++)
+                work += x2s[k] - x1s[k];
+            if (times.length < windowCount) {
+                times = Arrays.copyOf(times, windowCount);
+                periods = Arrays.copyOf(periods, windowCount);
+            }
 
-                    if (!userSelectedRange && firstNegative < 0) {
-                        if (sum < 0) { //So, this is the first negative one... We can now skip ahead to 3 times this position and work more precisely from there.
-                            firstNegative = i;
-                            i = 3*firstNegative+1;
-                            step = 1;
-                        }
-                    } else if (!userSelectedRange && i > 5 * firstNegative) { //We have passed the first period. Further maxima can only be found on the next period and we are not interested in this...
-                        break;
-                    } else if (userSelectedRange || i > 3 * firstNegative) {
-                        if (sum > maxValue) {
-                            maxValue = sum;
-                            maxPosition = i;
-                            maxValueLeft = lastSum;
-                            maxValueRight = Double.NEGATIVE_INFINITY;
-                        } else if (i == maxPosition + 1) {
-                            maxValueRight = sum;
-                        }
+            //The actual calculation
+            y = inputViews.get(1).toArray(y);
+            final double[] yArray = y;
+            final int fMinPeriod = minPeriod;
+            final boolean fUserSelectedRange = userSelectedRange;
+            final int start = reused;
+            final int end = windowCount;
+            ParallelKernels.forEachItem(start, end, work, parallelThreshold(), new ParallelKernels.Kernel() {
+                @Override
+                public void run(int s, int e) {
+                    PeriodScan periodScan = (s == start && e == end) ? scan : new PeriodScan(); //One instance per thread
+                    for (int k = s; k < e; k++) {
+                        times[k] = x.get(x1s[k]);
+                        periods[k] = periodScan.period(yArray, x, x1s[k], x2s[k], fMinPeriod, maxPeriods[k], fUserSelectedRange);
                     }
-                    lastSum = sum;
                 }
+            });
 
-                double xMax = Double.NaN;
-                if (maxPosition > 0 && maxValue > 0 && maxValueLeft > 0 && maxValueRight > 0) {
-                    double dy = 0.5 * (maxValueRight - maxValueLeft);
-                    double d2y = 2*maxValue - maxValueLeft - maxValueRight;
-                    double m = dy / d2y;
-                    xMax = x[x1+maxPosition] + 0.5*m*(x[x1+maxPosition+1] - x[x1+maxPosition-1]) - x[x1];
-                }
-//Log.d("test", "min: " + minPeriod + ", max: " + maxPeriod + ", x1: " + x1 + ", pos: " + maxPosition + ", period: " + xMax);
-                if (outputs.size() > 0 && outputs.get(0) != null)
-                    outputs.get(0).append(x[x1]);
-                if (outputs.size() > 1 && outputs.get(1) != null)
-                    outputs.get(1).append(xMax);
-            }
+            completeWindows = 0;
+            while (completeWindows < windowCount && (long)completeWindows * dx + dx + overlap <= n)
+                completeWindows++;
+            lastDx = dx;
+            lastOverlap = overlap;
+            lastMinPeriod = minPeriod;
+            lastMaxPeriod = maxPeriodParameter;
+            lastUserSelectedRange = userSelectedRange;
+
+            if (outputs.size() > 0 && outputs.get(0) != null)
+                outputs.get(0).append(times, 0, windowCount);
+            if (outputs.size() > 1 && outputs.get(1) != null)
+                outputs.get(1).append(periods, 0, windowCount);
         }
     }
 
@@ -1890,27 +2232,22 @@ public class Analysis {
 
         protected differentiateAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
+            useView = true;
+            incremental = true;
         }
 
         @Override
         protected void update() {
-            double v, last = Double.NaN;
-            boolean first = true;
+            if (!isBufferInput(0)) //non-buffer values are ignored
+                return;
 
             //The actual calculation
-            Iterator it = inputs.get(0).getIterator();
-            if (it == null) //non-buffer values are ignored
-                return;
+            DoubleView in = inputViews.get(0);
+            int size = in.size();
+            int start = incrementalRun ? Math.max(lastInputSizes[0], 1) : 1; //The first value is only needed as the reference for the second one
             //Calculate difference of neighbors
-            while (it.hasNext()) {
-                if (first) { //The first value is just stored
-                    last = (double)it.next();
-                    first = false;
-                    continue;
-                }
-                v = (double)it.next();
-                outputs.get(0).append(v-last);
-                last = v;
+            for (int i = start; i < size; i++) {
+                outputs.get(0).append(in.get(i)-in.get(i-1));
             }
         }
     }
@@ -1922,19 +2259,28 @@ public class Analysis {
 
         protected integrateAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
+            useView = true;
+            incremental = true;
         }
 
         @Override
         protected void update() {
-            double sum = 0.;
+            if (!isBufferInput(0)) //non-buffer values are ignored
+                return;
 
             //The actual calculation
-            Iterator it = inputs.get(0).getIterator();
-            if (it == null) //non-buffer values are ignored
-                return;
+            DoubleView in = inputViews.get(0);
+            int size = in.size();
+            int start = 0;
+            double sum = 0.;
+            if (incrementalRun && lastInputSizes[0] > 0) {
+                //Continue from the last sum, which is the last value we have written to the output
+                start = lastInputSizes[0];
+                sum = outputs.get(0).getValue();
+            }
             //Calculate the sum
-            while (it.hasNext()) {
-                sum += (double)it.next();
+            for (int i = start; i < size; i++) {
+                sum += in.get(i);
                 outputs.get(0).append(sum);
             }
         }
@@ -1947,40 +2293,43 @@ public class Analysis {
     //This does not work if both have the same size. Pad one input to match the target total size first.
     //The size of the output is the difference of both input sizes.
     public static class crosscorrelationAM extends AnalysisModule implements Serializable {
+        private double[] a, b; //Work arrays for the input values, reused across updates
+        private double[] c; //Work array for the correlation
+        private FFT fft = null;
+
         protected crosscorrelationAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
         protected void update() {
             if (nativeLib) {
-                int sizeA = inputArraySizes.get(0);
-                int sizeB = inputArraySizes.get(1);
+                DoubleView a = inputViews.get(0);
+                DoubleView b = inputViews.get(1);
+                int sizeA = a.size();
+                int sizeB = b.size();
                 int size = 2 * (sizeA + sizeB);
 
                 if (sizeA == 0 || sizeB == 0)
                     return;
 
-                Double[] a = inputArrays.get(0);
-                Double[] b = inputArrays.get(1);
-
                 final float af[] = new float[size];
                 final float bf[] = new float[size];
 
                 if (sizeA > sizeB) {
                     for (int i = 0; i < sizeA; i++) {
-                        af[i] = a[i].floatValue();
+                        af[i] = (float)a.get(i);
                     }
                     for (int i = 0; i < sizeB; i++) {
-                        bf[i] = b[i].floatValue();
+                        bf[i] = (float)b.get(i);
                     }
                 } else {
                     for (int i = 0; i < sizeA; i++) {
-                        bf[i] = a[i].floatValue();
+                        bf[i] = (float)a.get(i);
                     }
                     for (int i = 0; i < sizeB; i++) {
-                        af[i] = b[i].floatValue();
+                        af[i] = (float)b.get(i);
                     }
                 }
 
@@ -1993,19 +2342,20 @@ public class Analysis {
                 }
             } else {
 
-                Double a[], b[];
+                DoubleView in1 = inputViews.get(0);
+                DoubleView in2 = inputViews.get(1);
                 int asize, bsize;
                 //Put the larger input in a and the smaller one in b
-                if (inputArraySizes.get(0) > inputArraySizes.get(1)) {
-                    a = inputArrays.get(0);
-                    asize = inputArraySizes.get(0);
-                    b = inputArrays.get(1);
-                    bsize = inputArraySizes.get(1);
+                if (in1.size() > in2.size()) {
+                    asize = in1.size();
+                    a = in1.toArray(a);
+                    bsize = in2.size();
+                    b = in2.toArray(b);
                 } else {
-                    a = inputArrays.get(1);
-                    asize = inputArraySizes.get(1);
-                    b = inputArrays.get(0);
-                    bsize = inputArraySizes.get(0);
+                    asize = in2.size();
+                    a = in2.toArray(a);
+                    bsize = in1.size();
+                    b = in1.toArray(b);
                 }
 
                 if (asize == 0 || bsize == 0)
@@ -2013,13 +2363,23 @@ public class Analysis {
 
                 //The actual calculation
                 int compRange = asize - bsize;
-                for (int i = 0; i < compRange; i++) {
-                    double sum = 0.;
-                    for (int j = 0; j < bsize; j++) {
-                        sum += a[j+i]*b[j];
+                if (FFT.correlationPrefersFFT((long)compRange * bsize, asize, bsize, compRange)) {
+                    if (fft == null)
+                        fft = new FFT();
+                    if (c == null || c.length < compRange)
+                        c = new double[compRange];
+                    fft.correlate(a, asize, b, bsize, compRange, c);
+                    for (int i = 0; i < compRange; i++)
+                        outputs.get(0).append(c[i] / (double)(compRange)); //Normalize bynumber of values
+                } else {
+                    for (int i = 0; i < compRange; i++) {
+                        double sum = 0.;
+                        for (int j = 0; j < bsize; j++) {
+                            sum += a[j + i] * b[j];
+                        }
+                        sum /= (double) (compRange); //Normalize bynumber of values
+                        outputs.get(0).append(sum);
                     }
-                    sum /= (double)(compRange); //Normalize bynumber of values
-                    outputs.get(0).append(sum);
                 }
             }
         }
@@ -2080,12 +2440,27 @@ public class Analysis {
     //y is the y coordinates of the input data
     //d has to be given as the width of the tri-cubic weighting function and can be set dynamically via an input
     //xi is the x coordinates at which the loess function should be evaluated. Has to be monotonic!
+    //Each position of xi only needs the input values within d, so the positions are split into
+    //chunks, which find the start of their window with a binary search and then move it along with
+    //their positions. For many positions, the chunks run in parallel.
+    //In the approximate mode, the fit is only evaluated on a grid with APPROXIMATION_STEPS points per
+    //d and each output is interpolated at xi with a cubic through the four nearest grid points. This
+    //only applies if xi has more than twice as many values as the grid.
     public static class loessAM extends AnalysisModule implements Serializable {
+        static final int APPROXIMATION_STEPS = 16;
+
         double d;
+        private final boolean approximate;
+        private double[] xa, ya; //Work arrays for the input values, reused across updates
 
         protected loessAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
+            this(experiment, inputs, outputs, false);
+        }
+
+        protected loessAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean approximate) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
+            this.approximate = approximate;
         }
 
         protected double weight(double dx) {
@@ -2096,24 +2471,28 @@ public class Analysis {
             return v*v*v;
         }
 
-        @Override
-        protected void update() {
-            //Get arrays for random access
-            Double x[] = inputArrays.get(0);
-            Double y[] = inputArrays.get(1);
-            if (inputArraySizes.get(2) == 0)
-                return;
-            d = inputArrays.get(2)[0];
-            if (d <= 0.0 || Double.isNaN(d))
-                return;
-            Double xout[] = inputArrays.get(3);
-            int incount = Math.min(inputArraySizes.get(0), inputArraySizes.get(1));
-            int outcount = inputArraySizes.get(3);
+        //First index j at which x[j] is not more than d below xi (or after xi if end is set, the first
+        //index more than d above xi). Positions before (or from) there are not within the window.
+        private int windowBound(double[] x, int incount, double xi, boolean end) {
+            int lo = 0;
+            int hi = incount;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                double dx = x[mid]-xi;
+                if (end ? !(dx > d) : dx < -d) //NaN ends the search early, which only makes the window larger
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
 
-            int minj = 0;
+        //Fit at the positions from..to of xout and store the results at the same indices
+        private void fit(double[] x, double[] y, int incount, DoubleView xout, int from, int to, double[] y0, double[] y1, double[] y2) {
+            int minj = windowBound(x, incount, xout.get(from), false);
 
-            for (int i = 0; i < outcount; i++) {
-                double xi = xout[i];
+            for (int i = from; i < to; i++) {
+                double xi = xout.get(i);
 
                 double w;
                 double sw = 0.;
@@ -2163,25 +2542,109 @@ public class Analysis {
 
                 double det = sw*swxx*swxxxx+2*swx*swxx*swxxx-swxx*swxx*swxx-swx*swx*swxxxx-sw*swxxx*swxxx;
 
-                double yi0 = (a*swy + b*swxy + c*swxxy)/det;
-
-                outputs.get(0).append(yi0); //Append the result to the output buffer
+                y0[i] = (a*swy + b*swxy + c*swxxy)/det;
 
-                if (outputs.size() > 1) {
+                if (y1 != null || y2 != null) {
                     double d = sw*swxxxx-swxx*swxx;
                     double e = swx*swxx-sw*swxxx;
                     double f = sw*swxx-swx*swx;
 
-                    if (outputs.get(1) != null) {
-                        double yi1 = (b * swy + d * swxy + e * swxxy) / det;
-                        outputs.get(1).append(yi1);
+                    if (y1 != null)
+                        y1[i] = (b * swy + d * swxy + e * swxxy) / det;
+                    if (y2 != null)
+                        y2[i] = (c * swy + e * swxy + f * swxxy) / det;
+                }
+            }
+        }
+
+        //Cubic interpolation of the grid values g at t (in units of the grid steps) through the four
+        //nearest grid points
+        private static double interpolate(double[] g, double t) {
+            int k = Math.max(0, Math.min((int)Math.floor(t) - 1, g.length - 4));
+            double u = t - k - 1; //Relative to the second grid point
+            return -u*(u-1)*(u-2)/6 * g[k] + (u+1)*(u-1)*(u-2)/2 * g[k+1] - (u+1)*u*(u-2)/2 * g[k+2] + (u+1)*u*(u-1)/6 * g[k+3];
+        }
+
+        //Fit at all positions of xout, split into chunks
+        private void fitAll(final double[] x, final double[] y, final int incount, final DoubleView xout, int count, final double[] y0, final double[] y1, final double[] y2) {
+            if (count == 0)
+                return;
+            //Estimate the work from the window in the middle
+            double xm = xout.get(count / 2);
+            long window = Math.max(windowBound(x, incount, xm, true) - windowBound(x, incount, xm, false), 1);
+            ParallelKernels.forEachItem(0, count, count * window, parallelThreshold(), new ParallelKernels.Kernel() {
+                @Override
+                public void run(int s, int e) {
+                    fit(x, y, incount, xout, s, e, y0, y1, y2);
+                }
+            });
+        }
+
+        @Override
+        protected void update() {
+            if (inputViews.get(2).size() == 0)
+                return;
+            d = inputViews.get(2).get(0);
+            if (d <= 0.0 || Double.isNaN(d))
+                return;
+            DoubleView xout = inputViews.get(3);
+            int incount = Math.min(inputViews.get(0).size(), inputViews.get(1).size());
+            int outcount = xout.size();
+
+            //The inner loop reads every value many times, so we want plain arrays here
+            xa = inputViews.get(0).toArray(xa);
+            ya = inputViews.get(1).toArray(ya);
+
+            //Results for the three outputs (value, first and second derivative)
+            double[] y0 = new double[outcount];
+            double[] y1 = outputs.size() > 1 && outputs.get(1) != null ? new double[outcount] : null;
+            double[] y2 = outputs.size() > 2 && outputs.get(2) != null ? new double[outcount] : null;
+
+            //Grid for the approximate mode
+            final double first = outcount > 0 ? xout.get(0) : 0.;
+            final double step = d / APPROXIMATION_STEPS;
+            long gridSize = 0;
+            if (approximate && outcount > 1) {
+                double range = xout.get(outcount-1) - first;
+                if (range > 0 && !Double.isInfinite(range) && !Double.isNaN(first))
+                    gridSize = (long)Math.ceil(range / step) + 1;
+            }
+
+            if (gridSize >= 4 && 2 * gridSize < outcount) {
+                final int n = (int)gridSize;
+                DoubleView grid = new DoubleView() {
+                    @Override
+                    public int size() {
+                        return n;
                     }
-                    if (outputs.size() > 2 && outputs.get(2) != null) {
-                        double yi2 = (c * swy + e * swxy + f * swxxy) / det;
-                        outputs.get(2).append(yi2);
+
+                    @Override
+                    public double get(int index) {
+                        return first + index * step;
                     }
+                };
+                double[] g0 = new double[n];
+                double[] g1 = y1 != null ? new double[n] : null;
+                double[] g2 = y2 != null ? new double[n] : null;
+                fitAll(xa, ya, incount, grid, n, g0, g1, g2);
+
+                for (int i = 0; i < outcount; i++) {
+                    double t = (xout.get(i) - first) / step;
+                    y0[i] = interpolate(g0, t);
+                    if (y1 != null)
+                        y1[i] = interpolate(g1, t);
+                    if (y2 != null)
+                        y2[i] = interpolate(g2, t);
                 }
-            }
+            } else
+                fitAll(xa, ya, incount, xout, outcount, y0, y1, y2);
+
+            //Append the results to the output buffers
+            outputs.get(0).append(y0);
+            if (y1 != null)
+                outputs.get(1).append(y1);
+            if (y2 != null)
+                outputs.get(2).append(y2);
         }
     }
 
@@ -2200,16 +2663,16 @@ public class Analysis {
         protected interpolateAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, InterpolationMethod method) {
             super(experiment, inputs, outputs);
             this.method = method;
-            useArray = true;
+            useView = true;
         }
 
         @Override
         protected void update() {
-            Double x[] = inputArrays.get(0);
-            Double y[] = inputArrays.get(1);
-            Double xout[] = inputArrays.get(2);
-            int incount = Math.min(inputArraySizes.get(0), inputArraySizes.get(1));
-            int outcount = inputArraySizes.get(2);
+            DoubleView x = inputViews.get(0);
+            DoubleView y = inputViews.get(1);
+            DoubleView xout = inputViews.get(2);
+            int incount = Math.min(x.size(), y.size());
+            int outcount = xout.size();
 
             int j = 0;
             for (int i = 0; i < outcount; i++) {
@@ -2217,38 +2680,38 @@ public class Analysis {
                     outputs.get(0).append(Double.NaN);
                     continue;
                 } else if (incount == 1) {
-                    outputs.get(0).append(y[0]);
+                    outputs.get(0).append(y.get(0));
                     continue;
                 }
-                double xi = xout[i];
+                double xi = xout.get(i);
 
-                while (j < incount && x[j] < xi)
+                while (j < incount && x.get(j) < xi)
                     j++;
 
                 if (j == 0) {
-                    outputs.get(0).append(y[j]);
+                    outputs.get(0).append(y.get(j));
                     continue;
                 } else if (j == incount) {
-                    outputs.get(0).append(y[incount-1]);
+                    outputs.get(0).append(y.get(incount-1));
                     continue;
-                } else if (x[j] == xi) {
-                    outputs.get(0).append(y[j]);
+                } else if (x.get(j) == xi) {
+                    outputs.get(0).append(y.get(j));
                     continue;
                 }
 
                 double yi;
                 switch (method) {
                     case previous:
-                        yi = y[j-1];
+                        yi = y.get(j-1);
                         break;
                     case next:
-                        yi = y[j];
+                        yi = y.get(j);
                         break;
                     case nearest:
-                        yi = (xi - x[j-1] < x[j] - xi) ? y[j-1] : y[j];
+                        yi = (xi - x.get(j-1) < x.get(j) - xi) ? y.get(j-1) : y.get(j);
                         break;
                     case linear:
-                        yi = y[j-1] + (y[j]-y[j-1])*(xi-x[j-1])/(x[j]-x[j-1]);
+                        yi = y.get(j-1) + (y.get(j)-y.get(j-1))*(xi-x.get(j-1))/(x.get(j)-x.get(j-1));
                         break;
                     default:
                         yi = Double.NaN;
@@ -2311,11 +2774,12 @@ public class Analysis {
     // If tha value of any input falls outside min and max, the data at this index if discarded for all inputs
     //You need exactly as many outputs as there are inputs.
     public static class rangefilterAM extends AnalysisModule implements Serializable {
+        private DataOutput.Builder[] results = new DataOutput.Builder[0]; //Collects the values that pass for each output
 
         //Constructor also takes arrays of min and max values
         protected rangefilterAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
             super(experiment, inputs, outputs);
-            useArray = true;
+            useView = true;
         }
 
         @Override
@@ -2323,30 +2787,37 @@ public class Analysis {
             double[] min; //Double-valued min and max. Filled from String value / dataBuffer
             double[] max;
 
-            int n = (inputArrays.size()-1)/3+1;
+            int n = (inputViews.size()-1)/3+1;
             min = new double[n];
             max = new double[n];
-            inputArrays.setSize(n * 3);
+            inputViews.setSize(n * 3);
 
             for(int i = 0; i < n; i++) {
-                if (inputArrays.get(3*i+1) == null || inputArraySizes.get(3*i+1) == 0)
+                if (inputViews.get(3*i+1) == null || inputViews.get(3*i+1).size() == 0)
                     min[i] = Double.NEGATIVE_INFINITY; //Not set by user, set to -inf so it has no influence
                 else {
-                    min[i] = inputArrays.get(3*i+1)[inputArraySizes.get(3*i+1)-1]; //Get value from string: numeric or buffer
+                    min[i] = inputViews.get(3*i+1).last(); //Get value from string: numeric or buffer
                 }
-                if (inputArrays.get(3*i+2) == null || inputArraySizes.get(3*i+2) == 0)
+                if (inputViews.get(3*i+2) == null || inputViews.get(3*i+2).size() == 0)
                     max[i] = Double.POSITIVE_INFINITY; //Not set by user, set to +inf so it has no influence
                 else {
-                    max[i] = inputArrays.get(3*i+2)[inputArraySizes.get(3*i+2)-1]; //Get value from string: numeric or buffer
+                    max[i] = inputViews.get(3*i+2).last(); //Get value from string: numeric or buffer
                 }
             }
 
-            //Get iterators of all inputs (numeric string not allowed here as it makes no sense to filter static input)
-            Double[][] ins = new Double[n][];
+            //Get views of all inputs (numeric string not allowed here as it makes no sense to filter static input)
+            DoubleView[] ins = new DoubleView[n];
             int[] sizes = new int[n];
             for (int i = 0; i < n; i++) {
-                ins[i] = inputArrays.get(3*i);
-                sizes[i] = inputArraySizes.get(3*i);
+                ins[i] = inputViews.get(3*i);
+                sizes[i] = ins[i] != null ? ins[i].size() : 0;
+            }
+
+            if (results.length < n) {
+                results = Arrays.copyOf(results, n);
+                for (int i = 0; i < n; i++)
+                    if (results[i] == null)
+                        results[i] = new DataOutput.Builder();
             }
 
             double []data = new double[n]; //Will hold values of all inputs at same index
@@ -2364,17 +2835,17 @@ public class Analysis {
                     boolean filter = false; //Will be set to true if any input falls outside its min/max
                     for (int i = 0; i < n; i++) { //For each input...
                         if (index < sizes[i]) { //This input has a value left. Get it!
-                            data[i] = ins[i][index];
+                            data[i] = ins[i].get(index);
                             if (data[i] < min[i] || data[i] > max[i]) { //Is this value outside its min/max?
                                 filter = true; //Yepp, filter this index
                             }
                         } else
                             data[i] = Double.NaN; //No value left in input. Set this value to NaN and do not filter it
                     }
-                    if (!filter) { //Filter not triggered? Append the values of each input to the corresponding outputs.
+                    if (!filter) { //Filter not triggered? Collect the values of each input for the corresponding outputs.
                         for (int i = 0; i < n; i++) {
                             if (i < outputs.size() && outputs.get(i) != null) {
-                                outputs.get(i).append(data[i]);
+                                results[i].add(data[i]);
                             }
                         }
                     }
@@ -2382,6 +2853,12 @@ public class Analysis {
                 }
                 index++;
             }
+
+            for (int i = 0; i < n; i++) {
+                if (i < outputs.size() && outputs.get(i) != null)
+                    outputs.get(i).append(results[i]);
+                results[i].clear();
+            }
         }
     }
 
@@ -2495,45 +2972,72 @@ public class Analysis {
     //Sort the input buffers such that the content of the first supplied buffer is ascending
     //Setting descending to true reverses the output
     //The output length will correspond to the shortest of the input buffers
+    //Parameters:
+    //mode - can be "sort", "top" or "median". "sort" sorts everything. "top" only returns the first
+    //       [count] values of the sorted order. "median" returns the median of the first input
+    //       (NaN values are ignored) to the first output and the values of the other inputs at the
+    //       lower median (for an even number of values) to the other outputs.
     public static class sortAM extends AnalysisModule implements Serializable {
+        public enum SortMode {
+            sort, top, median;
+        }
+
         boolean descending = false;
+        SortMode mode = SortMode.sort;
+        int count = 0;
+
+        private final IndexSort sorter = new IndexSort();
 
         protected sortAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean descending) {
+            this(experiment, inputs, outputs, descending, SortMode.sort, 0);
+        }
+
+        protected sortAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean descending, SortMode mode, int count) {
             super(experiment, inputs, outputs);
             this.descending = descending;
-            useArray = true;
+            this.mode = mode;
+            this.count = count;
+            useView = true;
         }
 
         @Override
         protected void update() {
-            Double[] mainArray = inputArrays.get(0);
-            int n = inputArraySizes.get(0);
-            for (int i = 1; i < inputArraySizes.size(); i++)
-                if (inputArraySizes.get(i) < n)
-                    n = inputArraySizes.get(i);
-
-            Integer[] indexArray = new Integer[n];
-            for (int i = 0; i < n; i++)
-                indexArray[i] = i;
-
-            class IndexArrayLookupComparator implements Comparator<Integer> {
-                @Override
-                public int compare(Integer i1, Integer i2) {
-                    if (descending)
-                        return mainArray[i2].compareTo(mainArray[i1]);
-                    else
-                        return mainArray[i1].compareTo(mainArray[i2]);
+            int n = inputViews.get(0).size();
+            for (int i = 1; i < inputViews.size(); i++) {
+                int size = inputViews.get(i) != null ? inputViews.get(i).size() : 0;
+                if (size < n)
+                    n = size;
+            }
+
+            if (mode == SortMode.median) {
+                sorter.setKeys(inputViews.get(0), n, false);
+                double[] median = new double[1];
+                int lower = sorter.median(inputViews.get(0), median);
+                if (lower < 0)
+                    return;
+                int index = sorter.get(lower);
+                for (int out = 0; out < outputs.size() && out < inputViews.size(); out++) {
+                    if (outputs.get(out) != null)
+                        outputs.get(out).append(out == 0 ? median[0] : inputViews.get(out).get(index));
                 }
+                return;
             }
 
-            Arrays.sort(indexArray, new IndexArrayLookupComparator());
+            sorter.setKeys(inputViews.get(0), n, descending);
+            if (mode == SortMode.top) {
+                n = Math.max(0, Math.min(count, n));
+                sorter.select(n, true);
+            } else
+                sorter.sort();
 
-            for (int i = 0; i < n; i++) {
-                for (int out = 0; out < outputs.size() && out < inputArrays.size(); out++) {
-                    Double[] inputArray = inputArrays.get(out);
-                    int index = indexArray[i];
-                    outputs.get(out).append(index < inputArray.length ? inputArray[index] : Double.NaN);
-                }
+            double[] sorted = new double[n];
+            for (int out = 0; out < outputs.size() && out < inputViews.size(); out++) {
+                if (outputs.get(out) == null)
+                    continue;
+                DoubleView inputView = inputViews.get(out);
+                for (int i = 0; i < n; i++)
+                    sorted[i] = inputView.get(sorter.get(i));
+                outputs.get(out).append(sorted);
             }
 
         }
@@ -2553,14 +3057,84 @@ public class Analysis {
 
         TriggerMode triggerMode = TriggerMode.above;
 
+        //Streaming mode: The module keeps index, skip and last itself (see EventDetector.java) and
+        //only looks at each sample once. Events are reported with sub-sample precision.
+        final EventDetector detector;
+        private final DataOutput.Builder events = new DataOutput.Builder();
+
         protected eventstreamAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, TriggerMode triggerMode) {
+            this(experiment, inputs, outputs, triggerMode, false);
+        }
+
+        protected eventstreamAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, TriggerMode triggerMode, boolean streaming) {
             super(experiment, inputs, outputs);
             this.triggerMode = triggerMode;
-            useArray = true;
+            if (streaming) {
+                detector = new EventDetector(triggerMode, inputs.get(0) != null ? inputs.get(0).buffer : null);
+                //With constant parameters, the detector can start before the first update (when it is fed directly)
+                boolean constantThreshold = inputs.size() > 1 && inputs.get(1) != null && !inputs.get(1).isBuffer;
+                boolean constantDistance = inputs.size() < 3 || inputs.get(2) == null || !inputs.get(2).isBuffer;
+                if (constantThreshold && constantDistance)
+                    detector.setParameters(inputs.get(1).getValue(), inputs.size() > 2 && inputs.get(2) != null ? (int)inputs.get(2).getValue() : 0);
+                useView = true;
+                this.streaming = true;
+            } else {
+                detector = null;
+                useArray = true;
+            }
+        }
+
+        @Override
+        public void notifyUpdate(boolean clear, boolean reset) {
+            super.notifyUpdate(clear, reset);
+            if (reset && detector != null)
+                detector.reset();
+        }
+
+        private double lastValue(int i) {
+            if (inputViews.size() <= i || inputViews.get(i) == null || inputViews.get(i).size() == 0)
+                return Double.NaN;
+            return inputViews.get(i).last();
+        }
+
+        private void updateStreaming() {
+            double threshold = lastValue(1);
+            double distance = lastValue(2);
+            detector.setParameters(Double.isNaN(threshold) ? 0. : threshold, Double.isNaN(distance) ? 0 : (int)distance);
+
+            if (!detector.isFedDirectly()) {
+                //Only look at the samples that are new since the last update. Inputs that are
+                //cleared after each update only contain new samples anyway.
+                DoubleView data = inputViews.get(0);
+                int start = 0;
+                if (continueRun)
+                    start = lastInputSizes[0];
+                else if (!isConsumedInput(0) || !executed)
+                    detector.reset();
+                if (data != null)
+                    detector.process(data, start, data.size());
+            }
+
+            detector.collectEvents(events);
+            if (outputs.size() > 0 && outputs.get(0) != null)
+                outputs.get(0).append(events);
+            events.clear();
+
+            if (outputs.size() > 1 && outputs.get(1) != null)
+                outputs.get(1).append(detector.getIndex());
+            if (outputs.size() > 2 && outputs.get(2) != null)
+                outputs.get(2).append(detector.getSkip());
+            if (outputs.size() > 3 && outputs.get(3) != null)
+                outputs.get(3).append(detector.getLast());
         }
 
         @Override
         protected void update() {
+            if (detector != null) {
+                updateStreaming();
+                return;
+            }
+
             double threshold = 0.;
             int distance = 0;
             int index = 0;
@@ -2648,31 +3222,115 @@ public class Analysis {
     //With dropIncomplete false, it will output n values
     public static class movingaverageAM extends AnalysisModule implements Serializable {
         boolean dropIncomplete = false;
+        int lastWidth = -1; //Width used in the previous update
+        RollingStatistics stats = null; //Running sum, continued across incremental updates
 
         protected movingaverageAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean dropIncomplete) {
             super(experiment, inputs, outputs);
             this.dropIncomplete = dropIncomplete;
-            useArray = true;
+            useView = true;
+            incremental = true;
+        }
+
+        private int getWidth() {
+            int width = 10;
+            if (inputViews.size() > 1 && inputViews.get(1) != null && inputViews.get(1).size() > 0)
+                width = (int)inputViews.get(1).last();
+            return Math.max(width, 0);
+        }
+
+        @Override
+        protected boolean canUpdateIncrementally() {
+            return getWidth() == lastWidth;
         }
 
         @Override
         protected void update() {
+            int width = getWidth();
+            lastWidth = width;
+
+            DoubleView data = inputViews.get(0);
+
+            //The average at i includes the values from i-width to i
+            int start = 0;
+            if (incrementalRun && stats != null && stats.getCount() == lastInputSizes[0])
+                start = lastInputSizes[0];
+            else
+                stats = new RollingStatistics(width + 1, false, false);
+
+            for (int i = start; i < data.size(); i++) {
+                stats.add(data.get(i));
+                if (dropIncomplete && i < width)
+                    continue;
+                outputs.get(0).append(stats.getNaNCount() > 0 ? Double.NaN : stats.mean());
+            }
+        }
+    }
+
+    //Rolling statistics
+    //Statistics over a sliding window of the last [width] values (default 10) of the input. Each
+    //output is optional: mean, standard deviation, variance, min, max, median and rms. NaN values in
+    //the input are ignored. The state of the window is kept, so if the input only gets new values,
+    //only these are processed.
+    public static class rollingAM extends AnalysisModule implements Serializable {
+        boolean dropIncomplete = false;
+        int lastWidth = -1;
+        RollingStatistics stats = null;
+
+        protected rollingAM(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs, boolean dropIncomplete) {
+            super(experiment, inputs, outputs);
+            this.dropIncomplete = dropIncomplete;
+            useView = true;
+            incremental = true;
+        }
+
+        private int getWidth() {
             int width = 10;
+            if (inputViews.size() > 1 && inputViews.get(1) != null && inputViews.get(1).size() > 0)
+                width = (int)inputViews.get(1).last();
+            return Math.max(width, 1);
+        }
 
-            Double[] data = inputArrays.get(0);
-            if (inputArrays.size() > 1 && inputArrays.get(1) != null && inputArraySizes.get(1) > 0)
-                width = inputArrays.get(1)[inputArraySizes.get(1)-1].intValue();
+        private boolean hasOutput(int i) {
+            return outputs.size() > i && outputs.get(i) != null;
+        }
 
-            int start = dropIncomplete ? width : 0;
+        @Override
+        protected boolean canUpdateIncrementally() {
+            return getWidth() == lastWidth;
+        }
 
-            for (int i = start; i < inputArraySizes.get(0); i++) {
-                int substart = Math.max(i-width, 0);
-                double sum = 0.0;
-                for (int j = substart; j <= i; j++) {
-                    sum += data[j];
-                }
-                sum /= (double)(i - substart + 1);
-                outputs.get(0).append(sum);
+        @Override
+        protected void update() {
+            int width = getWidth();
+            lastWidth = width;
+
+            DoubleView data = inputViews.get(0);
+
+            int start = 0;
+            if (incrementalRun && stats != null && stats.getCount() == lastInputSizes[0])
+                start = lastInputSizes[0];
+            else
+                stats = new RollingStatistics(width, hasOutput(3) || hasOutput(4), hasOutput(5));
+
+            for (int i = start; i < data.size(); i++) {
+                stats.add(data.get(i));
+                if (dropIncomplete && i < width - 1)
+                    continue;
+                if (hasOutput(0))
+                    outputs.get(0).append(stats.mean());
+                if (hasOutput(1))
+                    outputs.get(1).append(stats.std());
+                if (hasOutput(2))
+                    outputs.get(2).append(stats.variance());
+                if (hasOutput(3))
+                    outputs.get(3).append(stats.min());
+                if (hasOutput(4))
+                    outputs.get(4).append(stats.max());
+                if (hasOutput(5))
+                    outputs.get(5).append(stats.median());
+                if (hasOutput(6))
+                    outputs.get(6).append(stats.rms());
             }
         }
     }
@@ -0,0 +1,217 @@
+package de.rwth_aachen.phyphox;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Vector;
+
+//Profiling data of the analysis
+//Every analysis module records how long its updates take, split into waiting for the buffer locks,
+//reading (copying) the inputs and the actual calculation, as well as the sizes of its inputs and
+//outputs. Additionally, we keep track of the duration and rate of complete analysis cycles.
+//This only costs a few calls of System.nanoTime() per module, so it is always recorded. It can be
+//shown as an overlay in the experiment (menu) and is available as JSON on /metrics of the remote
+//server, so it is possible to find the module that slows down a large experiment.
+
+public class AnalysisMetrics {
+    //Upper bounds of the buckets of the histogram of update durations in microseconds. The last bucket takes everything above.
+    static final long[] HISTOGRAM_BOUNDS = {10, 30, 100, 300, 1000, 3000, 10000, 30000, 100000};
+
+    private static final double RATE_SMOOTHING = 0.1; //Weight of a new cycle in the moving average of the cycle rate
+
+    //Metrics of a single analysis module
+    public static class ModuleMetrics implements Serializable {
+        long updates = 0;
+        long totalTime = 0; //All times in nanoseconds
+        long maxTime = 0;
+        long lastTime = 0;
+        long lockWaitTime = 0;
+        long copyTime = 0;
+        long computeTime = 0;
+        int inputSize = 0; //Total number of input values at the last update
+        int outputSize = 0; //Total number of output values after the last update
+        final long[] histogram = new long[HISTOGRAM_BOUNDS.length + 1];
+
+        synchronized void record(long lockWait, long copy, long compute, int inputSize, int outputSize) {
+            long time = lockWait + copy + compute;
+            updates++;
+            totalTime += time;
+            lastTime = time;
+            if (time > maxTime)
+                maxTime = time;
+            lockWaitTime += lockWait;
+            copyTime += copy;
+            computeTime += compute;
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+
+            long us = time / 1000;
+            int bucket = 0;
+            while (bucket < HISTOGRAM_BOUNDS.length && us > HISTOGRAM_BOUNDS[bucket])
+                bucket++;
+            histogram[bucket]++;
+        }
+
+        synchronized void reset() {
+            updates = 0;
+            totalTime = 0;
+            maxTime = 0;
+            lastTime = 0;
+            lockWaitTime = 0;
+            copyTime = 0;
+            computeTime = 0;
+            inputSize = 0;
+            outputSize = 0;
+            for (int i = 0; i < histogram.length; i++)
+                histogram[i] = 0;
+        }
+
+        synchronized double getAverageTime() {
+            return updates > 0 ? (double)totalTime / updates : 0.0;
+        }
+
+        synchronized JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("updates", updates);
+            json.put("totalMs", totalTime * 1e-6);
+            json.put("averageMs", updates > 0 ? totalTime * 1e-6 / updates : 0.0);
+            json.put("maxMs", maxTime * 1e-6);
+            json.put("lastMs", lastTime * 1e-6);
+            json.put("lockWaitMs", lockWaitTime * 1e-6);
+            json.put("copyMs", copyTime * 1e-6);
+            json.put("computeMs", computeTime * 1e-6);
+            json.put("inputSize", inputSize);
+            json.put("outputSize", outputSize);
+            JSONArray hist = new JSONArray();
+            for (long count : histogram)
+                hist.put(count);
+            json.put("histogram", hist);
+            return json;
+        }
+    }
+
+    private long cycles = 0;
+    private long cycleTime = 0; //Total time of all cycles in nanoseconds
+    private long maxCycleTime = 0;
+    private long lastCycleTime = 0;
+    private long lastCycleStart = 0;
+    private double cycleRate = 0.0; //Moving average of cycles per second
+
+    synchronized void recordCycle(long start, long end) {
+        long time = end - start;
+        cycles++;
+        cycleTime += time;
+        lastCycleTime = time;
+        if (time > maxCycleTime)
+            maxCycleTime = time;
+        if (lastCycleStart != 0 && start > lastCycleStart) {
+            double rate = 1e9 / (start - lastCycleStart);
+            cycleRate = cycleRate == 0.0 ? rate : cycleRate + RATE_SMOOTHING * (rate - cycleRate);
+        }
+        lastCycleStart = start;
+    }
+
+    //Reset all metrics, i.e. when the data is cleared
+    void reset(Vector<Analysis.AnalysisModule> modules) {
+        synchronized (this) {
+            cycles = 0;
+            cycleTime = 0;
+            maxCycleTime = 0;
+            lastCycleTime = 0;
+            lastCycleStart = 0;
+            cycleRate = 0.0;
+        }
+        for (Analysis.AnalysisModule module : modules)
+            module.metrics.reset();
+    }
+
+    //Name to identify a module: Its index, its type and its first output
+    static String getModuleName(int index, Analysis.AnalysisModule module) {
+        String name = index + ": " + module.getClass().getSimpleName();
+        for (DataOutput output : module.outputs) {
+            if (output != null)
+                return name + " > " + output.buffer.name;
+        }
+        return name;
+    }
+
+    public JSONObject toJSON(Vector<Analysis.AnalysisModule> modules) throws JSONException {
+        JSONObject json = new JSONObject();
+
+        JSONObject cycle = new JSONObject();
+        synchronized (this) {
+            cycle.put("cycles", cycles);
+            cycle.put("rate", cycleRate);
+            cycle.put("averageMs", cycles > 0 ? cycleTime * 1e-6 / cycles : 0.0);
+            cycle.put("maxMs", maxCycleTime * 1e-6);
+            cycle.put("lastMs", lastCycleTime * 1e-6);
+        }
+        json.put("cycle", cycle);
+
+        JSONArray bounds = new JSONArray();
+        for (long bound : HISTOGRAM_BOUNDS)
+            bounds.put(bound);
+        json.put("histogramBoundsUs", bounds);
+
+        JSONArray moduleArray = new JSONArray();
+        for (int i = 0; i < modules.size(); i++) {
+            Analysis.AnalysisModule module = modules.get(i);
+            JSONObject moduleJson = module.metrics.toJSON();
+            moduleJson.put("index", i);
+            moduleJson.put("type", module.getClass().getSimpleName());
+            JSONArray outputs = new JSONArray();
+            for (DataOutput output : module.outputs) {
+                if (output != null)
+                    outputs.put(output.buffer.name);
+            }
+            moduleJson.put("outputs", outputs);
+            moduleArray.put(moduleJson);
+        }
+        json.put("modules", moduleArray);
+
+        return json;
+    }
+
+    //Short text for the overlay: Cycle rate and the modules with the highest average update time
+    public String getSummary(Vector<Analysis.AnalysisModule> modules, int maxModules) {
+        StringBuilder sb = new StringBuilder();
+        synchronized (this) {
+            sb.append(String.format(Locale.US, "%.1f cycles/s, %.2f ms/cycle (max %.2f ms)", cycleRate, cycles > 0 ? cycleTime * 1e-6 / cycles : 0.0, maxCycleTime * 1e-6));
+        }
+
+        List<Integer> order = new ArrayList<>();
+        final double[] averages = new double[modules.size()];
+        for (int i = 0; i < modules.size(); i++) {
+            averages[i] = modules.get(i).metrics.getAverageTime();
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(averages[b], averages[a]);
+            }
+        });
+
+        for (int j = 0; j < order.size() && j < maxModules; j++) {
+            int i = order.get(j);
+            ModuleMetrics m = modules.get(i).metrics;
+            synchronized (m) {
+                sb.append("\n");
+                sb.append(String.format(Locale.US, "%7.2f ms (lock %.2f, copy %.2f) in %d out %d  %s",
+                        averages[i] * 1e-6,
+                        m.updates > 0 ? m.lockWaitTime * 1e-6 / m.updates : 0.0,
+                        m.updates > 0 ? m.copyTime * 1e-6 / m.updates : 0.0,
+                        m.inputSize, m.outputSize,
+                        getModuleName(i, modules.get(i))));
+            }
+        }
+        return sb.toString();
+    }
+}
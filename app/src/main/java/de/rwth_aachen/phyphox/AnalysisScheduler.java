@@ -0,0 +1,185 @@
+package de.rwth_aachen.phyphox;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+//Runs the analysis modules of an experiment
+//When the experiment has been loaded, we build a dependency graph from the buffers each module
+//reads and writes: A module has to wait for an earlier module (in the order of the experiment file)
+//if one of them writes to a buffer that the other one uses. Everything else is independent and
+//can run concurrently, so experiments with several separate chains (like an FFT for each axis of
+//the accelerometer) can use more than one core.
+//If the graph is a single chain or there is only one core, the modules are simply executed one
+//after another on the calling thread as before. Otherwise the number of modules that are running
+//is reported to ParallelKernels, so modules that split their own work only use their share of the cores.
+
+class AnalysisScheduler {
+    private static final long KEEP_ALIVE_SECONDS = 10; //Idle workers are stopped after this time, so a paused experiment does not keep any threads
+
+    private final Vector<Analysis.AnalysisModule> modules;
+    private final int[][] dependents; //dependents[i] lists the modules that have to wait for module i
+    private final int[] dependencyCount; //Number of modules each module has to wait for
+    private final boolean parallel;
+    private ExecutorService pool = null;
+
+    AnalysisScheduler(Vector<Analysis.AnalysisModule> modules) {
+        this.modules = modules;
+        int n = modules.size();
+
+        List<Set<DataBuffer>> reads = new ArrayList<>(n);
+        List<Set<DataBuffer>> writes = new ArrayList<>(n);
+        for (Analysis.AnalysisModule module : modules) {
+            Set<DataBuffer> r = new HashSet<>();
+            Set<DataBuffer> w = new HashSet<>();
+            module.collectBuffers(r, w);
+            reads.add(r);
+            writes.add(w);
+        }
+
+        List<List<Integer>> edges = new ArrayList<>(n);
+        dependencyCount = new int[n];
+        int[] depth = new int[n]; //Length of the longest chain of dependencies ending at each module
+        int maxDepth = 0;
+        for (int i = 0; i < n; i++) {
+            edges.add(new ArrayList<Integer>());
+            for (int j = 0; j < i; j++) {
+                if (conflict(writes.get(j), reads.get(i)) || conflict(writes.get(j), writes.get(i)) || conflict(reads.get(j), writes.get(i))) {
+                    edges.get(j).add(i);
+                    dependencyCount[i]++;
+                    depth[i] = Math.max(depth[i], depth[j] + 1);
+                }
+            }
+            maxDepth = Math.max(maxDepth, depth[i]);
+        }
+
+        dependents = new int[n][];
+        for (int i = 0; i < n; i++) {
+            List<Integer> e = edges.get(i);
+            dependents[i] = new int[e.size()];
+            for (int j = 0; j < e.size(); j++)
+                dependents[i][j] = e.get(j);
+        }
+
+        //A graph with depth n - 1 is a single chain, so there is nothing to gain
+        parallel = Runtime.getRuntime().availableProcessors() > 1 && n > 1 && maxDepth < n - 1;
+    }
+
+    private static boolean conflict(Set<DataBuffer> a, Set<DataBuffer> b) {
+        for (DataBuffer buffer : a) {
+            if (b.contains(buffer))
+                return true;
+        }
+        return false;
+    }
+
+    private synchronized ExecutorService getPool() {
+        if (pool == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "analysis-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            pool = executor;
+        }
+        return pool;
+    }
+
+    //Execute all modules for the given cycle and wait until all of them are done
+    void run(int cycle) {
+        if (!parallel) {
+            for (Analysis.AnalysisModule module : modules)
+                update(module, cycle);
+            return;
+        }
+
+        Run run = new Run(cycle);
+        for (int i = 0; i < dependencyCount.length; i++) {
+            if (dependencyCount[i] == 0)
+                run.submit(i);
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                run.done.await();
+                break;
+            } catch (InterruptedException e) {
+                //The next cycle must not start while modules of this one are still running
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private static void update(Analysis.AnalysisModule module, int cycle) {
+        try {
+            module.updateIfNotStatic(cycle);
+        } catch (Exception e) {
+            Log.e("processAnalysis", "Unhandled exception in analysis module " + module.toString() + ".", e);
+        }
+    }
+
+    //State of a single analysis cycle
+    private class Run {
+        final int cycle;
+        final AtomicIntegerArray remaining = new AtomicIntegerArray(dependencyCount);
+        final CountDownLatch done = new CountDownLatch(dependencyCount.length);
+
+        Run(int cycle) {
+            this.cycle = cycle;
+        }
+
+        void submit(final int i) {
+            getPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    execute(i);
+                }
+            });
+        }
+
+        //Run module i and then continue with the modules that have been waiting for it. The first
+        //one that becomes ready is executed on the same thread, the others are handed to the pool.
+        void execute(int i) {
+            while (i >= 0) {
+                ParallelKernels.moduleStarted();
+                try {
+                    update(modules.get(i), cycle);
+                } finally {
+                    ParallelKernels.moduleFinished();
+                    int next = -1;
+                    for (int d : dependents[i]) {
+                        if (remaining.decrementAndGet(d) == 0) {
+                            if (next < 0)
+                                next = d;
+                            else
+                                submit(d);
+                        }
+                    }
+                    done.countDown();
+                    i = next;
+                }
+            }
+        }
+    }
+}
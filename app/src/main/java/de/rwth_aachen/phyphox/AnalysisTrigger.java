@@ -0,0 +1,58 @@
+package de.rwth_aachen.phyphox;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+//Wakes up the analysis thread when there is something to do
+//Instead of checking every 10 ms if an analysis cycle is due, the analysis thread parks until it is
+//signaled (new data in a buffer it is waiting for, user input, end of the measurement) or until a
+//timeout has elapsed (period of analysisSleep or polling the microphone).
+//Signaling is cheap if the analysis thread has already been signaled, so this can be called for
+//every single value that is appended to a buffer.
+
+class AnalysisTrigger implements BufferNotification {
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    private volatile Thread waiter = null;
+
+    void signal() {
+        if (!pending.getAndSet(true)) {
+            Thread t = waiter;
+            if (t != null)
+                LockSupport.unpark(t);
+        }
+    }
+
+    //Called by the buffers this trigger has been registered to
+    @Override
+    public void notifyUpdate(boolean clear, boolean reset) {
+        signal();
+    }
+
+    //Wait until signal() has been called (returns true) or until the timeout has elapsed (returns
+    //false). A negative timeout waits for a signal without a time limit. Only one thread may wait
+    //at a time.
+    boolean await(long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        waiter = Thread.currentThread();
+        try {
+            while (true) {
+                if (pending.getAndSet(false))
+                    return true;
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                if (timeoutNanos < 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        return false;
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.rwth_aachen.phyphox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Lock on a set of buffers
+//Instead of locking all data of an experiment, sensors, analysis modules etc. only lock the buffers
+//they actually use, so a slow analysis module does not block a sensor that writes to other buffers.
+//To avoid deadlocks, the locks of the buffers are always acquired in the same global order.
+//Operations that need all data of the experiment (exporting, saving the state, clearing the
+//experiment etc.) simply use a BufferLock on all buffers.
+
+class BufferLock implements Lock {
+    private final ReentrantLock[] locks; //Sorted by DataBuffer.lockOrder
+
+    BufferLock(Collection<DataBuffer> buffers) {
+        List<DataBuffer> sorted = new ArrayList<>();
+        for (DataBuffer buffer : buffers) {
+            if (buffer != null && !sorted.contains(buffer))
+                sorted.add(buffer);
+        }
+        Collections.sort(sorted, new Comparator<DataBuffer>() {
+            @Override
+            public int compare(DataBuffer a, DataBuffer b) {
+                return Integer.compare(a.lockOrder, b.lockOrder);
+            }
+        });
+        locks = new ReentrantLock[sorted.size()];
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = sorted.get(i).lock;
+    }
+
+    @Override
+    public void lock() {
+        for (ReentrantLock lock : locks)
+            lock.lock();
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        int i = 0;
+        try {
+            for (; i < locks.length; i++)
+                locks[i].lockInterruptibly();
+        } catch (InterruptedException e) {
+            release(i);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean tryLock() {
+        for (int i = 0; i < locks.length; i++) {
+            if (!locks[i].tryLock()) {
+                release(i);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        int i = 0;
+        try {
+            for (; i < locks.length; i++) {
+                if (!locks[i].tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    release(i);
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            release(i);
+            throw e;
+        }
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+        release(locks.length);
+    }
+
+    //Release the first n buffer locks
+    private void release(int n) {
+        for (int i = n - 1; i >= 0; i--)
+            locks[i].unlock();
+    }
+
+    @Override
+    public Condition newCondition() {
+        throw new UnsupportedOperationException();
+    }
+}
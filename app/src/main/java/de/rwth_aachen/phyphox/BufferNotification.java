@@ -0,0 +1,7 @@
+package de.rwth_aachen.phyphox;
+
+//Analysis modules and graphs implement this to learn about changes of the buffers they registered with
+
+interface BufferNotification {
+    void notifyUpdate(boolean clear, boolean reset); //Notify that a buffer has changed. Also notify if the buffer has been cleared (for example during
+}
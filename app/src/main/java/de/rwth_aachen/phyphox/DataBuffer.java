@@ -7,25 +7,19 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 //Databuffer class
 //Each databuffer can be identified by a name (mapped in phyphoxExperiment class)
 
-interface BufferNotification {
-    void notifyUpdate(boolean clear, boolean reset); //Notify that a buffer has changed. Also notify if the buffer has been cleared (for example during
-}
-
 public class DataBuffer implements Serializable {
     public String name; //The key name
-    private List<Double> buffer; //The actual buffer
+    private DataBufferStorage buffer; //The actual buffer
     public int size; //The target size
     public double value; //The last added value for easy access and graceful returning NaN for empty buffers
     public boolean isStatic = false; //If set to static, this buffer should only be filled once and cannot be cleared thereafter
@@ -53,27 +47,41 @@ public class DataBuffer implements Serializable {
     private double min = Double.NaN;
     private double max = Double.NaN;
 
+    //Sliding extrema of a fixed-size buffer. Dropping the oldest value invalidates min and max, so
+    //a graph that autoscales a full buffer would have to scan it on every update. Once getMin() or
+    //getMax() has been called on a fixed-size buffer, every appended value is also added to these
+    //monotonic deques, which always know the extrema of the values in the buffer. They start small
+    //and grow with the values they have to hold (all of them only for sorted data).
+    private static final int EXTREMA_CAPACITY = 64; //Initial capacity of the sliding extrema
+    transient private RollingStatistics.MonotonicDeque slidingMin = null;
+    transient private RollingStatistics.MonotonicDeque slidingMax = null;
+
+    //Every buffer has its own lock, so threads that work on different buffers do not block each
+    //other. Locks on several buffers are always acquired in the order of lockOrder (see BufferLock.java).
+    final ReentrantLock lock = new ReentrantLock();
+    final int lockOrder = nextLockOrder.getAndIncrement();
+    private static final AtomicInteger nextLockOrder = new AtomicInteger();
+
+    //Append watermark: Analysis modules use these to find out which values are new since they last read the buffer
+    private long appendCount = 0; //Number of values appended since the last clear (including those that have been dropped again from a fixed-size buffer)
+    private long clearCount = 0; //Number of times this buffer has been cleared
+
     //Contructor. Set key name and target size.
     protected DataBuffer(String name, int size, ExperimentTimeReference experimentTimeReference) {
         this.experimentTimeReference = experimentTimeReference;
         this.size = size;
         this.name = name;
 
-        //Note on the choice of LinkedList over ArrayList
+        //Note on the choice of storage
         //For data acquisition during an experiment we require the ability to append data
-        //consistently fast, which fails for the ArrayList if it needs to be extended and copied to
-        //a new memory block. Hence, for a long time, phyphox used LinkedList for unlimited buffers
-        //and ArrayList for ones with a fixed size. However, ArrayList is also problematic for the
-        //fixed sized ones, because if the first element needs to be removed with inflowing data,
-        //the entire array needs to be shifted, which again takes a lot of time.
-        //Therefore, both situations now use the LinkedArray.
-        //A faster alternative for fixed-size buffers could be an ArrayList as a ring buffer (i.e.
-        //with a moving index pointing to the start and a filled size to keep track of the number
-        //of elements which wrap around at the end), but this complicated several implementations
-        //below, which would need separate versions for both buffer times. At this point, this does
-        //not seem necessary.
-
-        this.buffer = new LinkedList<>();
+        //consistently fast, which fails for an ArrayList if it needs to be extended and copied to
+        //a new memory block, and for fixed sized buffers removing the first element must not shift
+        //the entire array. For a long time phyphox used a LinkedList for this, which costs a Double
+        //object and a list node for every single value. The storage now holds primitive doubles in
+        //a ring buffer for fixed-size buffers and in a chunked array for unlimited buffers (see
+        //DataBufferStorage.java), both of which append and remove in constant time.
+
+        this.buffer = DataBufferStorage.create(size);
 
         this.value = Double.NaN;
     }
@@ -139,25 +147,30 @@ public class DataBuffer implements Serializable {
         double last = this.value;
         this.value = value; //Update last value
         if (this.size > 0 && buffer.size()+1 > this.size) { //If the buffer becomes larger than the target size, remove the first item (queue!)
-            buffer.remove(0);
+            buffer.removeFirst();
             min = Double.NaN;
             max = Double.NaN;
             if (floatCopy != null) {
                 synchronized (floatCopy.lock) {
                     floatCopy.offset++;
                     floatCopy.size--;
+                    floatCopy.first++;
+                    if (floatCopy.pyramid != null)
+                        floatCopy.pyramid.dropFirst();
                 }
             }
             if (floatCopyBarAxis != null) {
                 synchronized (floatCopyBarAxis.lock) {
                     floatCopyBarAxis.offset+=6;
                     floatCopyBarAxis.size-=6;
+                    floatCopyBarAxis.first+=6;
                 }
             }
             if (floatCopyBarValue != null) {
                 synchronized (floatCopyBarValue.lock) {
                     floatCopyBarValue.offset+=6;
                     floatCopyBarValue.size-=6;
+                    floatCopyBarValue.first+=6;
                 }
             }
             if (experimentTimeReferenceSets != null) {
@@ -177,6 +190,9 @@ public class DataBuffer implements Serializable {
 
         }
         buffer.add(value);
+        if (slidingMin != null)
+            trackExtrema(appendCount, value);
+        appendCount++;
         if (!Double.isNaN(min) && !Double.isInfinite(min))
             min = Math.min(min, value);
         if (!Double.isNaN(max) && !Double.isInfinite(max))
@@ -195,6 +211,8 @@ public class DataBuffer implements Serializable {
                 }
                 floatCopy.data.put(floatCopy.offset + floatCopy.size, (float) value);
                 floatCopy.size++;
+                if (floatCopy.pyramid != null)
+                    floatCopy.pyramid.add((float) value);
             }
         }
 
@@ -260,6 +278,18 @@ public class DataBuffer implements Serializable {
         return buffer.size();
     }
 
+    //Get the number of values that have been appended since the buffer has been cleared. This only
+    //differs from getFilledSize() if values have been dropped from a buffer with a fixed size.
+    public long getAppendCount() {
+        return appendCount;
+    }
+
+    //Get the number of times this buffer has been cleared. Together with getAppendCount() this
+    //allows to check if a buffer only received new values since it has last been looked at.
+    public long getClearCount() {
+        return clearCount;
+    }
+
     //Append a double-array with [count] entries.
     public void append(Double value[], Integer count, boolean notify) {
         if (staticAndSet)
@@ -270,24 +300,17 @@ public class DataBuffer implements Serializable {
                 append(value[i], false);
             }
         } else {
-            //Just dump the data into the array and make sure it does not overflow.
+            //Just dump the data into the array. The ring buffer of fixed-size buffers drops the oldest values itself (queue!)
             if (count > 0)
                 this.value = value[count - 1]; //Update last value
-            if (this.size > 0) {
-                if (count >= this.size) {
-                    buffer.clear();
-                    buffer.addAll(Arrays.asList(value).subList(count - this.size, count));
-                } else if (buffer.size() + count > this.size) { //If the buffer becomes larger than the target size, remove the first items (queue!)
-                    Double[] remainder = buffer.subList(count, this.size).toArray(new Double[0]);
-                    buffer.clear();
-                    buffer.addAll(Arrays.asList(remainder));
-                    buffer.addAll(Arrays.asList(value));
-                } else {
-                    buffer.addAll(Arrays.asList(value));
-                }
-            } else {
-                buffer.addAll(Arrays.asList(value));
+            int first = (this.size > 0 && count > this.size) ? count - this.size : 0; //Values that would be dropped right away can be skipped
+            for (int i = first; i < count; i++)
+                buffer.add(value[i]);
+            if (slidingMin != null) {
+                for (int i = first; i < count; i++)
+                    trackExtrema(appendCount + i, value[i]);
             }
+            appendCount += count;
             min = Double.NaN;
             max = Double.NaN;
             floatCopy = null;
@@ -304,17 +327,70 @@ public class DataBuffer implements Serializable {
         append(value, count, true);
     }
 
+    //Append [count] primitive values starting at [offset]. This is the fast path for analysis
+    //modules: The values are copied into the storage in one go and the caches are only updated
+    //once for the whole batch.
+    public void append(double[] values, int offset, int count, boolean notify) {
+        if (staticAndSet || count <= 0)
+            return;
+        if (4*count < buffer.size() && (floatCopy != null || floatCopyBarValue != null || floatCopyBarAxis != null || experimentTimeReferenceSets != null)) {
+            //A few values for a buffer that is connected to a view element. Updating the float copies is cheaper than recreating them.
+            for (int i = offset; i < offset + count; i++)
+                append(values[i], false);
+        } else {
+            this.value = values[offset + count - 1]; //Update last value
+            boolean drops = this.size > 0 && buffer.size() + count > this.size;
+            buffer.add(values, offset, count); //The ring buffer of fixed-size buffers drops the oldest values itself (queue!)
+            if (slidingMin != null) {
+                for (int i = Math.max(count - this.size, 0); i < count; i++) //Values that have been dropped right away can be skipped
+                    trackExtrema(appendCount + i, values[offset + i]);
+            }
+            appendCount += count;
+            if (drops) {
+                min = Double.NaN;
+                max = Double.NaN;
+            } else {
+                boolean updateMin = !Double.isNaN(min) && !Double.isInfinite(min);
+                boolean updateMax = !Double.isNaN(max) && !Double.isInfinite(max);
+                for (int i = offset; i < offset + count && (updateMin || updateMax); i++) {
+                    double v = values[i];
+                    if (Double.isNaN(v) || Double.isInfinite(v)) //Ignored, just like in getMin() and getMax()
+                        continue;
+                    if (updateMin)
+                        min = Math.min(min, v);
+                    if (updateMax)
+                        max = Math.max(max, v);
+                }
+            }
+            floatCopy = null;
+            floatCopyBarValue = null;
+            floatCopyBarAxis = null;
+            experimentTimeReferenceSets = null;
+        }
+
+        if (notify)
+            notifyListeners(false, false);
+    }
+
+    public void append(double[] values, int offset, int count) {
+        append(values, offset, count, true);
+    }
+
     //Append a short-array with [count] entries. This will be scaled to [-1:+1] and is used for audio data
     public void append(short value[], int count) {
+        double[] values = new double[Math.max(count, 0)];
         for (int i = 0; i < count; i++)
-            append((double)value[i]/(double)Short.MAX_VALUE, false); //Normalize to [-1:+1] and append
+            values[i] = (double)value[i]/(double)Short.MAX_VALUE; //Normalize to [-1:+1]
+        append(values, 0, values.length, false);
         notifyListeners(false, false);
     }
 
     //Append a float-array with [count] entries. This is used for audio data
     public void append(float value[], int count) {
+        double[] values = new double[Math.max(count, 0)];
         for (int i = 0; i < count; i++)
-            append(value[i], false); //Normalize to [-1:+1] and append
+            values[i] = value[i];
+        append(values, 0, values.length, false);
         notifyListeners(false, false);
     }
 
@@ -341,6 +417,12 @@ public class DataBuffer implements Serializable {
         }
         buffer.clear();
         value = Double.NaN;
+        appendCount = 0;
+        if (slidingMin != null) {
+            slidingMin.clear();
+            slidingMax.clear();
+        }
+        clearCount++;
         if (floatCopy != null) {
             synchronized (floatCopy.lock) {
                 //Instead of just resetting the offset and length to zero, we abandon the buffer, so
@@ -393,9 +475,23 @@ public class DataBuffer implements Serializable {
         return buffer.iterator();
     }
 
+    //Get a read-only view on the current values without copying them (see DoubleView.java)
+    public DoubleView getView() {
+        return buffer.view();
+    }
+
     //Get all values as a double array
     public Double[] getArray() {
-        return buffer.toArray(new Double[0]);
+        int n = buffer.size();
+        Double[] ret = new Double[n];
+        for (int i = 0; i < n; i++)
+            ret[i] = buffer.get(i);
+        return ret;
+    }
+
+    //Copy [count] values from position [start] on into dst
+    public void copyTo(int start, double[] dst, int dstOffset, int count) {
+        buffer.copyTo(start, dst, dstOffset, count);
     }
 
     public FloatBufferRepresentation getFloatBuffer() {
@@ -406,10 +502,8 @@ public class DataBuffer implements Serializable {
         if (floatCopy == null) {
             FloatBuffer data = ByteBuffer.allocateDirect(n * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
             floatCopyCapacity = n;
-            Iterator it = getIterator();
-            int i = 0;
-            while (it.hasNext() && i < n) {
-                double x = (double) it.next();
+            for (int i = 0; i < n; i++) {
+                double x = buffer.get(i);
                 if ((Double.isNaN(x) || Double.isInfinite(x)))
                     data.put(-3.4e38f);
                 else
@@ -427,7 +521,6 @@ public class DataBuffer implements Serializable {
                 // reasonable use case and we use it to tag invalid values. The vertex shader will
                 // simply check for values below -3.3e38f and mark them for the fragment shader to
                 // be discarded.
-                i++;
             }
             floatCopy = new FloatBufferRepresentation(data, 0, n);
         }
@@ -443,14 +536,11 @@ public class DataBuffer implements Serializable {
         if (floatCopyBarAxis == null) {
             FloatBuffer data = ByteBuffer.allocateDirect(n * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
             floatCopyBarAxisCapacity = n;
-            Iterator it = getIterator();
-            int i = 0;
             double last = Double.NaN;
-            while (it.hasNext() && i < n) {
-                double value = (double)it.next();
+            for (int i = 0; i < n; i+=6) {
+                double value = buffer.get(i/6);
                 putBarAxisValue(data, last, value, i);
                 last = value;
-                i+=6;
             }
             floatCopyBarAxis = new FloatBufferRepresentation(data, 0, n);
         }
@@ -465,14 +555,11 @@ public class DataBuffer implements Serializable {
         if (floatCopyBarValue == null) {
             FloatBuffer data = ByteBuffer.allocateDirect(n * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
             floatCopyBarValueCapacity = n;
-            Iterator it = getIterator();
-            int i = 0;
             double last = Double.NaN;
-            while (it.hasNext() && i < n) {
-                double value = (double)it.next();
+            for (int i = 0; i < n; i+=6) {
+                double value = buffer.get(i/6);
                 putBarValueValue(data, last, i);
                 last = value;
-                i+=6;
             }
             floatCopyBarValue = new FloatBufferRepresentation(data, 0, n);
         }
@@ -492,12 +579,12 @@ public class DataBuffer implements Serializable {
 
         if (experimentTimeReferenceSets == null && !experimentTimeReference.timeMappings.isEmpty()) {
             experimentTimeReferenceSets = new ArrayList<>();
-            Iterator it = getIterator();
+            int n = buffer.size();
             int lastReferenceIndex = -1;
             int lastchange = 0;
             int i = 0;
-            while (it.hasNext()) {
-                double value = (double)it.next();
+            while (i < n) {
+                double value = buffer.get(i);
                 int referenceIndex = isLinearTime ? experimentTimeReference.getReferenceIndexFromLinearTime(value) : experimentTimeReference.getReferenceIndexFromExperimentTime(value);
                 if (lastReferenceIndex < 0)
                     lastReferenceIndex = referenceIndex;
@@ -516,23 +603,50 @@ public class DataBuffer implements Serializable {
     //Get all values as a short array. The data will be scaled so that (-/+)1 matches (-/+)Short.MAX_VALUE, used for audio data
     public short[] getShortArray() {
         short[] ret = new short[buffer.size()];
-        Iterator it = getIterator();
-        int i = 0;
-        while (it.hasNext()) {
-            ret[i] = (short)(((double)it.next())*(Short.MAX_VALUE)); //Rescale data to short range
-            i++;
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = (short)(buffer.get(i)*(Short.MAX_VALUE)); //Rescale data to short range
         }
         return ret;
     }
 
     public DataBuffer copy() {
         DataBuffer db = new DataBuffer(this.name, this.size, this.experimentTimeReference);
-        db.append(this.getArray(), this.getFilledSize());
+        db.buffer = this.buffer.copy();
+        db.appendCount = db.buffer.size();
+        if (db.buffer.size() > 0)
+            db.value = db.buffer.get(db.buffer.size() - 1);
         db.isStatic = this.isStatic;
         return db;
     }
 
+    //Add the value at the given position (counted like appendCount) to the sliding extrema and
+    //forget those that are no longer in the buffer
+    private void trackExtrema(long position, double v) {
+        slidingMin.removeBefore(position - this.size + 1);
+        slidingMax.removeBefore(position - this.size + 1);
+        if (Double.isInfinite(v)) //Ignored, just like in getMin() and getMax(). The deques ignore NaN themselves.
+            return;
+        slidingMin.add(position, v);
+        slidingMax.add(position, v);
+    }
+
+    //Set up the sliding extrema of a fixed-size buffer with the values it currently holds
+    private void startTrackingExtrema() {
+        slidingMin = new RollingStatistics.MonotonicDeque(Math.min(this.size, EXTREMA_CAPACITY), false);
+        slidingMax = new RollingStatistics.MonotonicDeque(Math.min(this.size, EXTREMA_CAPACITY), true);
+        int n = buffer.size();
+        long position = appendCount - n;
+        for (int i = 0; i < n; i++)
+            trackExtrema(position + i, buffer.get(i));
+    }
+
     public double getMin() {
+        if (this.size > 0) {
+            if (slidingMin == null)
+                startTrackingExtrema();
+            return slidingMin.get();
+        }
+
         if (!Double.isNaN(min)) {
             return min;
         }
@@ -540,15 +654,26 @@ public class DataBuffer implements Serializable {
         if (buffer.size() == 0)
             return Double.NaN;
 
-        min = Collections.min(buffer, new minComparator());
-
-        if (Double.isInfinite(min))
-            min = Double.NaN;
+        //NaN and infinite values are ignored. If there are no other values, the minimum is NaN.
+        double ret = Double.POSITIVE_INFINITY;
+        int n = buffer.size();
+        for (int i = 0; i < n; i++) {
+            double v = buffer.get(i);
+            if (v < ret && !Double.isInfinite(v))
+                ret = v;
+        }
+        min = Double.isInfinite(ret) ? Double.NaN : ret;
 
         return min;
     }
 
     public double getMax() {
+        if (this.size > 0) {
+            if (slidingMax == null)
+                startTrackingExtrema();
+            return slidingMax.get();
+        }
+
         if (!Double.isNaN(max)) {
             return max;
         }
@@ -556,32 +681,17 @@ public class DataBuffer implements Serializable {
         if (buffer.size() == 0)
             return Double.NaN;
 
-        max = Collections.max(buffer, new maxComparator());
-
-        if (Double.isInfinite(max))
-            max = Double.NaN;
-
-        return max;
-    }
-
-    class minComparator implements Comparator<Double> {
-        public int compare(Double a, Double b) {
-            if (Double.isNaN(a) || Double.isInfinite(a))
-                return 1;
-            if (Double.isNaN(b) || Double.isInfinite(b))
-                return -1;
-            return Double.compare(a, b);
+        //NaN and infinite values are ignored. If there are no other values, the maximum is NaN.
+        double ret = Double.NEGATIVE_INFINITY;
+        int n = buffer.size();
+        for (int i = 0; i < n; i++) {
+            double v = buffer.get(i);
+            if (v > ret && !Double.isInfinite(v))
+                ret = v;
         }
-    }
+        max = Double.isInfinite(ret) ? Double.NaN : ret;
 
-    class maxComparator implements Comparator<Double> {
-        public int compare(Double a, Double b) {
-            if (Double.isNaN(a) || Double.isInfinite(a))
-                return -1;
-            if (Double.isNaN(b) || Double.isInfinite(b))
-                return 1;
-            return Double.compare(a, b);
-        }
+        return max;
     }
 }
 
@@ -589,13 +699,24 @@ class FloatBufferRepresentation {
     FloatBuffer data;
     int size;
     int offset;
+    long first = 0; //Number of floats that have been dropped from the start, so first+i identifies the float at position i as long as this representation is used
     transient public final Object lock = new Object();
+    MinMaxPyramid pyramid = null; //Decimation for graphs, kept up to date by DataBuffer once it has been requested
 
     FloatBufferRepresentation(FloatBuffer data, int offset, int size) {
         this.data = data;
         this.size = size;
         this.offset = offset;
     }
+
+    //Get the min/max pyramid of the data (see MinMaxPyramid.java). Call this while holding the lock.
+    MinMaxPyramid getPyramid() {
+        if (data == null)
+            return null;
+        if (pyramid == null || pyramid.size() != size)
+            pyramid = new MinMaxPyramid(data, offset, size);
+        return pyramid;
+    }
 }
 
 class ExperimentTimeReferenceSet {
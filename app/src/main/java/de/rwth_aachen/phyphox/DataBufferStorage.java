@@ -0,0 +1,423 @@
+package de.rwth_aachen.phyphox;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+//Storage engine for the values of a DataBuffer
+//Values are kept as primitive doubles, so appending does not allocate a Double object for each
+//value and random access does not need to walk a linked list. There are two implementations:
+//A ring buffer for buffers with a fixed size, which drops the oldest value in constant time, and
+//a chunked array for unlimited buffers, which never needs to copy existing data when it grows.
+
+abstract class DataBufferStorage implements Serializable {
+
+    //Create the appropriate storage for a buffer of the given target size (0 = unlimited)
+    static DataBufferStorage create(int size) {
+        if (size > 0)
+            return new Ring(size);
+        else
+            return new Chunked();
+    }
+
+    //Number of values currently stored
+    abstract int size();
+
+    //Get the value at index (0 is the oldest value)
+    abstract double get(int index);
+
+    //Append a value. A ring buffer that is already full drops its oldest value.
+    abstract void add(double value);
+
+    //Remove the oldest value
+    abstract void removeFirst();
+
+    abstract void clear();
+
+    //Copy count values, starting at index start, to dst at dstOffset
+    abstract void copyTo(int start, double[] dst, int dstOffset, int count);
+
+    //Create an independent copy of this storage
+    abstract DataBufferStorage copy();
+
+    //Create a read-only view on the current values without copying them (see DoubleView.java)
+    abstract DoubleView view();
+
+    //Append count values from values starting at offset
+    void add(double[] values, int offset, int count) {
+        for (int i = offset; i < offset + count; i++)
+            add(values[i]);
+    }
+
+    double[] toArray() {
+        double[] ret = new double[size()];
+        copyTo(0, ret, 0, ret.length);
+        return ret;
+    }
+
+    //Boxing iterator for legacy code that iterates over the buffer
+    Iterator<Double> iterator() {
+        return new Iterator<Double>() {
+            int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public Double next() {
+                if (index >= size())
+                    throw new NoSuchElementException();
+                return get(index++);
+            }
+        };
+    }
+
+    //Ring buffer for buffers with a fixed size.
+    //The backing array grows up to the target size, so large buffers that are never filled do not
+    //reserve their full capacity right away. Once it has reached the target size it is never
+    //reallocated again and the start index moves along with the data instead.
+    //Views share the backing array. As long as there are views on the current array, we only
+    //write to slots that were empty when the views were created. Anything else (overwriting the
+    //oldest value of a full ring or reusing a slot after removing a value) moves the data to a new
+    //array first, which then belongs to the ring alone (copy-on-write).
+    static class Ring extends DataBufferStorage {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final int capacity;
+        private double[] data = new double[0];
+        private int start = 0;
+        private int count = 0;
+
+        //Views are created while the buffer is locked, but they may be released from any thread at
+        //any time. So the number of unreleased views on the current data array (lower 32 bit) and
+        //the generation, which is incremented whenever the views lose their connection to the data
+        //array (upper 32 bit), are updated together atomically.
+        private transient volatile long viewState = 0;
+        private static final AtomicLongFieldUpdater<Ring> VIEW_STATE = AtomicLongFieldUpdater.newUpdater(Ring.class, "viewState");
+        private transient boolean removedSinceView = false; //Slots referenced by views have been freed and may not be reused
+
+        Ring(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private void grow() {
+            int newLength = (int)Math.min((long)capacity, Math.max(INITIAL_CAPACITY, 2L * data.length));
+            double[] newData = new double[newLength];
+            copyTo(0, newData, 0, count);
+            data = newData;
+            start = 0;
+            detachViews();
+        }
+
+        //Leave the current array to the views and continue on a copy
+        private void copyOnWrite() {
+            double[] newData = new double[data.length];
+            copyTo(0, newData, 0, count);
+            data = newData;
+            start = 0;
+            detachViews();
+        }
+
+        //The current array is not referenced by any view anymore
+        private void detachViews() {
+            long state;
+            do {
+                state = viewState;
+            } while (!VIEW_STATE.compareAndSet(this, state, ((state >>> 32) + 1) << 32));
+            removedSinceView = false;
+        }
+
+        private boolean hasViews() {
+            return (int)viewState != 0;
+        }
+
+        @Override
+        int size() {
+            return count;
+        }
+
+        @Override
+        double get(int index) {
+            int i = start + index;
+            if (i >= data.length)
+                i -= data.length;
+            return data[i];
+        }
+
+        @Override
+        void add(double value) {
+            if (hasViews() && (count == capacity || removedSinceView))
+                copyOnWrite();
+            if (count == capacity) {
+                data[start] = value;
+                start++;
+                if (start == data.length)
+                    start = 0;
+                return;
+            }
+            if (count == data.length)
+                grow();
+            int i = start + count;
+            if (i >= data.length)
+                i -= data.length;
+            data[i] = value;
+            count++;
+        }
+
+        @Override
+        void add(double[] values, int offset, int count) {
+            //Values that would be pushed out by the same call anyway do not need to be written
+            if (count > capacity) {
+                offset += count - capacity;
+                count = capacity;
+            }
+            super.add(values, offset, count);
+        }
+
+        @Override
+        void removeFirst() {
+            if (count == 0)
+                return;
+            if (hasViews())
+                removedSinceView = true;
+            start++;
+            if (start == data.length)
+                start = 0;
+            count--;
+        }
+
+        @Override
+        void clear() {
+            //Keep the array, the buffer will most likely be filled to the same size again. Unless
+            //it is still used by views, in which case we leave it to them.
+            if (hasViews()) {
+                data = new double[data.length];
+                detachViews();
+            }
+            start = 0;
+            count = 0;
+        }
+
+        @Override
+        void copyTo(int start, double[] dst, int dstOffset, int count) {
+            int i = this.start + start;
+            if (i >= data.length)
+                i -= data.length;
+            int first = Math.min(count, data.length - i);
+            System.arraycopy(data, i, dst, dstOffset, first);
+            if (first < count)
+                System.arraycopy(data, 0, dst, dstOffset + first, count - first);
+        }
+
+        @Override
+        DataBufferStorage copy() {
+            Ring ret = new Ring(capacity);
+            ret.data = new double[count];
+            copyTo(0, ret.data, 0, count);
+            ret.count = count;
+            return ret;
+        }
+
+        @Override
+        DoubleView view() {
+            long state = VIEW_STATE.incrementAndGet(this);
+            return new View(this, (int)(state >>> 32), data, start, count);
+        }
+
+        private static class View extends DoubleView {
+            private final Ring ring;
+            private final int generation;
+            private final double[] data;
+            private final int start;
+            private final int count;
+            private boolean released = false;
+
+            View(Ring ring, int generation, double[] data, int start, int count) {
+                this.ring = ring;
+                this.generation = generation;
+                this.data = data;
+                this.start = start;
+                this.count = count;
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+
+            @Override
+            public double get(int index) {
+                int i = start + index;
+                if (i >= data.length)
+                    i -= data.length;
+                return data[i];
+            }
+
+            @Override
+            public void copyTo(int start, double[] dst, int dstOffset, int count) {
+                int i = this.start + start;
+                if (i >= data.length)
+                    i -= data.length;
+                int first = Math.min(count, data.length - i);
+                System.arraycopy(data, i, dst, dstOffset, first);
+                if (first < count)
+                    System.arraycopy(data, 0, dst, dstOffset + first, count - first);
+            }
+
+            @Override
+            public void release() {
+                if (released)
+                    return;
+                released = true;
+                long state;
+                do {
+                    state = ring.viewState;
+                    if ((int)(state >>> 32) != generation)
+                        return; //The ring has moved on to another array, which is not referenced by this view
+                } while (!VIEW_STATE.compareAndSet(ring, state, state - 1));
+            }
+        }
+    }
+
+    //Chunked array for unlimited buffers.
+    //Data is stored in blocks of fixed size, so growing the buffer only allocates a new block and
+    //never copies the data that has already been recorded.
+    //A slot is never written twice (clearing the storage drops the blocks), so views can simply
+    //keep references to the blocks they cover.
+    static class Chunked extends DataBufferStorage {
+        private static final int CHUNK_BITS = 12;
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+        private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+        private final ArrayList<double[]> chunks = new ArrayList<>();
+        private int first = 0; //Offset of the oldest value within the first chunk
+        private int count = 0;
+
+        @Override
+        int size() {
+            return count;
+        }
+
+        @Override
+        double get(int index) {
+            int i = first + index;
+            return chunks.get(i >>> CHUNK_BITS)[i & CHUNK_MASK];
+        }
+
+        @Override
+        void add(double value) {
+            int i = first + count;
+            int chunk = i >>> CHUNK_BITS;
+            if (chunk == chunks.size())
+                chunks.add(new double[CHUNK_SIZE]);
+            chunks.get(chunk)[i & CHUNK_MASK] = value;
+            count++;
+        }
+
+        @Override
+        void add(double[] values, int offset, int count) {
+            while (count > 0) {
+                int i = first + this.count;
+                int chunk = i >>> CHUNK_BITS;
+                if (chunk == chunks.size())
+                    chunks.add(new double[CHUNK_SIZE]);
+                int n = Math.min(count, CHUNK_SIZE - (i & CHUNK_MASK));
+                System.arraycopy(values, offset, chunks.get(chunk), i & CHUNK_MASK, n);
+                offset += n;
+                count -= n;
+                this.count += n;
+            }
+        }
+
+        @Override
+        void removeFirst() {
+            if (count == 0)
+                return;
+            first++;
+            count--;
+            if (first == CHUNK_SIZE) {
+                chunks.remove(0);
+                first = 0;
+            }
+        }
+
+        @Override
+        void clear() {
+            //Unlimited buffers may have become huge, so we actually release the memory here
+            chunks.clear();
+            first = 0;
+            count = 0;
+        }
+
+        @Override
+        void copyTo(int start, double[] dst, int dstOffset, int count) {
+            int i = first + start;
+            while (count > 0) {
+                int n = Math.min(count, CHUNK_SIZE - (i & CHUNK_MASK));
+                System.arraycopy(chunks.get(i >>> CHUNK_BITS), i & CHUNK_MASK, dst, dstOffset, n);
+                i += n;
+                dstOffset += n;
+                count -= n;
+            }
+        }
+
+        @Override
+        DataBufferStorage copy() {
+            Chunked ret = new Chunked();
+            int i = 0;
+            while (i < count) {
+                double[] chunk = new double[CHUNK_SIZE];
+                int n = Math.min(CHUNK_SIZE, count - i);
+                copyTo(i, chunk, 0, n);
+                ret.chunks.add(chunk);
+                i += n;
+            }
+            ret.count = count;
+            return ret;
+        }
+
+        @Override
+        DoubleView view() {
+            return new View(chunks.toArray(new double[0][]), first, count);
+        }
+
+        private static class View extends DoubleView {
+            private final double[][] chunks;
+            private final int first;
+            private final int count;
+
+            View(double[][] chunks, int first, int count) {
+                this.chunks = chunks;
+                this.first = first;
+                this.count = count;
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+
+            @Override
+            public double get(int index) {
+                int i = first + index;
+                return chunks[i >>> CHUNK_BITS][i & CHUNK_MASK];
+            }
+
+            @Override
+            public void copyTo(int start, double[] dst, int dstOffset, int count) {
+                int i = first + start;
+                while (count > 0) {
+                    int n = Math.min(count, CHUNK_SIZE - (i & CHUNK_MASK));
+                    System.arraycopy(chunks[i >>> CHUNK_BITS], i & CHUNK_MASK, dst, dstOffset, n);
+                    i += n;
+                    dstOffset += n;
+                    count -= n;
+                }
+            }
+        }
+    }
+}
@@ -34,12 +34,13 @@ import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Vector;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.Deflater;
 
 import de.rwth_aachen.phyphox.Helper.DataExportUtility;
 
@@ -84,7 +85,7 @@ public class DataExport implements Serializable {
         // each dataBuffer that should be added to the collection. Then getData is called so the
         // content of these buffers is collected and finally the dataSet is given to an instance
         // of ExportFormat (see below).
-        Double[][] data;
+        double[][] data;
 
         //constructor with name for this set
         ExportSet(String name) {
@@ -98,14 +99,53 @@ public class DataExport implements Serializable {
 
         //Retrieve all data from the dataBuffers
         public void getData() {
-            data = new Double[sources.size()][];
+            data = new double[sources.size()][];
             for (int i = 0; i < sources.size(); i++) {
                 DataBuffer buffer = experiment.getBuffer(sources.get(i).source); //Get the buffer for this source
-                data[i] = buffer.getArray(); //Get all data as a double array
+                data[i] = getSnapshot(buffer); //Get all data as a double array
             }
         }
+
+        //Copy the values of a buffer in chunks, so a long recording does not block sensors and
+        //analysis while it is copied. If values are dropped from a buffer with a fixed size or the
+        //buffer is cleared in the meantime, the snapshot ends with the last value that could be
+        //copied.
+        private double[] getSnapshot(DataBuffer buffer) {
+            Lock lock = experiment.getBufferLock(buffer);
+            double[] values;
+            long first; //Number of values that had been appended before the first one of the snapshot
+            long clearCount;
+            int n, done;
+            lock.lock();
+            try {
+                n = buffer.getFilledSize();
+                values = new double[n];
+                first = buffer.getAppendCount() - n;
+                clearCount = buffer.getClearCount();
+                done = Math.min(n, SNAPSHOT_CHUNK);
+                buffer.copyTo(0, values, 0, done);
+            } finally {
+                lock.unlock();
+            }
+            while (done < n) {
+                lock.lock();
+                try {
+                    long position = first + done - (buffer.getAppendCount() - buffer.getFilledSize());
+                    if (buffer.getClearCount() != clearCount || position < 0)
+                        break;
+                    int count = Math.min(n - done, SNAPSHOT_CHUNK);
+                    buffer.copyTo((int)position, values, done, count);
+                    done += count;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return done < n ? Arrays.copyOf(values, done) : values;
+        }
     }
 
+    private static final int SNAPSHOT_CHUNK = 1 << 16; //Values copied from a buffer at once (see ExportSet.getSnapshot())
+
     private PhyphoxExperiment experiment; //The phyphoxExperiment which uses this DataExport
     public List<ExportSet> exportSets = new ArrayList<>(); //The available export sets
 
@@ -130,6 +170,8 @@ public class DataExport implements Serializable {
         protected char separator; //The separator, typically "," or "\t"
         protected char decimalPoint; //The separator, typically "," or "\t"
         protected String name; //The name of this format can be changed to describe different separators
+        protected int compressionLevel = Deflater.BEST_SPEED; //Deflate level of the zip file (0 to 9). CSV files compress well even at the fastest level, which is several times faster than the default.
+        protected boolean backgroundCompression = true; //Deflate on a separate thread while the numbers are formatted
 
         //This constructor allows to set a separator and a name
         CsvFormat(char separator, char decimalPoint, String name) {
@@ -152,67 +194,40 @@ public class DataExport implements Serializable {
         protected File export (List<ExportSet> sets, File exportPath, boolean minimalistic, Context ctx) {
             File file = new File(exportPath, "/"+getFilename(minimalistic)); // Create a file with default filename in the given path
 
-            DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
-            format.applyPattern("0.000000000E0");
-            DecimalFormatSymbols dfs = format.getDecimalFormatSymbols();
-            dfs.setDecimalSeparator(decimalPoint);
-            format.setDecimalFormatSymbols(dfs);
-            format.setGroupingUsed(false);
-
             try { // A lot can go wrong here... Let's catch em all...
                 FileOutputStream stream = new FileOutputStream(file); //Open a basic output stream
-                ZipOutputStream zstream = null;
-                if (!minimalistic)
-                    zstream = new ZipOutputStream(stream); //We will pack all datasets into a single zip
+                //We will pack all datasets into a single zip, unless the export is minimalistic
+                ExportStream out = new ExportStream(stream, minimalistic ? null : compressionLevel, backgroundCompression);
                 try {
                     for (ExportSet set : sets) { // For each dataset...
-                        ZipEntry entry;
-                        if (!minimalistic) {
-                            entry = new ZipEntry(set.name + ".csv"); //Create a new file for this dataset...
-                            zstream.putNextEntry(entry); //...and add it to the zip-file
-                        }
+                        if (!minimalistic)
+                            out.nextEntry(set.name + ".csv"); //Create a new file for this dataset in the zip-file
 
                         //Contruct the table header in the first line
-                        String header = "";
                         for (int j = 0; j < set.data.length; j++) { //Each column gets a name...
-                            header += "\"" + set.sources.get(j).getSecureName() + "\"";
+                            out.write("\"" + set.sources.get(j).getSecureName() + "\"");
                             if (j < set.data.length -1)
-                                header += separator;
+                                out.write(separator);
                         }
-                        header += "\n";
-                        if (minimalistic)
-                            stream.write(header.getBytes());
-                        else
-                            zstream.write(header.getBytes()); //Write the header to the zip-file
+                        out.write('\n');
 
                         //Then add all the data
                         for (int i = 0; i < set.data[0].length; i++) { //For each row of data... The first column determines the number of rows
-                            //Construct the data row
-                            StringBuilder data = new StringBuilder();
                             for (int j = 0; j < set.data.length; j++) { //For each column within this row
                                 if (i < set.data[j].length) //Do we have data for this cell?
-                                    data.append(format.format(set.data[j][i])); //Add it to the row
+                                    out.writeDouble(set.data[j][i], decimalPoint); //Add it to the row
                                 else
-                                    data.append("NaN"); //No data? Enter NaN in the row
+                                    out.write("NaN"); //No data? Enter NaN in the row
                                 if (j < set.data.length - 1)
-                                    data.append(separator);
+                                    out.write(separator);
                             }
-                            data.append("\n");
-                            if (minimalistic)
-                                stream.write(data.toString().getBytes());
-                            else
-                                zstream.write(data.toString().getBytes()); //Write to zip-file
+                            out.write('\n');
                         }
-
-                        if (!minimalistic)
-                            zstream.closeEntry(); //This dataset is complete. Close its file within the zip
                     }
                     //Add meta data in a separate folder
                     if (!minimalistic) {
-                        ZipEntry entry;
-                        entry = new ZipEntry("meta/device.csv");
-                        zstream.putNextEntry(entry);
-                        zstream.write(("\"property\""+separator+"\"value\"\n").getBytes());
+                        out.nextEntry("meta/device.csv");
+                        out.write("\"property\""+separator+"\"value\"\n");
 
                         StringBuilder data = new StringBuilder();
                         for (Metadata.DeviceMetadata deviceMetadata : Metadata.DeviceMetadata.values()) {
@@ -229,41 +244,35 @@ public class DataExport implements Serializable {
                                 data.append("\"").append(new Metadata(sensor.name()+identifier, ctx).get("")).append("\"").append("\n");
                             }
                         }
-                        zstream.write(data.toString().getBytes()); //Write to zip-file
-                        zstream.closeEntry();
+                        out.write(data.toString()); //Write to zip-file
 
-                        entry = new ZipEntry("meta/time.csv");
-                        zstream.putNextEntry(entry);
-                        zstream.write(("\"event\""+separator+"\"experiment time\""+separator+"\"system time\""+separator+"\"system time text\"\n").getBytes());
+                        out.nextEntry("meta/time.csv");
+                        out.write("\"event\""+separator+"\"experiment time\""+separator+"\"system time\""+separator+"\"system time text\"\n");
 
                         DecimalFormat longformat = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
                         longformat.applyPattern("############0.000");
+                        DecimalFormatSymbols dfs = longformat.getDecimalFormatSymbols();
+                        dfs.setDecimalSeparator(decimalPoint);
                         longformat.setDecimalFormatSymbols(dfs);
                         longformat.setGroupingUsed(false);
 
-                        data = new StringBuilder();
                         SimpleDateFormat dateFormat;
                         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
                             dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS 'UTC'XXX");
                         else
                             dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS 'UTC'Z");
                         for (ExperimentTimeReference.TimeMapping timeMapping : experiment.experimentTimeReference.timeMappings) {
-                            data.append("\"").append(timeMapping.event.name()).append("\"").append(separator);
-                            data.append(format.format(timeMapping.experimentTime)).append(separator);
-                            data.append(longformat.format(timeMapping.systemTime/1000.)).append(separator);
-                            data.append("\"").append(dateFormat.format(timeMapping.systemTime)).append("\"").append("\n");
+                            out.write("\"" + timeMapping.event.name() + "\"" + separator);
+                            out.writeDouble(timeMapping.experimentTime, decimalPoint);
+                            out.write(separator + longformat.format(timeMapping.systemTime/1000.) + separator);
+                            out.write("\"" + dateFormat.format(timeMapping.systemTime) + "\"\n");
                         }
-                        zstream.write(data.toString().getBytes()); //Write to zip-file
-                        zstream.closeEntry();
                     }
                 } catch (Exception e) {
                     //This could be done better. Any error during CSV/ZIP compiling ends up here
                     Log.e("csvExport", "Unhandled exception during write.", e);
                 } finally {
-                    if (minimalistic)
-                        stream.close();
-                    else
-                        zstream.close();
+                    out.close();
                 }
             } catch (Exception e) {
                 //This could be done better. Any error during file opening ends up here
@@ -72,6 +72,17 @@ public class DataInput implements Serializable {
         }
     }
 
+    //Get a read-only view on all values
+    public DoubleView getView() {
+        if (isBuffer) {
+            return buffer.getView();
+        } else if (isEmpty) {
+            return DoubleView.EMPTY;
+        } else {
+            return DoubleView.of(value);
+        }
+    }
+
     //Get all values as a short array. The data will be scaled so that (-/+)1 matches (-/+)Short.MAX_VALUE, used for audio data
     public short[] getShortArray() {
         if (isBuffer) {
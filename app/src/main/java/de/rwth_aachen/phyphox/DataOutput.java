@@ -1,6 +1,7 @@
 package de.rwth_aachen.phyphox;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
 
 //dataOutput wraps all data-containers (currently only dataBuffer) as possible outputs.
@@ -50,6 +51,45 @@ public class DataOutput implements Serializable {
         buffer.append(value, count);
     }
 
+    //Append count values starting at offset in one go (see DataBuffer.append(double[], int, int))
+    public void append(double values[], int offset, int count) {
+        buffer.append(values, offset, count);
+    }
+
+    public void append(double values[]) {
+        buffer.append(values, 0, values.length);
+    }
+
+    //Append everything collected in the builder and clear it for the next batch
+    public void append(Builder builder) {
+        if (builder.count > 0)
+            buffer.append(builder.values, 0, builder.count);
+        builder.clear();
+    }
+
+    //Collects values for a single bulk append if their number is not known in advance. A module can
+    //keep its builders between updates, so the array only grows during the first ones.
+    public static class Builder implements Serializable {
+        private transient double[] values = null; //Temporary storage, not worth serializing
+        private transient int count = 0;
+
+        public void add(double value) {
+            if (values == null)
+                values = new double[16];
+            else if (count == values.length)
+                values = Arrays.copyOf(values, 2 * count);
+            values[count++] = value;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public void clear() {
+            count = 0;
+        }
+    }
+
     public boolean isStatic() {
         return buffer.isStatic;
     }
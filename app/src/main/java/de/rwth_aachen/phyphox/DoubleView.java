@@ -0,0 +1,79 @@
+package de.rwth_aachen.phyphox;
+
+//Read-only view on the values of a DataBuffer (or a constant input) at the time it was created.
+//Analysis modules use views instead of copies of their inputs: Creating a view does not copy or
+//box any data. If the buffer is modified while a view is still in use, the storage moves its own
+//data to a new array first (copy-on-write), so the view remains consistent.
+//A view should be released when it is no longer needed, so the buffer knows that it does not need
+//to preserve the viewed data anymore.
+
+public abstract class DoubleView {
+
+    public static final DoubleView EMPTY = new DoubleView() {
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public double get(int index) {
+            throw new IndexOutOfBoundsException();
+        }
+    };
+
+    //View on a single constant value
+    public static DoubleView of(final double value) {
+        return new DoubleView() {
+            @Override
+            public int size() {
+                return 1;
+            }
+
+            @Override
+            public double get(int index) {
+                if (index != 0)
+                    throw new IndexOutOfBoundsException();
+                return value;
+            }
+        };
+    }
+
+    //Number of values in this view
+    public abstract int size();
+
+    //Get the value at index (0 is the oldest value)
+    public abstract double get(int index);
+
+    //Get the last value or NaN if the view is empty (analog to DataBuffer.value)
+    public double last() {
+        int n = size();
+        return n > 0 ? get(n - 1) : Double.NaN;
+    }
+
+    //Copy count values, starting at index start, to dst at dstOffset
+    public void copyTo(int start, double[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++)
+            dst[dstOffset + i] = get(start + i);
+    }
+
+    //Copy all values to a new array
+    public double[] toArray() {
+        double[] ret = new double[size()];
+        copyTo(0, ret, 0, ret.length);
+        return ret;
+    }
+
+    //Copy all values to dst if it is large enough or to a new array otherwise. Allows modules to reuse their scratch arrays.
+    public double[] toArray(double[] dst) {
+        int n = size();
+        if (dst == null || dst.length < n)
+            dst = new double[n];
+        copyTo(0, dst, 0, n);
+        return dst;
+    }
+
+    //Signal that this view is not used anymore
+    public void release() {
+
+    }
+}
@@ -0,0 +1,168 @@
+package de.rwth_aachen.phyphox;
+
+import java.io.Serializable;
+
+//Stateful event detection on a stream of samples, used by eventstreamAM in its streaming mode
+//The detector keeps its position in the stream (index of the next sample), the number of samples
+//that still have to be skipped after an event and the last sample, so it can be fed with blocks of
+//any size and finds the same events as if it had seen the whole stream at once.
+//Events are reported as sample indices with a fractional part: For the modes that compare the
+//value itself to the threshold, the position at which the signal crosses the threshold is
+//interpolated linearly between the previous and the triggering sample. So the resolution of an
+//acoustic stopwatch is not limited to the sample rate.
+//For audio, the experiment feeds the detector directly with each block read from the microphone
+//(see PhyphoxExperiment.processAnalysis()), so no sample has to go through a buffer and the
+//analysis module only collects the events that have been found in the meantime.
+
+class EventDetector implements Serializable {
+    final Analysis.eventstreamAM.TriggerMode mode;
+    final DataBuffer source; //Buffer the module reads from. If this receives the audio recording, the experiment feeds the detector directly.
+    private boolean fedDirectly = false; //Set once the experiment has fed audio data directly
+
+    //Parameters, updated by the module. Until they are known, samples are only counted.
+    private boolean hasParameters = false;
+    private double threshold = 0.;
+    private int distance = 0;
+
+    //State of the stream
+    private long index = 0; //Index of the next sample
+    private long skip = 0; //Samples to skip before the next event can be detected
+    private double last = Double.NaN;
+
+    private double[] events = new double[16]; //Events found since they have last been collected
+    private int eventCount = 0;
+
+    EventDetector(Analysis.eventstreamAM.TriggerMode mode, DataBuffer source) {
+        this.mode = mode;
+        this.source = source;
+    }
+
+    synchronized void setParameters(double threshold, int distance) {
+        this.threshold = threshold;
+        this.distance = Math.max(distance, 0);
+        hasParameters = true;
+    }
+
+    synchronized void reset() {
+        index = 0;
+        skip = 0;
+        last = Double.NaN;
+        eventCount = 0;
+    }
+
+    synchronized boolean isFedDirectly() {
+        return fedDirectly;
+    }
+
+    synchronized long getIndex() {
+        return index;
+    }
+
+    synchronized long getSkip() {
+        return skip;
+    }
+
+    synchronized double getLast() {
+        return last;
+    }
+
+    //Move the events that have been found so far to the builder
+    synchronized void collectEvents(DataOutput.Builder builder) {
+        for (int i = 0; i < eventCount; i++)
+            builder.add(events[i]);
+        eventCount = 0;
+    }
+
+    private void addEvent(double position) {
+        if (eventCount == events.length) {
+            double[] newEvents = new double[2 * events.length];
+            System.arraycopy(events, 0, newEvents, 0, eventCount);
+            events = newEvents;
+        }
+        events[eventCount++] = position;
+    }
+
+    //Check the next sample
+    private void next(double v) {
+        if (skip > 0 || !hasParameters) {
+            if (skip > 0)
+                skip--;
+            last = v;
+            index++;
+            return;
+        }
+
+        boolean triggered = false;
+        double position = index;
+        switch (mode) {
+            case above:
+                triggered = v > threshold;
+                if (triggered)
+                    position = crossing(threshold, v);
+                break;
+            case below:
+                triggered = v < threshold;
+                if (triggered)
+                    position = crossing(threshold, v);
+                break;
+            case aboveAbsolute:
+                triggered = Math.abs(v) > threshold;
+                if (triggered)
+                    position = crossing(threshold, Math.abs(v));
+                break;
+            case belowAbsolute:
+                triggered = Math.abs(v) < threshold;
+                if (triggered)
+                    position = crossing(threshold, Math.abs(v));
+                break;
+            case aboveDerivative:
+                triggered = v - last > threshold;
+                break;
+            case belowDerivative:
+                triggered = v - last < threshold;
+                break;
+            case aboveDerivativeAbsolute:
+                triggered = Math.abs(v - last) > threshold;
+                break;
+            case belowDerivativeAbsolute:
+                triggered = Math.abs(v - last) < threshold;
+                break;
+        }
+
+        if (triggered) {
+            addEvent(position);
+            skip = distance;
+        }
+        last = v;
+        index++;
+    }
+
+    //Position between the last sample and the current one (with value v) at which the signal crosses the threshold
+    private double crossing(double threshold, double v) {
+        double l = (mode == Analysis.eventstreamAM.TriggerMode.aboveAbsolute || mode == Analysis.eventstreamAM.TriggerMode.belowAbsolute) ? Math.abs(last) : last;
+        if (Double.isNaN(l) || l == v)
+            return index;
+        double fraction = (threshold - l) / (v - l);
+        if (!(fraction >= 0.0 && fraction <= 1.0)) //The last sample has already been beyond the threshold (i.e. right after skipping)
+            return index;
+        return index - 1 + fraction;
+    }
+
+    //Audio data from the microphone, fed by the experiment before it is appended to the source buffer
+    synchronized void process(float[] data, int count) {
+        fedDirectly = true;
+        for (int i = 0; i < count; i++)
+            next(data[i]);
+    }
+
+    synchronized void process(short[] data, int count) {
+        fedDirectly = true;
+        for (int i = 0; i < count; i++)
+            next((double)data[i]/(double)Short.MAX_VALUE); //Same scaling as DataBuffer.append(short[], int)
+    }
+
+    synchronized void process(DoubleView data, int start, int end) {
+        for (int i = start; i < end; i++)
+            next(data.get(i));
+    }
+}
@@ -63,6 +63,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Vector;
+import java.util.concurrent.locks.Lock;
 
 import de.rwth_aachen.phyphox.Helper.Helper;
 import de.rwth_aachen.phyphox.camera.CameraPreviewFragment;
@@ -120,6 +121,7 @@ public class ExpView implements Serializable{
         protected int htmlID; //This holds a unique id, so the element can be referenced in the webinterface via an HTML ID
 
         transient protected View rootView; //Holds the root view of the element
+        transient private Lock bufferLock = null; //Lock on the buffers used by this element (see getBufferLock)
 
         public State state = State.normal;
 
@@ -272,6 +274,31 @@ public class ExpView implements Serializable{
         protected void onMayReadFromBuffers(PhyphoxExperiment experiment) {
         }
 
+        //Adds all buffers that are read in onMayReadFromBuffers or written in onMayWriteToBuffers
+        protected void collectBuffers(PhyphoxExperiment experiment, List<DataBuffer> buffers) {
+            if (inputs != null) {
+                for (String key : inputs)
+                    buffers.add(experiment.getBuffer(key));
+            }
+            if (outputs != null) {
+                for (String key : outputs)
+                    buffers.add(experiment.getBuffer(key));
+            }
+            if (valueOutput != null)
+                buffers.add(experiment.getBuffer(valueOutput));
+        }
+
+        //Lock on the buffers of this element only (see BufferLock.java), which has to be held
+        //while calling onMayReadFromBuffers or onMayWriteToBuffers
+        protected Lock getBufferLock(PhyphoxExperiment experiment) {
+            if (bufferLock == null) {
+                List<DataBuffer> buffers = new ArrayList<>();
+                collectBuffers(experiment, buffers);
+                bufferLock = experiment.getBufferLock(buffers);
+            }
+            return bufferLock;
+        }
+
         //This is called when the time reference for the experiment has been updated (i.e. start or stop)
         protected void onTimeReferenceUpdate(ExperimentTimeReference experimentTimeReference) {
         }
@@ -1194,6 +1221,24 @@ public class ExpView implements Serializable{
             this.outputs = outputs;
         }
 
+        @Override
+        protected void collectBuffers(PhyphoxExperiment experiment, List<DataBuffer> buffers) {
+            super.collectBuffers(experiment, buffers);
+            if (inputs != null) {
+                for (DataInput input : inputs) {
+                    if (input != null)
+                        buffers.add(input.buffer);
+                }
+            }
+            if (outputs != null) {
+                for (DataOutput output : outputs) {
+                    if (output != null)
+                        buffers.add(output.buffer);
+                }
+            }
+            buffers.add(buffer);
+        }
+
         protected void setTriggers(Vector<String> triggers) {
             this.triggers = triggers;
         }
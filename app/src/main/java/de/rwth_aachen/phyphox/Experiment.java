@@ -30,6 +30,7 @@ import android.os.Bundle;
 import android.os.CountDownTimer;
 import android.os.Handler;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.provider.ContactsContract;
 import android.util.Log;
 import android.util.TypedValue;
@@ -98,6 +99,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
 
 import de.rwth_aachen.phyphox.Bluetooth.Bluetooth;
 import de.rwth_aachen.phyphox.Bluetooth.BluetoothInput;
@@ -146,6 +148,8 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
     boolean measuring = false; //Measurement running?
     boolean loadCompleted = false; //Set to true when an experiment has been loaded successfully
     boolean shutdown = false; //The activity should be stopped. Used to escape the measurement loop.
+    private final Object analysisThreadLock = new Object(); //Guards the start and end of the analysis thread
+    private boolean analysisThreadRunning = false; //An analysis thread has been started and has not decided to end yet
     boolean beforeStart = true; //Experiment has not yet been started even once
     boolean menuHintDismissed = false; //Remember that the user has clicked away the hint to the menu
     boolean startHintDismissed = false; //Remember that the user has clicked away the hint to the start button
@@ -154,6 +158,8 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
     boolean networkScanDismissed = false;
     boolean dataPolicyDismissed = false;
     boolean sensorWarningDismissed = false;
+    boolean showAnalysisMetrics = false; //Show the overlay with the timing of the analysis
+    long lastAnalysisMetricsUpdate = 0;
 
     //Remote server
     private RemoteServer remote = null; //The remote server (see remoteServer class)
@@ -924,6 +930,7 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
         MenuItem saveLocally = menu.findItem(R.id.action_saveLocally);
         MenuItem calibratedMagnetometer = menu.findItem(R.id.action_calibrated_magnetometer);
         MenuItem forceGNSSItem = menu.findItem(R.id.action_force_gnss);
+        MenuItem analysisMetricsItem = menu.findItem(R.id.action_analysis_metrics);
 
         Iterator it = experiment.highlightedLinks.entrySet().iterator();
         for (int i = 1; i <= 5; i++) {
@@ -1005,6 +1012,9 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
         forceGNSSItem.setVisible(gps);
         forceGNSSItem.setChecked(forceGNSS);
 
+        //The overlay with the timing of the analysis (see AnalysisMetrics.java)
+        analysisMetricsItem.setChecked(showAnalysisMetrics);
+
         //If the timedRun is active, we have to set the value of the countdown
         if (timedRun) {
             if (cdTimer != null) { //Timer running? Show the last known value of millisUntilFinished
@@ -1202,6 +1212,12 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
             }
         }
 
+        if (id == R.id.action_analysis_metrics) {
+            showAnalysisMetrics = !item.isChecked();
+            findViewById(R.id.analysisMetrics).setVisibility(showAnalysisMetrics ? View.VISIBLE : View.GONE);
+            lastAnalysisMetricsUpdate = 0;
+        }
+
         //The remote server button. Show a warning with IP information and start the server if confirmed.
         //or: stop the server if it was active before.
         if (id == R.id.action_remoteServer) {
@@ -1295,7 +1311,15 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
             //Do the analysis. All of these elements might fire exceptions,
             // especially on badly defined experiments. So let's be save and catch anything that
             // gets through to here.
-            while (measuring && !shutdown) {
+            while (true) {
+                //If the measurement is restarted before this thread has noticed that it had been
+                //stopped, it just continues, as startMeasurement() does not start a second one.
+                synchronized (analysisThreadLock) {
+                    if (!measuring || shutdown) {
+                        analysisThreadRunning = false;
+                        return;
+                    }
+                }
                 if (experiment != null) { //This only makes sense if there is an experiment
                     try {
                         //time for some analysis?
@@ -1306,11 +1330,14 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
                         Log.e("updateData", "Unhandled exception.", e);
                     }
                 }
-                try {
-                    Thread.sleep(10);
-                } catch (Exception e) {
-                    Log.w("updateData", "Sleep interrupted");
-                }
+                if (experiment == null) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (Exception e) {
+                        Log.w("updateData", "Sleep interrupted");
+                    }
+                } else if (measuring && !shutdown)
+                    experiment.waitForAnalysis(); //Sleep until there is something to do
             }
         }
     };
@@ -1351,9 +1378,14 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
                             //If there has been remote input, we may reset it as updateViews will have taken care of this
                             //This also means, that there is new input from the user
                             remoteInput = false;
-                            experiment.newUserInput = true;
+                            experiment.notifyUserInput();
                         }
                     }
+                    //The metrics overlay does not need to follow every frame
+                    if (showAnalysisMetrics && SystemClock.elapsedRealtime() - lastAnalysisMetricsUpdate > 500) {
+                        lastAnalysisMetricsUpdate = SystemClock.elapsedRealtime();
+                        ((TextView)findViewById(R.id.analysisMetrics)).setText(experiment.analysisMetrics.getSummary(experiment.analysis, 8));
+                    }
                 } catch (Exception e) {
                     Log.e("updateViews", "Unhandled exception.", e);
                 } finally {
@@ -1463,9 +1495,14 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
         //No more turning off during the measurement
         setKeepScreenOn(true);
 
-        //Start the analysis "loop"
-        Thread t = new Thread(updateData);
-        t.start();
+        //Start the analysis "loop" (unless the one of the previous measurement is still running, which then continues)
+        synchronized (analysisThreadLock) {
+            if (!analysisThreadRunning) {
+                analysisThreadRunning = true;
+                Thread t = new Thread(updateData);
+                t.start();
+            }
+        }
 
         //If this is a timed run, we have to start the countdown which stops it again later.
         if (timedRun) {
@@ -1639,18 +1676,20 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
         experiment.experimentTimeReference.registerEvent(ExperimentTimeReference.TimeMappingEvent.CLEAR);
         stopMeasurement();
 
-        experiment.dataLock.lock(); //Synced, do not allow another thread to meddle here...
+        Lock lock = experiment.getBufferLock(experiment.dataBuffers); //Synced, do not allow another thread to meddle here...
+        lock.lock();
         try {
             for (DataBuffer buffer : experiment.dataBuffers)
                 if (!buffer.linkedToUserInput)
                     buffer.clear(true);
         } finally {
-            experiment.dataLock.unlock();
+            lock.unlock();
         }
 
         experiment.experimentTimeReference.reset();
+        experiment.analysisMetrics.reset(experiment.analysis);
         experiment.newData = true;
-        experiment.newUserInput = true;
+        experiment.notifyUserInput();
         if (remote != null && serverEnabled)
             remote.forceFullUpdate = true;
     }
@@ -1808,13 +1847,14 @@ public class Experiment extends AppCompatActivity implements View.OnClickListene
         }
         try {
             outState.putInt(STATE_CURRENT_VIEW, tabLayout.getSelectedTabPosition()); //Save current experiment view
-            experiment.dataLock.lock(); //Save dataBuffers (synchronized, so no other thread alters them while we access them)
+            Lock lock = experiment.getBufferLock(experiment.dataBuffers); //Save dataBuffers (synchronized, so no other thread alters them while we access them)
+            lock.lock();
             try {
                 App app = (App) getApplicationContext();
                 app.experiment = experiment;
                 //outState.putSerializable(STATE_EXPERIMENT, (Serializable)experiment);
             } finally {
-                experiment.dataLock.unlock();
+                lock.unlock();
             }
             outState.putBoolean(STATE_REMOTE_SERVER, serverEnabled); //remote server status
             outState.putString(STATE_REMOTE_SESSION_ID, sessionID); //remote server status
@@ -5,7 +5,8 @@ import android.os.SystemClock;
 import android.util.Log;
 
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class ExperimentTimeReference implements Serializable {
@@ -32,7 +33,22 @@ public class ExperimentTimeReference implements Serializable {
         }
     }
 
-    public List<TimeMapping> timeMappings = new LinkedList<>();
+    public List<TimeMapping> timeMappings = new ArrayList<>();
+
+    //Lookup tables for getReferenceIndexFromExperimentTime() and getReferenceIndexFromLinearTime(),
+    //which are called for every value appended to a buffer that is shown on a time axis. The
+    //tables hold the running maximum of the experiment time and linear time of the mappings, so
+    //a binary search finds the same index as walking the list until the time exceeds t (even if
+    //the system clock has been set back). Mappings are only ever appended to the list (also by
+    //other classes), so the tables are extended whenever the list has grown and rebuilt after a
+    //reset. As values usually arrive in order, the index of the last lookup is tried first.
+    //Buffers look up indices from the threads of the sensors, so everything that reads or changes
+    //the list is synchronized. Other classes add mappings with addMapping().
+    private transient double[] experimentTimeLimits = new double[16];
+    private transient double[] linearTimeLimits = new double[16];
+    private transient int limitCount = 0;
+    private transient int lastExperimentTimeIndex = 0;
+    private transient int lastLinearTimeIndex = 0;
 
     ExperimentTimeReference(Listener listener) {
         this.listener = listener;
@@ -55,36 +71,46 @@ public class ExperimentTimeReference implements Serializable {
         }
         long systemTime = System.currentTimeMillis();
 
-        if (timeMappings.isEmpty()) {
-            if (event != TimeMappingEvent.START)
-                return;
-            timeMappings.add(new TimeMapping(event, 0.0, eventTime, systemTime));
-        } else {
-            TimeMapping last = timeMappings.get(timeMappings.size()-1);
-            switch (last.event) {
-                case START:
-                    if (event == TimeMappingEvent.START)
-                        return;
-                    timeMappings.add(new TimeMapping(event, getExperimentTimeFromEvent(eventTime), eventTime, systemTime));
-                    break;
-                case PAUSE:
-                    if (event == TimeMappingEvent.PAUSE)
-                        return;
-                    timeMappings.add(new TimeMapping(event, last.experimentTime, eventTime, systemTime));
-                    break;
+        synchronized (this) {
+            if (timeMappings.isEmpty()) {
+                if (event != TimeMappingEvent.START)
+                    return;
+                timeMappings.add(new TimeMapping(event, 0.0, eventTime, systemTime));
+            } else {
+                TimeMapping last = timeMappings.get(timeMappings.size()-1);
+                switch (last.event) {
+                    case START:
+                        if (event == TimeMappingEvent.START)
+                            return;
+                        timeMappings.add(new TimeMapping(event, getExperimentTimeFromEvent(eventTime), eventTime, systemTime));
+                        break;
+                    case PAUSE:
+                        if (event == TimeMappingEvent.PAUSE)
+                            return;
+                        timeMappings.add(new TimeMapping(event, last.experimentTime, eventTime, systemTime));
+                        break;
+                }
             }
         }
         if (listener != null)
             listener.onExperimentTimeReferenceUpdated(this);
     }
 
+    //Add a mapping that has been recorded before (i.e. loaded from a file)
+    public synchronized void addMapping(TimeMapping mapping) {
+        timeMappings.add(mapping);
+    }
+
     public void reset() {
-        timeMappings.clear();
+        synchronized (this) {
+            timeMappings.clear();
+            limitCount = 0;
+        }
         if (listener != null)
             listener.onExperimentTimeReferenceUpdated(this);
     }
 
-    public double getExperimentTimeFromEvent(long eventTime) {
+    public synchronized double getExperimentTimeFromEvent(long eventTime) {
         if (timeMappings.isEmpty())
             return 0.0;
         TimeMapping last = timeMappings.get(timeMappings.size()-1);
@@ -103,40 +129,81 @@ public class ExperimentTimeReference implements Serializable {
         return getExperimentTimeFromEvent(eventTime);
     }
 
-    public double getLinearTime() {
+    public synchronized double getLinearTime() {
         if (timeMappings.isEmpty())
             return 0.0;
         return (System.currentTimeMillis() - timeMappings.get(0).systemTime) * 0.001;
     }
 
-    public int getReferenceIndexFromExperimentTime(double t) {
-        int i = 0;
-        while (timeMappings.size() > i+1 && timeMappings.get(i+1).experimentTime <= t)
-            i++;
-        return i;
+    //Extend the lookup tables to the current mappings
+    private void updateLimits() {
+        int n = timeMappings.size();
+        if (n < limitCount)
+            limitCount = 0; //Should not happen as reset() starts over, but the list is public
+        if (n == limitCount)
+            return;
+        if (experimentTimeLimits == null || experimentTimeLimits.length < n) {
+            int capacity = Math.max(2 * n, 16);
+            experimentTimeLimits = experimentTimeLimits == null ? new double[capacity] : Arrays.copyOf(experimentTimeLimits, capacity);
+            linearTimeLimits = linearTimeLimits == null ? new double[capacity] : Arrays.copyOf(linearTimeLimits, capacity);
+        }
+        long systemTime0 = timeMappings.get(0).systemTime;
+        for (int i = limitCount; i < n; i++) {
+            TimeMapping mapping = timeMappings.get(i);
+            double linearTime = (mapping.systemTime - systemTime0) * 0.001;
+            //The walk starts at the second mapping, so the first one does not count
+            experimentTimeLimits[i] = i > 1 ? Math.max(experimentTimeLimits[i-1], mapping.experimentTime) : mapping.experimentTime;
+            linearTimeLimits[i] = i > 1 ? Math.max(linearTimeLimits[i-1], linearTime) : linearTime;
+        }
+        limitCount = n;
     }
 
-    public int getReferenceIndexFromLinearTime(double t) {
-        int i = 0;
-        while (timeMappings.size() > i+1 && (timeMappings.get(i+1).systemTime - timeMappings.get(0).systemTime) * 0.001 <= t) {
-            i++;
+    //Last index i, so that limits[i] is not above t, or 0. lastIndex is tried first.
+    private static int findReferenceIndex(double[] limits, int n, double t, int lastIndex) {
+        if (lastIndex < n && (lastIndex == 0 || limits[lastIndex] <= t) && (lastIndex + 1 == n || !(limits[lastIndex+1] <= t)))
+            return lastIndex;
+        //First index above t (NaN counts as above, just like in a comparison with <=)
+        int lo = 1;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (limits[mid] <= t)
+                lo = mid + 1;
+            else
+                hi = mid;
         }
-        return i;
+        return lo - 1;
+    }
+
+    public synchronized int getReferenceIndexFromExperimentTime(double t) {
+        updateLimits();
+        if (limitCount < 2)
+            return 0;
+        lastExperimentTimeIndex = findReferenceIndex(experimentTimeLimits, limitCount, t, lastExperimentTimeIndex);
+        return lastExperimentTimeIndex;
+    }
+
+    public synchronized int getReferenceIndexFromLinearTime(double t) {
+        updateLimits();
+        if (limitCount < 2)
+            return 0;
+        lastLinearTimeIndex = findReferenceIndex(linearTimeLimits, limitCount, t, lastLinearTimeIndex);
+        return lastLinearTimeIndex;
     }
 
-    public long getSystemTimeReferenceByIndex(int i) {
+    public synchronized long getSystemTimeReferenceByIndex(int i) {
         if (timeMappings.isEmpty())
             return 0;
         return timeMappings.get(i).systemTime;
     }
 
-    public boolean getPausedByIndex(int i) {
+    public synchronized boolean getPausedByIndex(int i) {
         if (timeMappings.isEmpty())
             return true;
         return timeMappings.get(i).event == TimeMappingEvent.PAUSE;
     }
 
-    public double getExperimentTimeReferenceByIndex(int i) {
+    public synchronized double getExperimentTimeReferenceByIndex(int i) {
         if (timeMappings.isEmpty())
             return 0.0;
         return timeMappings.get(i).experimentTime;
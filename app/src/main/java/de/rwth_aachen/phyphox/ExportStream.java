@@ -0,0 +1,205 @@
+package de.rwth_aachen.phyphox;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+//Output of the CSV export
+//Text and numbers are encoded directly into blocks of bytes (numbers with ScientificFormat), so
+//writing a row does not create any strings. Full blocks are written to the file, optionally
+//packed into a zip file with one entry per table.
+//Deflating takes about as long as formatting the numbers, so with a background deflater the
+//blocks are handed to a separate thread through a short queue and come back to be filled again.
+//This way both run in parallel and only a handful of blocks are allocated for the whole export.
+//Call close() at the end, which waits for the deflater and reports its errors.
+
+class ExportStream {
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int QUEUE_LENGTH = 4;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final OutputStream file;
+    private final ZipOutputStream zip;
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int count = 0;
+
+    //A block of data, the start of a zip entry or (if both are null) the end
+    private static class Chunk {
+        final byte[] data;
+        final int length;
+        final String entry;
+
+        Chunk(byte[] data, int length, String entry) {
+            this.data = data;
+            this.length = length;
+            this.entry = entry;
+        }
+    }
+
+    private Thread deflater = null;
+    private BlockingQueue<Chunk> queue = null;
+    private BlockingQueue<byte[]> freeBlocks = null;
+    private volatile IOException error = null;
+
+    //Write to a plain file if zipLevel is null, otherwise into a zip file with the given deflate
+    //level (see Deflater), which is done on a separate thread if background is set.
+    ExportStream(OutputStream file, Integer zipLevel, boolean background) {
+        this.file = file;
+        if (zipLevel == null) {
+            zip = null;
+            return;
+        }
+        zip = new ZipOutputStream(file);
+        zip.setLevel(zipLevel);
+        if (!background)
+            return;
+
+        queue = new ArrayBlockingQueue<>(QUEUE_LENGTH);
+        freeBlocks = new ArrayBlockingQueue<>(QUEUE_LENGTH + 2);
+        deflater = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    Chunk chunk;
+                    try {
+                        chunk = queue.take();
+                    } catch (InterruptedException e) {
+                        if (error == null)
+                            error = new InterruptedIOException("Export interrupted.");
+                        return; //The producer notices that nobody takes its chunks anymore
+                    }
+                    if (chunk.data == null && chunk.entry == null)
+                        return;
+                    if (error != null)
+                        continue; //Keep taking chunks, so the export does not get stuck
+                    try {
+                        process(chunk);
+                    } catch (IOException e) {
+                        error = e;
+                    } catch (Throwable t) {
+                        //Anything else must not end the thread either (the producer would wait forever)
+                        error = new IOException("Export failed.", t);
+                    }
+                    if (chunk.data != null && chunk.data.length == BLOCK_SIZE)
+                        freeBlocks.offer(chunk.data);
+                }
+            }
+        }, "phyphox export deflater");
+        deflater.start();
+    }
+
+    private void process(Chunk chunk) throws IOException {
+        if (chunk.entry != null) {
+            zip.putNextEntry(new ZipEntry(chunk.entry)); //Also closes the previous entry
+        } else if (zip != null) {
+            zip.write(chunk.data, 0, chunk.length);
+        } else {
+            file.write(chunk.data, 0, chunk.length);
+        }
+    }
+
+    private void dispatch(Chunk chunk) throws IOException {
+        if (error != null)
+            throw error;
+        if (deflater == null) {
+            process(chunk);
+            return;
+        }
+        enqueue(chunk);
+    }
+
+    //Hand a chunk to the deflater without waiting forever if the deflater has stopped
+    private void enqueue(Chunk chunk) throws IOException {
+        try {
+            while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                if (!deflater.isAlive())
+                    throw error != null ? error : new IOException("Export deflater stopped.");
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Export interrupted.");
+        }
+    }
+
+    //Hand over the current block and continue with an empty one
+    private void flushBlock() throws IOException {
+        if (count == 0)
+            return;
+        dispatch(new Chunk(block, count, null));
+        count = 0;
+        if (deflater != null) {
+            byte[] free = freeBlocks.poll();
+            block = free != null ? free : new byte[BLOCK_SIZE];
+        }
+    }
+
+    private void ensure(int n) throws IOException {
+        if (count + n > block.length)
+            flushBlock();
+    }
+
+    //Start a new file within the zip file
+    void nextEntry(String name) throws IOException {
+        flushBlock();
+        dispatch(new Chunk(null, 0, name));
+    }
+
+    void write(char c) throws IOException {
+        if (c >= 0x80) {
+            write(String.valueOf(c));
+            return;
+        }
+        ensure(1);
+        block[count++] = (byte)c;
+    }
+
+    void write(String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        if (bytes.length > block.length) {
+            flushBlock();
+            dispatch(new Chunk(bytes, bytes.length, null));
+            return;
+        }
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, block, count, bytes.length);
+        count += bytes.length;
+    }
+
+    //Write a number like the DecimalFormat pattern "0.000000000E0"
+    void writeDouble(double v, char decimalPoint) throws IOException {
+        ensure(ScientificFormat.MAX_LENGTH);
+        count = ScientificFormat.format(v, decimalPoint, block, count);
+    }
+
+    //Write everything that is left and close the file
+    void close() throws IOException {
+        try {
+            flushBlock();
+        } finally {
+            try {
+                if (deflater != null) {
+                    try {
+                        enqueue(new Chunk(null, 0, null));
+                        deflater.join();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("Export interrupted.");
+                    } finally {
+                        deflater.interrupt(); //Stops it if it is still waiting for chunks after an error
+                    }
+                    if (error != null)
+                        throw error;
+                }
+            } finally {
+                if (zip != null)
+                    zip.close();
+                else
+                    file.close();
+            }
+        }
+    }
+}
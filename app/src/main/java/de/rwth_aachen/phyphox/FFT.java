@@ -0,0 +1,565 @@
+package de.rwth_aachen.phyphox;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Fast Fourier transform on primitive arrays
+//This is the Java implementation used by the analysis modules if the native library (FFTW) is not
+//available. Every size is transformed exactly, without zero-padding. Sizes that only have small
+//prime factors (powers of two, but also 1000 or 44100) use a mixed-radix algorithm (like kissfft).
+//Sizes with large prime factors use Bluestein's algorithm, which turns the transform into a
+//convolution of a power of two of at least 2n-1. Real inputs of even size are transformed as a
+//complex input of half the size, which takes about half the time.
+//Everything that only depends on the size (twiddle factors, bit reversal, the chirp of Bluestein's
+//algorithm) is kept in a plan. The plans of the last few sizes are cached, so switching between a
+//few sizes does not recalculate them. Plans are not modified once created and are shared by all
+//threads, while every instance of FFT has its own work arrays. So, use one instance per module.
+
+class FFT implements Serializable {
+    private static final int MAX_PLANS = 8; //Number of sizes for which the plans are kept. A plan takes about 16 bytes per value.
+
+    //The direct correlation needs one multiplication per pair of values, the FFT about this factor times N log2(N) operations
+    static final int CORRELATION_FFT_COST = 6;
+
+    private static final Map<Integer, Plan> plans = new LinkedHashMap<Integer, Plan>(MAX_PLANS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Plan> eldest) {
+            return size() > MAX_PLANS;
+        }
+    };
+
+    //Work arrays, reused as long as the size does not grow
+    private transient double[] workRe, workIm; //Copy of the input for the mixed-radix algorithm
+    private transient double[] radixRe, radixIm; //Generic butterfly of larger prime factors
+    private transient double[] convRe, convIm; //Bluestein convolution
+    private transient double[] halfRe, halfIm; //Complex input of half the size for real transforms
+    private transient double[] corrRe, corrIm; //Correlation
+
+    static class Plan {
+        final int n;
+
+        //Mixed radix
+        final int[] factors; //Pairs of the radix p and the remaining size m for each step of the recursion
+        final double[] twiddleRe, twiddleIm; //exp(-2 pi i k / n) for k < n
+
+        //Bluestein (sizes with large prime factors)
+        final Plan conv; //Plan for the convolution, a power of two
+        final double[] chirpRe, chirpIm; //exp(-pi i k^2 / n)
+        final double[] filterRe, filterIm; //Transform of the complex conjugate chirp, divided by the size of the convolution
+
+        //Transform of real inputs (n is even), only created when needed
+        private volatile RealPlan real = null;
+
+        Plan(int n) {
+            this.n = n;
+
+            //Factorize n, preferring radix 4 as kissfft does
+            int[] f = new int[64];
+            int count = 0;
+            int cost = 0; //Operations per value for the mixed-radix algorithm
+            int remaining = n;
+            int p = 4;
+            int sqrt = (int)Math.sqrt(n);
+            while (remaining > 1) {
+                while (remaining % p != 0) {
+                    if (p == 4)
+                        p = 2;
+                    else if (p == 2)
+                        p = 3;
+                    else
+                        p += 2;
+                    if (p > sqrt)
+                        p = remaining;
+                }
+                remaining /= p;
+                f[count++] = p;
+                f[count++] = remaining;
+                cost += p;
+            }
+
+            //Bluestein takes two power-of-two transforms of at least twice the size and a few multiplications
+            int m = Integer.highestOneBit(Math.max(2 * n - 2, 1)) << 1;
+            int bluesteinCost = m / n * (Integer.numberOfTrailingZeros(m) + 3);
+
+            if (cost <= bluesteinCost || Integer.bitCount(n) == 1) {
+                factors = Arrays.copyOf(f, count);
+                twiddleRe = new double[n];
+                twiddleIm = new double[n];
+                for (int k = 0; k < n; k++) {
+                    twiddleRe[k] = Math.cos(-2 * Math.PI * k / n);
+                    twiddleIm[k] = Math.sin(-2 * Math.PI * k / n);
+                }
+
+                conv = null;
+                chirpRe = chirpIm = filterRe = filterIm = null;
+            } else {
+                factors = null;
+                twiddleRe = twiddleIm = null;
+
+                conv = getPlan(m);
+
+                chirpRe = new double[n];
+                chirpIm = new double[n];
+                filterRe = new double[m];
+                filterIm = new double[m];
+                for (int k = 0; k < n; k++) {
+                    //k^2 modulo 2n, so the angle stays small and precise for large k
+                    double angle = Math.PI * (double)(((long)k * k) % (2L * n)) / n;
+                    chirpRe[k] = Math.cos(angle);
+                    chirpIm[k] = -Math.sin(angle);
+                    filterRe[k] = chirpRe[k];
+                    filterIm[k] = -chirpIm[k];
+                    if (k > 0) {
+                        filterRe[m - k] = chirpRe[k];
+                        filterIm[m - k] = -chirpIm[k];
+                    }
+                }
+                new FFT().transform(conv, filterRe, filterIm);
+                for (int k = 0; k < m; k++) {
+                    filterRe[k] /= m;
+                    filterIm[k] /= m;
+                }
+            }
+        }
+
+        RealPlan getRealPlan() {
+            RealPlan r = real;
+            if (r == null) {
+                synchronized (this) {
+                    r = real;
+                    if (r == null) {
+                        r = new RealPlan(n);
+                        real = r;
+                    }
+                }
+            }
+            return r;
+        }
+    }
+
+    static class RealPlan {
+        final Plan half;
+        final double[] cos, sin; //exp(-2 pi i k / n) for k <= n/2
+
+        RealPlan(int n) {
+            half = getPlan(n / 2);
+            cos = new double[n / 2 + 1];
+            sin = new double[n / 2 + 1];
+            for (int k = 0; k <= n / 2; k++) {
+                cos[k] = Math.cos(-2 * Math.PI * k / n);
+                sin[k] = Math.sin(-2 * Math.PI * k / n);
+            }
+        }
+    }
+
+    static Plan getPlan(int n) {
+        synchronized (plans) {
+            Plan plan = plans.get(n);
+            if (plan == null) {
+                plan = new Plan(n);
+                plans.put(n, plan);
+            }
+            return plan;
+        }
+    }
+
+    //In-place forward transform of the first n values of re + i im
+    void transform(double[] re, double[] im, int n) {
+        if (n < 2)
+            return;
+        transform(getPlan(n), re, im);
+    }
+
+    //In-place inverse transform of the first n values of re + i im, including the normalization by 1/n
+    void inverse(double[] re, double[] im, int n) {
+        if (n < 2)
+            return;
+        for (int i = 0; i < n; i++)
+            im[i] = -im[i];
+        transform(getPlan(n), re, im);
+        double scale = 1.0 / n;
+        for (int i = 0; i < n; i++) {
+            re[i] *= scale;
+            im[i] = -im[i] * scale;
+        }
+    }
+
+    //Forward transform of n real values x. The complete spectrum (n values) is written to re and im,
+    //which may be the same array as x.
+    void realTransform(double[] x, int n, double[] re, double[] im) {
+        if (n % 2 != 0 || n < 4) {
+            if (re != x)
+                System.arraycopy(x, 0, re, 0, n);
+            Arrays.fill(im, 0, n, 0.);
+            transform(re, im, n);
+            return;
+        }
+
+        //Transform even and odd values as real and imaginary part of a single complex input...
+        RealPlan plan = getPlan(n).getRealPlan();
+        int h = n / 2;
+        if (halfRe == null || halfRe.length < h) {
+            halfRe = new double[h];
+            halfIm = new double[h];
+        }
+        double[] zr = halfRe;
+        double[] zi = halfIm;
+        for (int k = 0; k < h; k++) {
+            zr[k] = x[2 * k];
+            zi[k] = x[2 * k + 1];
+        }
+        transform(plan.half, zr, zi);
+
+        //...and separate them again: X[k] = E[k] + exp(-2 pi i k / n) O[k]
+        //with E[k] = (Z[k] + conj(Z[h-k]))/2 and O[k] = (Z[k] - conj(Z[h-k]))/2i
+        for (int k = 0; k <= h; k++) {
+            int a = k == h ? 0 : k;
+            int b = k == 0 ? 0 : h - k;
+            double er = 0.5 * (zr[a] + zr[b]);
+            double ei = 0.5 * (zi[a] - zi[b]);
+            double or = 0.5 * (zi[a] + zi[b]);
+            double oi = -0.5 * (zr[a] - zr[b]);
+            double wr = plan.cos[k];
+            double wi = plan.sin[k];
+            double xr = er + wr * or - wi * oi;
+            double xi = ei + wr * oi + wi * or;
+            re[k] = xr;
+            im[k] = xi;
+            if (k > 0 && k < h) {
+                re[n - k] = xr;
+                im[n - k] = -xi;
+            }
+        }
+    }
+
+    private void transform(Plan plan, double[] re, double[] im) {
+        if (plan.factors == null) {
+            bluestein(plan, re, im);
+            return;
+        }
+
+        //The recursion reads from a copy of the input and writes the result to re and im
+        int n = plan.n;
+        if (workRe == null || workRe.length < n) {
+            workRe = new double[n];
+            workIm = new double[n];
+        }
+        System.arraycopy(re, 0, workRe, 0, n);
+        System.arraycopy(im, 0, workIm, 0, n);
+        mixedRadix(plan, re, im, 0, workRe, workIm, 0, 1, 0);
+    }
+
+    //One step of the decimation in time: Transform the p interleaved sub-sequences of size m
+    //(every p-th value of the input, starting at in with the given stride) into consecutive blocks
+    //of the output and combine them with a butterfly of radix p.
+    private void mixedRadix(Plan plan, double[] outRe, double[] outIm, int out, double[] inRe, double[] inIm, int in, int stride, int factor) {
+        int p = plan.factors[factor];
+        int m = plan.factors[factor + 1];
+
+        if (m == 1) {
+            for (int q = 0; q < p; q++) {
+                outRe[out + q] = inRe[in + q * stride];
+                outIm[out + q] = inIm[in + q * stride];
+            }
+        } else {
+            for (int q = 0; q < p; q++)
+                mixedRadix(plan, outRe, outIm, out + q * m, inRe, inIm, in + q * stride, stride * p, factor + 2);
+        }
+
+        switch (p) {
+            case 2:
+                butterfly2(plan, outRe, outIm, out, stride, m);
+                break;
+            case 3:
+                butterfly3(plan, outRe, outIm, out, stride, m);
+                break;
+            case 4:
+                butterfly4(plan, outRe, outIm, out, stride, m);
+                break;
+            case 5:
+                butterfly5(plan, outRe, outIm, out, stride, m);
+                break;
+            default:
+                butterfly(plan, outRe, outIm, out, stride, m, p);
+                break;
+        }
+    }
+
+    private static void butterfly2(Plan plan, double[] re, double[] im, int out, int stride, int m) {
+        double[] twRe = plan.twiddleRe;
+        double[] twIm = plan.twiddleIm;
+        for (int k = 0; k < m; k++) {
+            int a = out + k;
+            int b = a + m;
+            double wr = twRe[k * stride];
+            double wi = twIm[k * stride];
+            double tr = re[b] * wr - im[b] * wi;
+            double ti = re[b] * wi + im[b] * wr;
+            re[b] = re[a] - tr;
+            im[b] = im[a] - ti;
+            re[a] += tr;
+            im[a] += ti;
+        }
+    }
+
+    private static void butterfly3(Plan plan, double[] re, double[] im, int out, int stride, int m) {
+        double[] twRe = plan.twiddleRe;
+        double[] twIm = plan.twiddleIm;
+        double epi3 = twIm[stride * m]; //Imaginary part of exp(-2 pi i / 3)
+        for (int k = 0; k < m; k++) {
+            int i0 = out + k;
+            int i1 = i0 + m;
+            int i2 = i1 + m;
+            int t1 = k * stride;
+            int t2 = 2 * t1;
+            double s1r = re[i1] * twRe[t1] - im[i1] * twIm[t1];
+            double s1i = re[i1] * twIm[t1] + im[i1] * twRe[t1];
+            double s2r = re[i2] * twRe[t2] - im[i2] * twIm[t2];
+            double s2i = re[i2] * twIm[t2] + im[i2] * twRe[t2];
+            double s3r = s1r + s2r;
+            double s3i = s1i + s2i;
+            double s0r = (s1r - s2r) * epi3;
+            double s0i = (s1i - s2i) * epi3;
+            double hr = re[i0] - 0.5 * s3r;
+            double hi = im[i0] - 0.5 * s3i;
+            re[i0] += s3r;
+            im[i0] += s3i;
+            re[i2] = hr + s0i;
+            im[i2] = hi - s0r;
+            re[i1] = hr - s0i;
+            im[i1] = hi + s0r;
+        }
+    }
+
+    private static void butterfly4(Plan plan, double[] re, double[] im, int out, int stride, int m) {
+        double[] twRe = plan.twiddleRe;
+        double[] twIm = plan.twiddleIm;
+        for (int k = 0; k < m; k++) {
+            int i0 = out + k;
+            int i1 = i0 + m;
+            int i2 = i1 + m;
+            int i3 = i2 + m;
+            int t1 = k * stride;
+            int t2 = 2 * t1;
+            int t3 = 3 * t1;
+            double s0r = re[i1] * twRe[t1] - im[i1] * twIm[t1];
+            double s0i = re[i1] * twIm[t1] + im[i1] * twRe[t1];
+            double s1r = re[i2] * twRe[t2] - im[i2] * twIm[t2];
+            double s1i = re[i2] * twIm[t2] + im[i2] * twRe[t2];
+            double s2r = re[i3] * twRe[t3] - im[i3] * twIm[t3];
+            double s2i = re[i3] * twIm[t3] + im[i3] * twRe[t3];
+            double s5r = re[i0] - s1r;
+            double s5i = im[i0] - s1i;
+            double x0r = re[i0] + s1r;
+            double x0i = im[i0] + s1i;
+            double s3r = s0r + s2r;
+            double s3i = s0i + s2i;
+            double s4r = s0r - s2r;
+            double s4i = s0i - s2i;
+            re[i2] = x0r - s3r;
+            im[i2] = x0i - s3i;
+            re[i0] = x0r + s3r;
+            im[i0] = x0i + s3i;
+            re[i1] = s5r + s4i;
+            im[i1] = s5i - s4r;
+            re[i3] = s5r - s4i;
+            im[i3] = s5i + s4r;
+        }
+    }
+
+    private static void butterfly5(Plan plan, double[] re, double[] im, int out, int stride, int m) {
+        double[] twRe = plan.twiddleRe;
+        double[] twIm = plan.twiddleIm;
+        double yar = twRe[stride * m]; //exp(-2 pi i / 5)
+        double yai = twIm[stride * m];
+        double ybr = twRe[2 * stride * m]; //exp(-4 pi i / 5)
+        double ybi = twIm[2 * stride * m];
+        for (int k = 0; k < m; k++) {
+            int i0 = out + k;
+            int i1 = i0 + m;
+            int i2 = i1 + m;
+            int i3 = i2 + m;
+            int i4 = i3 + m;
+            int t1 = k * stride;
+            int t2 = 2 * t1;
+            int t3 = 3 * t1;
+            int t4 = 4 * t1;
+            double s0r = re[i0];
+            double s0i = im[i0];
+            double s1r = re[i1] * twRe[t1] - im[i1] * twIm[t1];
+            double s1i = re[i1] * twIm[t1] + im[i1] * twRe[t1];
+            double s2r = re[i2] * twRe[t2] - im[i2] * twIm[t2];
+            double s2i = re[i2] * twIm[t2] + im[i2] * twRe[t2];
+            double s3r = re[i3] * twRe[t3] - im[i3] * twIm[t3];
+            double s3i = re[i3] * twIm[t3] + im[i3] * twRe[t3];
+            double s4r = re[i4] * twRe[t4] - im[i4] * twIm[t4];
+            double s4i = re[i4] * twIm[t4] + im[i4] * twRe[t4];
+
+            double s7r = s1r + s4r;
+            double s7i = s1i + s4i;
+            double s10r = s1r - s4r;
+            double s10i = s1i - s4i;
+            double s8r = s2r + s3r;
+            double s8i = s2i + s3i;
+            double s9r = s2r - s3r;
+            double s9i = s2i - s3i;
+
+            re[i0] = s0r + s7r + s8r;
+            im[i0] = s0i + s7i + s8i;
+
+            double s5r = s0r + s7r * yar + s8r * ybr;
+            double s5i = s0i + s7i * yar + s8i * ybr;
+            double s6r = s10i * yai + s9i * ybi;
+            double s6i = -s10r * yai - s9r * ybi;
+            re[i1] = s5r - s6r;
+            im[i1] = s5i - s6i;
+            re[i4] = s5r + s6r;
+            im[i4] = s5i + s6i;
+
+            double s11r = s0r + s7r * ybr + s8r * yar;
+            double s11i = s0i + s7i * ybr + s8i * yar;
+            double s12r = -s10i * ybi + s9i * yai;
+            double s12i = s10r * ybi - s9r * yai;
+            re[i2] = s11r + s12r;
+            im[i2] = s11i + s12i;
+            re[i3] = s11r - s12r;
+            im[i3] = s11i - s12i;
+        }
+    }
+
+    //Butterfly of any radix p, calculated as a direct DFT of size p
+    private void butterfly(Plan plan, double[] re, double[] im, int out, int stride, int m, int p) {
+        double[] twRe = plan.twiddleRe;
+        double[] twIm = plan.twiddleIm;
+        int n = plan.n;
+        if (radixRe == null || radixRe.length < p) {
+            radixRe = new double[p];
+            radixIm = new double[p];
+        }
+        double[] sr = radixRe;
+        double[] si = radixIm;
+
+        for (int u = 0; u < m; u++) {
+            for (int q = 0, k = out + u; q < p; q++, k += m) {
+                sr[q] = re[k];
+                si[q] = im[k];
+            }
+            for (int q1 = 0, k = u; q1 < p; q1++, k += m) {
+                int step = stride * k;
+                int t = 0;
+                double xr = sr[0];
+                double xi = si[0];
+                for (int q = 1; q < p; q++) {
+                    t += step;
+                    if (t >= n)
+                        t -= n;
+                    xr += sr[q] * twRe[t] - si[q] * twIm[t];
+                    xi += sr[q] * twIm[t] + si[q] * twRe[t];
+                }
+                re[out + k] = xr;
+                im[out + k] = xi;
+            }
+        }
+    }
+
+    private void bluestein(Plan plan, double[] re, double[] im) {
+        int n = plan.n;
+        int m = plan.conv.n;
+        if (convRe == null || convRe.length < m) {
+            convRe = new double[m];
+            convIm = new double[m];
+        }
+        double[] ar = convRe;
+        double[] ai = convIm;
+
+        for (int k = 0; k < n; k++) {
+            ar[k] = re[k] * plan.chirpRe[k] - im[k] * plan.chirpIm[k];
+            ai[k] = re[k] * plan.chirpIm[k] + im[k] * plan.chirpRe[k];
+        }
+        Arrays.fill(ar, n, m, 0.);
+        Arrays.fill(ai, n, m, 0.);
+
+        transform(plan.conv, ar, ai);
+
+        //Multiply with the filter and take the complex conjugate, so the next forward transform is an inverse transform
+        for (int k = 0; k < m; k++) {
+            double r = ar[k] * plan.filterRe[k] - ai[k] * plan.filterIm[k];
+            double i = ar[k] * plan.filterIm[k] + ai[k] * plan.filterRe[k];
+            ar[k] = r;
+            ai[k] = -i;
+        }
+
+        transform(plan.conv, ar, ai);
+
+        //Result is the complex conjugate of (ar + i ai), multiplied with the chirp
+        for (int k = 0; k < n; k++) {
+            re[k] = plan.chirpRe[k] * ar[k] + plan.chirpIm[k] * ai[k];
+            im[k] = plan.chirpIm[k] * ar[k] - plan.chirpRe[k] * ai[k];
+        }
+    }
+
+    //Power of two needed by correlate() for the given sizes. Large enough, so that the cyclic
+    //correlation of the FFT does not wrap around into the requested range.
+    static int correlationSize(int sizeA, int sizeB, int count) {
+        int size = Math.max(sizeA, sizeB + count - 1);
+        return Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+    }
+
+    //Cost of correlate() in units of the multiplications of the direct calculation
+    static long correlationCost(int sizeA, int sizeB, int count) {
+        int size = correlationSize(sizeA, sizeB, count);
+        return (long)CORRELATION_FFT_COST * size * Integer.numberOfTrailingZeros(size);
+    }
+
+    //Returns true if correlate() is faster than calculating the given number of products directly
+    static boolean correlationPrefersFFT(long products, int sizeA, int sizeB, int count) {
+        return products > correlationCost(sizeA, sizeB, count);
+    }
+
+    //Correlation c[i] = sum_j a[i+j]*b[j] for i = 0..count-1, with a and b being zero beyond
+    //sizeA and sizeB, calculated via the Wiener-Khinchin theorem (the correlation is the inverse
+    //transform of A times the complex conjugate of B).
+    //Both real inputs are transformed at once as real and imaginary part of a single complex
+    //input, so this takes two FFTs. a and b may be the same array for an autocorrelation.
+    void correlate(double[] a, int sizeA, double[] b, int sizeB, int count, double[] c) {
+        int size = correlationSize(sizeA, sizeB, count);
+        Plan plan = getPlan(size);
+        if (corrRe == null || corrRe.length < size) {
+            corrRe = new double[size];
+            corrIm = new double[size];
+        }
+        double[] cx = corrRe;
+        double[] cy = corrIm;
+
+        System.arraycopy(a, 0, cx, 0, sizeA);
+        Arrays.fill(cx, sizeA, size, 0.);
+        System.arraycopy(b, 0, cy, 0, sizeB);
+        Arrays.fill(cy, sizeB, size, 0.);
+
+        transform(plan, cx, cy);
+
+        //Z = A + iB, so A[k] = (Z[k] + conj(Z[N-k]))/2 and B[k] = (Z[k] - conj(Z[N-k]))/2i
+        //We need C[k] = A[k]*conj(B[k]), which is hermitian as c is real. We store conj(C) to
+        //get the inverse transform from the forward one.
+        for (int k = 0; k <= size / 2; k++) {
+            int m = (size - k) & (size - 1);
+            double ar = 0.5 * (cx[k] + cx[m]);
+            double ai = 0.5 * (cy[k] - cy[m]);
+            double br = 0.5 * (cy[k] + cy[m]);
+            double bi = 0.5 * (cx[k] - cx[m]);
+            double re = ar * br - ai * bi;
+            double im = ar * bi + ai * br;
+            cx[k] = re;
+            cy[k] = -im;
+            cx[m] = re;
+            cy[m] = im;
+        }
+
+        transform(plan, cx, cy);
+
+        for (int i = 0; i < count; i++)
+            c[i] = cx[i] / size;
+    }
+}
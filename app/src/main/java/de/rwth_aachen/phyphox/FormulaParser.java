@@ -1,9 +1,14 @@
 package de.rwth_aachen.phyphox;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Vector;
 
 public class FormulaParser {
     Source base = null;
+    boolean hasArrayRefs = false; //The formula contains at least one reference to a full input ([n_])
+    HashSet<Integer> singleRefs = new HashSet<>(); //Inputs of which only the last value is used ([n])
 
     class FormulaException extends Exception {
         FormulaException() {
@@ -34,21 +39,21 @@ public class FormulaParser {
             this.value = value;
         }
 
-        public Double get(Vector<Double[]> in, int i) throws FormulaException {
+        public Double get(Vector<DoubleView> in, int i) throws FormulaException {
             if (node != null) {
                 return node.calculate(in, i);
             } else if (index != null) {
                 if (index >= in.size())
                     throw new FormulaException("Index too large.");
-                Double[] thisIn = in.get(index);
-                if (thisIn.length == 0)
+                DoubleView thisIn = in.get(index);
+                if (thisIn == null || thisIn.size() == 0)
                     throw new FormulaException("Empty input.");
                 if (single) {
-                    return thisIn[thisIn.length-1];
+                    return thisIn.last();
                 } else {
-                    if (i > thisIn.length)
+                    if (i >= thisIn.size())
                         throw new FormulaException("Input too short.");
-                    return thisIn[i];
+                    return thisIn.get(i);
                 }
             } else
                 return value;
@@ -65,148 +70,298 @@ public class FormulaParser {
             this.in2 = in2;
         }
 
-        public Double calculate(Vector<Double[]> in, int i) throws FormulaException {
+        public Double calculate(Vector<DoubleView> in, int i) throws FormulaException {
             return func.apply(in1.get(in, i), in2 != null ? in2.get(in, i) : null);
         }
 
     }
 
+    //Functions work on single values (for parts of the formula that do not depend on array inputs)
+    //and on blocks of [count] values in the compiled program.
     static class Function {
         protected Double apply (Double in1, Double in2) {
             return Double.NaN;
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = apply(a[i], b != null ? b[i] : null);
+        }
+
+        //Functions with two parameters cannot be evaluated if the second one is missing
+        boolean isBinary() {
+            return false;
+        }
     }
 
     static class AddFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return in1+in2;
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = a[i]+b[i];
+        }
+
+        boolean isBinary() {
+            return true;
+        }
     }
 
     static class MultiplyFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return in1*in2;
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = a[i]*b[i];
+        }
+
+        boolean isBinary() {
+            return true;
+        }
     }
 
     static class SubtractFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return in1-in2;
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = a[i]-b[i];
+        }
+
+        boolean isBinary() {
+            return true;
+        }
     }
 
     static class DivideFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return in1/in2;
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = a[i]/b[i];
+        }
+
+        boolean isBinary() {
+            return true;
+        }
     }
 
     static class ModuloFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return in1%in2;
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = a[i]%b[i];
+        }
+
+        boolean isBinary() {
+            return true;
+        }
     }
 
     static class PowerFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.pow(in1, in2);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.pow(a[i], b[i]);
+        }
+
+        boolean isBinary() {
+            return true;
+        }
     }
 
     static class MinusFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return -in1;
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = -a[i];
+        }
     }
 
     static class SqrtFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.sqrt(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.sqrt(a[i]);
+        }
     }
 
     static class SinFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.sin(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.sin(a[i]);
+        }
     }
 
     static class CosFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.cos(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.cos(a[i]);
+        }
     }
 
     static class TanFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.tan(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.tan(a[i]);
+        }
     }
 
     static class AsinFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.asin(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.asin(a[i]);
+        }
     }
 
     static class AcosFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.acos(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.acos(a[i]);
+        }
     }
 
     static class AtanFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.atan(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.atan(a[i]);
+        }
     }
 
     static class Atan2Function extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.atan2(in1, in2);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.atan2(a[i], b[i]);
+        }
+
+        boolean isBinary() {
+            return true;
+        }
     }
 
     static class SinhFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.sinh(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.sinh(a[i]);
+        }
     }
 
     static class CoshFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.cosh(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.cosh(a[i]);
+        }
     }
 
     static class TanhFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.tanh(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.tanh(a[i]);
+        }
     }
 
     static class ExpFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.exp(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.exp(a[i]);
+        }
     }
 
     static class LogFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.log(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.log(a[i]);
+        }
     }
 
     static class AbsFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.abs(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.abs(a[i]);
+        }
     }
 
     static class SignFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.signum(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.signum(a[i]);
+        }
     }
 
     static class HeavisideFunction extends Function {
@@ -215,36 +370,74 @@ public class FormulaParser {
                 return Double.NaN;
             return in1 >= 0 ? 1.0 : 0.0;
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Double.isNaN(a[i]) ? Double.NaN : (a[i] >= 0 ? 1.0 : 0.0);
+        }
     }
 
     static class RoundFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return (double)Math.round(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = (double)Math.round(a[i]);
+        }
     }
 
     static class CeilFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.ceil(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.ceil(a[i]);
+        }
     }
 
     static class FloorFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.floor(in1);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.floor(a[i]);
+        }
     }
 
     static class MinFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.min(in1, in2);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.min(a[i], b[i]);
+        }
+
+        boolean isBinary() {
+            return true;
+        }
     }
 
     static class MaxFunction extends Function {
         protected Double apply (Double in1, Double in2) {
             return Math.max(in1, in2);
         }
+
+        protected void apply (double[] a, double[] b, double[] out, int count) {
+            for (int i = 0; i < count; i++)
+                out[i] = Math.max(a[i], b[i]);
+        }
+
+        boolean isBinary() {
+            return true;
+        }
     }
 
     private Source parse(String formula, int start, int end) throws FormulaException {
@@ -288,6 +481,10 @@ public class FormulaParser {
                     Integer index = Integer.valueOf(formula.substring(start, end));
                     if (index < 1)
                         throw new FormulaException("Indices start at 1.");
+                    if (single)
+                        singleRefs.add(index-1);
+                    else
+                        hasArrayRefs = true;
                     return new Source(index, single);
                 } catch (Exception e) {
                     throw new FormulaException("Could not parse index: " + formula.substring(start, end));
@@ -488,22 +685,202 @@ public class FormulaParser {
         }
     }
 
+    //The parsed formula is compiled into a flat program that works on registers holding blocks of
+    //BLOCK_SIZE values. The first registers hold the array inputs, followed by registers for parts
+    //of the formula that are the same for every index (literals, which are folded to a single
+    //value right away, and parts that only depend on single values [n], evaluated once per
+    //execute) and one register for the result of each remaining operation.
+    private static final int BLOCK_SIZE = 256;
+
+    private boolean valid = false; //The formula has all required parameters, otherwise it never yields a value
+    private int[] refs; //All referenced inputs, each of them has to exist and must not be empty
+    private int[] arrayRefs; //Referenced full inputs, the shortest one limits the output
+
+    private int[] loadInputs; //Input index to be loaded into register i
+    private Vector<Source> uniforms = new Vector<>(); //Single value of register loadInputs.length + i
+    private Function[] functions; //The program: functions[k] reads registers args1[k] and args2[k] (-1 if not needed) and writes to targets[k]
+    private int[] args1, args2, targets;
+    private int result; //Register holding the result
+    private double[][] registers = null; //Allocated on first use
+
+    //Collect all referenced inputs and check that all functions have their parameters. Note, that
+    //unused parameters (a second parameter to a function that only takes one) are still evaluated
+    //by the parser, so they also count.
+    private boolean validate(Source source, HashSet<Integer> refs, HashSet<Integer> arrayRefs) {
+        if (source == null)
+            return false;
+        if (source.node == null) {
+            if (source.index != null) {
+                refs.add(source.index);
+                if (!source.single)
+                    arrayRefs.add(source.index);
+            }
+            return true;
+        }
+        boolean valid = validate(source.node.in1, refs, arrayRefs);
+        if (source.node.in2 != null)
+            valid &= validate(source.node.in2, refs, arrayRefs);
+        else if (source.node.func.isBinary())
+            valid = false;
+        return valid;
+    }
+
+    //Does the value of this source change with the index?
+    private boolean dependsOnArray(Source source) {
+        if (source.node == null)
+            return source.index != null && !source.single;
+        if (dependsOnArray(source.node.in1))
+            return true;
+        return source.node.func.isBinary() && dependsOnArray(source.node.in2);
+    }
+
+    //Does the evaluation of this source touch any input?
+    private boolean hasRefs(Source source) {
+        if (source.node == null)
+            return source.index != null;
+        return hasRefs(source.node.in1) || (source.node.in2 != null && hasRefs(source.node.in2));
+    }
+
+    //Compiler state, only used while compiling
+    private class Compiler {
+        Vector<Integer> kinds = new Vector<>(); //Kind of each register in the order of creation: 0 = input, 1 = uniform, 2 = function result
+        HashMap<Integer, Integer> loads = new HashMap<>(); //Register of an input index
+        Vector<Integer> loadInputs = new Vector<>();
+        Vector<Function> functions = new Vector<>();
+        Vector<Integer> args = new Vector<>(); //Two registers per function
+
+        int register(int kind) {
+            kinds.add(kind);
+            return kinds.size() - 1;
+        }
+
+        //Returns the register that holds the value of the source
+        int compile(Source source) throws FormulaException {
+            if (!dependsOnArray(source)) {
+                if (!hasRefs(source))
+                    source = new Source(source.get(null, 0)); //Constant folding
+                uniforms.add(source);
+                return register(1);
+            }
+            if (source.node == null) {
+                Integer r = loads.get(source.index);
+                if (r == null) {
+                    r = register(0);
+                    loads.put(source.index, r);
+                    loadInputs.add(source.index);
+                }
+                return r;
+            }
+            Function func = source.node.func;
+            int a = compile(source.node.in1);
+            int b = func.isBinary() ? compile(source.node.in2) : -1;
+            functions.add(func);
+            args.add(a);
+            args.add(b);
+            return register(2);
+        }
+    }
+
+    private void compile() throws FormulaException {
+        HashSet<Integer> refSet = new HashSet<>();
+        HashSet<Integer> arrayRefSet = new HashSet<>();
+        valid = validate(base, refSet, arrayRefSet);
+        if (!valid)
+            return;
+        refs = new int[refSet.size()];
+        int i = 0;
+        for (int ref : refSet)
+            refs[i++] = ref;
+        arrayRefs = new int[arrayRefSet.size()];
+        i = 0;
+        for (int ref : arrayRefSet)
+            arrayRefs[i++] = ref;
+
+        Compiler compiler = new Compiler();
+        int resultRegister = compiler.compile(base);
+
+        //Renumber registers: Inputs first, then uniforms, then results of the functions in the order of execution
+        int[] map = new int[compiler.kinds.size()];
+        int[] next = {0, compiler.loadInputs.size(), compiler.loadInputs.size() + uniforms.size()};
+        for (i = 0; i < map.length; i++)
+            map[i] = next[compiler.kinds.get(i)]++;
+        result = map[resultRegister];
+        registers = null;
+
+        loadInputs = new int[compiler.loadInputs.size()];
+        for (i = 0; i < loadInputs.length; i++)
+            loadInputs[i] = compiler.loadInputs.get(i);
+
+        int n = compiler.functions.size();
+        functions = compiler.functions.toArray(new Function[n]);
+        args1 = new int[n];
+        args2 = new int[n];
+        targets = new int[n];
+        for (i = 0; i < n; i++) {
+            args1[i] = map[compiler.args.get(2*i)];
+            int b = compiler.args.get(2*i+1);
+            args2[i] = b < 0 ? -1 : map[b];
+            targets[i] = loadInputs.length + uniforms.size() + i;
+        }
+    }
+
     FormulaParser(String formula) throws FormulaException {
         String strippedFormula = formula.replaceAll("\\s+","").toLowerCase();
         base = parse(strippedFormula, 0, strippedFormula.length());
+        compile();
     }
 
-    public void execute(Vector<Double[]> in, DataOutput out) {
+    public void execute(Vector<DoubleView> in, DataOutput out) {
+        execute(in, out, 0);
+    }
+
+    //Calculate the results from index start on. Used to continue previous results if the inputs only got new values.
+    //The results are the same as evaluating the formula for every index until the first index at
+    //which the formula cannot be evaluated (i.e. an array input is too short).
+    public void execute(Vector<DoubleView> in, DataOutput out, int start) {
+        if (!valid)
+            return;
         int n = 0;
-        for (Double[] i : in) {
-            n = Math.max(n, i.length);
+        for (DoubleView i : in) {
+            if (i != null)
+                n = Math.max(n, i.size());
+        }
+        for (int ref : refs) {
+            if (ref >= in.size() || in.get(ref) == null || in.get(ref).size() == 0)
+                return;
         }
-        for (int i = 0; i < n; i++) {
+        for (int ref : arrayRefs)
+            n = Math.min(n, in.get(ref).size());
+        if (start >= n)
+            return;
+
+        if (registers == null)
+            registers = new double[loadInputs.length + uniforms.size() + functions.length][BLOCK_SIZE];
+
+        int blockSize = Math.min(BLOCK_SIZE, n - start);
+        for (int i = 0; i < uniforms.size(); i++) {
+            double v;
             try {
-                out.append(base.get(in, i));
-            } catch (Exception e) {
-                break;
+                v = uniforms.get(i).get(in, 0);
+            } catch (FormulaException e) {
+                return;
             }
+            Arrays.fill(registers[loadInputs.length + i], 0, blockSize, v);
+        }
+
+        DoubleView[] inputs = new DoubleView[loadInputs.length];
+        for (int i = 0; i < loadInputs.length; i++)
+            inputs[i] = in.get(loadInputs[i]);
+
+        double[] r = registers[result];
+        for (int offset = start; offset < n; offset += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, n - offset);
+            for (int i = 0; i < inputs.length; i++)
+                inputs[i].copyTo(offset, registers[i], 0, count);
+            for (int k = 0; k < functions.length; k++)
+                functions[k].apply(registers[args1[k]], args2[k] < 0 ? null : registers[args2[k]], registers[targets[k]], count);
+            for (int i = 0; i < count; i++)
+                out.append(r[i]);
         }
     }
 
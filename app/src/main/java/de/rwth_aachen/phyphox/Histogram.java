@@ -0,0 +1,166 @@
+package de.rwth_aachen.phyphox;
+
+import java.io.Serializable;
+
+//Histograms on primitive arrays, used by binningAM and mapAM
+//Values can be added at any time, so a module can keep its histogram between updates and only
+//add the values that are new since the previous update.
+//The one-dimensional histogram counts values in bins of width dx starting at x0. If it has a fixed
+//number of bins, values outside of x0..x0+bins*dx are dropped. Otherwise the range grows with the
+//values in both directions. The counts are kept in an array with spare room on both sides, which is
+//doubled if it runs out, so extending the range is O(1) on average.
+
+class Histogram implements Serializable {
+    private static final int MAX_BINS = 1 << 26; //Values that would extend the range beyond this are dropped instead of running out of memory
+
+    final double x0, dx;
+    final int bins; //Fixed number of bins or 0 if the range grows with the data
+
+    private long[] counts;
+    private int offset; //Index in counts of the bin with index "first"
+    private int first = 0; //Index (relative to x0) of the first bin that has been used
+    private int size = 0; //Number of bins between the first and the last used bin
+
+    Histogram(double x0, double dx, int bins) {
+        this.x0 = x0;
+        this.dx = dx;
+        this.bins = Math.max(bins, 0);
+        if (this.bins > 0) {
+            counts = new long[this.bins];
+            size = this.bins;
+        } else
+            counts = new long[16];
+        offset = 0;
+    }
+
+    boolean hasParameters(double x0, double dx, int bins) {
+        return Double.compare(x0, this.x0) == 0 && Double.compare(dx, this.dx) == 0 && Math.max(bins, 0) == this.bins;
+    }
+
+    //Make room for bin index i (relative to x0). Returns false if the histogram would become too large.
+    private boolean include(int i) {
+        if (size == 0) {
+            first = i;
+            offset = counts.length / 2;
+            size = 1;
+            return true;
+        }
+        if (i >= first && i < first + size)
+            return true;
+        long newFirst = Math.min(first, i);
+        long newSize = Math.max(first + size, (long)i + 1) - newFirst;
+        if (newSize > MAX_BINS)
+            return false;
+        int before = (int)(first - newFirst); //Number of bins to add before the current first one
+        if (offset - before < 0 || offset - before + newSize > counts.length) {
+            //Grow the array, leaving room on both sides
+            long[] newCounts = new long[(int)Math.max(2 * counts.length, 2 * newSize)];
+            int newOffset = (newCounts.length - (int)newSize) / 2 + before;
+            System.arraycopy(counts, offset, newCounts, newOffset, size);
+            counts = newCounts;
+            offset = newOffset;
+        }
+        offset -= before;
+        first = (int)newFirst;
+        size = (int)newSize;
+        return true;
+    }
+
+    void add(double v) {
+        if (Double.isNaN(v) || Double.isInfinite(v))
+            return;
+        if (bins > 0) {
+            double i = Math.floor((v - x0) / dx);
+            if (i < 0 || i >= bins)
+                return;
+            counts[(int)i]++;
+        } else {
+            int i = (int)((v - x0) / dx); //Rounded towards zero, like binning always did
+            if (include(i))
+                counts[offset + i - first]++;
+        }
+    }
+
+    void add(DoubleView values, int start, int end) {
+        for (int i = start; i < end; i++)
+            add(values.get(i));
+    }
+
+    //Number of bins from the first to the last one that contains a value (or all bins if fixed)
+    int size() {
+        return size;
+    }
+
+    double binStart(int i) {
+        return x0 + (first + i) * dx;
+    }
+
+    long count(int i) {
+        return counts[offset + i];
+    }
+
+    //Two-dimensional histogram on a grid of width x height points from minX to maxX and minY to
+    //maxY (including both). A value is assigned to the nearest grid point. Optionally, the z values
+    //of each point are summed up as well.
+    static class Grid implements Serializable {
+        final int width, height;
+        final double minX, maxX, minY, maxY;
+        final long[] counts;
+        final double[] sums;
+
+        Grid(int width, int height, double minX, double maxX, double minY, double maxY, boolean sum) {
+            this.width = Math.max(width, 0);
+            this.height = Math.max(height, 0);
+            this.minX = minX;
+            this.maxX = maxX;
+            this.minY = minY;
+            this.maxY = maxY;
+            counts = new long[this.width * this.height];
+            sums = sum ? new double[this.width * this.height] : null;
+        }
+
+        boolean hasParameters(int width, int height, double minX, double maxX, double minY, double maxY) {
+            return Math.max(width, 0) == this.width && Math.max(height, 0) == this.height
+                    && Double.compare(minX, this.minX) == 0 && Double.compare(maxX, this.maxX) == 0
+                    && Double.compare(minY, this.minY) == 0 && Double.compare(maxY, this.maxY) == 0;
+        }
+
+        void add(double x, double y, double z) {
+            int ix = (int)Math.round((width-1)*(x-minX)/(maxX-minX));
+            int iy = (int)Math.round((height-1)*(y-minY)/(maxY-minY));
+            if (ix < 0 || ix >= width || iy < 0 || iy >= height)
+                return;
+            int index = ix + iy*width;
+            if (sums != null)
+                sums[index] += z;
+            counts[index]++;
+        }
+
+        void add(DoubleView x, DoubleView y, DoubleView z, int start, int end) {
+            for (int i = start; i < end; i++)
+                add(x.get(i), y.get(i), z == null ? 0.0 : z.get(i));
+        }
+
+        //Empty grid with the same parameters, i.e. for partial results of a parallel reduction
+        Grid emptyCopy() {
+            return new Grid(width, height, minX, maxX, minY, maxY, sums != null);
+        }
+
+        //Add the counts and sums of another grid with the same parameters
+        void merge(Grid other) {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] += other.counts[i];
+            if (sums != null)
+                for (int i = 0; i < sums.length; i++)
+                    sums[i] += other.sums[i];
+        }
+
+        double x(int ix) {
+            return minX + ix*(maxX-minX)/((double)(width-1));
+        }
+
+        double y(int iy) {
+            return minY + iy*(maxY-minY)/((double)(height-1));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package de.rwth_aachen.phyphox;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+//Sorting of indices by primitive double keys, used by sortAM
+//Sorting an Integer[] with a comparator boxes every index and unboxes the keys on every comparison.
+//Instead, every key is turned into a long whose signed order matches Double.compare() (-0.0 before
+//0.0, NaN after +Infinity) and the indices are sorted by these keys with an LSD radix sort. This
+//takes a fixed number of passes over the data, is stable (equal keys keep their original order,
+//just like the merge sort of Arrays.sort()) and works on primitive arrays only.
+//If only a few values of the order are needed, select() finds the k smallest (or largest) values in
+//linear time. Ties are broken by the index, so the result is exactly the beginning of the full order.
+//The work arrays are kept, so a module can reuse them in every update.
+
+class IndexSort implements Serializable {
+    private static final int BITS = 11; //Radix of 2048, so 64 bits take 6 passes
+    private static final int RADIX = 1 << BITS;
+    private static final int PASSES = (64 + BITS - 1) / BITS;
+    private static final int INSERTION_SORT_LIMIT = 64; //Below this, the radix passes do not pay off
+
+    private transient long[] keys, keyBuffer;
+    private transient int[] index, indexBuffer;
+    private int n = 0;
+
+    //A long whose signed order is the order of Double.compare() (NaN and -0.0 included)
+    static long sortableKey(double v) {
+        long bits = Double.doubleToLongBits(v); //All NaN become the same NaN
+        return bits < 0 ? bits ^ Long.MAX_VALUE : bits;
+    }
+
+    //Set up the keys for the first n values of the view. Call this before sort() or select().
+    void setKeys(DoubleView values, int n, boolean descending) {
+        this.n = n;
+        if (keys == null || keys.length < n) {
+            keys = new long[n];
+            index = new int[n];
+            keyBuffer = null;
+            indexBuffer = null;
+        }
+        for (int i = 0; i < n; i++) {
+            long k = sortableKey(values.get(i));
+            keys[i] = descending ? ~k : k;
+            index[i] = i;
+        }
+    }
+
+    //Index of the i-th value after sort() or select()
+    int get(int i) {
+        return index[i];
+    }
+
+    //Sort all indices by their keys (stable)
+    void sort() {
+        sort(0, n);
+    }
+
+    //Sort the range from..to of the indices by their keys (stable with respect to the current order)
+    private void sort(int from, int to) {
+        if (to - from < INSERTION_SORT_LIMIT) {
+            insertionSort(from, to);
+            return;
+        }
+
+        if (keyBuffer == null || keyBuffer.length < keys.length) {
+            keyBuffer = new long[keys.length];
+            indexBuffer = new int[keys.length];
+        }
+
+        //Count the digits of all passes at once. The sign bit is flipped, so the digits of the
+        //signed keys can be sorted as unsigned numbers.
+        int[][] counts = new int[PASSES][RADIX];
+        for (int i = from; i < to; i++) {
+            long u = keys[i] ^ Long.MIN_VALUE;
+            for (int pass = 0; pass < PASSES; pass++)
+                counts[pass][(int)(u >>> (pass * BITS)) & (RADIX - 1)]++;
+        }
+
+        long[] srcKeys = keys, dstKeys = keyBuffer;
+        int[] srcIndex = index, dstIndex = indexBuffer;
+        for (int pass = 0; pass < PASSES; pass++) {
+            int[] count = counts[pass];
+            int shift = pass * BITS;
+
+            //Skip passes in which all keys have the same digit (i.e. the exponent of similar values)
+            if (count[(int)((srcKeys[from] ^ Long.MIN_VALUE) >>> shift) & (RADIX - 1)] == to - from)
+                continue;
+
+            int sum = from;
+            for (int d = 0; d < RADIX; d++) {
+                int c = count[d];
+                count[d] = sum;
+                sum += c;
+            }
+            for (int i = from; i < to; i++) {
+                long k = srcKeys[i];
+                int pos = count[(int)((k ^ Long.MIN_VALUE) >>> shift) & (RADIX - 1)]++;
+                dstKeys[pos] = k;
+                dstIndex[pos] = srcIndex[i];
+            }
+
+            long[] tk = srcKeys; srcKeys = dstKeys; dstKeys = tk;
+            int[] ti = srcIndex; srcIndex = dstIndex; dstIndex = ti;
+        }
+
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, from, keys, from, to - from);
+            System.arraycopy(srcIndex, from, index, from, to - from);
+        }
+    }
+
+    private void insertionSort(int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            long k = keys[i];
+            int idx = index[i];
+            int j = i - 1;
+            while (j >= from && keys[j] > k) {
+                keys[j + 1] = keys[j];
+                index[j + 1] = index[j];
+                j--;
+            }
+            keys[j + 1] = k;
+            index[j + 1] = idx;
+        }
+    }
+
+    //Order by key and by index for equal keys, which is the order of the stable sort
+    private boolean less(int a, int b) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && index[a] < index[b]);
+    }
+
+    private void swap(int a, int b) {
+        long k = keys[a]; keys[a] = keys[b]; keys[b] = k;
+        int i = index[a]; index[a] = index[b]; index[b] = i;
+    }
+
+    //Move the k smallest keys to the front (quickselect). If sorted is set, these are sorted as
+    //well, so the first k indices match those of sort().
+    void select(int k, boolean sorted) {
+        k = Math.max(0, Math.min(k, n));
+        if (k == 0)
+            return;
+        if (k < n)
+            select(0, n, k - 1);
+        if (sorted) {
+            //The selection has mixed up the order of equal keys, so these are sorted by index afterwards
+            sort(0, k);
+            sortTies(0, k);
+        }
+    }
+
+    //Rearrange from..to, so the element at position nth is the one the full order would put there,
+    //with smaller elements before and larger ones after it.
+    private void select(int from, int to, int nth) {
+        while (to - from > 1) {
+            //Median of three as pivot, moved to the end of the range
+            int mid = (from + to) >>> 1;
+            int last = to - 1;
+            if (less(mid, from))
+                swap(mid, from);
+            if (less(last, from))
+                swap(last, from);
+            if (less(mid, last))
+                swap(mid, last);
+
+            //Partition, the pivot is unique as ties are broken by the index
+            int store = from;
+            for (int i = from; i < last; i++) {
+                if (less(i, last))
+                    swap(i, store++);
+            }
+            swap(store, last);
+
+            if (store == nth)
+                return;
+            if (nth < store)
+                to = store;
+            else
+                from = store + 1;
+        }
+    }
+
+    //Position of the smallest key in from..to
+    private int minimum(int from, int to) {
+        int min = from;
+        for (int i = from + 1; i < to; i++) {
+            if (less(i, min))
+                min = i;
+        }
+        return min;
+    }
+
+    //Sort runs of equal keys by their index
+    private void sortTies(int from, int to) {
+        int start = from;
+        for (int i = from + 1; i <= to; i++) {
+            if (i == to || keys[i] != keys[start]) {
+                if (i - start > 1)
+                    Arrays.sort(index, start, i);
+                start = i;
+            }
+        }
+    }
+
+    //Median of the values passed to setKeys() (which should be ascending). NaN values are ignored.
+    //Returns the position of the lower median in the order and stores the median itself in result[0].
+    //The indices are rearranged. Returns -1 if there are no values.
+    int median(DoubleView values, double[] result) {
+        long nanKey = sortableKey(Double.NaN);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (keys[i] != nanKey)
+                m++;
+        }
+        if (m == 0)
+            return -1;
+        int lower = (m - 1) / 2;
+        select(0, n, lower);
+        double v = values.get(index[lower]);
+        if (m % 2 == 0) {
+            //The upper median is the smallest value after the lower one
+            int upper = minimum(lower + 1, n);
+            v = 0.5 * (v + values.get(index[upper]));
+        }
+        result[0] = v;
+        return lower;
+    }
+}
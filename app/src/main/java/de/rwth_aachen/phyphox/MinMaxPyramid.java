@@ -0,0 +1,222 @@
+package de.rwth_aachen.phyphox;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+//Multi-resolution min/max decimation of the float copy of a buffer, used by the graphs
+//A graph cannot show more than a few points per pixel column, but a long recording easily has a
+//million values on a few hundred pixels. For each bucket of consecutive values, the pyramid keeps
+//the position of the minimum and the maximum. The finest level has buckets of 2^BASE_SHIFT values
+//and every level above combines 2^LEVEL_SHIFT buckets of the level below. To draw a range of
+//values, the renderer picks the finest level with no more buckets than pixel columns and draws the
+//first, minimum, maximum and last value of each bucket (M4 aggregation), which looks exactly like
+//drawing all values as a line, but takes at most four vertices per pixel column.
+//The pyramid belongs to a FloatBufferRepresentation and is updated by DataBuffer together with
+//its float copy, so it only costs a few operations per appended value. Buckets are aligned to the
+//absolute index of a value (counted since the float copy has been created), so if the oldest
+//values of a buffer with a fixed size are dropped, the buckets remain valid except for the first
+//one, which is scanned again when drawn.
+//It also tracks if the valid values are in non-decreasing order, as the decimation of a curve by
+//its indices only makes sense if these are sorted along the x axis.
+//Not thread-safe. Use it while holding the lock of its FloatBufferRepresentation.
+
+class MinMaxPyramid {
+    static final int BASE_SHIFT = 4; //The finest level has buckets of 16 values
+    static final int LEVEL_SHIFT = 2; //Each level combines 4 buckets of the level below
+    private static final float INVALID = -3.3e38f; //NaN is tagged by values below this in the float copy (see DataBuffer.getFloatBuffer())
+
+    private long first = 0; //Absolute index of the oldest value, which is at position 0 of the float copy
+    private long end = 0; //Absolute index after the newest value
+    private boolean monotonic = true;
+    private float lastValid = Float.NaN;
+
+    private static class Level {
+        final int shift;
+        long firstBucket = 0; //Absolute index of the bucket at position 0 of the arrays
+        int count = 0; //Number of buckets, the last one may not be complete
+        long[] minIndex, maxIndex; //Absolute index of the extrema or -1 if the bucket has no valid value
+        float[] min, max;
+
+        Level(int shift, int capacity) {
+            this.shift = shift;
+            minIndex = new long[capacity];
+            maxIndex = new long[capacity];
+            min = new float[capacity];
+            max = new float[capacity];
+        }
+
+        //Position of a new bucket at the end
+        int addBucket() {
+            if (count == min.length) {
+                int capacity = 2 * count;
+                minIndex = Arrays.copyOf(minIndex, capacity);
+                maxIndex = Arrays.copyOf(maxIndex, capacity);
+                min = Arrays.copyOf(min, capacity);
+                max = Arrays.copyOf(max, capacity);
+            }
+            minIndex[count] = -1;
+            maxIndex[count] = -1;
+            return count++;
+        }
+
+        void include(int p, long index, float vMin, float vMax, long indexMax) {
+            if (minIndex[p] < 0 || vMin < min[p]) {
+                min[p] = vMin;
+                minIndex[p] = index;
+            }
+            if (maxIndex[p] < 0 || vMax > max[p]) {
+                max[p] = vMax;
+                maxIndex[p] = indexMax;
+            }
+        }
+
+        //Remove the buckets before the given one from the arrays once they take up much space
+        void dropBefore(long bucket) {
+            int drop = (int)Math.min(bucket - firstBucket, count - 1);
+            if (drop < 64 || drop < count / 2)
+                return;
+            System.arraycopy(minIndex, drop, minIndex, 0, count - drop);
+            System.arraycopy(maxIndex, drop, maxIndex, 0, count - drop);
+            System.arraycopy(min, drop, min, 0, count - drop);
+            System.arraycopy(max, drop, max, 0, count - drop);
+            count -= drop;
+            firstBucket += drop;
+        }
+    }
+
+    private Level[] levels = new Level[0];
+
+    private static boolean isValid(float v) {
+        return !(v < INVALID) && !Float.isNaN(v);
+    }
+
+    //Build the pyramid for the size values of data from offset on
+    MinMaxPyramid(FloatBuffer data, int offset, int size) {
+        for (int i = 0; i < size; i++)
+            add(data.get(offset + i));
+    }
+
+    //Number of values, which has to match the size of the float copy
+    int size() {
+        return (int)(end - first);
+    }
+
+    //True if all valid values are in non-decreasing order
+    boolean isMonotonic() {
+        return monotonic;
+    }
+
+    //Append the next value of the float copy
+    void add(float v) {
+        long index = end++;
+        boolean valid = isValid(v);
+        if (valid) {
+            if (v < lastValid)
+                monotonic = false;
+            lastValid = v;
+        }
+
+        if (levels.length == 0)
+            levels = new Level[] {new Level(BASE_SHIFT, 16)};
+
+        for (Level level : levels) {
+            int p = (int)((index >> level.shift) - level.firstBucket);
+            if (p == level.count)
+                p = level.addBucket();
+            if (valid)
+                level.include(p, index, v, v, index);
+        }
+
+        //Add a level on top once the top level has more buckets than it combines
+        Level top = levels[levels.length - 1];
+        if (top.count > (1 << LEVEL_SHIFT)) {
+            Level next = new Level(top.shift + LEVEL_SHIFT, 16);
+            next.firstBucket = top.firstBucket >> LEVEL_SHIFT;
+            for (int p = 0; p < top.count; p++) {
+                int q = (int)(((top.firstBucket + p) >> LEVEL_SHIFT) - next.firstBucket);
+                while (q >= next.count)
+                    next.addBucket();
+                if (top.minIndex[p] >= 0)
+                    next.include(q, top.minIndex[p], top.min[p], top.max[p], top.maxIndex[p]);
+            }
+            Level[] newLevels = new Level[levels.length + 1];
+            System.arraycopy(levels, 0, newLevels, 0, levels.length);
+            newLevels[levels.length] = next;
+            levels = newLevels;
+        }
+    }
+
+    //The oldest value has been removed from the float copy
+    void dropFirst() {
+        if (first == end)
+            return;
+        first++;
+        for (Level level : levels)
+            level.dropBefore(first >> level.shift);
+    }
+
+    //Collect the points that represent the values from..to (positions in the float copy) on at
+    //most maxBuckets pixel columns: For each bucket the positions of the first, the minimum, the
+    //maximum and the last value in ascending order. out needs room for 4*(maxBuckets+2) positions.
+    //Returns the number of positions or -1 if there are so few values that all of them should be
+    //drawn.
+    int decimate(int from, int to, int maxBuckets, FloatBuffer data, int offset, int[] out) {
+        int n = to - from;
+        if (levels.length == 0 || maxBuckets < 8 || n <= 4 * maxBuckets)
+            return -1;
+
+        //Finest level with few enough buckets
+        Level level = levels[levels.length - 1];
+        for (Level l : levels) {
+            if ((n >> l.shift) + 2 <= maxBuckets) {
+                level = l;
+                break;
+            }
+        }
+
+        long absFrom = first + from;
+        long absTo = first + to;
+        int count = 0;
+        for (long b = absFrom >> level.shift; b <= (absTo - 1) >> level.shift; b++) {
+            long start = Math.max(b << level.shift, absFrom);
+            long stop = Math.min((b + 1) << level.shift, absTo);
+            long minIndex, maxIndex;
+            int p = (int)(b - level.firstBucket);
+            if (start == b << level.shift && stop == (b + 1) << level.shift && start >= first && p >= 0 && p < level.count) {
+                minIndex = level.minIndex[p];
+                maxIndex = level.maxIndex[p];
+            } else {
+                //Partial bucket at the edges of the range, scan the values themselves
+                minIndex = -1;
+                maxIndex = -1;
+                float min = 0.f, max = 0.f;
+                for (long i = start; i < stop; i++) {
+                    float v = data.get(offset + (int)(i - first));
+                    if (!isValid(v))
+                        continue;
+                    if (minIndex < 0 || v < min) {
+                        min = v;
+                        minIndex = i;
+                    }
+                    if (maxIndex < 0 || v > max) {
+                        max = v;
+                        maxIndex = i;
+                    }
+                }
+            }
+
+            //First, extrema in their order and last, skipping duplicates
+            long last = -1;
+            long lo = Math.min(minIndex, maxIndex);
+            long hi = Math.max(minIndex, maxIndex);
+            long[] points = {start, lo, hi, stop - 1};
+            for (long point : points) {
+                if (point < 0 || point <= last)
+                    continue;
+                out[count++] = (int)(point - first);
+                last = point;
+            }
+        }
+        return count;
+    }
+}
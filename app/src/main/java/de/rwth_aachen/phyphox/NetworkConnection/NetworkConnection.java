@@ -307,6 +307,16 @@ public class NetworkConnection implements NetworkService.RequestCallback, Networ
         executeRequested = true;
     }
 
+    //Buffers that are sent in doExecute or written in pushDataToBuffers
+    public List<DataBuffer> getBuffers() {
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (NetworkSendableData item : send.values())
+            buffers.add(item.buffer);
+        for (NetworkReceivableData item : receive.values())
+            buffers.add(item.buffer);
+        return buffers;
+    }
+
     public void doExecute() {
         if (executeRequested) {
             this.requestCallbacks.add(this);
@@ -0,0 +1,202 @@
+package de.rwth_aachen.phyphox;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Parallel loops over large inputs for the analysis modules
+//The AnalysisScheduler runs independent modules concurrently, but a single large module (like a
+//map over 100k GPS points) still runs on one core. Modules can split their work on a range of
+//indices into chunks, which are processed on a ForkJoinPool shared by all modules:
+//- forEach() for element-wise calculations, where each chunk writes its own part of a result array
+//- reduce() for accumulations, where each chunk fills its own partial result (i.e. a histogram),
+//  which are merged at the end in the order of the chunks
+//Splitting only pays off for large inputs, so both fall back to a simple loop on the calling thread
+//below a threshold, which can be set by the experiment (parallelThreshold of the analysis tag).
+//The AnalysisScheduler runs modules on its own threads and reports how many of them are running.
+//While there are several, a kernel only uses its share of the cores (and one chunk per thread, so
+//the chunks cannot spread over the whole pool). This way modules and kernels together do not keep
+//more threads busy than there are cores.
+
+class ParallelKernels {
+    static final int DEFAULT_THRESHOLD = 65536; //Default number of values from which on work is split
+    private static final int MIN_CHUNK = 4096; //Smaller chunks are not worth the overhead
+    private static final int CHUNKS_PER_THREAD = 4; //More chunks than threads to balance uneven work
+
+    private static ForkJoinPool pool = null;
+    private static final AtomicInteger runningModules = new AtomicInteger(); //Modules the scheduler currently runs concurrently
+
+    //Calculation on the indices start (inclusive) to end (exclusive)
+    interface Kernel {
+        void run(int start, int end);
+    }
+
+    //Accumulation into partial results of type T
+    interface Reduction<T> {
+        T create(); //New empty partial result
+        void accumulate(T partial, int start, int end);
+        void merge(T into, T from);
+    }
+
+    //Element-wise functions for the modules
+    interface UnaryOperation {
+        double apply(double x);
+    }
+
+    interface BinaryOperation {
+        double apply(double x, double y);
+    }
+
+    static void moduleStarted() {
+        runningModules.incrementAndGet();
+    }
+
+    static void moduleFinished() {
+        runningModules.decrementAndGet();
+    }
+
+    private static int getCores() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    //Number of threads a kernel may use right now
+    static int getParallelism() {
+        return Math.max(1, getCores() / Math.max(1, runningModules.get()));
+    }
+
+    //Maximum number of chunks to split into if the cores are not shared
+    private static int maxChunks(int chunksPerThread) {
+        int parallelism = getParallelism();
+        return parallelism < getCores() ? parallelism : chunksPerThread * parallelism;
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null)
+            pool = new ForkJoinPool(getCores()); //Idle workers of a ForkJoinPool stop on their own
+        return pool;
+    }
+
+    //Should n values be split? A threshold <= 0 disables splitting.
+    static boolean worthSplitting(int n, int threshold) {
+        return threshold > 0 && n >= threshold && n >= 2 * MIN_CHUNK && getParallelism() > 1;
+    }
+
+    private static int chunkCount(int n, int maxChunks) {
+        return Math.max(1, Math.min(maxChunks, n / MIN_CHUNK));
+    }
+
+    private static class ForEachTask extends RecursiveAction {
+        final Kernel kernel;
+        final int start, end, chunks;
+
+        ForEachTask(Kernel kernel, int start, int end, int chunks) {
+            this.kernel = kernel;
+            this.start = start;
+            this.end = end;
+            this.chunks = chunks;
+        }
+
+        @Override
+        protected void compute() {
+            if (chunks <= 1) {
+                kernel.run(start, end);
+                return;
+            }
+            int leftChunks = chunks / 2;
+            int mid = start + (int)((long)(end - start) * leftChunks / chunks);
+            invokeAll(new ForEachTask(kernel, start, mid, leftChunks), new ForEachTask(kernel, mid, end, chunks - leftChunks));
+        }
+    }
+
+    private static class ReduceTask<T> extends RecursiveTask<T> {
+        final Reduction<T> reduction;
+        final int start, end, chunks;
+
+        ReduceTask(Reduction<T> reduction, int start, int end, int chunks) {
+            this.reduction = reduction;
+            this.start = start;
+            this.end = end;
+            this.chunks = chunks;
+        }
+
+        @Override
+        protected T compute() {
+            if (chunks <= 1) {
+                T partial = reduction.create();
+                reduction.accumulate(partial, start, end);
+                return partial;
+            }
+            int leftChunks = chunks / 2;
+            int mid = start + (int)((long)(end - start) * leftChunks / chunks);
+            ReduceTask<T> right = new ReduceTask<>(reduction, mid, end, chunks - leftChunks);
+            right.fork();
+            T left = new ReduceTask<>(reduction, start, mid, leftChunks).compute();
+            reduction.merge(left, right.join());
+            return left;
+        }
+    }
+
+    //Run the kernel on start..end, split into chunks if there are at least threshold values
+    static void forEach(int start, int end, int threshold, Kernel kernel) {
+        int n = end - start;
+        if (!worthSplitting(n, threshold)) {
+            if (n > 0)
+                kernel.run(start, end);
+            return;
+        }
+        getPool().invoke(new ForEachTask(kernel, start, end, chunkCount(n, maxChunks(CHUNKS_PER_THREAD))));
+    }
+
+    //Run the kernel on start..end for items that are expensive on their own (i.e. the windows of
+    //periodicityAM), so every item may become a chunk. Work is the total number of values the items
+    //process, which is compared to the threshold.
+    static void forEachItem(int start, int end, long work, int threshold, Kernel kernel) {
+        int n = end - start;
+        if (threshold <= 0 || work < threshold || n < 2 || getParallelism() <= 1) {
+            if (n > 0)
+                kernel.run(start, end);
+            return;
+        }
+        getPool().invoke(new ForEachTask(kernel, start, end, Math.min(n, maxChunks(CHUNKS_PER_THREAD))));
+    }
+
+    //Accumulate start..end into partial results and merge them. Partial results can be large, so
+    //there is only one chunk per thread.
+    static <T> T reduce(int start, int end, int threshold, Reduction<T> reduction) {
+        int n = end - start;
+        if (!worthSplitting(n, threshold)) {
+            T result = reduction.create();
+            if (n > 0)
+                reduction.accumulate(result, start, end);
+            return result;
+        }
+        return getPool().invoke(new ReduceTask<>(reduction, start, end, chunkCount(n, maxChunks(1))));
+    }
+
+    //Calculate f for each value of in from start on
+    static double[] map(final DoubleView in, final int start, int threshold, final UnaryOperation f) {
+        final double[] result = new double[Math.max(in.size() - start, 0)];
+        forEach(0, result.length, threshold, new Kernel() {
+            @Override
+            public void run(int s, int e) {
+                for (int i = s; i < e; i++)
+                    result[i] = f.apply(in.get(start + i));
+            }
+        });
+        return result;
+    }
+
+    //Calculate f for each pair of values of a and b from start to end
+    static double[] map(final DoubleView a, final DoubleView b, final int start, int end, int threshold, final BinaryOperation f) {
+        final double[] result = new double[Math.max(end - start, 0)];
+        forEach(0, result.length, threshold, new Kernel() {
+            @Override
+            public void run(int s, int e) {
+                for (int i = s; i < e; i++)
+                    result[i] = f.apply(a.get(start + i), b.get(start + i));
+            }
+        });
+        return result;
+    }
+}
@@ -27,7 +27,10 @@ import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -38,7 +41,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -87,10 +90,17 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
     public final Vector<DataBuffer> dataBuffers = new Vector<>(); //Instances of dataBuffers (see dataBuffer.java) that are used to store sensor data, analysis results etc.
     public final Map<String, Integer> dataMap = new HashMap<>(); //This maps key names (string) defined in the experiment-file to the index of a dataBuffer
     public Vector<Analysis.AnalysisModule> analysis = new Vector<>(); //Instances of analysisModules (see analysis.java) that define all the mathematical processes in this experiment
-    public Lock dataLock = new ReentrantLock();
+    transient AnalysisScheduler analysisScheduler = null; //Executes the analysis modules, possibly in parallel (see AnalysisScheduler.java)
+    transient AnalysisMetrics analysisMetrics = new AnalysisMetrics(); //Timing of analysis cycles and modules for profiling (see AnalysisMetrics.java)
+    transient AnalysisTrigger analysisTrigger = new AnalysisTrigger(); //Wakes the analysis thread if there is something to do (see AnalysisTrigger.java)
+    private volatile boolean analysisStopped = true; //Set while the measurement is stopped, so waitForAnalysis() returns right away
+    boolean analysisPolling = false; //Some analysis modules (timer) produce new results without new data, so we have to run the analysis regularly
+    static final long ANALYSIS_POLL_INTERVAL = 10000000L; //Interval for polling data sources without notifications (microphone, network) in nanoseconds. This was the fixed interval of the analysis loop before.
+    //Sensors, analysis modules etc. lock the buffers they use with a BufferLock (see BufferLock.java).
 
     double analysisSleep = 0.; //Pause between analysis cycles. At 0 analysis is done as fast as possible.
     DataBuffer analysisDynamicSleep = null;
+    int parallelThreshold = ParallelKernels.DEFAULT_THRESHOLD; //Number of values from which on a single analysis module splits its work across several threads. 0 disables this.
     double lastAnalysis = 0.0; //This variable holds the system time of the moment the last analysis process finished. This is necessary for experiments, which do analysis after given intervals
     double analysisTime; //This variable holds the experiment time of the moment the current analysis process started.
     double analysisLinearTime; //Same with the current system time
@@ -120,6 +130,7 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
     int minBufferSize = 0; //The minimum buffer size requested by the device
     boolean appendAudioInput = false; //Append audio input on start of analysis cycle instead of replacing old data
     boolean forceAudioRecordingCompatibilityFormat = false; //Some Xiaomi device do not properly work with ENCODING_PCM_FLOAT if the Google Assistent voice trigger is enabled. This forces the use of the good old 16bit int format
+    Vector<EventDetector> eventDetectors = new Vector<>(); //Streaming event detectors of eventstream modules. Those reading the audio recording are fed directly with each block that is read.
 
     //Network connections
     List<NetworkConnection> networkConnections = new ArrayList<>();
@@ -151,6 +162,25 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
         return output;
     }
 
+    //Get a lock on the given buffers only (see BufferLock.java)
+    public Lock getBufferLock(Collection<DataBuffer> buffers) {
+        return new BufferLock(buffers);
+    }
+
+    public Lock getBufferLock(DataBuffer... buffers) {
+        return getBufferLock(Arrays.asList(buffers));
+    }
+
+    //Get a lock on the buffers of the given outputs. Used by sensors and other inputs
+    public Lock getOutputLock(Vector<DataOutput> outputs) {
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (DataOutput output : outputs) {
+            if (output != null)
+                buffers.add(output.buffer);
+        }
+        return getBufferLock(buffers);
+    }
+
     //Helper function to get a dataBuffer by its key name
     public DataBuffer getBuffer(String key) {
         Integer index = this.dataMap.get(key);
@@ -172,27 +202,116 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
     public void handleInputViews(boolean measuring) {
         if (!loaded)
             return;
-        if (dataLock.tryLock()) {
-            try {
-                for (ExpView ev : experimentViews) {
-                        for (ExpView.expViewElement eve : ev.elements) {
-                            try {
-                                if (eve.onMayWriteToBuffers(this)) //The element may now write to its buffers if it wants to do it on its own...
-                                    newUserInput = true;
-                            } catch (Exception e) {
-                                Log.e("handleInputViews", "Unhandled exception in view module (input) " + eve.toString() + " while sending data.", e);
-                            }
-                        }
+        for (ExpView ev : experimentViews) {
+            for (ExpView.expViewElement eve : ev.elements) {
+                Lock lock = eve.getBufferLock(this);
+                if (!lock.tryLock())
+                    continue; //Lock not aquired, but this is not urgent. Try another time instead of blocking the UI thread
+                try {
+                    if (eve.onMayWriteToBuffers(this)) //The element may now write to its buffers if it wants to do it on its own...
+                        notifyUserInput();
+                } catch (Exception e) {
+                    Log.e("handleInputViews", "Unhandled exception in view module (input) " + eve.toString() + " while sending data.", e);
+                } finally {
+                    lock.unlock();
                 }
-            } finally {
-                dataLock.unlock();
             }
         }
-        //else: Lock not aquired, but this is not urgent. Try another time instead of blocking the UI thread
         if (newUserInput && !measuring)
             processAnalysis(false);
     }
 
+    //Request an analysis cycle as the user has changed a value
+    public void notifyUserInput() {
+        newUserInput = true;
+        analysisTrigger.signal();
+    }
+
+    //Prepare the analysis when the experiment has been loaded
+    void initAnalysis() {
+        //Find out which analysis modules may run concurrently
+        analysisScheduler = new AnalysisScheduler(analysis);
+
+        //Find the buffers that should trigger an analysis cycle. If the experiment waits for user
+        //input, this is only done by notifyUserInput(). If it waits for a buffer to be filled, only
+        //this buffer can trigger the analysis. Otherwise we react to any buffer that does not get
+        //its data from the analysis itself (sensors, Bluetooth, network...).
+        for (Analysis.AnalysisModule mod : analysis) {
+            if (mod instanceof Analysis.timerAM)
+                analysisPolling = true;
+        }
+        if (analysisOnUserInput)
+            return;
+        if (requireFill != null) {
+            requireFill.register(new BufferNotification() {
+                @Override
+                public void notifyUpdate(boolean clear, boolean reset) {
+                    int threshold = requireFillThreshold;
+                    if (requireFillDynamic != null && requireFillDynamic.getFilledSize() > 0)
+                        threshold = (int)requireFillDynamic.value;
+                    if (requireFill.getFilledSize() >= threshold)
+                        analysisTrigger.signal();
+                }
+            });
+            return;
+        }
+        Set<DataBuffer> analysisOutputs = new HashSet<>();
+        for (Analysis.AnalysisModule mod : analysis) {
+            for (DataOutput output : mod.outputs) {
+                if (output != null)
+                    analysisOutputs.add(output.buffer);
+            }
+        }
+        for (DataBuffer buffer : dataBuffers) {
+            if (!analysisOutputs.contains(buffer))
+                buffer.register(analysisTrigger);
+        }
+    }
+
+    //Called by the analysis thread between two calls of processAnalysis(). Returns when the next
+    //analysis cycle might be due: There is new data, the user has changed something, the period of
+    //analysisSleep has elapsed or we have to poll the microphone or network connections.
+    public void waitForAnalysis() {
+        if (!loaded)
+            return;
+
+        boolean polling = audioRecord != null || !networkConnections.isEmpty() || analysisPolling;
+        while (true) {
+            if (analysisStopped)
+                return; //The analysis thread should notice the end of the measurement right away
+            long timeout = -1; //No timeout, just wait for a trigger
+            boolean periodic = false;
+            if (polling) {
+                timeout = ANALYSIS_POLL_INTERVAL;
+            } else if (!analysisOnUserInput) {
+                double sleep = analysisSleep;
+                if (analysisDynamicSleep != null && !Double.isNaN(analysisDynamicSleep.value) && !Double.isInfinite(analysisDynamicSleep.value))
+                    sleep = analysisDynamicSleep.value;
+                if (sleep > 0) {
+                    long remaining = (long)((lastAnalysis + sleep - experimentTimeReference.getExperimentTime()) * 1e9);
+                    if (remaining > 0 || requireFill == null) {
+                        timeout = Math.max(0, remaining);
+                        periodic = true;
+                    }
+                    //else: The period is over, but the buffer for requireFill is not full yet. Wait for it without a timeout.
+                }
+            }
+
+            //New data does not matter for an experiment with a fixed analysis period. Only user input does.
+            if (!analysisTrigger.await(timeout) || !periodic || newUserInput)
+                break;
+        }
+
+        //Fast sensors would trigger an analysis cycle for every single value. Like the old analysis
+        //loop, we limit this to one cycle per polling interval (unless the experiment asks for a
+        //particular amount of data or user input).
+        if (requireFill == null && !newUserInput && lastAnalysis != 0 && !analysisStopped) {
+            long wait = ANALYSIS_POLL_INTERVAL - (long)((experimentTimeReference.getExperimentTime() - lastAnalysis) * 1e9);
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+        }
+    }
+
     //called by th main loop to initialize the analysis process
     public void processAnalysis(boolean measuring) {
         if (!loaded)
@@ -200,11 +319,12 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
 
         //Send and receive network data if used
         for (NetworkConnection networkConnection : networkConnections) {
-            dataLock.lock();
+            Lock networkLock = getBufferLock(networkConnection.getBuffers());
+            networkLock.lock();
             try {
                 networkConnection.pushDataToBuffers();
             } finally {
-                dataLock.unlock();
+                networkLock.unlock();
             }
         }
 
@@ -215,6 +335,8 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
             if (!micRateOutput.isEmpty())
                 sampleRateBuffer = getBuffer(micRateOutput);
 
+            Lock audioLock = getBufferLock(getBuffer(micOutput), sampleRateBuffer);
+
             if (measuring) {
                 DataBuffer recording = getBuffer(micOutput);
                 final int readBufferSize = Math.max(Math.min(recording.size, 4800), minBufferSize); //The dataBuffer for the recording
@@ -226,7 +348,7 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
                 else
                     bytesRead = audioRecord.read(oldBuffer, 0, readBufferSize);
                 if (lastAnalysis != 0) { //The first recording data does not make sense, but we had to read it to clear the recording buffer...
-                    dataLock.lock();
+                    audioLock.lock();
                     try {
                         if (recordingUsed) {
                             if (!appendAudioInput)
@@ -236,24 +358,33 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
                             sampleRateWritten = true;
                             recordingUsed = false;
                         }
+                        //Event detectors on the recording get the samples right away, so they do not depend on what is left in the buffer by the time the analysis runs
+                        for (EventDetector detector : eventDetectors) {
+                            if (detector.source != recording)
+                                continue;
+                            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !forceAudioRecordingCompatibilityFormat)
+                                detector.process(buffer, bytesRead);
+                            else
+                                detector.process(oldBuffer, bytesRead);
+                        }
                         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !forceAudioRecordingCompatibilityFormat)
                             recording.append(buffer, bytesRead);
                         else
                             recording.append(oldBuffer, bytesRead);
 
                     } finally {
-                        dataLock.unlock();
+                        audioLock.unlock();
                     }
                 }
             }
             if (!sampleRateWritten) {
                 //Even if we do not use the first recording, we write the audio rate so it is available early.
-                dataLock.lock();
+                audioLock.lock();
                 try {
                     if (sampleRateBuffer != null)
                         sampleRateBuffer.append(audioRecord.getSampleRate());
                 } finally {
-                    dataLock.unlock();
+                    audioLock.unlock();
                 }
             }
         }
@@ -290,23 +421,16 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
             }
         }
 
-        dataLock.lock();
         analysisTime = experimentTimeReference.getExperimentTime();
         analysisLinearTime = experimentTimeReference.getLinearTime();
 
         //Call all the analysis modules and let them do their work.
-        try {
-            for (Analysis.AnalysisModule mod : analysis) {
-                try {
-                    Thread.yield();
-                    mod.updateIfNotStatic(cycle);
-                } catch (Exception e) {
-                    Log.e("processAnalysis", "Unhandled exception in analysis module " + mod.toString() + ".", e);
-                }
-            }
-        } finally {
-            dataLock.unlock();
-        }
+        //Each module locks the buffers it uses by itself, so sensors can continue to write to other buffers in the meantime.
+        if (analysisScheduler == null)
+            analysisScheduler = new AnalysisScheduler(analysis);
+        long cycleStart = System.nanoTime();
+        analysisScheduler.run(cycle);
+        analysisMetrics.recordCycle(cycleStart, System.nanoTime());
         cycle++;
 
         //Play audio
@@ -317,23 +441,28 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
         if (measuring && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
             //Send the results to the bluetooth outputs (if used)
             for (BluetoothOutput btOut : bluetoothOutputs) {
-                dataLock.lock();
+                List<DataBuffer> buffers = new ArrayList<>();
+                for (DataInput input : btOut.data)
+                    buffers.add(input.buffer);
+                Lock btLock = getBufferLock(buffers);
+                btLock.lock();
                 try {
                     btOut.sendData();
                 } finally {
-                    dataLock.unlock();
+                    btLock.unlock();
                 }
             }
         }
 
         //Send and receive network data if used
         for (NetworkConnection networkConnection : networkConnections) {
-            dataLock.lock();
+            Lock networkLock = getBufferLock(networkConnection.getBuffers());
+            networkLock.lock();
             try {
                 networkConnection.doExecute();
                 networkConnection.pushDataToBuffers();
             } finally {
-                dataLock.unlock();
+                networkLock.unlock();
             }
         }
 
@@ -349,23 +478,33 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
         if (!(newData || force)) //New data to present? If not: Nothing to do, unless an update is forced
             return true;
 
-        try {
-            if (dataLock.tryLock(10, TimeUnit.MILLISECONDS)) {
+        //Each element only locks its own buffers, so it does not have to wait for analysis modules
+        //working on other buffers. All elements together may wait up to 10ms.
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        boolean complete = true;
+        for (ExpView experimentView : experimentViews) {
+            for (ExpView.expViewElement eve : experimentView.elements) {
+                Lock lock = eve.getBufferLock(this);
                 try {
-                    for (ExpView experimentView : experimentViews) {
-                        for (ExpView.expViewElement eve : experimentView.elements) {
-                            eve.onMayReadFromBuffers(this); //Notify each view, that it should update from the buffers
-                        }
+                    if (!lock.tryLock(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                        complete = false; //This is not urgent. Try another time instead of blocking the UI thread!
+                        continue;
                     }
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                try {
+                    eve.onMayReadFromBuffers(this); //Notify each view, that it should update from the buffers
+                } catch (Exception e) {
+                    Log.d("updateViews", e.getMessage());
+                    complete = false;
                 } finally {
-                    dataLock.unlock();
+                    lock.unlock();
                 }
-            } else
-                return false; //This is not urgent. Try another time instead of blocking the UI thread!
-        } catch (Exception e) {
-            Log.d("updateViews", e.getMessage());
-            return false;
+            }
         }
+        if (!complete)
+            return false; //Elements that have been updated have reset their needsUpdate flag and will skip the next try
 
         newData = false;
         //Finally call dataComplete on every view to notify them that the data has been sent - heavy operation can now be done by the views while the buffers have been unlocked again
@@ -389,6 +528,7 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
             experimentTimeReference.registerEvent(ExperimentTimeReference.TimeMappingEvent.PAUSE);
         event = experimentTimeReference.timeMappings.size() > 0 ? experimentTimeReference.timeMappings.get(experimentTimeReference.timeMappings.size() - 1) : null;
         lastAnalysis = 0.0;
+        analysisStopped = true;
 
         //Recording
         if (audioRecord != null && audioRecord.getState() == AudioRecord.STATE_INITIALIZED)
@@ -413,6 +553,8 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
         for (NetworkConnection networkConnection : networkConnections)
             networkConnection.stop();
 
+        analysisTrigger.signal(); //Do not keep the analysis thread waiting
+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
             //Bluetooth
             Map<String, Bluetooth> uniqueBluetoothDevices = new HashMap<>();
@@ -439,6 +581,7 @@ public class PhyphoxExperiment implements Serializable, ExperimentTimeReference.
             return;
 
         experimentTimeReference.registerEvent(ExperimentTimeReference.TimeMappingEvent.START);
+        analysisStopped = false;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
             ExperimentTimeReference.TimeMapping event = experimentTimeReference.timeMappings.get(experimentTimeReference.timeMappings.size() - 1);
             Map<String, Bluetooth> uniqueBluetoothDevices = new HashMap<>();
@@ -1059,6 +1059,7 @@ public abstract class PhyphoxFile {
                             throw new phyphoxFileException("Dynamic sleep buffer " + dynamicSleep + " has not been defined as a buffer.", xpp.getLineNumber());
                     }
                     experiment.analysisOnUserInput = getBooleanAttribute("onUserInput", false); //Only execute when the user changed something?
+                    experiment.parallelThreshold = getIntAttribute("parallelThreshold", ParallelKernels.DEFAULT_THRESHOLD); //Split large calculations across several threads from this number of values on
 
                     String requireFill = getStringAttribute("requireFill");
                     experiment.requireFillThreshold = getIntAttribute("requireFillThreshold", 1);
@@ -1229,7 +1230,7 @@ public abstract class PhyphoxFile {
             Long systemTime = Long.parseLong(systemTimeStr);
             if (experimentTime < 0 || systemTime < 0)
                 throw new phyphoxFileException("An event requires both, an experiment time and a system time.", xpp.getLineNumber());
-            experiment.experimentTimeReference.timeMappings.add(new ExperimentTimeReference.TimeMapping(event, experimentTime, 0, systemTime));
+            experiment.experimentTimeReference.addMapping(new ExperimentTimeReference.TimeMapping(event, experimentTime, 0, systemTime));
         }
 
     }
@@ -1891,7 +1892,7 @@ public abstract class PhyphoxFile {
 
                     //Add a sensor. If the string is unknown, sensorInput throws a phyphoxFileException
                     try {
-                        experiment.inputSensors.add(new SensorInput(type, nameFilter, typeFilter, ignoreUnavailable, rate, rateStrategy, stride, average, outputs, experiment.dataLock, experiment.experimentTimeReference));
+                        experiment.inputSensors.add(new SensorInput(type, nameFilter, typeFilter, ignoreUnavailable, rate, rateStrategy, stride, average, outputs, experiment.getOutputLock(outputs), experiment.experimentTimeReference));
                         experiment.inputSensors.lastElement().attachSensorManager(parent.sensorManager);
                     } catch (SensorInput.SensorException e) {
                         throw new phyphoxFileException(e.getMessage(), xpp.getLineNumber());
@@ -1929,7 +1930,7 @@ public abstract class PhyphoxFile {
                     Vector<DataOutput> outputs = new Vector<>();
                     (new ioBlockParser(xpp, experiment, parent, null, outputs, null, outputMapping, "component")).process(); //Load inputs and outputs
 
-                    experiment.gpsIn = new GpsInput(outputs, experiment.dataLock, experiment.experimentTimeReference);
+                    experiment.gpsIn = new GpsInput(outputs, experiment.getOutputLock(outputs), experiment.experimentTimeReference);
                     experiment.gpsIn.attachLocationManager((LocationManager)parent.getSystemService(Context.LOCATION_SERVICE));
 
                     if (!GpsInput.isAvailable(parent)) {
@@ -2053,7 +2054,7 @@ public abstract class PhyphoxFile {
 
                         CameraManager cameraManager = (CameraManager) parent.getSystemService(Context.CAMERA_SERVICE);
                         CameraHelper.updateCameraList(cameraManager);
-                        experiment.depthInput = new DepthInput(mode, (float) x1, (float) x2, (float) y1, (float) y2, outputs, experiment.dataLock, experiment.experimentTimeReference, cameraManager);
+                        experiment.depthInput = new DepthInput(mode, (float) x1, (float) x2, (float) y1, (float) y2, outputs, experiment.getOutputLock(outputs), experiment.experimentTimeReference, cameraManager);
 
                         if (!DepthInput.isAvailable()) {
                             throw new phyphoxFileException(parent.getResources().getString(R.string.sensorNotAvailableWarningText1) + " " + parent.getResources().getString(R.string.sensorDepth) + " " + parent.getResources().getString(R.string.sensorNotAvailableWarningText2));
@@ -2166,7 +2167,7 @@ public abstract class PhyphoxFile {
                                 (float) y1,
                                 (float) y2,
                                 outputs,
-                                experiment.dataLock,
+                                experiment.getOutputLock(outputs),
                                 experiment.experimentTimeReference,
                                 feature,
                                 autoExposure,
@@ -2236,7 +2237,7 @@ public abstract class PhyphoxFile {
                             Vector<Bluetooth.CharacteristicData> characteristics = new Vector<>();
                             (new bluetoothIoBlockParser(xpp, experiment, parent, outputs, null, characteristics)).process();
                             try {
-                                BluetoothInput b = new BluetoothInput(idString, nameFilter, addressFilter, modeFilter, uuidFilter, autoConnect, rate, subscribeOnStart, outputs, experiment.dataLock, parent, parent, characteristics, experiment.experimentTimeReference);
+                                BluetoothInput b = new BluetoothInput(idString, nameFilter, addressFilter, modeFilter, uuidFilter, autoConnect, rate, subscribeOnStart, outputs, experiment.getOutputLock(outputs), parent, parent, characteristics, experiment.experimentTimeReference);
                                 if (mtu > 0)
                                     b.requestMTU = mtu;
                                 experiment.bluetoothInputs.add(b);
@@ -2944,7 +2945,8 @@ public abstract class PhyphoxFile {
                     ioBlockParser.ioMapping[] inputMapping = {
                             new ioBlockParser.ioMapping() {{name = "in"; asRequired = false; minCount = 1; maxCount = 1; valueAllowed = false; repeatableOffset = -1; }},
                             new ioBlockParser.ioMapping() {{name = "x0"; asRequired = true; minCount = 0; maxCount = 1; valueAllowed = true; repeatableOffset = -1; }},
-                            new ioBlockParser.ioMapping() {{name = "dx"; asRequired = true; minCount = 0; maxCount = 1; valueAllowed = true; repeatableOffset = -1; }}
+                            new ioBlockParser.ioMapping() {{name = "dx"; asRequired = true; minCount = 0; maxCount = 1; valueAllowed = true; repeatableOffset = -1; }},
+                            new ioBlockParser.ioMapping() {{name = "bins"; asRequired = true; minCount = 0; maxCount = 1; valueAllowed = true; repeatableOffset = -1; }}
                     };
                     ioBlockParser.ioMapping[] outputMapping = {
                             new ioBlockParser.ioMapping() {{name = "binStarts"; asRequired = false; minCount = 1; maxCount = 1; repeatableOffset = -1; }},
@@ -3139,7 +3141,8 @@ public abstract class PhyphoxFile {
                     };
                     (new ioBlockParser(xpp, experiment, parent, inputs, outputs, inputMapping, outputMapping, "as")).process(); //Load inputs and outputs
 
-                    experiment.analysis.add(new Analysis.loessAM(experiment, inputs, outputs));
+                    boolean approximate = getBooleanAttribute("approximate", false); //Evaluate on a coarser grid and interpolate
+                    experiment.analysis.add(new Analysis.loessAM(experiment, inputs, outputs, approximate));
                 } break;
                 case "interpolate": { //Smooth data with LOESS
                     String interpolationMethodStr = getStringAttribute("method");
@@ -3217,6 +3220,24 @@ public abstract class PhyphoxFile {
 
                     boolean descending= getBooleanAttribute("descending", false);
 
+                    String modeStr = getStringAttribute("mode");
+                    if (modeStr == null)
+                        modeStr = "sort";
+
+                    Analysis.sortAM.SortMode mode = Analysis.sortAM.SortMode.sort;
+
+                    switch (modeStr) {
+                        case "sort":    mode = Analysis.sortAM.SortMode.sort;
+                                        break;
+                        case "top":     mode = Analysis.sortAM.SortMode.top;
+                                        break;
+                        case "median":  mode = Analysis.sortAM.SortMode.median;
+                                        break;
+                        default:        throw new phyphoxFileException("Unknown sort mode " + modeStr, xpp.getLineNumber());
+                    }
+
+                    int count = getIntAttribute("count", 1); //Number of values for the "top" mode
+
                     ioBlockParser.ioMapping[] inputMapping = {
                             new ioBlockParser.ioMapping() {{name = "in"; asRequired = false; minCount = 1; maxCount = 0; valueAllowed = false; repeatableOffset = 0; }},
                     };
@@ -3225,7 +3246,7 @@ public abstract class PhyphoxFile {
                     };
                     (new ioBlockParser(xpp, experiment, parent, inputs, outputs, inputMapping, outputMapping, "as")).process(); //Load inputs and outputs
 
-                    experiment.analysis.add(new Analysis.sortAM(experiment, inputs, outputs, descending));
+                    experiment.analysis.add(new Analysis.sortAM(experiment, inputs, outputs, descending, mode, count));
                 } break;
                 case "ramp": { //Create a linear ramp (great for creating time-bases)
 
@@ -3269,6 +3290,8 @@ public abstract class PhyphoxFile {
                         throw new phyphoxFileException("Unknown trigger mode " + triggerModeStr, xpp.getLineNumber());
                     }
 
+                    boolean streaming = getBooleanAttribute("streaming", false); //Keep index, skip and last internally and interpolate the events between samples
+
                     ioBlockParser.ioMapping[] inputMapping = {
                             new ioBlockParser.ioMapping() {{name = "data"; asRequired = true; minCount = 1; maxCount = 1; valueAllowed = false; repeatableOffset = -1; }},
                             new ioBlockParser.ioMapping() {{name = "threshold"; asRequired = true; minCount = 0; maxCount = 1; valueAllowed = true; repeatableOffset = -1; }},
@@ -3285,7 +3308,10 @@ public abstract class PhyphoxFile {
                     };
                     (new ioBlockParser(xpp, experiment, parent, inputs, outputs, inputMapping, outputMapping, "as")).process(); //Load inputs and outputs
 
-                    experiment.analysis.add(new Analysis.eventstreamAM(experiment, inputs, outputs, triggerMode));
+                    Analysis.eventstreamAM eventstream = new Analysis.eventstreamAM(experiment, inputs, outputs, triggerMode, streaming);
+                    if (eventstream.detector != null)
+                        experiment.eventDetectors.add(eventstream.detector);
+                    experiment.analysis.add(eventstream);
                 } break;
                 case "movingaverage": { //Find events in a datastream (i.e. acoustic stopwatch)
                     boolean dropIncomplete = getBooleanAttribute("dropIncomplete", false);
@@ -3301,6 +3327,26 @@ public abstract class PhyphoxFile {
 
                     experiment.analysis.add(new Analysis.movingaverageAM(experiment, inputs, outputs, dropIncomplete));
                 } break;
+                case "rolling": { //Statistics over a sliding window
+                    boolean dropIncomplete = getBooleanAttribute("dropIncomplete", false);
+
+                    ioBlockParser.ioMapping[] inputMapping = {
+                            new ioBlockParser.ioMapping() {{name = "data"; asRequired = true; minCount = 1; maxCount = 1; valueAllowed = false; repeatableOffset = -1; }},
+                            new ioBlockParser.ioMapping() {{name = "width"; asRequired = true; minCount = 0; maxCount = 1; valueAllowed = true; repeatableOffset = -1; }},
+                    };
+                    ioBlockParser.ioMapping[] outputMapping = {
+                            new ioBlockParser.ioMapping() {{name = "mean"; asRequired = true; minCount = 0; maxCount = 1; repeatableOffset = -1; }},
+                            new ioBlockParser.ioMapping() {{name = "std"; asRequired = true; minCount = 0; maxCount = 1; repeatableOffset = -1; }},
+                            new ioBlockParser.ioMapping() {{name = "variance"; asRequired = true; minCount = 0; maxCount = 1; repeatableOffset = -1; }},
+                            new ioBlockParser.ioMapping() {{name = "min"; asRequired = true; minCount = 0; maxCount = 1; repeatableOffset = -1; }},
+                            new ioBlockParser.ioMapping() {{name = "max"; asRequired = true; minCount = 0; maxCount = 1; repeatableOffset = -1; }},
+                            new ioBlockParser.ioMapping() {{name = "median"; asRequired = true; minCount = 0; maxCount = 1; repeatableOffset = -1; }},
+                            new ioBlockParser.ioMapping() {{name = "rms"; asRequired = true; minCount = 0; maxCount = 1; repeatableOffset = -1; }},
+                    };
+                    (new ioBlockParser(xpp, experiment, parent, inputs, outputs, inputMapping, outputMapping, "as")).process(); //Load inputs and outputs
+
+                    experiment.analysis.add(new Analysis.rollingAM(experiment, inputs, outputs, dropIncomplete));
+                } break;
                 case "split": { //Find events in a datastream (i.e. acoustic stopwatch)
                     ioBlockParser.ioMapping[] inputMapping = {
                             new ioBlockParser.ioMapping() {{name = "data"; asRequired = true; minCount = 1; maxCount = 1; valueAllowed = false; repeatableOffset = -1; }},
@@ -3539,6 +3585,9 @@ public abstract class PhyphoxFile {
                 return experiment;
             }
 
+            //Set up the scheduler and triggers for the analysis
+            experiment.initAnalysis();
+
             //We are done without any problems that we know of.
             experiment.loaded = true;
             return experiment;
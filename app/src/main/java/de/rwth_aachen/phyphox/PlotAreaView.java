@@ -57,6 +57,20 @@ class CurveData implements Serializable {
     float color[] = new float[4];
     transient FloatBufferRepresentation fbX, fbY;
     transient List<ExperimentTimeReferenceSet> timeReferencesX, timeReferencesY;
+
+    //If a line has many more values than pixel columns, only a decimated version of the visible
+    //range (plus a margin for panning) is uploaded (see MinMaxPyramid.java)
+    boolean decimated = false;
+    int[] decimatedStart, decimatedCount; //Range of vertices for each time reference set (or a single range without time references)
+    double decimatedMinX, decimatedMaxX, decimatedSpan; //Range of x that has been uploaded and the visible span it has been decimated for
+    int decimatedColumns;
+    transient int[] decimationIndices;
+
+    //Lines and dots keep their values in VBOs used as ring buffers, so only new values need to be
+    //uploaded (see PlotRenderer.uploadRing())
+    transient FloatBufferRepresentation ringX, ringY; //Float copies the rings have been filled from
+    int ringCapacity = 0; //Number of slots or 0 if the VBOs are not used as rings. There is one more slot at the end, which repeats slot 0, so a line can continue across the wrap.
+    long ringFirst, ringEnd; //Stable indices (see FloatBufferRepresentation.first) of the values in the rings
 }
 
 class GraphSetup implements Serializable {
@@ -513,7 +527,7 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
                     }
                 }
 
-                if (updateBuffers) {
+                if (updateBuffers || decimationOutdated()) {
                     doUpdateBuffers();
                     updateBuffers = false;
                 }
@@ -851,6 +865,11 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
         if (dataSet.n == 0 || (dataSet.n < 2 && !(graphSetup.style.get(i) == GraphView.Style.dots)))
             return;
 
+        if (dataSet.decimated) {
+            drawDecimatedCurve(dataSet);
+            return;
+        }
+
         if (lastValidX == 0)
             return;
 
@@ -886,7 +905,7 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
                         continue;
                     GLES20.glUniform1f(offsetXHandle, -(float)((timeReference.systemTime - lastValidXTimeReference.get(0).systemTime)*0.001 - timeReference.experimentTime));
                 }
-                GLES20.glDrawArrays(geometry, verticesPerValue*timeReference.index, Math.min(verticesPerValue*timeReference.count, dataSet.n-verticesPerValue*timeReference.index));
+                drawVertices(dataSet, geometry, verticesPerValue*timeReference.index, Math.min(verticesPerValue*timeReference.count, dataSet.n-verticesPerValue*timeReference.index));
             }
         } else if (graphSetup.timeOnY && dataSet.timeReferencesY != null && dataSet.timeReferencesY.size() > 0) {
             for (ExperimentTimeReferenceSet timeReference : dataSet.timeReferencesY) {
@@ -898,10 +917,75 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
                     GLES20.glUniform1f(offsetYHandle, -(float)((timeReference.systemTime - dataSet.timeReferencesY.get(0).systemTime)*0.001 - timeReference.experimentTime));
                 }
 
-                GLES20.glDrawArrays(geometry, verticesPerValue*timeReference.index, Math.min(verticesPerValue*timeReference.count, dataSet.n-verticesPerValue*timeReference.index));
+                drawVertices(dataSet, geometry, verticesPerValue*timeReference.index, Math.min(verticesPerValue*timeReference.count, dataSet.n-verticesPerValue*timeReference.index));
+            }
+        } else {
+            drawVertices(dataSet, geometry, 0, dataSet.n);
+        }
+
+        GLES20.glDisableVertexAttribArray(positionXHandle);
+        GLES20.glDisableVertexAttribArray(positionYHandle);
+    }
+
+    //Draw count vertices from the position first on, which are split into two parts if the curve
+    //uses rings and the range wraps around
+    private void drawVertices(CurveData dataSet, int geometry, int first, int count) {
+        if (count <= 0)
+            return;
+        int capacity = dataSet.ringCapacity;
+        if (capacity == 0) {
+            GLES20.glDrawArrays(geometry, first, count);
+            return;
+        }
+        int slot = (int)((dataSet.ringFirst + first) % capacity);
+        if (slot + count <= capacity) {
+            GLES20.glDrawArrays(geometry, slot, count);
+        } else {
+            int head = capacity - slot;
+            //A line includes the repeated slot 0 at the end, so it is not interrupted at the wrap
+            GLES20.glDrawArrays(geometry, slot, geometry == GLES20.GL_LINE_STRIP ? head + 1 : head);
+            GLES20.glDrawArrays(geometry, 0, count - head);
+        }
+    }
+
+    //Offset of a time reference set on a time axis. Returns NaN if the set should not be drawn.
+    private float timeReferenceOffset(ExperimentTimeReferenceSet timeReference, List<ExperimentTimeReferenceSet> timeReferences) {
+        if (graphSetup.absoluteTime && !graphSetup.linearTime)
+            return (float)((timeReference.systemTime - timeReferences.get(0).systemTime)*0.001 - timeReference.experimentTime);
+        else if (!graphSetup.absoluteTime && graphSetup.linearTime) {
+            if (timeReference.isPaused)
+                return Float.NaN;
+            return -(float)((timeReference.systemTime - timeReferences.get(0).systemTime)*0.001 - timeReference.experimentTime);
+        }
+        return 0.0f;
+    }
+
+    //Lines with their own x buffer, drawn from the vertex ranges set by uploadDecimated()
+    private void drawDecimatedCurve(CurveData dataSet) {
+        GLES20.glEnableVertexAttribArray(positionXHandle);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, dataSet.vboX);
+        GLES20.glVertexAttribPointer(positionXHandle, 1, GLES20.GL_FLOAT, false, 0, 0);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, dataSet.vboY);
+        GLES20.glEnableVertexAttribArray(positionYHandle);
+        GLES20.glVertexAttribPointer(positionYHandle, 1, GLES20.GL_FLOAT, false, 0, 0);
+
+        GLES20.glUniform4fv(colorHandle, 1, dataSet.color, 0);
+
+        GLES20.glUniform1f(offsetXHandle, 0.0f);
+        GLES20.glUniform1f(offsetYHandle, 0.0f);
+
+        List<ExperimentTimeReferenceSet> timeReferences = dataSet.timeReferencesX;
+        if (graphSetup.timeOnX && timeReferences != null && timeReferences.size() > 0) {
+            for (int j = 0; j < timeReferences.size() && j < dataSet.decimatedStart.length; j++) {
+                float offset = timeReferenceOffset(timeReferences.get(j), timeReferences);
+                if (Float.isNaN(offset))
+                    continue;
+                GLES20.glUniform1f(offsetXHandle, offset);
+                GLES20.glDrawArrays(GLES20.GL_LINE_STRIP, dataSet.decimatedStart[j], dataSet.decimatedCount[j]);
             }
         } else {
-            GLES20.glDrawArrays(geometry, 0, dataSet.n);
+            GLES20.glDrawArrays(GLES20.GL_LINE_STRIP, dataSet.decimatedStart[0], dataSet.decimatedCount[0]);
         }
 
         GLES20.glDisableVertexAttribArray(positionXHandle);
@@ -1021,7 +1105,179 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
 
     }
 
+    //First index from..to at which x (plus offset) is not below the limit (or above, if after is set)
+    private static int searchX(FloatBufferRepresentation fbX, int from, int to, double limit, float offset, boolean after) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            double x = fbX.data.get(fbX.offset + mid) + offset;
+            if (after ? !(x > limit) : x < limit)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+        return from;
+    }
+
+    //Upload the decimated values of a line that has many more values than pixel columns. Returns
+    //false if the line should be uploaded completely. Called while holding the locks of fbX and fbY.
+    private boolean uploadDecimated(CurveData data, FloatBufferRepresentation fbX, FloatBufferRepresentation fbY) {
+        int columns = graphSetup.plotBoundW;
+        if (data.style != GraphView.Style.lines || columns <= 0 || data.n <= 4 * columns)
+            return false;
+        if (graphSetup.timeOnY && data.timeReferencesY != null && data.timeReferencesY.size() > 0)
+            return false; //Offsets on y cannot be handled by sorting along x
+        if (!(graphSetup.maxX > graphSetup.minX))
+            return false;
+        MinMaxPyramid pyramidX = fbX.getPyramid();
+        if (pyramidX == null || !pyramidX.isMonotonic())
+            return false;
+        MinMaxPyramid pyramidY = fbY.getPyramid();
+
+        //Decimate the visible range with a margin of half the visible span on each side, so
+        //panning does not require a new decimation right away
+        double span = graphSetup.maxX - graphSetup.minX;
+        double minX = graphSetup.minX - 0.5 * span;
+        double maxX = graphSetup.maxX + 0.5 * span;
+        int maxBuckets = 2 * columns;
+
+        List<ExperimentTimeReferenceSet> timeReferences = data.timeReferencesX;
+        boolean useTimeReferences = graphSetup.timeOnX && timeReferences != null && timeReferences.size() > 0;
+        int sets = useTimeReferences ? timeReferences.size() : 1;
+        int[] starts = new int[sets];
+        int[] counts = new int[sets];
+
+        if (data.decimationIndices == null || data.decimationIndices.length < sets * 4 * (maxBuckets + 2))
+            data.decimationIndices = new int[sets * 4 * (maxBuckets + 2)];
+        int[] indices = data.decimationIndices;
+        int[] setIndices = new int[4 * (maxBuckets + 2)];
+        int total = 0;
+        for (int j = 0; j < sets; j++) {
+            int from = 0;
+            int to = data.n;
+            float offset = 0.0f;
+            if (useTimeReferences) {
+                ExperimentTimeReferenceSet timeReference = timeReferences.get(j);
+                from = Math.min(timeReference.index, data.n);
+                to = Math.min(timeReference.index + timeReference.count, data.n);
+                offset = timeReferenceOffset(timeReference, timeReferences);
+                if (Float.isNaN(offset))
+                    offset = 0.0f; //Not drawn anyway
+            }
+
+            //Visible part of this set, including one value beyond each edge, so the line leaves the view
+            int a = Math.max(searchX(fbX, from, to, minX, offset, false) - 1, from);
+            int b = Math.min(searchX(fbX, from, to, maxX, offset, true) + 1, to);
+
+            starts[j] = total;
+            int count = b > a ? pyramidY.decimate(a, b, maxBuckets, fbY.data, fbY.offset, setIndices) : 0;
+            if (count < 0) {
+                //Few values, take all of them
+                for (int k = a; k < b; k++)
+                    indices[total++] = k;
+            } else {
+                System.arraycopy(setIndices, 0, indices, total, count);
+                total += count;
+            }
+            counts[j] = total - starts[j];
+        }
+
+        FloatBuffer x = ByteBuffer.allocateDirect(Math.max(total, 1) * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        FloatBuffer y = ByteBuffer.allocateDirect(Math.max(total, 1) * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (int k = 0; k < total; k++) {
+            x.put(fbX.data.get(fbX.offset + indices[k]));
+            y.put(fbY.data.get(fbY.offset + indices[k]));
+        }
+        x.position(0);
+        y.position(0);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, data.vboX);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, total * 4, x, GLES20.GL_DYNAMIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, data.vboY);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, total * 4, y, GLES20.GL_DYNAMIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        data.decimatedStart = starts;
+        data.decimatedCount = counts;
+        data.decimatedMinX = minX;
+        data.decimatedMaxX = maxX;
+        data.decimatedSpan = span;
+        data.decimatedColumns = columns;
+        return true;
+    }
+
+    //Write the values from..to (stable indices) of a float copy to their slots of a ring
+    private static void uploadRingRange(int vbo, FloatBufferRepresentation fb, int capacity, long from, long to) {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+        while (from < to) {
+            int slot = (int)(from % capacity);
+            int count = (int)Math.min(to - from, capacity - slot);
+            int position = fb.offset + (int)(from - fb.first);
+            fb.data.position(position);
+            GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, slot * 4, count * 4, fb.data);
+            if (slot == 0) {
+                //Repeat slot 0 after the last slot
+                fb.data.position(position);
+                GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, capacity * 4, 4, fb.data);
+            }
+            from += count;
+        }
+    }
+
+    //Upload the values of a line or dots that have been added since the last update. Returns false
+    //if the VBOs should be filled completely instead. Called while holding the locks of fbX and fbY.
+    private boolean uploadRing(CurveData data, FloatBufferRepresentation fbX, FloatBufferRepresentation fbY) {
+        if (data.style != GraphView.Style.lines && data.style != GraphView.Style.dots)
+            return false;
+        if (fbX.size != fbY.size || fbX.first != fbY.first)
+            return false; //Positions in x and y do not correspond to the same stable indices
+
+        long first = fbY.first;
+        long end = first + fbY.size;
+        if (data.ringCapacity == 0 || data.ringX != fbX || data.ringY != fbY || fbY.size > data.ringCapacity || first < data.ringFirst || end < data.ringEnd) {
+            //New data (i.e. the buffer has been cleared) or the ring is too small. Make room for
+            //twice as many values, so a growing buffer only needs a few reallocations.
+            int capacity = Math.max(2 * fbY.size, 1024);
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, data.vboX);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, (capacity + 1) * 4, null, GLES20.GL_DYNAMIC_DRAW);
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, data.vboY);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, (capacity + 1) * 4, null, GLES20.GL_DYNAMIC_DRAW);
+            data.ringCapacity = capacity;
+            data.ringX = fbX;
+            data.ringY = fbY;
+            data.ringEnd = first;
+        }
+
+        long from = Math.max(data.ringEnd, first);
+        uploadRingRange(data.vboX, fbX, data.ringCapacity, from, end);
+        uploadRingRange(data.vboY, fbY, data.ringCapacity, from, end);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        data.ringFirst = first;
+        data.ringEnd = end;
+        return true;
+    }
+
+    //The decimated lines need to be updated if the user zooms or pans out of the uploaded range
+    private boolean decimationOutdated() {
+        double span = graphSetup.maxX - graphSetup.minX;
+        for (CurveData data : graphSetup.dataSets) {
+            if (!data.decimated)
+                continue;
+            if (graphSetup.minX < data.decimatedMinX || graphSetup.maxX > data.decimatedMaxX || span < 0.5 * data.decimatedSpan || graphSetup.plotBoundW != data.decimatedColumns)
+                return true;
+        }
+        return false;
+    }
+
     private void doUpdateBuffers() {
+        //Lines without their own x values use the x buffer of another line, so these cannot be
+        //decimated or use rings, which would change the position of each value in the x buffer
+        boolean ownX = true;
+        for (CurveData data : graphSetup.dataSets) {
+            if (data.fbX == null && data.style != GraphView.Style.mapZ)
+                ownX = false;
+        }
+
         for (CurveData data : graphSetup.dataSets) {
             if (data.vboY == 0 || (data.vboX == 0 && data.fbX != null)) {
                 if (data.fbX != null) {
@@ -1049,7 +1305,14 @@ class PlotRenderer extends Thread implements TextureView.SurfaceTextureListener
                     if (fbX != null) {
                         synchronized (fbX.lock) {
                             data.n = Math.min(fbX.size, fbY.size);
-                            if (data.n > 0) {
+                            data.decimated = false;
+                            if (data.n > 0 && ownX && uploadDecimated(data, fbX, fbY)) {
+                                data.decimated = true;
+                                data.ringCapacity = 0; //The VBOs have been filled with the decimated values
+                            } else if (data.n > 0 && ownX && uploadRing(data, fbX, fbY)) {
+                                //Only new values have been uploaded
+                            } else if (data.n > 0) {
+                                data.ringCapacity = 0;
 
                                 GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, data.vboX);
                                 fbX.data.position(fbX.offset);
@@ -41,11 +41,14 @@ import java.text.NumberFormat;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.locks.Lock;
 
 //RemoteServer implements a web interface to remote control the experiment and receive the data
 
@@ -370,6 +373,7 @@ public class RemoteServer {
         host.addContext("/config", this::handleConfig); //The config command requests information on the currently active experiment configuration
         host.addContext("/meta", this::handleMeta); //The meta command requests information on the device
         host.addContext("/time", this::handleTime); //The meta command requests information on the current time reference
+        host.addContext("/metrics", this::handleMetrics); //The metrics command requests profiling data of the analysis (see AnalysisMetrics.java)
         host.addContext("/res", this::handleRes); //Fetch resource files (like images embedded in the experiment configuration)
         try {
             httpServer.start();
@@ -473,10 +477,7 @@ public class RemoteServer {
         return buffers;
     }
 
-    protected void buildBuffer(BufferRequest buffer, DataBuffer db, DecimalFormat format, StringBuilder sb) {
-        //Get the threshold reference data buffer
-        DataBuffer db_reference = buffer.reference.isEmpty() ? db : experiment.getBuffer(buffer.reference);
-
+    protected void buildBuffer(BufferRequest buffer, DataBuffer db, DoubleView data, DoubleView dataRef, DecimalFormat format, StringBuilder sb) {
         //Buffer name
         sb.append("\"");
         sb.append(db.name);
@@ -495,30 +496,22 @@ public class RemoteServer {
             sb.append("partial");
         sb.append("\", \"buffer\":[");
 
-        if (Double.isNaN(buffer.threshold)) //Single value. Get the last one directly from our buffer class
-            if (Double.isNaN(db.value) || Double.isInfinite(db.value))
+        if (Double.isNaN(buffer.threshold)) { //Single value. Get the last one directly from our buffer view
+            double value = data.last();
+            if (Double.isNaN(value) || Double.isInfinite(value))
                 sb.append("null");
             else
-                sb.append(format.format(db.value));
-        else {
+                sb.append(format.format(value));
+        } else {
             //Get all the values...
             boolean firstValue = true; //Find first iteration, so the other ones can add a separator
-            Double[] data = db.getArray();
-            int n = db.getFilledSize();
-            Double[] dataRef;
-            if (db_reference == db)
-                dataRef = data;
-            else {
-                dataRef = db_reference.getArray();
-                n = Math.min(n, db_reference.getFilledSize());
-            }
+            int n = Math.min(data.size(), dataRef.size());
 
-
-            Double v;
+            double v;
             for (int i = 0; i < n; i++) {
-                //Simultaneously get the values from both iterators
-                v = data[i];
-                Double v_dep = dataRef[i];
+                //Simultaneously get the values from both views
+                v = data.get(i);
+                double v_dep = dataRef.get(i);
                 if (v_dep <= buffer.threshold) //Skip this value if it is below the threshold or NaN
                     continue;
 
@@ -550,13 +543,35 @@ public class RemoteServer {
         //We now know what the query request. Let's build our answer
         StringBuilder sb;
 
-        //Lock the data, to get a consistent data block
-        experiment.dataLock.lock();
+        //Collect the requested buffers and the buffers they refer to
+        Map<String, DataBuffer> dataBuffers = new HashMap<>();
+        for (BufferRequest buffer : buffers) {
+            DataBuffer db = experiment.getBuffer(buffer.name);
+            if (db == null)
+                continue;
+            dataBuffers.put(buffer.name, db);
+            DataBuffer db_reference = buffer.reference.isEmpty() ? db : experiment.getBuffer(buffer.reference);
+            if (db_reference != null)
+                dataBuffers.put(buffer.reference, db_reference);
+        }
+
+        //Lock these buffers just long enough to get a consistent set of views on their data. We
+        //do not need to block the sensors or the analysis while building the response.
+        Map<String, DoubleView> views = new HashMap<>();
+        Lock lock = experiment.getBufferLock(dataBuffers.values());
+        lock.lock();
+        try {
+            for (Map.Entry<String, DataBuffer> entry : dataBuffers.entrySet())
+                views.put(entry.getKey(), entry.getValue().getView());
+        } finally {
+            lock.unlock();
+        }
+
         try {
             //First let's take a guess at how much memory we will need
             int sizeEstimate = 0;
             for (BufferRequest buffer : buffers) {
-                DataBuffer db = experiment.getBuffer(buffer.name);
+                DataBuffer db = dataBuffers.get(buffer.name);
                 if (db != null)
                     sizeEstimate += 14 * db.size + 100;
             }
@@ -573,15 +588,18 @@ public class RemoteServer {
             //Start building...
             sb.append("{\"buffer\":{\n");
             for (BufferRequest buffer : buffers) {
-                DataBuffer db = experiment.getBuffer(buffer.name);
+                DataBuffer db = dataBuffers.get(buffer.name);
                 if (db == null)
                     continue;
+                DoubleView dataRef = views.get(buffer.reference.isEmpty() ? buffer.name : buffer.reference);
+                if (dataRef == null)
+                    continue;
                 if (firstBuffer)
                     firstBuffer = false;
                 else
                     sb.append(",\n"); //Separate the object with a comma, if this is not the first item
 
-                buildBuffer(buffer, db, format, sb);
+                buildBuffer(buffer, db, views.get(buffer.name), dataRef, format, sb);
             }
 
             //We also send the experiment status
@@ -604,7 +622,8 @@ public class RemoteServer {
             sb.append(callActivity.millisUntilFinished);
             sb.append("\n}\n}\n");
         } finally {
-            experiment.dataLock.unlock();
+            for (DoubleView view : views.values())
+                view.release();
         }
 
         //Done. Build a string and return it as usual
@@ -650,11 +669,13 @@ public class RemoteServer {
                             callActivity.requestDefocus();
 
                             //Send the value to the buffer, but acquire a lock first, so it does not interfere with data analysis
-                            experiment.dataLock.lock();
+                            DataBuffer db = experiment.getBuffer(buffer);
+                            Lock lock = experiment.getBufferLock(db);
+                            lock.lock();
                             try {
-                                experiment.getBuffer(buffer).append(v);
+                                db.append(v);
                             } finally {
-                                experiment.dataLock.unlock();
+                                lock.unlock();
                             }
                             return respond(response, true);
                         }
@@ -868,6 +889,17 @@ public class RemoteServer {
         }
     }
 
+    //The metrics query does not take any parameters
+    //It returns the timing of the analysis cycles and of each analysis module
+    public int handleMetrics(Request request, Response response) throws IOException {
+        try {
+            return respond(response, experiment.analysisMetrics.toJSON(experiment.analysis).toString());
+        } catch (JSONException e) {
+            Log.e("metricsHandler", "Error: " + e.getMessage());
+            return respond(response, false);
+        }
+    }
+
     //The res handler serves resource files (like images embedded in the experiment configuration)
     public int handleRes(Request request, Response response) throws IOException {
         //Get the parameters
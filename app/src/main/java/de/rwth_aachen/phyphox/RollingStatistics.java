@@ -0,0 +1,386 @@
+package de.rwth_aachen.phyphox;
+
+import java.io.Serializable;
+
+//Statistics over a sliding window of the last [width] values
+//Values are added one at a time and every value that drops out of the window is removed again, so
+//each new value costs O(1) (O(log width) for the median) instead of O(width) for recalculating the
+//whole window. The state can be kept between analysis cycles, so an incremental module only has
+//to add the new values.
+//Sums are compensated (Neumaier), so adding and removing values for a long time does not
+//accumulate rounding errors. The sums for mean and variance are taken relative to the first value
+//to avoid cancellation on data with a large offset. Min and max use monotonic deques and the
+//median uses two heaps. These are only set up if requested, as they need some memory per value.
+//NaN values take their place in the window, but are ignored by all statistics. The number of NaN
+//values in the window is available, so a module can decide to return NaN instead.
+
+class RollingStatistics implements Serializable {
+    final int width;
+
+    private final double[] window; //Ring buffer of the values in the window
+    private long count = 0; //Total number of values that have been added
+
+    private int n = 0; //Number of finite values in the window
+    private int nans = 0;
+    private int positiveInfinities = 0;
+    private int negativeInfinities = 0;
+    private double shift = Double.NaN; //Offset for sum and sumSquares
+    private final CompensatedSum sum = new CompensatedSum(); //Sum of (x-shift)
+    private final CompensatedSum sumSquares = new CompensatedSum(); //Sum of (x-shift)^2
+    private final CompensatedSum sumRawSquares = new CompensatedSum(); //Sum of x^2 for the RMS
+
+    private final MonotonicDeque minDeque, maxDeque;
+    private final Median median;
+
+    //Sum with compensation of rounding errors
+    static class CompensatedSum implements Serializable {
+        private double sum = 0.0;
+        private double compensation = 0.0;
+
+        void add(double x) {
+            double t = sum + x;
+            if (Math.abs(sum) >= Math.abs(x))
+                compensation += (sum - t) + x;
+            else
+                compensation += (x - t) + sum;
+            sum = t;
+        }
+
+        double get() {
+            return sum + compensation;
+        }
+
+        void clear() {
+            sum = 0.0;
+            compensation = 0.0;
+        }
+    }
+
+    //Minimum (or maximum) of a sliding window. The deque holds the values that can still become the
+    //minimum, in ascending order, together with their position in the stream. Every value is added
+    //and removed at most once, so this is O(1) per value on average.
+    //The deque grows if it needs more than the initial capacity. On typical data it only holds a
+    //small part of the window, so it can start small for large windows.
+    static class MonotonicDeque implements Serializable {
+        private final boolean max;
+        private double[] values;
+        private long[] positions;
+        private int first = 0;
+        private int size = 0;
+
+        MonotonicDeque(int capacity, boolean max) {
+            this.max = max;
+            values = new double[Math.max(capacity, 1)];
+            positions = new long[values.length];
+        }
+
+        //Double the capacity and move the entries to the start of the new arrays
+        private void grow() {
+            double[] newValues = new double[2 * values.length];
+            long[] newPositions = new long[newValues.length];
+            int n = Math.min(size, values.length - first);
+            System.arraycopy(values, first, newValues, 0, n);
+            System.arraycopy(positions, first, newPositions, 0, n);
+            System.arraycopy(values, 0, newValues, n, size - n);
+            System.arraycopy(positions, 0, newPositions, n, size - n);
+            values = newValues;
+            positions = newPositions;
+            first = 0;
+        }
+
+        //Add value at the given position in the stream. NaN is ignored.
+        void add(long position, double value) {
+            if (Double.isNaN(value))
+                return;
+            while (size > 0) {
+                double last = values[(first + size - 1) % values.length];
+                if (max ? last > value : last < value)
+                    break;
+                size--;
+            }
+            if (size == values.length)
+                grow();
+            int i = (first + size) % values.length;
+            values[i] = value;
+            positions[i] = position;
+            size++;
+        }
+
+        //Remove everything that was added before the given position in the stream
+        void removeBefore(long position) {
+            while (size > 0 && positions[first] < position) {
+                first = (first + 1) % values.length;
+                size--;
+            }
+        }
+
+        double get() {
+            return size > 0 ? values[first] : Double.NaN;
+        }
+
+        void clear() {
+            first = 0;
+            size = 0;
+        }
+    }
+
+    //Median of a sliding window. The lower half of the values is kept in a max-heap, the upper half
+    //in a min-heap. The heaps store the slots of the values in the ring buffer of the window and
+    //every slot knows its place in the heaps, so a value that drops out of the window can be
+    //removed in O(log width) without searching for it.
+    static class Median implements Serializable {
+        private final double[] window;
+        private final int[] lower, upper; //Heaps of slots
+        private int lowerSize = 0, upperSize = 0;
+        private final int[] where; //Position of a slot in the heaps: i+1 in lower, -(i+1) in upper, 0 if absent
+
+        Median(double[] window) {
+            this.window = window;
+            lower = new int[window.length];
+            upper = new int[window.length];
+            where = new int[window.length];
+        }
+
+        private boolean above(int[] heap, int a, int b) {
+            //Should slot a be closer to the root than slot b?
+            return heap == lower ? window[a] > window[b] : window[a] < window[b];
+        }
+
+        private void set(int[] heap, int i, int slot) {
+            heap[i] = slot;
+            where[slot] = heap == lower ? i + 1 : -(i + 1);
+        }
+
+        private void siftUp(int[] heap, int i) {
+            int slot = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!above(heap, slot, heap[parent]))
+                    break;
+                set(heap, i, heap[parent]);
+                i = parent;
+            }
+            set(heap, i, slot);
+        }
+
+        private void siftDown(int[] heap, int size, int i) {
+            int slot = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && above(heap, heap[child + 1], heap[child]))
+                    child++;
+                if (!above(heap, heap[child], slot))
+                    break;
+                set(heap, i, heap[child]);
+                i = child;
+            }
+            set(heap, i, slot);
+        }
+
+        private void push(int[] heap, int slot) {
+            if (heap == lower) {
+                lower[lowerSize] = slot;
+                siftUp(lower, lowerSize++);
+            } else {
+                upper[upperSize] = slot;
+                siftUp(upper, upperSize++);
+            }
+        }
+
+        private int pop(int[] heap) {
+            int root = heap[0];
+            removeAt(heap, 0);
+            return root;
+        }
+
+        private void removeAt(int[] heap, int i) {
+            where[heap[i]] = 0;
+            int last;
+            if (heap == lower)
+                last = --lowerSize;
+            else
+                last = --upperSize;
+            if (i == last)
+                return;
+            set(heap, i, heap[last]);
+            siftDown(heap, last, i);
+            siftUp(heap, i);
+        }
+
+        //Keep the lower heap as large as the upper one or one larger
+        private void balance() {
+            if (lowerSize > upperSize + 1)
+                push(upper, pop(lower));
+            else if (upperSize > lowerSize)
+                push(lower, pop(upper));
+        }
+
+        //The value of the slot has to be set in the window before
+        void add(int slot) {
+            if (lowerSize > 0 && window[slot] > window[lower[0]])
+                push(upper, slot);
+            else
+                push(lower, slot);
+            balance();
+        }
+
+        //Remove the slot before its value in the window is overwritten
+        void remove(int slot) {
+            int w = where[slot];
+            if (w > 0)
+                removeAt(lower, w - 1);
+            else if (w < 0)
+                removeAt(upper, -w - 1);
+            else
+                return;
+            balance();
+        }
+
+        double get() {
+            if (lowerSize == 0)
+                return Double.NaN;
+            if (lowerSize > upperSize)
+                return window[lower[0]];
+            return 0.5 * (window[lower[0]] + window[upper[0]]);
+        }
+
+        void clear() {
+            lowerSize = 0;
+            upperSize = 0;
+            for (int i = 0; i < where.length; i++)
+                where[i] = 0;
+        }
+    }
+
+    RollingStatistics(int width, boolean minMax, boolean median) {
+        this.width = Math.max(width, 1);
+        window = new double[this.width];
+        minDeque = minMax ? new MonotonicDeque(this.width, false) : null;
+        maxDeque = minMax ? new MonotonicDeque(this.width, true) : null;
+        this.median = median ? new Median(window) : null;
+    }
+
+    private void count(double x, int direction) {
+        if (Double.isNaN(x)) {
+            nans += direction;
+        } else if (x == Double.POSITIVE_INFINITY) {
+            positiveInfinities += direction;
+        } else if (x == Double.NEGATIVE_INFINITY) {
+            negativeInfinities += direction;
+        } else {
+            n += direction;
+            if (n == 0) {
+                //Start over without any rounding errors left
+                shift = Double.NaN;
+                sum.clear();
+                sumSquares.clear();
+                sumRawSquares.clear();
+                return;
+            }
+            if (Double.isNaN(shift))
+                shift = x;
+            double d = x - shift;
+            sum.add(direction * d);
+            sumSquares.add(direction * d * d);
+            sumRawSquares.add(direction * x * x);
+        }
+    }
+
+    //Add the next value. If the window is full, the oldest value drops out.
+    void add(double x) {
+        int slot = (int)(count % width);
+        if (count >= width) {
+            count(window[slot], -1);
+            if (median != null)
+                median.remove(slot);
+        }
+        window[slot] = x;
+        count(x, +1);
+        if (median != null && !Double.isNaN(x))
+            median.add(slot);
+        if (minDeque != null) {
+            minDeque.removeBefore(count - width + 1);
+            maxDeque.removeBefore(count - width + 1);
+            minDeque.add(count, x);
+            maxDeque.add(count, x);
+        }
+        count++;
+    }
+
+    void clear() {
+        count = 0;
+        n = 0;
+        nans = 0;
+        positiveInfinities = 0;
+        negativeInfinities = 0;
+        shift = Double.NaN;
+        sum.clear();
+        sumSquares.clear();
+        sumRawSquares.clear();
+        if (minDeque != null) {
+            minDeque.clear();
+            maxDeque.clear();
+        }
+        if (median != null)
+            median.clear();
+    }
+
+    //Number of values that have been added in total
+    long getCount() {
+        return count;
+    }
+
+    //Number of values in the window that are not NaN
+    int size() {
+        return n + positiveInfinities + negativeInfinities;
+    }
+
+    int getNaNCount() {
+        return nans;
+    }
+
+    double mean() {
+        if (positiveInfinities > 0 || negativeInfinities > 0) {
+            if (positiveInfinities > 0 && negativeInfinities > 0)
+                return Double.NaN;
+            return positiveInfinities > 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        }
+        if (n == 0)
+            return Double.NaN;
+        return shift + sum.get() / n;
+    }
+
+    //Sample variance (divided by n-1)
+    double variance() {
+        if (positiveInfinities > 0 || negativeInfinities > 0 || n < 2)
+            return Double.NaN;
+        double s = sum.get();
+        return Math.max(0.0, (sumSquares.get() - s * s / n) / (n - 1));
+    }
+
+    double std() {
+        return Math.sqrt(variance());
+    }
+
+    double rms() {
+        if (positiveInfinities > 0 || negativeInfinities > 0)
+            return Double.POSITIVE_INFINITY;
+        if (n == 0)
+            return Double.NaN;
+        return Math.sqrt(Math.max(0.0, sumRawSquares.get()) / n);
+    }
+
+    double min() {
+        return minDeque.get();
+    }
+
+    double max() {
+        return maxDeque.get();
+    }
+
+    double median() {
+        return median.get();
+    }
+}
@@ -0,0 +1,126 @@
+package de.rwth_aachen.phyphox;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+//Formatting of doubles for the CSV export
+//The export writes every value with ten significant digits in scientific notation, which is the
+//DecimalFormat pattern "0.000000000E0" (i.e. 1.234567890E-3). DecimalFormat creates a few objects
+//and strings for every value, which adds up to minutes for a long recording, so this writes the
+//same characters directly to a byte array.
+//The digits are found by scaling the value to ten digits before the decimal point with a few
+//exact powers of ten. The scaling is off by a few units in the last place at most, which only
+//matters if the value is close to halfway between two results. In that case the digits are
+//rounded with BigDecimal from the shortest representation of the value, just like the
+//DecimalFormat of Android (ICU) does. The same is done for subnormal values.
+
+class ScientificFormat {
+    static final int MAX_LENGTH = 20; //Longest result, i.e. -1.234567890E-308
+
+    private static final int DIGITS = 10;
+    private static final long MIN_MANTISSA = 1000000000L;
+    private static final long MAX_MANTISSA = 10000000000L;
+    private static final double TIE_MARGIN = 1e-4; //Distance from a tie (in units of the last digit) that needs the exact rounding
+    private static final MathContext CONTEXT = new MathContext(DIGITS, RoundingMode.HALF_EVEN);
+
+    private static final double[] POWERS = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final byte[] NAN = {'N', 'a', 'N'};
+    private static final byte[] INFINITY = {(byte)0xe2, (byte)0x88, (byte)0x9e}; //Infinity sign (U+221E) in UTF-8, like DecimalFormat
+
+    //v * 10^k. Powers up to 10^22 are exact, larger ones are applied in steps.
+    private static double scale(double v, int k) {
+        while (k > 22) {
+            v *= 1e22;
+            k -= 22;
+        }
+        while (k < -22) {
+            v /= 1e22;
+            k += 22;
+        }
+        return k >= 0 ? v * POWERS[k] : v / POWERS[-k];
+    }
+
+    //Write v to dst at pos (there has to be room for MAX_LENGTH bytes) and return the position after it
+    static int format(double v, char decimalPoint, byte[] dst, int pos) {
+        if (Double.isNaN(v)) {
+            System.arraycopy(NAN, 0, dst, pos, NAN.length);
+            return pos + NAN.length;
+        }
+        if (v < 0 || (v == 0 && 1.0 / v < 0)) {
+            dst[pos++] = '-';
+            v = -v;
+        }
+        if (Double.isInfinite(v)) {
+            System.arraycopy(INFINITY, 0, dst, pos, INFINITY.length);
+            return pos + INFINITY.length;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        if (v > 0) {
+            boolean done = false;
+            //Subnormal values have less than ten significant digits, so scaling them would give the
+            //digits of the exact binary value (4.940656458E-324) instead of those of the shortest
+            //representation (4.900000000E-324) like DecimalFormat. These always take the slow path.
+            if (v >= Double.MIN_NORMAL) {
+                exponent = (int)Math.floor(Math.log10(v));
+                double scaled = scale(v, DIGITS - 1 - exponent);
+                //log10 may be off by one at powers of ten
+                if (scaled < MIN_MANTISSA) {
+                    exponent--;
+                    scaled = scale(v, DIGITS - 1 - exponent);
+                } else if (scaled >= MAX_MANTISSA) {
+                    exponent++;
+                    scaled = scale(v, DIGITS - 1 - exponent);
+                }
+                long integer = (long)scaled;
+                double fraction = scaled - integer;
+                if (integer >= MIN_MANTISSA - 1 && integer <= MAX_MANTISSA && Math.abs(fraction - 0.5) > TIE_MARGIN) {
+                    mantissa = fraction > 0.5 ? integer + 1 : integer;
+                    done = true;
+                }
+            }
+            if (!done) {
+                BigDecimal rounded = BigDecimal.valueOf(v).round(CONTEXT);
+                mantissa = rounded.unscaledValue().longValue();
+                for (int i = rounded.precision(); i < DIGITS; i++)
+                    mantissa *= 10;
+                exponent = rounded.precision() - rounded.scale() - 1;
+            }
+            //Rounding may add a digit (9.9999999996 -> 10.00000000)
+            if (mantissa >= MAX_MANTISSA) {
+                mantissa /= 10;
+                exponent++;
+            } else if (mantissa < MIN_MANTISSA) {
+                mantissa *= 10;
+                exponent--;
+            }
+        }
+
+        //Mantissa: One digit, the decimal point and nine more digits
+        for (int i = DIGITS; i >= 2; i--) {
+            dst[pos + i] = (byte)('0' + mantissa % 10);
+            mantissa /= 10;
+        }
+        dst[pos + 1] = (byte)decimalPoint;
+        dst[pos] = (byte)('0' + mantissa);
+        pos += DIGITS + 1;
+
+        dst[pos++] = 'E';
+        if (exponent < 0) {
+            dst[pos++] = '-';
+            exponent = -exponent;
+        }
+        if (exponent >= 100)
+            dst[pos++] = (byte)('0' + exponent / 100);
+        if (exponent >= 10)
+            dst[pos++] = (byte)('0' + (exponent / 10) % 10);
+        dst[pos++] = (byte)('0' + exponent % 10);
+        return pos;
+    }
+}
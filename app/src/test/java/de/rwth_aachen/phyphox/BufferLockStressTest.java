@@ -0,0 +1,153 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+//Stress test for the buffer locks: A sensor appends at a fixed rate while an analysis module
+//reads the sensor buffer and then spends 100 ms writing to its output. The sensor must not
+//have to wait for the analysis. At the same time the UI updates a view of the sensor buffer and a
+//view of the analysis result every frame, each locking only its own buffer like updateViews in
+//PhyphoxExperiment. The view of the sensor must not be held up by the analysis and the sensor must
+//not be held up by the UI.
+public class BufferLockStressTest {
+
+    private static final int SENSOR_PERIOD_MS = 2;
+    private static final int ANALYSIS_MS = 100;
+    private static final int RUNS = 5;
+    private static final long MAX_DELAY_MS = 50; //Generous for slow CI machines, still well below the analysis time
+    private static final int FRAME_MS = 16;
+    private static final int VIEW_TIMEOUT_MS = 10; //Same as in updateViews
+
+    @Test
+    public void sensorIsNotBlockedByAnalysis() throws Exception {
+        final DataBuffer sensor = new DataBuffer("sensor", 0, null);
+        final DataBuffer result = new DataBuffer("result", 0, null);
+
+        final Lock sensorLock = new BufferLock(Arrays.asList(sensor));
+        final Lock analysisInputLock = new BufferLock(Arrays.asList(sensor, result));
+        final Lock analysisOutputLock = new BufferLock(Arrays.asList(result));
+        final Lock sensorViewLock = new BufferLock(Arrays.asList(sensor));
+        final Lock resultViewLock = new BufferLock(Arrays.asList(result));
+
+        final AtomicLong maxDelay = new AtomicLong();
+        final AtomicInteger appended = new AtomicInteger();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong maxViewDelay = new AtomicLong();
+        final AtomicInteger frames = new AtomicInteger();
+        final AtomicInteger missedSensorViews = new AtomicInteger();
+
+        Thread sensorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long next = System.nanoTime();
+                while (running.get()) {
+                    next += SENSOR_PERIOD_MS * 1000000L;
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        try {
+                            Thread.sleep(wait / 1000000L, (int)(wait % 1000000L));
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    long start = System.nanoTime();
+                    sensorLock.lock();
+                    try {
+                        sensor.append(start * 1e-9);
+                        appended.incrementAndGet();
+                    } finally {
+                        sensorLock.unlock();
+                    }
+                    maxDelay.set(Math.max(maxDelay.get(), System.nanoTime() - start));
+                }
+            }
+        });
+        sensorThread.start();
+
+        Thread uiThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    try {
+                        Thread.sleep(FRAME_MS);
+                        long start = System.nanoTime();
+                        long deadline = start + VIEW_TIMEOUT_MS * 1000000L;
+                        if (sensorViewLock.tryLock(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                            try {
+                                sensor.getMax();
+                            } finally {
+                                sensorViewLock.unlock();
+                            }
+                            maxViewDelay.set(Math.max(maxViewDelay.get(), System.nanoTime() - start));
+                        } else
+                            missedSensorViews.incrementAndGet();
+                        //The result is locked by the analysis most of the time, this view just tries again in the next frame
+                        if (resultViewLock.tryLock(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                            try {
+                                result.getMax();
+                            } finally {
+                                resultViewLock.unlock();
+                            }
+                        }
+                        frames.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        uiThread.start();
+
+        for (int run = 0; run < RUNS; run++) {
+            DoubleView in;
+            analysisInputLock.lock();
+            try {
+                in = sensor.getView();
+            } finally {
+                analysisInputLock.unlock();
+            }
+
+            analysisOutputLock.lock();
+            try {
+                result.clear(false);
+                long end = System.nanoTime() + ANALYSIS_MS * 1000000L;
+                while (System.nanoTime() < end) {
+                    double sum = 0;
+                    for (int i = 0; i < in.size(); i++)
+                        sum += in.get(i);
+                    result.append(sum);
+                }
+            } finally {
+                analysisOutputLock.unlock();
+                in.release();
+            }
+        }
+
+        running.set(false);
+        sensorThread.join();
+        uiThread.join();
+
+        assertTrue("Sensor was blocked for " + maxDelay.get() * 1e-6 + " ms", maxDelay.get() < MAX_DELAY_MS * 1000000L);
+        assertTrue("UI did not run", frames.get() > 0);
+        assertEquals(0, missedSensorViews.get());
+        assertTrue("Sensor view was blocked for " + maxViewDelay.get() * 1e-6 + " ms", maxViewDelay.get() < MAX_DELAY_MS * 1000000L);
+
+        //A lock on all buffers gives exclusive access to everything
+        Lock all = new BufferLock(Arrays.asList(result, sensor));
+        all.lock();
+        try {
+            assertEquals(appended.get(), sensor.getFilledSize());
+        } finally {
+            all.unlock();
+        }
+    }
+}
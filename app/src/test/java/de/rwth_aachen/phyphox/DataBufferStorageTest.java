@@ -0,0 +1,260 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+//Compares the ring buffer and the chunked array with a plain array of the values, which is what
+//a DataBuffer kept in its LinkedList before. Random sequences of single and bulk appends, removals
+//and clears let the ring grow, wrap around and drop old values and let the chunked array add and
+//drop chunks. Views on the storage have to keep their values through all of this.
+public class DataBufferStorageTest {
+
+    //The values a buffer of the given size (0 = unlimited) keeps, i.e. an array list that only
+    //drops values at the front
+    private static class Reference {
+        final int size;
+        double[] values = new double[1024];
+        int first = 0, end = 0;
+
+        Reference(int size) {
+            this.size = size;
+        }
+
+        void add(double value) {
+            if (end == values.length) {
+                double[] newValues = new double[Math.max(1024, 2 * (end - first))];
+                System.arraycopy(values, first, newValues, 0, end - first);
+                end -= first;
+                first = 0;
+                values = newValues;
+            }
+            values[end++] = value;
+            if (size > 0 && end - first > size)
+                first++;
+        }
+
+        void removeFirst() {
+            if (end > first)
+                first++;
+        }
+
+        int size() {
+            return end - first;
+        }
+
+        double get(int i) {
+            return values[first + i];
+        }
+
+        Reference copy() {
+            Reference ret = new Reference(size);
+            for (int i = 0; i < size(); i++)
+                ret.add(get(i));
+            return ret;
+        }
+    }
+
+    private static void check(String what, Reference reference, DataBufferStorage storage, Random random, boolean full) {
+        int n = reference.size();
+        assertEquals(what + ": size", n, storage.size());
+        for (int k = 0; k < 20 && n > 0; k++) {
+            int i = random.nextInt(n);
+            assertEquals(what + ": value " + i, reference.get(i), storage.get(i), 0.0);
+        }
+        if (n > 0) {
+            int start = random.nextInt(n);
+            int count = random.nextInt(n - start + 1);
+            double[] part = new double[count + 3];
+            storage.copyTo(start, part, 3, count);
+            for (int i = 0; i < count; i++)
+                assertEquals(what + ": copyTo at " + (start + i), reference.get(start + i), part[3 + i], 0.0);
+        }
+        if (!full)
+            return;
+        double[] all = storage.toArray();
+        assertEquals(what + ": toArray", n, all.length);
+        for (int i = 0; i < n; i++)
+            assertEquals(what + ": toArray at " + i, reference.get(i), all[i], 0.0);
+        Iterator<Double> iterator = storage.iterator();
+        for (int i = 0; i < n; i++)
+            assertEquals(what + ": iterator at " + i, reference.get(i), iterator.next(), 0.0);
+        assertFalse(what + ": end of iterator", iterator.hasNext());
+    }
+
+    private static void run(int size, long seed) {
+        Random random = new Random(seed);
+        DataBufferStorage storage = DataBufferStorage.create(size);
+        Reference reference = new Reference(size);
+        double next = 0;
+        for (int step = 0; step < 2000; step++) {
+            String what = "Size " + size + ", step " + step;
+            int op = random.nextInt(100);
+            if (op < 50) {
+                storage.add(next);
+                reference.add(next++);
+            } else if (op < 75) {
+                int count = random.nextInt(random.nextBoolean() ? 50 : 3 * Math.max(size, 5000));
+                double[] values = new double[count + 2];
+                for (int i = 0; i < count; i++)
+                    values[i + 1] = next + i;
+                storage.add(values, 1, count);
+                for (int i = 0; i < count; i++)
+                    reference.add(next++);
+            } else if (op < 97) {
+                int count = random.nextInt(reference.size() + 1);
+                for (int i = 0; i < count; i++) {
+                    storage.removeFirst();
+                    reference.removeFirst();
+                }
+            } else {
+                storage.clear();
+                reference = new Reference(size);
+            }
+            check(what, reference, storage, random, step % 20 == 0);
+
+            if (random.nextInt(50) == 0) {
+                //A copy has to be independent of the original
+                DataBufferStorage copy = storage.copy();
+                Reference copyReference = reference.copy();
+                storage.add(-1.0);
+                reference.add(-1.0);
+                copy.removeFirst();
+                copyReference.removeFirst();
+                check(what + ", copy", copyReference, copy, random, true);
+                check(what + ", original", reference, storage, random, true);
+            }
+        }
+    }
+
+    @Test
+    public void ringMatchesList() {
+        int[] sizes = {1, 2, 15, 16, 17, 100, 1000, 65536};
+        for (int i = 0; i < sizes.length; i++)
+            run(sizes[i], i);
+    }
+
+    @Test
+    public void chunkedMatchesList() {
+        for (int seed = 0; seed < 4; seed++)
+            run(0, 100 + seed);
+    }
+
+    //A view with the values it had when it was created
+    private static class Snapshot {
+        final DoubleView view;
+        final double[] values;
+
+        Snapshot(DataBufferStorage storage) {
+            view = storage.view();
+            values = storage.toArray();
+        }
+
+        void check(String what) {
+            assertEquals(what + ": size", values.length, view.size());
+            for (int i = 0; i < values.length; i++)
+                assertEquals(what + ": value " + i, values[i], view.get(i), 0.0);
+            double[] copy = view.toArray();
+            for (int i = 0; i < values.length; i++)
+                assertEquals(what + ": copy at " + i, values[i], copy[i], 0.0);
+        }
+    }
+
+    //Views have to keep the values they had when they were created, while the storage overflows,
+    //grows, is cleared and reuses slots after removing values. Views are released in random order.
+    @Test
+    public void viewsStayIntact() {
+        Random random = new Random(11);
+        int[] sizes = {1, 5, 16, 40, 300, 0};
+        for (int size : sizes) {
+            DataBufferStorage storage = DataBufferStorage.create(size);
+            List<Snapshot> snapshots = new ArrayList<>();
+            double next = 0;
+            for (int step = 0; step < 5000; step++) {
+                int op = random.nextInt(100);
+                if (op < 15) {
+                    snapshots.add(new Snapshot(storage));
+                } else if (op < 30) {
+                    if (!snapshots.isEmpty())
+                        snapshots.remove(random.nextInt(snapshots.size())).view.release();
+                } else if (op < 70) {
+                    storage.add(next++);
+                } else if (op < 80) {
+                    int count = random.nextInt(2 * Math.max(size, 10) + 1);
+                    double[] values = new double[count];
+                    for (int i = 0; i < count; i++)
+                        values[i] = next++;
+                    storage.add(values, 0, count);
+                } else if (op < 98) {
+                    int count = random.nextInt(storage.size() + 1);
+                    for (int i = 0; i < count; i++)
+                        storage.removeFirst();
+                } else {
+                    storage.clear();
+                }
+                for (int i = 0; i < snapshots.size(); i++)
+                    snapshots.get(i).check("Size " + size + ", step " + step + ", view " + i);
+            }
+        }
+    }
+
+    //Releasing a view whose array the ring has already left must not count for the views on the
+    //new array, or the ring would overwrite their values
+    @Test
+    public void staleReleaseKeepsNewViews() {
+        DataBufferStorage storage = DataBufferStorage.create(8);
+        for (int i = 0; i < 4; i++)
+            storage.add(i);
+        DoubleView old = storage.view();
+        storage.clear(); //Leaves the array to the old view
+        for (int i = 0; i < 3; i++)
+            storage.add(10 + i);
+        Snapshot snapshot = new Snapshot(storage);
+        old.release();
+        old.release(); //Releasing twice has no effect either
+        for (int i = 0; i < 20; i++) { //Overflow
+            storage.add(100 + i);
+            snapshot.check("Overflow " + i);
+        }
+        storage.removeFirst();
+        storage.add(200);
+        snapshot.check("Reused slot");
+        snapshot.view.release();
+
+        //The same after the ring has grown
+        storage = DataBufferStorage.create(1000);
+        for (int i = 0; i < 10; i++)
+            storage.add(i);
+        old = storage.view();
+        for (int i = 0; i < 100; i++) //Grows to a new array
+            storage.add(i);
+        snapshot = new Snapshot(storage);
+        old.release();
+        for (int i = 0; i < 2000; i++)
+            storage.add(-i);
+        snapshot.check("After growing");
+    }
+
+    //A view on the chunked array keeps its chunks when the storage drops them
+    @Test
+    public void chunkedViewSurvivesRemoval() {
+        DataBufferStorage storage = DataBufferStorage.create(0);
+        for (int i = 0; i < 20000; i++)
+            storage.add(i);
+        Snapshot snapshot = new Snapshot(storage);
+        for (int i = 0; i < 15000; i++)
+            storage.removeFirst();
+        for (int i = 0; i < 10000; i++)
+            storage.add(-i);
+        snapshot.check("After removing chunks");
+        storage.clear();
+        storage.add(1.0);
+        snapshot.check("After clear");
+    }
+}
@@ -0,0 +1,177 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//Feeds the event detector with a signal in random blocks and compares the events with a single
+//pass over the whole signal, which is how eventstreamAM detected events before it could stream.
+//The detector interpolates the crossing of the threshold, so its events may lie up to one sample
+//before the sample that triggered them.
+public class EventDetectorTest {
+
+    private static DoubleView view(final double[] values) {
+        return new DoubleView() {
+            @Override
+            public int size() {
+                return values.length;
+            }
+
+            @Override
+            public double get(int index) {
+                return values[index];
+            }
+        };
+    }
+
+    //Samples that trigger an event, checking the whole signal at once
+    private static List<Integer> reference(Analysis.eventstreamAM.TriggerMode mode, double[] signal, double threshold, int distance) {
+        List<Integer> events = new ArrayList<>();
+        double last = Double.NaN;
+        int skip = 0;
+        for (int i = 0; i < signal.length; i++) {
+            double v = signal[i];
+            if (skip > 0) {
+                skip--;
+                last = v;
+                continue;
+            }
+            boolean triggered = false;
+            switch (mode) {
+                case above: triggered = v > threshold; break;
+                case below: triggered = v < threshold; break;
+                case aboveAbsolute: triggered = Math.abs(v) > threshold; break;
+                case belowAbsolute: triggered = Math.abs(v) < threshold; break;
+                case aboveDerivative: triggered = v - last > threshold; break;
+                case belowDerivative: triggered = v - last < threshold; break;
+                case aboveDerivativeAbsolute: triggered = Math.abs(v - last) > threshold; break;
+                case belowDerivativeAbsolute: triggered = Math.abs(v - last) < threshold; break;
+            }
+            if (triggered) {
+                events.add(i);
+                skip = distance;
+            }
+            last = v;
+        }
+        return events;
+    }
+
+    private static double[] collect(EventDetector detector) {
+        DataBuffer buffer = new DataBuffer("events", 0, null);
+        DataOutput.Builder builder = new DataOutput.Builder();
+        detector.collectEvents(builder);
+        new DataOutput(buffer, true).append(builder);
+        return buffer.getView().toArray();
+    }
+
+    private static double threshold(Analysis.eventstreamAM.TriggerMode mode) {
+        switch (mode) {
+            case belowAbsolute:
+            case belowDerivativeAbsolute:
+                return 0.05;
+            case aboveDerivative:
+            case aboveDerivativeAbsolute:
+                return 0.3;
+            case belowDerivative:
+                return -0.3;
+            case below:
+                return -0.8;
+            default:
+                return 0.8;
+        }
+    }
+
+    @Test
+    public void blocksMatchWholeSignal() {
+        Random random = new Random(2);
+        Analysis.eventstreamAM.TriggerMode[] modes = Analysis.eventstreamAM.TriggerMode.values();
+        for (int trial = 0; trial < 240; trial++) {
+            Analysis.eventstreamAM.TriggerMode mode = modes[trial % modes.length];
+            int variant = (trial / modes.length) % 3; //Fed with views, float or short blocks
+            int n = 2000 + random.nextInt(3000);
+            double[] signal = new double[n];
+            float[] floats = new float[n];
+            short[] shorts = new short[n];
+            for (int i = 0; i < n; i++) {
+                double v = 0.9 * Math.sin(i * 0.05) * (1 + 0.2 * random.nextGaussian()) + (random.nextInt(200) == 0 ? 0.5 : 0);
+                v = Math.max(-1, Math.min(1, v));
+                floats[i] = (float)v;
+                shorts[i] = (short)(v * Short.MAX_VALUE);
+                //The reference has to see the same values as the detector
+                if (variant == 0)
+                    signal[i] = v;
+                else if (variant == 1)
+                    signal[i] = floats[i];
+                else
+                    signal[i] = (double)shorts[i] / (double)Short.MAX_VALUE;
+            }
+            double threshold = threshold(mode);
+            int distance = random.nextInt(100);
+
+            EventDetector detector = new EventDetector(mode, null);
+            detector.setParameters(threshold, distance);
+            DoubleView view = view(signal);
+            int position = 0;
+            while (position < n) {
+                int count = Math.min(n - position, random.nextInt(500));
+                if (variant == 0) {
+                    detector.process(view, position, position + count);
+                } else if (variant == 1) {
+                    float[] block = new float[count];
+                    System.arraycopy(floats, position, block, 0, count);
+                    detector.process(block, count);
+                } else {
+                    short[] block = new short[count];
+                    System.arraycopy(shorts, position, block, 0, count);
+                    detector.process(block, count);
+                }
+                position += count;
+            }
+
+            List<Integer> expected = reference(mode, signal, threshold, distance);
+            double[] events = collect(detector);
+            String what = mode + " (trial " + trial + ")";
+            assertEquals(what, expected.size(), events.length);
+            for (int i = 0; i < events.length; i++) {
+                int sample = expected.get(i);
+                assertTrue(what + ": event " + events[i] + " instead of " + sample, Math.ceil(events[i]) == sample && events[i] > sample - 1);
+            }
+            assertEquals(n, detector.getIndex());
+        }
+    }
+
+    @Test
+    public void interpolatesCrossing() {
+        double f = 0.0123; //Cycles per sample
+        double[] signal = new double[1000];
+        for (int i = 0; i < signal.length; i++)
+            signal[i] = Math.sin(2 * Math.PI * f * i);
+        EventDetector detector = new EventDetector(Analysis.eventstreamAM.TriggerMode.above, null);
+        detector.setParameters(0.0, 60);
+        detector.process(view(signal), 0, signal.length);
+        double[] events = collect(detector);
+        assertTrue(events.length > 5);
+        for (int i = 1; i < events.length; i++) { //The first event has no previous sample to interpolate from
+            double exact = Math.round(events[i] * f) / f;
+            assertTrue("Event at " + events[i] + " instead of " + exact, Math.abs(events[i] - exact) < 1e-3);
+        }
+    }
+
+    @Test
+    public void resetStartsOver() {
+        double[] signal = {0, 1, 0, 1, 0, 1};
+        EventDetector detector = new EventDetector(Analysis.eventstreamAM.TriggerMode.above, null);
+        detector.setParameters(0.5, 0);
+        detector.process(view(signal), 0, 4);
+        detector.reset();
+        detector.process(view(signal), 0, signal.length);
+        double[] events = collect(detector);
+        assertEquals(3, events.length);
+        assertEquals(signal.length, detector.getIndex());
+    }
+}
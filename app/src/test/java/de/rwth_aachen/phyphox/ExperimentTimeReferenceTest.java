@@ -0,0 +1,102 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+//Compares the binary search for the time reference index with the linear walk through the time
+//mappings that was used before. The mappings are added while looking up, include pauses (no
+//experiment time passes), jumps back of the system clock and resets.
+public class ExperimentTimeReferenceTest {
+
+    private static int walkExperimentTime(List<ExperimentTimeReference.TimeMapping> mappings, double t) {
+        int i = 0;
+        while (mappings.size() > i + 1 && mappings.get(i + 1).experimentTime <= t)
+            i++;
+        return i;
+    }
+
+    private static int walkLinearTime(List<ExperimentTimeReference.TimeMapping> mappings, double t) {
+        int i = 0;
+        while (mappings.size() > i + 1 && (mappings.get(i + 1).systemTime - mappings.get(0).systemTime) * 0.001 <= t)
+            i++;
+        return i;
+    }
+
+    @Test
+    public void matchesLinearWalk() {
+        Random random = new Random(2);
+        for (int trial = 0; trial < 300; trial++) {
+            ExperimentTimeReference reference = new ExperimentTimeReference(null);
+            int maxMappings = random.nextInt(40);
+            double experimentTime = 0;
+            long systemTime = 1000000;
+            for (int step = 0; step < 400; step++) {
+                if (random.nextInt(10) == 0 && reference.timeMappings.size() < maxMappings) {
+                    experimentTime += random.nextInt(3) == 0 ? 0 : random.nextDouble() * 5;
+                    systemTime += random.nextInt(5000) - (random.nextInt(10) == 0 ? 8000 : 0);
+                    double e = random.nextInt(30) == 0 ? -1 : experimentTime; //Out of order
+                    reference.timeMappings.add(new ExperimentTimeReference.TimeMapping(ExperimentTimeReference.TimeMappingEvent.START, e, 0, systemTime));
+                }
+                if (random.nextInt(200) == 0)
+                    reference.reset();
+
+                double t = random.nextInt(3) == 0 ? random.nextDouble() * (experimentTime + 2) - 1 : experimentTime - random.nextDouble();
+                if (random.nextInt(50) == 0)
+                    t = Double.NaN;
+                String what = "Trial " + trial + ", step " + step;
+                assertEquals(what + ", experiment time " + t, walkExperimentTime(reference.timeMappings, t), reference.getReferenceIndexFromExperimentTime(t));
+
+                double linearTime = random.nextDouble() * (systemTime - 1000000) * 0.001 * 1.2;
+                assertEquals(what + ", linear time " + linearTime, walkLinearTime(reference.timeMappings, linearTime), reference.getReferenceIndexFromLinearTime(linearTime));
+            }
+        }
+    }
+
+    //Sensors look up indices on their own threads while the experiment is started, paused and cleared
+    @Test
+    public void concurrentLookupsAndResets() throws Exception {
+        final ExperimentTimeReference reference = new ExperimentTimeReference(null);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread sensor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(3);
+                try {
+                    while (running.get()) {
+                        double t = random.nextDouble() * 10;
+                        reference.getReferenceIndexFromExperimentTime(t);
+                        reference.getReferenceIndexFromLinearTime(t);
+                        reference.getExperimentTime();
+                        reference.getLinearTime();
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        sensor.start();
+        for (int i = 0; i < 100000; i++) {
+            switch (i % 7) {
+                case 6:
+                    reference.reset();
+                    break;
+                case 5:
+                    reference.addMapping(new ExperimentTimeReference.TimeMapping(ExperimentTimeReference.TimeMappingEvent.PAUSE, 1.0, 0, 1000));
+                    break;
+                default:
+                    reference.registerEvent(i % 2 == 0 ? ExperimentTimeReference.TimeMappingEvent.START : ExperimentTimeReference.TimeMappingEvent.PAUSE);
+            }
+        }
+        running.set(false);
+        sensor.join();
+        assertNull(String.valueOf(failure.get()), failure.get());
+    }
+}
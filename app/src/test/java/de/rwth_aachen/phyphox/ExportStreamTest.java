@@ -0,0 +1,185 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+//Writes tables through ExportStream and compares the files with the CSV that was built with
+//StringBuilder and DecimalFormat before. Plain files, zip files and the background deflater have
+//to give the same content. A failing output stream has to end the export with an IOException
+//instead of leaving it waiting for the deflater.
+public class ExportStreamTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String[] ENTRIES = {"Raw data.csv", "Ünïcode µ.csv", "meta/time.csv"};
+
+    private static double[][] table(Random random, int rows) {
+        double[][] data = new double[3][rows];
+        for (int i = 0; i < rows; i++) {
+            data[0][i] = i * 0.002;
+            data[1][i] = (float)random.nextGaussian(); //Short representation, so there are no ties
+            data[2][i] = random.nextInt(50) == 0 ? Double.NaN : random.nextInt(100000) * 0.01;
+        }
+        return data;
+    }
+
+    //The CSV as the export created it with DecimalFormat
+    private static String reference(double[][] data, char separator, char decimalPoint) {
+        DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
+        format.applyPattern("0.000000000E0");
+        DecimalFormatSymbols dfs = format.getDecimalFormatSymbols();
+        dfs.setDecimalSeparator(decimalPoint);
+        format.setDecimalFormatSymbols(dfs);
+        format.setGroupingUsed(false);
+        StringBuilder sb = new StringBuilder();
+        sb.append("\"t (s)\"").append(separator).append("\"a (m/s²)\"").append(separator).append("\"x\"\n");
+        for (int i = 0; i < data[0].length; i++) {
+            for (int j = 0; j < data.length; j++) {
+                sb.append(format.format(data[j][i]));
+                if (j < data.length - 1)
+                    sb.append(separator);
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static void write(ExportStream out, double[][] data, char separator, char decimalPoint) throws IOException {
+        out.write("\"t (s)\"");
+        out.write(separator);
+        out.write("\"a (m/s²)\"");
+        out.write(separator);
+        out.write("\"x\"");
+        out.write('\n');
+        for (int i = 0; i < data[0].length; i++) {
+            for (int j = 0; j < data.length; j++) {
+                out.writeDouble(data[j][i], decimalPoint);
+                if (j < data.length - 1)
+                    out.write(separator);
+            }
+            out.write('\n');
+        }
+    }
+
+    private static byte[] read(ZipInputStream zip) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = zip.read(buffer)) > 0)
+            result.write(buffer, 0, n);
+        return result.toByteArray();
+    }
+
+    @Test
+    public void plainMatchesDecimalFormat() throws IOException {
+        Random random = new Random(1);
+        for (char separator : new char[]{',', '\t', '§'}) { //Also a separator that needs two bytes
+            double[][] data = table(random, 30000);
+            ByteArrayOutputStream file = new ByteArrayOutputStream();
+            ExportStream out = new ExportStream(file, null, false);
+            write(out, data, separator, '.');
+            out.close();
+            assertArrayEquals("Separator " + separator, reference(data, separator, '.').getBytes(UTF8), file.toByteArray());
+        }
+    }
+
+    @Test
+    public void zipMatchesDecimalFormat() throws IOException {
+        Random random = new Random(2);
+        for (boolean background : new boolean[]{false, true}) {
+            double[][][] tables = new double[ENTRIES.length][][];
+            ByteArrayOutputStream file = new ByteArrayOutputStream();
+            ExportStream out = new ExportStream(file, Deflater.DEFAULT_COMPRESSION, background);
+            for (int k = 0; k < ENTRIES.length; k++) {
+                tables[k] = table(random, random.nextInt(50000));
+                out.nextEntry(ENTRIES[k]);
+                write(out, tables[k], ';', ',');
+            }
+            out.close();
+
+            ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(file.toByteArray()));
+            for (int k = 0; k < ENTRIES.length; k++) {
+                ZipEntry entry = zip.getNextEntry();
+                assertEquals(ENTRIES[k], entry.getName());
+                assertArrayEquals("Background " + background + ", " + ENTRIES[k], reference(tables[k], ';', ',').getBytes(UTF8), read(zip));
+            }
+            assertNull(zip.getNextEntry());
+        }
+    }
+
+    @Test
+    public void longStrings() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+            sb.append((char)('a' + i % 26)).append(i % 1000 == 0 ? "∞" : "");
+        String s = sb.toString(); //Longer than a block
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        ExportStream out = new ExportStream(file, Deflater.BEST_SPEED, true);
+        out.nextEntry("a.txt");
+        out.write('x');
+        out.write(s);
+        out.write('y');
+        out.close();
+        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(file.toByteArray()));
+        zip.getNextEntry();
+        assertArrayEquals(("x" + s + "y").getBytes(UTF8), read(zip));
+    }
+
+    //Fails once after a number of bytes with an exception that is not an IOException
+    private static class FailingStream extends OutputStream {
+        private int remaining;
+        private final RuntimeException failure;
+
+        FailingStream(int remaining, RuntimeException failure) {
+            this.remaining = remaining;
+            this.failure = failure;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (remaining >= 0 && (remaining -= len) < 0)
+                throw failure;
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void deflaterFailureIsReported() {
+        RuntimeException failure = new IllegalStateException("Test failure");
+        double[][] data = table(new Random(3), 200000);
+        ExportStream out = new ExportStream(new FailingStream(100000, failure), Deflater.NO_COMPRESSION, true);
+        try {
+            try {
+                out.nextEntry("Raw data.csv");
+                write(out, data, ',', '.');
+            } finally {
+                out.close();
+            }
+            fail("No exception");
+        } catch (IOException e) {
+            assertTrue("Cause " + e.getCause(), e.getCause() == failure);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+//Runs maxAM, minAM and thresholdAM after random appends, clears and threshold changes and compares
+//their outputs after every update with the original implementation, which scanned all values on
+//every update. The x input is often shorter than y, so positions are counted up from its last value.
+public class ExtremumSearchTest {
+
+    //The original maxAM and minAM: Extrema with their positions
+    private static double[][] referenceExtremum(boolean max, boolean multiple, double[] y, double[] x, double threshold) {
+        List<Double> values = new ArrayList<>();
+        List<Double> positions = new ArrayList<>();
+        double extremum = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        double position = Double.NEGATIVE_INFINITY;
+        double currentX = -1;
+        for (int i = 0; i < y.length; i++) {
+            double v = y[i];
+            if (x != null && i < x.length)
+                currentX = x[i];
+            else
+                currentX += 1;
+
+            if (multiple && (max ? v < threshold : v > threshold)) {
+                if (!Double.isInfinite(position)) {
+                    values.add(extremum);
+                    positions.add(position);
+                    extremum = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+                    position = Double.NEGATIVE_INFINITY;
+                }
+            } else if (max ? v > extremum : v < extremum) {
+                extremum = v;
+                position = currentX;
+            }
+        }
+        if (!Double.isInfinite(position)) {
+            values.add(extremum);
+            positions.add(position);
+        }
+        return new double[][]{toArray(values), toArray(positions)};
+    }
+
+    //The original thresholdAM: Position at which y crosses the threshold
+    private static double[] referenceThreshold(boolean falling, double[] y, double[] x, double threshold) {
+        double last = Double.NaN;
+        double currentX = -1;
+        for (int i = 0; i < y.length; i++) {
+            double v = y[i];
+            if (x != null && i < x.length)
+                currentX = x[i];
+            else
+                currentX += 1;
+
+            if (!(Double.isNaN(last) || Double.isNaN(v))) {
+                if (falling ? last >= threshold && v < threshold : last <= threshold && v > threshold)
+                    break;
+            }
+            last = v;
+        }
+        return new double[]{currentX};
+    }
+
+    private static double[] toArray(List<Double> list) {
+        double[] array = new double[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+
+    //Values from a small set, so there are equal values, and an occasional NaN
+    private static double value(Random random) {
+        if (random.nextInt(50) == 0)
+            return Double.NaN;
+        return random.nextInt(9) - 4;
+    }
+
+    //Kind of module
+    private static final int MAX = 0, MIN = 1, THRESHOLD_RISING = 2, THRESHOLD_FALLING = 3;
+
+    //Feeds a module in random steps and checks it after each update. Returns the number of
+    //updates that continued the previous scan.
+    private static int run(int kind, boolean multiple, boolean withX, int ySize, long seed) {
+        Random random = new Random(seed);
+        PhyphoxExperiment experiment = new PhyphoxExperiment();
+        DataBuffer y = new DataBuffer("y", ySize, null);
+        DataBuffer x = withX ? new DataBuffer("x", 0, null) : null;
+        DataBuffer threshold = new DataBuffer("threshold", 0, null);
+        threshold.append(0);
+
+        Vector<DataInput> inputs = new Vector<>();
+        inputs.add(withX ? new DataInput(x, true) : null);
+        inputs.add(new DataInput(y, true));
+        inputs.add(new DataInput(threshold, true));
+        DataBuffer[] results = {new DataBuffer("value", 0, null), new DataBuffer("position", 0, null)};
+        Vector<DataOutput> outputs = new Vector<>();
+        outputs.add(new DataOutput(results[0], false));
+        if (kind == MAX || kind == MIN)
+            outputs.add(new DataOutput(results[1], false));
+
+        Analysis.AnalysisModule module;
+        switch (kind) {
+            case MAX: module = new Analysis.maxAM(experiment, inputs, outputs, multiple); break;
+            case MIN: module = new Analysis.minAM(experiment, inputs, outputs, multiple); break;
+            default: module = new Analysis.thresholdAM(experiment, inputs, outputs, kind == THRESHOLD_FALLING); break;
+        }
+        module.setCycles(new Vector<Analysis.AnalysisModule.CycleRange>());
+
+        int continued = 0;
+        double nextX = 0;
+        for (int step = 0; step < 400; step++) {
+            int op = random.nextInt(100);
+            if (op < 75) {
+                int count = random.nextInt(8);
+                for (int i = 0; i < count; i++)
+                    y.append(value(random));
+                //x often lags behind y and catches up later
+                if (withX) {
+                    int xCount = random.nextInt(3) == 0 ? 0 : Math.max(0, y.getFilledSize() + random.nextInt(3) - 1 - x.getFilledSize());
+                    for (int i = 0; i < xCount; i++) {
+                        nextX += 0.5 + random.nextInt(3);
+                        x.append(nextX);
+                    }
+                }
+            } else if (op < 82) {
+                y.clear(false);
+            } else if (op < 86 && withX) {
+                x.clear(false);
+                nextX = 0;
+            } else if (op < 92) {
+                threshold.append(random.nextInt(5) - 2);
+            }
+            //Otherwise, nothing has changed at all
+
+            module.updateIfNotStatic(step);
+            if (module.continueRun)
+                continued++;
+
+            double[] yValues = y.getView().toArray();
+            double[] xValues = withX ? x.getView().toArray() : null;
+            double t = threshold.getView().last();
+            String what = "Kind " + kind + ", multiple " + multiple + ", x " + withX + ", seed " + seed + ", step " + step;
+            if (kind == MAX || kind == MIN) {
+                double[][] expected = referenceExtremum(kind == MAX, multiple, yValues, xValues, t);
+                assertArrayEquals(what + ": values", expected[0], results[0].getView().toArray(), 0.0);
+                assertArrayEquals(what + ": positions", expected[1], results[1].getView().toArray(), 0.0);
+            } else {
+                double[] expected = referenceThreshold(kind == THRESHOLD_FALLING, yValues, xValues, t);
+                assertArrayEquals(what, expected, results[0].getView().toArray(), 0.0);
+            }
+        }
+        return continued;
+    }
+
+    private static void check(int kind, boolean multiple) {
+        int continued = 0;
+        for (int seed = 0; seed < 5; seed++) {
+            for (boolean withX : new boolean[]{false, true}) {
+                continued += run(kind, multiple, withX, 0, seed);
+                continued += run(kind, multiple, withX, 20, seed); //Drops values from the front
+            }
+        }
+        assertTrue("Continued updates: " + continued, continued > 1000);
+    }
+
+    @Test
+    public void max() {
+        check(MAX, false);
+    }
+
+    @Test
+    public void maxMultiple() {
+        check(MAX, true);
+    }
+
+    @Test
+    public void min() {
+        check(MIN, false);
+    }
+
+    @Test
+    public void minMultiple() {
+        check(MIN, true);
+    }
+
+    @Test
+    public void thresholdRising() {
+        check(THRESHOLD_RISING, false);
+    }
+
+    @Test
+    public void thresholdFalling() {
+        check(THRESHOLD_FALLING, false);
+    }
+}
@@ -0,0 +1,139 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+//Compares the FFT with a direct calculation of the discrete Fourier transform for powers of two,
+//sizes with small factors (mixed radix) and sizes with large prime factors (Bluestein).
+public class FFTTest {
+
+    private static final int[] POWERS_OF_TWO = {2, 4, 8, 16, 32, 64, 128, 256, 1024, 4096};
+    private static final int[] SMALL_FACTORS = {3, 5, 6, 9, 10, 12, 15, 18, 25, 27, 30, 49, 60, 100, 121, 210, 243, 360, 625, 1000};
+    private static final int[] LARGE_PRIME_FACTORS = {7, 11, 13, 17, 31, 97, 127, 257, 1009, 4097 /* 17 * 241 */};
+    private static final double TOLERANCE = 1e-12; //Relative to the norm of the input
+
+    private final Random random = new Random(42);
+
+    private static void dft(double[] xr, double[] xi, int n, double[] yr, double[] yi) {
+        for (int k = 0; k < n; k++) {
+            double sr = 0, si = 0;
+            for (int j = 0; j < n; j++) {
+                double angle = -2 * Math.PI * (((long)j * k) % n) / n;
+                double c = Math.cos(angle);
+                double s = Math.sin(angle);
+                sr += xr[j] * c - xi[j] * s;
+                si += xr[j] * s + xi[j] * c;
+            }
+            yr[k] = sr;
+            yi[k] = si;
+        }
+    }
+
+    private static void assertClose(String what, double[] expRe, double[] expIm, double[] re, double[] im, int n) {
+        double error = 0;
+        for (int k = 0; k < n; k++)
+            error = Math.max(error, Math.hypot(re[k] - expRe[k], im[k] - expIm[k]));
+        error /= Math.sqrt(n);
+        assertTrue(what + " of size " + n + " is off by " + error, error < TOLERANCE);
+    }
+
+    private double[] gaussian(int n) {
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++)
+            x[i] = random.nextGaussian();
+        return x;
+    }
+
+    private void checkComplex(int n) {
+        double[] xr = gaussian(n);
+        double[] xi = gaussian(n);
+        double[] er = new double[n];
+        double[] ei = new double[n];
+        dft(xr, xi, n, er, ei);
+
+        FFT fft = new FFT();
+        double[] yr = xr.clone();
+        double[] yi = xi.clone();
+        fft.transform(yr, yi, n);
+        assertClose("Transform", er, ei, yr, yi, n);
+
+        fft.inverse(yr, yi, n);
+        assertClose("Inverse transform", xr, xi, yr, yi, n);
+    }
+
+    private void checkReal(int n) {
+        double[] x = gaussian(n);
+        double[] er = new double[n];
+        double[] ei = new double[n];
+        dft(x, new double[n], n, er, ei);
+
+        FFT fft = new FFT();
+        double[] re = new double[n];
+        double[] im = new double[n];
+        fft.realTransform(x, n, re, im);
+        assertClose("Real transform", er, ei, re, im, n);
+
+        //In place
+        double[] inPlace = x.clone();
+        fft.realTransform(inPlace, n, inPlace, im);
+        assertClose("Real transform in place", er, ei, inPlace, im, n);
+    }
+
+    @Test
+    public void powersOfTwo() {
+        for (int n : POWERS_OF_TWO) {
+            checkComplex(n);
+            checkReal(n);
+        }
+    }
+
+    @Test
+    public void smallFactors() {
+        for (int n : SMALL_FACTORS) {
+            checkComplex(n);
+            checkReal(n);
+        }
+    }
+
+    @Test
+    public void largePrimeFactors() {
+        for (int n : LARGE_PRIME_FACTORS) {
+            checkComplex(n);
+            checkReal(n);
+        }
+    }
+
+    @Test
+    public void trivialSizes() {
+        FFT fft = new FFT();
+        double[] re = {3.5};
+        double[] im = {-1.0};
+        fft.transform(re, im, 1);
+        assertTrue(re[0] == 3.5 && im[0] == -1.0);
+        checkComplex(2);
+        checkReal(2);
+        checkReal(3);
+    }
+
+    @Test
+    public void correlation() {
+        FFT fft = new FFT();
+        int[][] cases = {{1, 1, 1}, {100, 100, 100}, {1000, 300, 701}, {513, 17, 400}, {64, 64, 1}};
+        for (int[] c : cases) {
+            int sizeA = c[0], sizeB = c[1], count = c[2];
+            double[] a = gaussian(sizeA);
+            double[] b = gaussian(sizeB);
+            double[] result = new double[count];
+            fft.correlate(a, sizeA, b, sizeB, count, result);
+            for (int i = 0; i < count; i++) {
+                double sum = 0;
+                for (int j = 0; j < sizeB && i + j < sizeA; j++)
+                    sum += a[i + j] * b[j];
+                assertTrue("Correlation " + sizeA + "x" + sizeB + " at " + i + ": " + result[i] + " instead of " + sum, Math.abs(result[i] - sum) < 1e-10 * Math.sqrt(sizeA));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+
+//Compares the compiled program of the FormulaParser with the evaluation of the parsed formula
+//value by value, which is how formulas were calculated before they were compiled. This includes
+//inputs of different lengths, missing or empty inputs and formulas that cannot be evaluated.
+public class FormulaParserTest {
+
+    private static final String[] FORMULAS = {
+            "[1_]+[2_]", "[1_]*2+3", "sqrt([1_]*[1_]+[2_]*[2_]+[3_]*[3_])", "[1_]*180/3.14159265+[2]",
+            "atan2([2_],[1_])*(1+0*sin([3_]))", "-[1_]", "--[1_]", "2^3*[1_]", "[1]+[2]", "1+2", "[3]*[1_]",
+            "sin(1,[2_])+[1_]", "sin([1_],[3_])", "atan2([1_])", "sqrt()", "[4_]+1", "[4]", "heaviside([1_]-0.5)",
+            "round([1_]*10)", "sign([1_]-[2_])", "min([1_],[2])", "max([1_],max([2_],[3_]))", "[1_]%0.3",
+            "exp(log(abs([1_])))", "ceil([1_])-floor([2_])", "tanh(sinh(cosh([1_])))", "asin(acos(atan([1_])))",
+            "1e3*[1_]", "2e-3+[1_]", "[1_]-[1_]", "[2_]", "[2]", "tan([3_])/[1]", "round(0/0)+[1_]", "5",
+            "[1_]*[1_]*[1_]*[1_]*[1_]*[1_]*[1_]*[1_]*[1_]*[1_]*[1_]*[1_]"
+    };
+    private static final int TRIALS = 60;
+
+    private static DoubleView view(final double[] values) {
+        return new DoubleView() {
+            @Override
+            public int size() {
+                return values.length;
+            }
+
+            @Override
+            public double get(int index) {
+                return values[index];
+            }
+        };
+    }
+
+    //Value by value evaluation of the parsed formula until the first value that cannot be calculated
+    private static double[] evaluate(FormulaParser parser, Vector<DoubleView> in, int start) {
+        int n = 0;
+        for (DoubleView v : in) {
+            if (v != null)
+                n = Math.max(n, v.size());
+        }
+        double[] result = new double[Math.max(n - start, 0)];
+        int count = 0;
+        for (int i = start; i < n; i++) {
+            try {
+                result[count] = parser.base.get(in, i);
+            } catch (Exception e) {
+                break;
+            }
+            count++;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static double[] execute(FormulaParser parser, Vector<DoubleView> in, int start) {
+        DataBuffer buffer = new DataBuffer("out", 0, null);
+        parser.execute(in, new DataOutput(buffer, false), start);
+        return buffer.getView().toArray();
+    }
+
+    @Test
+    public void compiledMatchesEvaluation() throws Exception {
+        Random random = new Random(1);
+        int checked = 0;
+        for (String formula : FORMULAS) {
+            FormulaParser parser = new FormulaParser(formula);
+            for (int trial = 0; trial < TRIALS; trial++) {
+                Vector<DoubleView> in = new Vector<>();
+                int inputs = random.nextInt(4) + (trial % 5 == 0 ? 0 : 1);
+                for (int k = 0; k < inputs; k++) {
+                    if (random.nextInt(10) == 0) {
+                        in.add(null);
+                        continue;
+                    }
+                    int length = random.nextInt(6) == 0 ? random.nextInt(3) : random.nextInt(1200);
+                    double[] values = new double[length];
+                    for (int j = 0; j < length; j++)
+                        values[j] = random.nextInt(20) == 0 ? Double.NaN : random.nextGaussian();
+                    in.add(view(values));
+                }
+                int start = random.nextInt(3) == 0 ? random.nextInt(600) : 0;
+
+                double[] expected = evaluate(parser, in, start);
+                double[] result = execute(parser, in, start);
+                assertEquals(formula + " (trial " + trial + ")", expected.length, result.length);
+                for (int i = 0; i < expected.length; i++) {
+                    //Bitwise, so NaN equals NaN and 0 differs from -0
+                    assertEquals(formula + " (trial " + trial + ", index " + i + ")", Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(result[i]));
+                }
+                checked += expected.length;
+            }
+        }
+        assertTrue("Nothing to compare", checked > 0);
+    }
+}
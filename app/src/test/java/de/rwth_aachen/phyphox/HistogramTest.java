@@ -0,0 +1,320 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+
+//Compares Histogram, binningAM and mapAM with the original implementations of binning and map.
+//The growing range of binning truncates (v-x0)/dx towards zero like binning always did, while a
+//fixed number of bins uses the floor, so values just below x0 are dropped instead of counted in
+//the first bin. The modules keep their histograms between updates, so they are also checked
+//after random appends, clears and parameter changes.
+public class HistogramTest {
+
+    //The original binningAM: Bin starts and counts of a growing range
+    private static double[][] referenceBinning(double[] values, double x0, double dx) {
+        Vector<Double> binStarts = new Vector<>();
+        Vector<Double> binCounts = new Vector<>();
+        for (double v : values) {
+            if (Double.isNaN(v) || Double.isInfinite(v))
+                continue;
+            int binIndex = (int)((v-x0)/dx);
+            if (binStarts.size() == 0) {
+                binStarts.add(x0+binIndex*dx);
+                binCounts.add(1.);
+            } else {
+                int firstBinIndex = (int)Math.round((binStarts.get(0)-x0)/dx);
+                while (binIndex > firstBinIndex + binStarts.size() - 1) {
+                    binStarts.add(x0+(firstBinIndex+binStarts.size())*dx);
+                    binCounts.add(0.);
+                }
+                while (binIndex < firstBinIndex) {
+                    binStarts.insertElementAt(x0+(firstBinIndex-1)*dx,0);
+                    binCounts.insertElementAt(0.,0);
+                    firstBinIndex = (int)Math.round((binStarts.get(0)-x0)/dx);
+                }
+                binCounts.set(binIndex-firstBinIndex,binCounts.get(binIndex-firstBinIndex)+1);
+            }
+        }
+        double[][] result = new double[2][binStarts.size()];
+        for (int i = 0; i < binStarts.size(); i++) {
+            result[0][i] = binStarts.get(i);
+            result[1][i] = binCounts.get(i);
+        }
+        return result;
+    }
+
+    //Counts of a fixed number of bins by checking every value against every bin
+    private static double[][] referenceFixed(double[] values, double x0, double dx, int bins) {
+        double[][] result = new double[2][bins];
+        for (int i = 0; i < bins; i++) {
+            double start = x0 + i * dx;
+            result[0][i] = start;
+            for (double v : values) {
+                if (v >= start && v < x0 + (i + 1) * dx)
+                    result[1][i]++;
+            }
+        }
+        return result;
+    }
+
+    //The original mapAM: x, y and z of each grid point
+    private static double[][] referenceMap(Analysis.mapAM.ZMode zMode, int mapWidth, double minx, double maxx, int mapHeight, double miny, double maxy, double[] xin, double[] yin, double[] zin) {
+        int n = Math.min(xin.length, yin.length);
+        if (zMode != Analysis.mapAM.ZMode.count)
+            n = Math.min(n, zin.length);
+        double[] zsumout = new double[mapHeight*mapWidth];
+        int[] nout = new int[mapHeight*mapWidth];
+        for (int i = 0; i < n; i++) {
+            int x = (int)Math.round((mapWidth-1)*(xin[i]-minx)/(maxx-minx));
+            int y = (int)Math.round((mapHeight-1)*(yin[i]-miny)/(maxy-miny));
+            if (x < 0 || x >= mapWidth || y < 0 || y >= mapHeight)
+                continue;
+            int index = x + y*mapWidth;
+            if (zMode != Analysis.mapAM.ZMode.count) {
+                zsumout[index] += zin[i];
+            }
+            nout[index]++;
+        }
+        double[][] result = new double[3][mapWidth*mapHeight];
+        for (int y = 0; y < mapHeight; y++) {
+            for (int x = 0; x < mapWidth; x++) {
+                int index = y*mapWidth + x;
+                result[0][index] = minx + x*(maxx-minx)/((double)(mapWidth-1));
+                result[1][index] = miny + y*(maxy-miny)/((double)(mapHeight-1));
+                switch (zMode) {
+                    case count:   result[2][index] = nout[index]; break;
+                    case sum:     result[2][index] = zsumout[index]; break;
+                    case average: result[2][index] = zsumout[index] / (double)nout[index]; break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static double[][] contents(Histogram histogram) {
+        double[][] result = new double[2][histogram.size()];
+        for (int i = 0; i < histogram.size(); i++) {
+            result[0][i] = histogram.binStart(i);
+            result[1][i] = histogram.count(i);
+        }
+        return result;
+    }
+
+    //Random values that often jump far below and above the current range
+    private static double value(Random random, int step) {
+        int kind = random.nextInt(100);
+        if (kind == 0)
+            return Double.NaN;
+        if (kind == 1)
+            return random.nextBoolean() ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        if (kind < 10)
+            return (random.nextDouble() - 0.5) * 2 * step;
+        return random.nextGaussian() * 5;
+    }
+
+    @Test
+    public void growingRangeMatchesBinning() {
+        Random random = new Random(1);
+        double[][] parameters = {{0, 1}, {0.5, 0.25}, {-3, 2.5}, {1e3, 0.1}};
+        for (double[] p : parameters) {
+            Histogram histogram = new Histogram(p[0], p[1], 0);
+            double[] values = new double[0];
+            for (int step = 1; step < 200; step++) {
+                int count = random.nextInt(20);
+                double[] next = Arrays.copyOf(values, values.length + count);
+                for (int i = values.length; i < next.length; i++) {
+                    next[i] = value(random, step);
+                    histogram.add(next[i]);
+                }
+                values = next;
+                double[][] expected = referenceBinning(values, p[0], p[1]);
+                double[][] actual = contents(histogram);
+                assertArrayEquals("x0 " + p[0] + ", dx " + p[1] + ", step " + step + ": starts", expected[0], actual[0], 0.0);
+                assertArrayEquals("x0 " + p[0] + ", dx " + p[1] + ", step " + step + ": counts", expected[1], actual[1], 0.0);
+            }
+        }
+    }
+
+    //Values below the first bin extend the range at the front without touching the existing counts
+    @Test
+    public void growsBelowFirstBin() {
+        Histogram histogram = new Histogram(0, 1, 0);
+        histogram.add(100.5);
+        histogram.add(100.7);
+        for (int i = 99; i >= -1000; i--)
+            histogram.add(i + 0.5);
+        //-0.5 and 0.5 are both in bin 0 because (v-x0)/dx is truncated towards zero
+        assertEquals(100 + 999 + 1, histogram.size());
+        assertEquals(-999., histogram.binStart(0), 0.0);
+        assertEquals(1, histogram.count(0));
+        assertEquals(2, histogram.count(999)); //Bin 0
+        assertEquals(2, histogram.count(histogram.size() - 1)); //Bin 100
+        assertEquals(100., histogram.binStart(histogram.size() - 1), 0.0);
+    }
+
+    @Test
+    public void truncateAndFloor() {
+        double[] values = {-0.5, -0.0001, 0, 0.5, 2.9999, 3, 3.5, -1};
+
+        //Growing range: Values in -1 < v < 1 are all in the bin that starts at 0
+        Histogram growing = new Histogram(0, 1, 0);
+        for (double v : values)
+            growing.add(v);
+        double[][] expected = referenceBinning(values, 0, 1);
+        double[][] actual = contents(growing);
+        assertArrayEquals(expected[0], actual[0], 0.0);
+        assertArrayEquals(expected[1], actual[1], 0.0);
+        assertArrayEquals(new double[]{-1, 0, 1, 2, 3}, actual[0], 0.0);
+        assertArrayEquals(new double[]{1, 4, 0, 1, 2}, actual[1], 0.0);
+
+        //Fixed bins: Values below x0 and at or above x0+bins*dx are dropped
+        Histogram fixed = new Histogram(0, 1, 3);
+        for (double v : values)
+            fixed.add(v);
+        actual = contents(fixed);
+        assertArrayEquals(new double[]{0, 1, 2}, actual[0], 0.0);
+        assertArrayEquals(new double[]{2, 0, 1}, actual[1], 0.0);
+    }
+
+    @Test
+    public void fixedBinsMatchBruteForce() {
+        Random random = new Random(2);
+        double[][] parameters = {{0, 1, 10}, {-5, 0.5, 21}, {0.1, 0.3, 1}, {-2, 3, 100}};
+        for (double[] p : parameters) {
+            Histogram histogram = new Histogram(p[0], p[1], (int)p[2]);
+            double[] values = new double[5000];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = value(random, 1);
+                histogram.add(values[i]);
+            }
+            double[][] expected = referenceFixed(values, p[0], p[1], (int)p[2]);
+            double[][] actual = contents(histogram);
+            assertArrayEquals("x0 " + p[0] + ", dx " + p[1] + ": starts", expected[0], actual[0], 0.0);
+            assertArrayEquals("x0 " + p[0] + ", dx " + p[1] + ": counts", expected[1], actual[1], 1e-9);
+        }
+    }
+
+    private static void check(String what, double[][] expected, DataBuffer[] results) {
+        for (int i = 0; i < expected.length; i++)
+            assertArrayEquals(what + ": output " + i, expected[i], results[i].getView().toArray(), 0.0);
+    }
+
+    //binningAM after each of many random steps compared with the original binning of all values
+    @Test
+    public void binningModule() {
+        Random random = new Random(3);
+        int continued = 0;
+        for (boolean fixed : new boolean[]{false, true}) {
+            PhyphoxExperiment experiment = new PhyphoxExperiment();
+            DataBuffer in = new DataBuffer("in", 0, null);
+            DataBuffer x0 = new DataBuffer("x0", 0, null);
+            DataBuffer dx = new DataBuffer("dx", 0, null);
+            DataBuffer bins = new DataBuffer("bins", 0, null);
+            bins.append(fixed ? 12 : 0);
+            Vector<DataInput> inputs = new Vector<>();
+            inputs.add(new DataInput(in, true));
+            inputs.add(new DataInput(x0, true));
+            inputs.add(new DataInput(dx, true));
+            inputs.add(new DataInput(bins, true));
+            DataBuffer[] results = {new DataBuffer("starts", 0, null), new DataBuffer("counts", 0, null)};
+            Vector<DataOutput> outputs = new Vector<>();
+            outputs.add(new DataOutput(results[0], false));
+            outputs.add(new DataOutput(results[1], false));
+            Analysis.binningAM module = new Analysis.binningAM(experiment, inputs, outputs);
+            module.setCycles(new Vector<Analysis.AnalysisModule.CycleRange>());
+
+            for (int step = 1; step < 500; step++) {
+                int op = random.nextInt(100);
+                if (op < 80) {
+                    int count = random.nextInt(30);
+                    for (int i = 0; i < count; i++)
+                        in.append(value(random, 20));
+                } else if (op < 85) {
+                    in.clear(false);
+                } else if (op < 90) {
+                    x0.append(random.nextInt(5) - 2);
+                } else if (op < 95) {
+                    dx.append(0.5 + random.nextInt(4));
+                }
+                module.updateIfNotStatic(step);
+                if (module.continueRun)
+                    continued++;
+
+                double x0Value = x0.getFilledSize() > 0 ? x0.getView().last() : 0.;
+                double dxValue = dx.getFilledSize() > 0 ? dx.getView().last() : 1.;
+                double[] values = in.getView().toArray();
+                double[][] expected = fixed ? referenceFixed(values, x0Value, dxValue, 12) : referenceBinning(values, x0Value, dxValue);
+                check("Fixed " + fixed + ", step " + step, expected, results);
+            }
+        }
+        assertTrue("Continued updates: " + continued, continued > 500);
+    }
+
+    //mapAM after each of many random steps compared with the original map of all values
+    @Test
+    public void mapModule() {
+        Random random = new Random(4);
+        int continued = 0;
+        for (Analysis.mapAM.ZMode zMode : Analysis.mapAM.ZMode.values()) {
+            PhyphoxExperiment experiment = new PhyphoxExperiment();
+            DataBuffer[] parameters = new DataBuffer[6]; //width, minX, maxX, height, minY, maxY
+            double[] initial = {8, -2, 2, 5, 0, 10};
+            Vector<DataInput> inputs = new Vector<>();
+            for (int i = 0; i < parameters.length; i++) {
+                parameters[i] = new DataBuffer("p" + i, 1, null);
+                parameters[i].append(initial[i]);
+                inputs.add(new DataInput(parameters[i], true));
+            }
+            DataBuffer[] xyz = new DataBuffer[3];
+            for (int i = 0; i < 3; i++) {
+                xyz[i] = new DataBuffer("in" + i, 0, null);
+                inputs.add(new DataInput(xyz[i], true));
+            }
+            DataBuffer[] results = new DataBuffer[3];
+            Vector<DataOutput> outputs = new Vector<>();
+            for (int i = 0; i < 3; i++) {
+                results[i] = new DataBuffer("out" + i, 0, null);
+                outputs.add(new DataOutput(results[i], false));
+            }
+            Analysis.mapAM module = new Analysis.mapAM(experiment, inputs, outputs, zMode);
+            module.setCycles(new Vector<Analysis.AnalysisModule.CycleRange>());
+
+            for (int step = 0; step < 400; step++) {
+                int op = random.nextInt(100);
+                if (op < 80) {
+                    //x, y and z get different numbers of values and catch up later
+                    for (int i = 0; i < 3; i++) {
+                        int count = random.nextInt(15);
+                        for (int j = 0; j < count; j++)
+                            xyz[i].append(i == 0 ? random.nextDouble() * 5 - 2.5 : i == 1 ? random.nextDouble() * 12 - 1 : random.nextGaussian());
+                    }
+                } else if (op < 85) {
+                    for (DataBuffer buffer : xyz)
+                        buffer.clear(false);
+                } else if (op < 92) {
+                    int i = random.nextInt(6);
+                    parameters[i].clear(false);
+                    parameters[i].append(i % 3 == 0 ? 2 + random.nextInt(8) : initial[i] + random.nextInt(3) - 1);
+                }
+                module.updateIfNotStatic(step);
+                if (module.continueRun)
+                    continued++;
+
+                double[] p = new double[6];
+                for (int i = 0; i < 6; i++)
+                    p[i] = parameters[i].getView().get(0);
+                double[][] expected = referenceMap(zMode, (int)p[0], p[1], p[2], (int)p[3], p[4], p[5],
+                        xyz[0].getView().toArray(), xyz[1].getView().toArray(), xyz[2].getView().toArray());
+                check("Mode " + zMode + ", step " + step, expected, results);
+            }
+        }
+        assertTrue("Continued updates: " + continued, continued > 500);
+    }
+}
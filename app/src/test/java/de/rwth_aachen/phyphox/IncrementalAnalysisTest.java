@@ -0,0 +1,166 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.Vector;
+
+//Runs the incremental analysis modules after random appends, clears and parameter changes and
+//compares their outputs after every update with a fresh module that calculates everything from
+//scratch. Incremental runs have to give exactly the same results as a full recalculation.
+public class IncrementalAnalysisTest {
+
+    //Creates a module on the given inputs and outputs
+    private interface Factory {
+        Analysis.AnalysisModule create(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) throws Exception;
+    }
+
+    private static Vector<DataInput> inputs(DataBuffer[] buffers, double constant) {
+        Vector<DataInput> inputs = new Vector<>();
+        for (DataBuffer buffer : buffers) {
+            if (buffer == null)
+                inputs.add(new DataInput(constant));
+            else
+                inputs.add(new DataInput(buffer, true));
+        }
+        return inputs;
+    }
+
+    //Result of a fresh module on copies of the inputs
+    private static double[] full(PhyphoxExperiment experiment, Factory factory, DataBuffer[] buffers, double constant, int outputSize) throws Exception {
+        DataBuffer[] copies = new DataBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++)
+            copies[i] = buffers[i] == null ? null : buffers[i].copy();
+        DataBuffer result = new DataBuffer("full", outputSize, null);
+        Vector<DataOutput> outputs = new Vector<>();
+        outputs.add(new DataOutput(result, false));
+        Analysis.AnalysisModule module = factory.create(experiment, inputs(copies, constant), outputs);
+        module.setCycles(new Vector<Analysis.AnalysisModule.CycleRange>());
+        module.updateIfNotStatic(0);
+        return result.getView().toArray();
+    }
+
+    //Feeds the inputs in random steps and checks the module after each update. The buffer at
+    //parameter (if any) holds a setting of the module, which only changes from time to time.
+    //Returns the number of incremental runs.
+    private static int run(Factory factory, int inputCount, int parameter, boolean withConstant, int inputSize, int outputSize, long seed) throws Exception {
+        Random random = new Random(seed);
+        PhyphoxExperiment experiment = new PhyphoxExperiment();
+        DataBuffer[] buffers = new DataBuffer[inputCount + (withConstant ? 1 : 0)];
+        for (int i = 0; i < inputCount; i++)
+            buffers[i] = new DataBuffer("in" + i, i == parameter ? 1 : inputSize, null);
+        double constant = 0.5;
+        DataBuffer result = new DataBuffer("out", outputSize, null);
+        Vector<DataOutput> outputs = new Vector<>();
+        outputs.add(new DataOutput(result, false));
+        Analysis.AnalysisModule module = factory.create(experiment, inputs(buffers, constant), outputs);
+        module.setCycles(new Vector<Analysis.AnalysisModule.CycleRange>());
+        if (parameter >= 0)
+            buffers[parameter].append(3);
+
+        int incrementalRuns = 0;
+        for (int step = 0; step < 300; step++) {
+            int op = random.nextInt(100);
+            if (op < 80) {
+                //New values on some of the inputs
+                for (int i = 0; i < inputCount; i++) {
+                    if (i == parameter || random.nextInt(3) == 0)
+                        continue;
+                    int count = random.nextInt(6);
+                    for (int j = 0; j < count; j++)
+                        buffers[i].append(random.nextDouble() * 4 - 2);
+                }
+            } else if (op < 88) {
+                buffers[random.nextInt(inputCount)].clear(false);
+            } else if (op < 94 && parameter >= 0) {
+                buffers[parameter].append(1 + random.nextInt(5));
+            } else if (op < 97) {
+                result.append(42); //Somebody else writes to the output
+            }
+            //Otherwise, nothing has changed at all
+
+            module.updateIfNotStatic(step);
+            if (module.incrementalRun)
+                incrementalRuns++;
+            String what = "Seed " + seed + ", step " + step;
+            assertArrayEquals(what, full(experiment, factory, buffers, constant, outputSize), result.getView().toArray(), 0.0);
+        }
+        return incrementalRuns;
+    }
+
+    private static void check(Factory factory, int inputCount, int parameter, boolean withConstant) throws Exception {
+        int incrementalRuns = 0;
+        int[][] sizes = {{0, 0}, {0, 7}, {25, 0}}; //Input and output buffer sizes
+        for (int seed = 0; seed < 5; seed++) {
+            for (int[] size : sizes)
+                incrementalRuns += run(factory, inputCount, parameter, withConstant, size[0], size[1], seed);
+        }
+        assertTrue("Incremental runs: " + incrementalRuns, incrementalRuns > 100);
+    }
+
+    @Test
+    public void add() throws Exception {
+        check(new Factory() {
+            @Override
+            public Analysis.AnalysisModule create(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
+                return new Analysis.addAM(experiment, inputs, outputs);
+            }
+        }, 2, -1, true);
+    }
+
+    @Test
+    public void multiply() throws Exception {
+        check(new Factory() {
+            @Override
+            public Analysis.AnalysisModule create(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
+                return new Analysis.multiplyAM(experiment, inputs, outputs);
+            }
+        }, 3, -1, false);
+    }
+
+    @Test
+    public void differentiate() throws Exception {
+        check(new Factory() {
+            @Override
+            public Analysis.AnalysisModule create(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
+                return new Analysis.differentiateAM(experiment, inputs, outputs);
+            }
+        }, 1, -1, false);
+    }
+
+    @Test
+    public void integrate() throws Exception {
+        check(new Factory() {
+            @Override
+            public Analysis.AnalysisModule create(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
+                return new Analysis.integrateAM(experiment, inputs, outputs);
+            }
+        }, 1, -1, false);
+    }
+
+    @Test
+    public void movingAverage() throws Exception {
+        for (final boolean dropIncomplete : new boolean[]{false, true}) {
+            check(new Factory() {
+                @Override
+                public Analysis.AnalysisModule create(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) {
+                    return new Analysis.movingaverageAM(experiment, inputs, outputs, dropIncomplete);
+                }
+            }, 2, 1, false);
+        }
+    }
+
+    @Test
+    public void formula() throws Exception {
+        //[3] is a buffer of which only the last value is used, [4] is a constant
+        check(new Factory() {
+            @Override
+            public Analysis.AnalysisModule create(PhyphoxExperiment experiment, Vector<DataInput> inputs, Vector<DataOutput> outputs) throws Exception {
+                return new Analysis.formulaAM(experiment, inputs, outputs, "[1_]*[2_]+sin([1_])*[3]-[4]");
+            }
+        }, 3, 2, true);
+    }
+}
@@ -0,0 +1,130 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+//Compares the index sort with a stable sort of boxed indices using Double.compare(), which is how
+//sortAM sorted before. The data includes duplicates, NaN, -0.0 and 0.0, infinities and subnormals.
+public class IndexSortTest {
+
+    private static final double[] SPECIALS = {Double.NaN, -0.0, 0.0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1e-310, -1e-310, 1, -1};
+
+    private static DoubleView view(final double[] values) {
+        return new DoubleView() {
+            @Override
+            public int size() {
+                return values.length;
+            }
+
+            @Override
+            public double get(int index) {
+                return values[index];
+            }
+        };
+    }
+
+    private static Integer[] reference(final double[] values, final boolean descending) {
+        Integer[] index = new Integer[values.length];
+        for (int i = 0; i < index.length; i++)
+            index[i] = i;
+        Arrays.sort(index, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return descending ? Double.compare(values[b], values[a]) : Double.compare(values[a], values[b]);
+            }
+        });
+        return index;
+    }
+
+    private static double[] randomValues(Random random, int n) {
+        double[] values = new double[n];
+        int kind = random.nextInt(4);
+        for (int i = 0; i < n; i++) {
+            switch (kind) {
+                case 0: values[i] = random.nextGaussian(); break;
+                case 1: values[i] = random.nextInt(5); break; //Many ties
+                case 2: values[i] = SPECIALS[random.nextInt(SPECIALS.length)]; break;
+                default: values[i] = random.nextGaussian() * 1e6 + 1e9;
+            }
+        }
+        return values;
+    }
+
+    private static int randomSize(Random random, int trial) {
+        return random.nextInt(4) == 0 ? random.nextInt(5) : random.nextInt(trial % 10 == 0 ? 5000 : 300);
+    }
+
+    @Test
+    public void sortIsStable() {
+        Random random = new Random(9);
+        IndexSort sorter = new IndexSort(); //Reused, so the work arrays are reused as well
+        for (int trial = 0; trial < 1000; trial++) {
+            double[] values = randomValues(random, randomSize(random, trial));
+            boolean descending = random.nextBoolean();
+            Integer[] expected = reference(values, descending);
+            sorter.setKeys(view(values), values.length, descending);
+            sorter.sort();
+            for (int i = 0; i < values.length; i++)
+                assertEquals("Trial " + trial + " at " + i, (long)expected[i], sorter.get(i));
+        }
+    }
+
+    @Test
+    public void selectMatchesSort() {
+        Random random = new Random(10);
+        IndexSort sorter = new IndexSort();
+        for (int trial = 0; trial < 1000; trial++) {
+            double[] values = randomValues(random, randomSize(random, trial));
+            boolean descending = random.nextBoolean();
+            int k = random.nextInt(values.length + 3);
+            Integer[] expected = reference(values, descending);
+            sorter.setKeys(view(values), values.length, descending);
+            sorter.select(k, true);
+            for (int i = 0; i < Math.min(k, values.length); i++)
+                assertEquals("Trial " + trial + " at " + i + " of " + k, (long)expected[i], sorter.get(i));
+        }
+    }
+
+    @Test
+    public void median() {
+        Random random = new Random(11);
+        IndexSort sorter = new IndexSort();
+        double[] result = new double[1];
+        for (int trial = 0; trial < 1000; trial++) {
+            double[] values = randomValues(random, randomSize(random, trial));
+            Integer[] ascending = reference(values, false);
+            int m = 0;
+            for (double v : values) {
+                if (!Double.isNaN(v))
+                    m++;
+            }
+            sorter.setKeys(view(values), values.length, false);
+            int lower = sorter.median(view(values), result);
+            if (m == 0) {
+                assertEquals(-1, lower);
+                continue;
+            }
+            int expectedLower = (m - 1) / 2;
+            double expected = values[ascending[expectedLower]];
+            if (m % 2 == 0)
+                expected = 0.5 * (expected + values[ascending[expectedLower + 1]]);
+            assertEquals("Trial " + trial, expectedLower, lower);
+            assertTrue("Trial " + trial + ": " + result[0] + " instead of " + expected, Double.compare(expected, result[0]) == 0);
+            assertEquals("Trial " + trial, (long)ascending[expectedLower], sorter.get(lower));
+        }
+    }
+
+    @Test
+    public void sortableKeyOrder() {
+        double[] ordered = {Double.NEGATIVE_INFINITY, -1, -1e-310, -0.0, 0.0, Double.MIN_VALUE, 1e-310, Double.MIN_NORMAL, 1, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NaN};
+        for (int i = 1; i < ordered.length; i++)
+            assertTrue(ordered[i - 1] + " < " + ordered[i], IndexSort.sortableKey(ordered[i - 1]) < IndexSort.sortableKey(ordered[i]));
+        assertEquals(IndexSort.sortableKey(Double.NaN), IndexSort.sortableKey(Double.longBitsToDouble(0x7ff8000000000123L)));
+    }
+}
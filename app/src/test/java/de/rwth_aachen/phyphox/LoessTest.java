@@ -0,0 +1,154 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.Vector;
+
+//Compares loessAM with the original implementation, which scans the input for every output
+//value. The exact mode has to give identical results on one and on several threads, the
+//approximate mode has to stay close to them.
+public class LoessTest {
+
+    //Relative error of the approximate mode for the value, first and second derivative. The
+    //cubic interpolation between the grid points is less precise for the derivatives.
+    private static final double[] TOLERANCES = {2e-4, 2e-3, 5e-3};
+
+    private static DataBuffer buffer(double... values) {
+        DataBuffer buffer = new DataBuffer("in", 0, null);
+        buffer.append(values, 0, values.length);
+        return buffer;
+    }
+
+    private static double[][] run(PhyphoxExperiment experiment, double[] x, double[] y, double d, double[] xi, boolean approximate) {
+        Vector<DataInput> inputs = new Vector<>();
+        inputs.add(new DataInput(buffer(x), true));
+        inputs.add(new DataInput(buffer(y), true));
+        inputs.add(new DataInput(d));
+        inputs.add(new DataInput(buffer(xi), true));
+        DataBuffer[] results = new DataBuffer[3];
+        Vector<DataOutput> outputs = new Vector<>();
+        for (int k = 0; k < 3; k++) {
+            results[k] = new DataBuffer("out" + k, 0, null);
+            outputs.add(new DataOutput(results[k], false));
+        }
+        Analysis.loessAM module = new Analysis.loessAM(experiment, inputs, outputs, approximate);
+        module.setCycles(new Vector<Analysis.AnalysisModule.CycleRange>());
+        module.updateIfNotStatic(0);
+        return new double[][]{results[0].getView().toArray(), results[1].getView().toArray(), results[2].getView().toArray()};
+    }
+
+    //The original implementation: Value, first and second derivative at each xout
+    private static double[][] reference(double[] x, double[] y, double d, double[] xout) {
+        int incount = Math.min(x.length, y.length);
+        int outcount = xout.length;
+        int minj = 0;
+        double[] y0 = new double[outcount], y1 = new double[outcount], y2 = new double[outcount];
+        for (int i = 0; i < outcount; i++) {
+            double xi = xout[i];
+            double sw = 0., swx = 0., swxx = 0., swxxx = 0., swxxxx = 0., swy = 0., swxy = 0., swxxy = 0.;
+            for (int j = minj; j < incount; j++) {
+                double xj = x[j], yj = y[j];
+                if (Double.isNaN(xj) || Double.isNaN(yj))
+                    continue;
+                double dx = xj - xi;
+                if (Math.abs(dx) > d) {
+                    if (dx < 0) {
+                        minj = j + 1;
+                        continue;
+                    } else
+                        break;
+                }
+                double v = Math.abs(dx) / d;
+                v = 1.0 - v * v * v;
+                double w = v * v * v;
+                sw += w;
+                double wx = w * dx;
+                swx += wx;
+                double wxx = wx * dx;
+                swxx += wxx;
+                double wxxx = wxx * dx;
+                swxxx += wxxx;
+                swxxxx += wxxx * dx;
+                swy += w * yj;
+                swxy += wx * yj;
+                swxxy += wxx * yj;
+            }
+            double a = swxx * swxxxx - swxxx * swxxx;
+            double b = swxx * swxxx - swx * swxxxx;
+            double c = swx * swxxx - swxx * swxx;
+            double det = sw * swxx * swxxxx + 2 * swx * swxx * swxxx - swxx * swxx * swxx - swx * swx * swxxxx - sw * swxxx * swxxx;
+            double dd = sw * swxxxx - swxx * swxx;
+            double e = swx * swxx - sw * swxxx;
+            double f = sw * swxx - swx * swx;
+            y0[i] = (a * swy + b * swxy + c * swxxy) / det;
+            y1[i] = (b * swy + dd * swxy + e * swxxy) / det;
+            y2[i] = (c * swy + e * swxy + f * swxxy) / det;
+        }
+        return new double[][]{y0, y1, y2};
+    }
+
+    @Test
+    public void exactMatchesOriginal() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 30; trial++) {
+            int n = 100 + random.nextInt(10000);
+            double[] x = new double[n];
+            double[] y = new double[n];
+            double t = 0;
+            for (int i = 0; i < n; i++) {
+                t += random.nextDouble();
+                x[i] = t;
+                y[i] = Math.sin(t * 0.01) + 0.1 * random.nextGaussian();
+                if (random.nextInt(500) == 0)
+                    y[i] = Double.NaN;
+                if (random.nextInt(700) == 0)
+                    x[i] = Double.NaN;
+            }
+            int m = 10 + random.nextInt(5000);
+            double[] xi = new double[m];
+            for (int i = 0; i < m; i++)
+                xi[i] = -10 + (t + 20) * i / m;
+            double d = 2 + random.nextDouble() * 300;
+
+            PhyphoxExperiment experiment = new PhyphoxExperiment();
+            experiment.parallelThreshold = trial % 2 == 0 ? 1000 : 0; //Split across threads or not
+            double[][] result = run(experiment, x, y, d, xi, false);
+            double[][] expected = reference(x, y, d, xi);
+            for (int k = 0; k < 3; k++) {
+                assertEquals(expected[k].length, result[k].length);
+                for (int i = 0; i < m; i++) {
+                    //Bitwise, so NaN equals NaN
+                    assertEquals("Trial " + trial + ", output " + k + " at " + i, Double.doubleToLongBits(expected[k][i]), Double.doubleToLongBits(result[k][i]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void approximationIsClose() {
+        int n = 20000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        Random random = new Random(1);
+        for (int i = 0; i < n; i++) {
+            x[i] = i;
+            y[i] = 100 * Math.sin(i * 0.001) + 20 * Math.sin(i * 0.013) + random.nextGaussian();
+        }
+        double d = 2000;
+        PhyphoxExperiment experiment = new PhyphoxExperiment();
+        double[][] exact = run(experiment, x, y, d, x, false);
+        double[][] approximate = run(experiment, x, y, d, x, true);
+        for (int k = 0; k < 3; k++) {
+            double error = 0, scale = 0;
+            for (int i = 0; i < n; i++) {
+                error = Math.max(error, Math.abs(exact[k][i] - approximate[k][i]));
+                scale = Math.max(scale, Math.abs(exact[k][i]));
+            }
+            assertTrue("Output " + k + " is off by " + error / scale, error / scale < TOLERANCES[k]);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+//Checks the decimation of the pyramid against a scan of all values: The decimated points have to
+//be in order, start and end with the range and contain the minimum and maximum of every block of
+//values that the graph would combine into one pixel column, also after dropping old values.
+public class MinMaxPyramidTest {
+
+    private static boolean isValid(float v) {
+        return !Float.isNaN(v) && v > -3.3e38f;
+    }
+
+    @Test
+    public void decimationKeepsExtrema() {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 100; trial++) {
+            int n = 1000 + random.nextInt(50000);
+            FloatBuffer data = FloatBuffer.allocate(n);
+            for (int i = 0; i < n; i++) {
+                int r = random.nextInt(100);
+                if (r == 0)
+                    data.put(i, Float.NaN);
+                else if (r == 1)
+                    data.put(i, -3.4e38f); //Tag of NaN in the float copy
+                else
+                    data.put(i, r < 20 ? random.nextInt(3) : (float)random.nextGaussian()); //Some ties
+            }
+            MinMaxPyramid pyramid = new MinMaxPyramid(data, 0, 0);
+            for (int i = 0; i < n; i++)
+                pyramid.add(data.get(i));
+            int dropped = random.nextInt(n / 2);
+            for (int i = 0; i < dropped; i++)
+                pyramid.dropFirst();
+            int size = n - dropped;
+            assertEquals(size, pyramid.size());
+
+            int from = random.nextInt(size / 2);
+            int to = from + 1 + random.nextInt(size - from);
+            int maxBuckets = 8 + random.nextInt(1000);
+            int[] out = new int[4 * (maxBuckets + 2)];
+            int count = pyramid.decimate(from, to, maxBuckets, data, dropped, out);
+            String what = "Trial " + trial;
+            if (count < 0) {
+                assertTrue(what + ": Not decimated", to - from <= 4 * maxBuckets);
+                continue;
+            }
+            assertTrue(what + ": " + count + " points", count <= 4 * (maxBuckets + 2));
+            assertEquals(what, from, out[0]);
+            assertEquals(what, to - 1, out[count - 1]);
+            for (int k = 1; k < count; k++)
+                assertTrue(what + ": Not in order at " + k, out[k] > out[k - 1]);
+
+            //Blocks of the size the graph combines, aligned to the absolute index of the values
+            int shift = MinMaxPyramid.BASE_SHIFT;
+            while (((to - from) >> shift) + 2 > maxBuckets)
+                shift += MinMaxPyramid.LEVEL_SHIFT;
+            int k = 0;
+            for (long block = (dropped + from) >> shift; block <= (dropped + to - 1) >> shift; block++) {
+                int start = (int)Math.max(from, (block << shift) - dropped);
+                int end = (int)Math.min(to, ((block + 1) << shift) - dropped);
+                float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+                for (int i = start; i < end; i++) {
+                    float v = data.get(dropped + i);
+                    if (isValid(v)) {
+                        min = Math.min(min, v);
+                        max = Math.max(max, v);
+                    }
+                }
+                float pointMin = Float.POSITIVE_INFINITY, pointMax = Float.NEGATIVE_INFINITY;
+                while (k < count && out[k] < start)
+                    k++;
+                for (; k < count && out[k] < end; k++) {
+                    float v = data.get(dropped + out[k]);
+                    if (isValid(v)) {
+                        pointMin = Math.min(pointMin, v);
+                        pointMax = Math.max(pointMax, v);
+                    }
+                }
+                assertEquals(what + ": Minimum of block " + block, min, pointMin, 0.0);
+                assertEquals(what + ": Maximum of block " + block, max, pointMax, 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void fewValuesAreNotDecimated() {
+        FloatBuffer data = FloatBuffer.allocate(100);
+        MinMaxPyramid pyramid = new MinMaxPyramid(data, 0, 100);
+        assertEquals(-1, pyramid.decimate(0, 100, 25, data, 0, new int[4 * 27]));
+        assertEquals(-1, pyramid.decimate(0, 100, 4, data, 0, new int[4 * 6]));
+    }
+
+    @Test
+    public void monotonic() {
+        FloatBuffer data = FloatBuffer.allocate(100);
+        for (int i = 0; i < 100; i++)
+            data.put(i, i < 50 ? i : 100 - i);
+        MinMaxPyramid pyramid = new MinMaxPyramid(data, 0, 50);
+        assertTrue(pyramid.isMonotonic());
+        pyramid.add(Float.NaN); //Ignored
+        pyramid.add(49f);
+        assertTrue(pyramid.isMonotonic());
+        pyramid.add(10f);
+        assertFalse(pyramid.isMonotonic());
+    }
+}
@@ -0,0 +1,141 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+//Compares periodicityAM with the direct calculation of the autocorrelation for every window, which
+//is how the module worked before it used the FFT. The data arrives in blocks of random size, so
+//the results that are kept from previous updates are checked as well.
+public class PeriodicityTest {
+
+    //The original implementation
+    private static void reference(double[] x, double[] y, int n, int dx, int overlap, Integer minP, Integer maxP, List<Double> times, List<Double> periods) {
+        boolean userSelectedRange = false;
+        int minPeriod = 0;
+        if (minP != null) {
+            minPeriod = minP;
+            userSelectedRange = true;
+        }
+        int maxPeriod = Integer.MAX_VALUE;
+        if (maxP != null) {
+            maxPeriod = maxP;
+            userSelectedRange = true;
+        }
+        for (int stepX = 0; stepX <= n - dx; stepX += dx) {
+            int x1 = Math.max(stepX - overlap, 0);
+            int x2 = Math.min(stepX + dx + overlap, n);
+            if (maxPeriod > x2 - x1)
+                maxPeriod = x2 - x1;
+            int firstNegative = -1, maxPosition = -1;
+            double maxValue = Double.NEGATIVE_INFINITY, maxValueLeft = Double.NEGATIVE_INFINITY, maxValueRight = Double.NEGATIVE_INFINITY, lastSum = Double.NEGATIVE_INFINITY;
+            double step = userSelectedRange ? 1 : 2;
+            for (int i = minPeriod; i < maxPeriod; i += step) {
+                double sum = 0.;
+                for (int j = x1; j < x2 - i; j++)
+                    sum += y[j] * y[j + i];
+                sum /= (double)(x2 - x1 - i);
+                if (!userSelectedRange && firstNegative < 0) {
+                    if (sum < 0) {
+                        firstNegative = i;
+                        i = 3 * firstNegative + 1;
+                        step = 1;
+                    }
+                } else if (!userSelectedRange && i > 5 * firstNegative) {
+                    break;
+                } else if (userSelectedRange || i > 3 * firstNegative) {
+                    if (sum > maxValue) {
+                        maxValue = sum;
+                        maxPosition = i;
+                        maxValueLeft = lastSum;
+                        maxValueRight = Double.NEGATIVE_INFINITY;
+                    } else if (i == maxPosition + 1)
+                        maxValueRight = sum;
+                }
+                lastSum = sum;
+            }
+            double xMax = Double.NaN;
+            if (maxPosition > 0 && maxValue > 0 && maxValueLeft > 0 && maxValueRight > 0) {
+                double dy = 0.5 * (maxValueRight - maxValueLeft);
+                double d2y = 2 * maxValue - maxValueLeft - maxValueRight;
+                double m = dy / d2y;
+                xMax = x[x1 + maxPosition] + 0.5 * m * (x[x1 + maxPosition + 1] - x[x1 + maxPosition - 1]) - x[x1];
+            }
+            times.add(x[x1]);
+            periods.add(xMax);
+        }
+    }
+
+    @Test
+    public void matchesDirectAutocorrelation() {
+        Random random = new Random(5);
+        for (int trial = 0; trial < 40; trial++) {
+            int n = 500 + random.nextInt(8000);
+            double period = 5 + random.nextInt(300) + random.nextDouble();
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = i * 0.01;
+                y[i] = Math.sin(2 * Math.PI * i / period) * Math.exp(-i * 1e-5) + 0.1 * random.nextGaussian();
+            }
+            int dx = 50 + random.nextInt(2000);
+            int overlap = random.nextBoolean() ? 0 : random.nextInt(2000);
+            Integer minP = trial % 3 == 0 ? (Integer)(int)(period / 2) : null;
+            Integer maxP = trial % 3 == 0 ? (Integer)(int)(period * 1.7 + 3) : null;
+            List<Double> expectedTimes = new ArrayList<>();
+            List<Double> expectedPeriods = new ArrayList<>();
+            reference(x, y, n, dx, overlap, minP, maxP, expectedTimes, expectedPeriods);
+
+            PhyphoxExperiment experiment = new PhyphoxExperiment();
+            if (trial % 2 == 0)
+                experiment.parallelThreshold = 1000; //Split windows across threads
+            DataBuffer xBuffer = new DataBuffer("x", 0, null);
+            DataBuffer yBuffer = new DataBuffer("y", 0, null);
+            Vector<DataInput> inputs = new Vector<>();
+            inputs.add(new DataInput(xBuffer, true));
+            inputs.add(new DataInput(yBuffer, true));
+            inputs.add(new DataInput(dx));
+            inputs.add(new DataInput(overlap));
+            if (minP != null) {
+                inputs.add(new DataInput(minP));
+                inputs.add(new DataInput(maxP));
+            }
+            DataBuffer times = new DataBuffer("t", 0, null);
+            DataBuffer periods = new DataBuffer("p", 0, null);
+            Vector<DataOutput> outputs = new Vector<>();
+            outputs.add(new DataOutput(times, false));
+            outputs.add(new DataOutput(periods, false));
+            Analysis.periodicityAM module = new Analysis.periodicityAM(experiment, inputs, outputs);
+            module.setCycles(new Vector<Analysis.AnalysisModule.CycleRange>());
+
+            int position = 0;
+            while (position < n) {
+                int count = trial % 4 == 1 ? n : Math.min(n - position, 1 + random.nextInt(3000));
+                xBuffer.append(Arrays.copyOfRange(x, position, position + count), 0, count);
+                yBuffer.append(Arrays.copyOfRange(y, position, position + count), 0, count);
+                position += count;
+                module.updateIfNotStatic(0);
+            }
+
+            double[] resultTimes = times.getView().toArray();
+            double[] resultPeriods = periods.getView().toArray();
+            String what = "Trial " + trial;
+            assertEquals(what, expectedTimes.size(), resultTimes.length);
+            for (int i = 0; i < resultTimes.length; i++) {
+                assertEquals(what + ", time of window " + i, expectedTimes.get(i), resultTimes[i], 0.0);
+                double expected = expectedPeriods.get(i);
+                double result = resultPeriods[i];
+                assertEquals(what + ", period of window " + i + " is NaN", Double.isNaN(expected), Double.isNaN(result));
+                if (!Double.isNaN(expected))
+                    assertTrue(what + ", period of window " + i + " is " + result + " instead of " + expected, Math.abs(result - expected) <= 1e-6 * Math.max(1, Math.abs(expected)));
+            }
+        }
+    }
+}
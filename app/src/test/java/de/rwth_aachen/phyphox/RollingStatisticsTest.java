@@ -0,0 +1,187 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+//Compares the rolling statistics with a brute-force calculation over the window after every new
+//value, for random data with duplicates, NaN, infinities and a large offset.
+public class RollingStatisticsTest {
+
+    private static void check(String what, double expected, double actual, double tolerance) {
+        if (Double.isNaN(expected) && Double.isNaN(actual))
+            return;
+        if (expected == actual)
+            return;
+        assertTrue(what + " is " + actual + " instead of " + expected, Math.abs(expected - actual) <= tolerance * Math.max(1, Math.abs(expected)));
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        Random random = new Random(2);
+        for (int trial = 0; trial < 150; trial++) {
+            int width = 1 + random.nextInt(trial < 75 ? 20 : 400);
+            int length = random.nextInt(2000);
+            double offset = random.nextBoolean() ? 0 : 1e6;
+            double[] x = new double[length];
+            for (int i = 0; i < length; i++) {
+                int r = random.nextInt(200);
+                if (r == 0)
+                    x[i] = Double.NaN;
+                else if (r == 1)
+                    x[i] = Double.POSITIVE_INFINITY;
+                else if (r == 2)
+                    x[i] = Double.NEGATIVE_INFINITY;
+                else
+                    x[i] = offset + (random.nextBoolean() ? random.nextInt(5) : random.nextGaussian());
+            }
+
+            RollingStatistics stats = new RollingStatistics(width, true, true);
+            for (int i = 0; i < length; i++) {
+                stats.add(x[i]);
+
+                List<Double> window = new ArrayList<>();
+                int nans = 0;
+                boolean infinite = false;
+                for (int j = Math.max(0, i - width + 1); j <= i; j++) {
+                    if (Double.isNaN(x[j])) {
+                        nans++;
+                        continue;
+                    }
+                    if (Double.isInfinite(x[j]))
+                        infinite = true;
+                    window.add(x[j]);
+                }
+                int n = window.size();
+                double sum = 0, sumSquares = 0, min = Double.NaN, max = Double.NaN;
+                for (double v : window) {
+                    sum += v;
+                    sumSquares += v * v;
+                    min = Double.isNaN(min) ? v : Math.min(min, v);
+                    max = Double.isNaN(max) ? v : Math.max(max, v);
+                }
+                double variance = Double.NaN;
+                if (n >= 2 && !infinite) {
+                    double mean = sum / n;
+                    double deviations = 0;
+                    for (double v : window)
+                        deviations += (v - mean) * (v - mean);
+                    variance = deviations / (n - 1);
+                }
+                Collections.sort(window);
+                double median = Double.NaN;
+                if (n > 0)
+                    median = n % 2 == 1 ? window.get(n / 2) : 0.5 * (window.get(n / 2 - 1) + window.get(n / 2));
+
+                String at = " (width " + width + ", index " + i + ")";
+                assertEquals("NaN count" + at, nans, stats.getNaNCount());
+                check("Mean" + at, n == 0 ? Double.NaN : sum / n, stats.mean(), 1e-9);
+                check("Variance" + at, variance, stats.variance(), 1e-6);
+                check("RMS" + at, n == 0 ? Double.NaN : Math.sqrt(sumSquares / n), stats.rms(), 1e-9);
+                check("Min" + at, min, stats.min(), 0);
+                check("Max" + at, max, stats.max(), 0);
+                check("Median" + at, median, stats.median(), 1e-15);
+            }
+        }
+    }
+
+    @Test
+    public void clearStartsOver() {
+        RollingStatistics stats = new RollingStatistics(3, true, true);
+        for (int i = 0; i < 10; i++)
+            stats.add(i);
+        stats.clear();
+        assertTrue(Double.isNaN(stats.mean()));
+        assertTrue(Double.isNaN(stats.min()));
+        assertTrue(Double.isNaN(stats.median()));
+        stats.add(5);
+        stats.add(1);
+        check("Mean", 3, stats.mean(), 0);
+        check("Min", 1, stats.min(), 0);
+        check("Max", 5, stats.max(), 0);
+        check("Median", 3, stats.median(), 0);
+    }
+
+    @Test
+    public void noDriftOnLongRuns() {
+        int width = 1000;
+        RollingStatistics stats = new RollingStatistics(width, false, false);
+        double[] window = new double[width];
+        for (int i = 0; i < 2000000; i++) {
+            double v = 1000 + Math.sin(i * 0.01) + 1e-3 * ((i * 7919) % 13);
+            window[i % width] = v;
+            stats.add(v);
+        }
+        double sum = 0;
+        for (double v : window)
+            sum += v;
+        double mean = sum / width;
+        double deviations = 0;
+        for (double v : window)
+            deviations += (v - mean) * (v - mean);
+        double variance = deviations / (width - 1);
+        check("Mean", mean, stats.mean(), 1e-12);
+        check("Variance", variance, stats.variance(), 1e-6);
+    }
+
+    //The deques start with a capacity of one and have to grow (and unwrap their ring) for sorted
+    //data, where every value in the window can still become the extremum
+    @Test
+    public void dequeGrows() {
+        Random random = new Random(4);
+        for (int trial = 0; trial < 20; trial++) {
+            int width = 1 + random.nextInt(3000);
+            RollingStatistics.MonotonicDeque minDeque = new RollingStatistics.MonotonicDeque(1, false);
+            RollingStatistics.MonotonicDeque maxDeque = new RollingStatistics.MonotonicDeque(1, true);
+            double[] values = new double[10000];
+            for (int i = 0; i < values.length; i++) {
+                //Long ascending and descending runs with some noise
+                values[i] = (i / 2500 % 2 == 0 ? i : -i) + (random.nextInt(10) == 0 ? random.nextGaussian() * 100 : 0);
+                minDeque.removeBefore(i - width + 1);
+                maxDeque.removeBefore(i - width + 1);
+                minDeque.add(i, values[i]);
+                maxDeque.add(i, values[i]);
+                double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+                for (int j = Math.max(0, i - width + 1); j <= i; j++) {
+                    min = Math.min(min, values[j]);
+                    max = Math.max(max, values[j]);
+                }
+                String what = "Trial " + trial + " at " + i;
+                check(what + ", min", min, minDeque.get(), 0);
+                check(what + ", max", max, maxDeque.get(), 0);
+            }
+        }
+    }
+
+    //Same for the sliding extrema of a fixed-size DataBuffer
+    @Test
+    public void bufferExtremaGrow() {
+        int size = 5000;
+        DataBuffer buffer = new DataBuffer("x", size, null);
+        buffer.append(new double[]{0.5}, 0, 1);
+        buffer.getMin(); //Start tracking
+        double[] values = new double[3 * size];
+        for (int i = 0; i < values.length; i++)
+            values[i] = i < 2 * size ? i : -i;
+        for (int i = 0; i < values.length; i += 100) {
+            buffer.append(values, i, 100);
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int j = Math.max(0, i + 100 - size); j < i + 100; j++) {
+                min = Math.min(min, values[j]);
+                max = Math.max(max, values[j]);
+            }
+            if (i + 100 < size) {
+                min = Math.min(min, 0.5);
+                max = Math.max(max, 0.5);
+            }
+            check("Min at " + i, min, buffer.getMin(), 0);
+            check("Max at " + i, max, buffer.getMax(), 0);
+        }
+    }
+}
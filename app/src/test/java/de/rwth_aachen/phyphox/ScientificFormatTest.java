@@ -0,0 +1,111 @@
+package de.rwth_aachen.phyphox;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+//Compares ScientificFormat with the DecimalFormat that the CSV export used before. The only
+//allowed difference are values whose shortest representation is exactly halfway between two
+//results: The DecimalFormat of the JVM rounds these by the exact binary value, ScientificFormat
+//rounds half to even like the DecimalFormat of Android.
+public class ScientificFormatTest {
+
+    private static final MathContext CONTEXT = new MathContext(10, RoundingMode.HALF_EVEN);
+
+    private static DecimalFormat decimalFormat(char decimalPoint) {
+        DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
+        format.applyPattern("0.000000000E0");
+        DecimalFormatSymbols dfs = format.getDecimalFormatSymbols();
+        dfs.setDecimalSeparator(decimalPoint);
+        format.setDecimalFormatSymbols(dfs);
+        format.setGroupingUsed(false);
+        return format;
+    }
+
+    private static String format(double v, char decimalPoint) {
+        byte[] buffer = new byte[ScientificFormat.MAX_LENGTH];
+        int n = ScientificFormat.format(v, decimalPoint, buffer, 0);
+        return new String(buffer, 0, n, Charset.forName("UTF-8"));
+    }
+
+    //The shortest representation ends in a single 5 right after the tenth digit
+    private static boolean isTie(double v) {
+        BigDecimal shortest = BigDecimal.valueOf(Math.abs(v)).stripTrailingZeros();
+        return shortest.precision() == 11 && shortest.unscaledValue().mod(BigDecimal.TEN.toBigInteger()).intValue() == 5;
+    }
+
+    //Ten digits rounded half to even from the shortest representation
+    private static String roundShortest(double v, DecimalFormat format) {
+        return format.format(BigDecimal.valueOf(v).round(CONTEXT));
+    }
+
+    private static void check(double v, DecimalFormat format, char decimalPoint) {
+        String result = format(v, decimalPoint);
+        if (isTie(v))
+            assertEquals("Tie " + v, roundShortest(v, format), result);
+        else
+            assertEquals(Double.toString(v), format.format(v), result);
+    }
+
+    @Test
+    public void matchesDecimalFormat() {
+        DecimalFormat format = decimalFormat(',');
+        double[] special = {0.0, -0.0, 1.0, -1.0, 9.9999999995, 9.99999999949, 1e-5, 0.1, 0.15,
+                123456789012.0, 1e308, Double.MAX_VALUE, Double.MIN_NORMAL, 1.0000000005,
+                2.5e-7, 9.81, 3.0000000015, 1e22, 1e23, -1e-300};
+        for (double v : special)
+            check(v, format, ',');
+
+        Random random = new Random(7);
+        for (int i = 0; i < 400000; i++) {
+            double v;
+            switch (i % 5) {
+                case 0: v = Double.longBitsToDouble(random.nextLong()); break;
+                case 1: v = (float)(random.nextGaussian() * 10); break;
+                case 2: v = random.nextInt(100000) * 0.001; break;
+                case 3: v = (random.nextInt(2000000) + 0.5) * Math.pow(10, random.nextInt(30) - 15); break;
+                default: v = Double.longBitsToDouble(random.nextLong() & 0x800fffffffffffffL); break; //Subnormal
+            }
+            if (Double.isNaN(v) || Double.isInfinite(v))
+                continue;
+            check(v, format, ',');
+        }
+    }
+
+    @Test
+    public void subnormals() {
+        DecimalFormat format = decimalFormat('.');
+        //Not the digits of the exact binary value (4.940656458E-324)
+        assertEquals("4.900000000E-324", format(Double.MIN_VALUE, '.'));
+        assertEquals("-4.900000000E-324", format(-Double.MIN_VALUE, '.'));
+        assertEquals("1.000000000E-310", format(1e-310, '.'));
+        double[] values = {Double.MIN_VALUE, 3 * Double.MIN_VALUE, 1e-320, 1e-310, 1.23456789e-315,
+                Math.nextDown(Double.MIN_NORMAL), Double.MIN_NORMAL};
+        for (double v : values)
+            assertEquals(Double.toString(v), format.format(v), format(v, '.'));
+        //Subnormals with few digits, which have the most digits that differ from the exact value
+        Random random = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            double v = Double.parseDouble((1 + random.nextInt(9999)) + "e-" + (310 + random.nextInt(17)));
+            assertEquals(Double.toString(v), format.format(v), format(v, '.'));
+        }
+    }
+
+    @Test
+    public void nonFinite() {
+        DecimalFormat format = decimalFormat('.');
+        assertEquals("NaN", format(Double.NaN, '.'));
+        assertEquals(format.format(Double.POSITIVE_INFINITY), format(Double.POSITIVE_INFINITY, '.'));
+        assertEquals(format.format(Double.NEGATIVE_INFINITY), format(Double.NEGATIVE_INFINITY, '.'));
+    }
+}
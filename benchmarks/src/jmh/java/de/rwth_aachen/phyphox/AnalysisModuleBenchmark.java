@@ -0,0 +1,148 @@
+package de.rwth_aachen.phyphox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//A complete update of analysis modules that scale (about) linearly with the input size
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AnalysisModuleBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int size;
+
+    Analysis.loessAM loess;
+    Analysis.movingaverageAM movingaverage;
+    Analysis.binningAM binning;
+    Analysis.rollingAM rolling;
+    Analysis.maxAM max;
+    Analysis.sinAM sin;
+    Analysis.powerAM power;
+    Analysis.mapAM map;
+    Analysis.sortAM sort;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PhyphoxExperiment experiment = new PhyphoxExperiment();
+        double[] t = BenchmarkData.time(size);
+        DataBuffer time = BenchmarkData.buffer(t, 0);
+        DataBuffer signal = BenchmarkData.buffer(BenchmarkData.signal(size), 0);
+
+        //Smooth over about 20 samples and evaluate at a tenth of the input points
+        double[] xi = new double[Math.max(size / 10, 1)];
+        for (int i = 0; i < xi.length; i++)
+            xi[i] = t[0] + (t[size - 1] - t[0]) * i / xi.length;
+        loess = BenchmarkData.prepare(new Analysis.loessAM(experiment,
+                BenchmarkData.inputs(time, signal, BenchmarkData.buffer(0.1), BenchmarkData.buffer(xi, 0)),
+                BenchmarkData.outputs(3)));
+
+        //Wide windows are typical for vibration measurements
+        movingaverage = BenchmarkData.prepare(new Analysis.movingaverageAM(experiment,
+                BenchmarkData.inputs(signal, BenchmarkData.buffer(1000)),
+                BenchmarkData.outputs(1), false));
+
+        binning = BenchmarkData.prepare(new Analysis.binningAM(experiment,
+                BenchmarkData.inputs(signal, BenchmarkData.buffer(-2.0), BenchmarkData.buffer(0.01)),
+                BenchmarkData.outputs(2)));
+
+        //All statistics
+        rolling = BenchmarkData.prepare(new Analysis.rollingAM(experiment,
+                BenchmarkData.inputs(signal, BenchmarkData.buffer(1000)),
+                BenchmarkData.outputs(7), false));
+
+        max = BenchmarkData.prepare(new Analysis.maxAM(experiment,
+                BenchmarkData.inputs(time, signal),
+                BenchmarkData.outputs(2), false));
+
+        //Element-wise modules, split across threads for large inputs
+        sin = BenchmarkData.prepare(new Analysis.sinAM(experiment,
+                BenchmarkData.inputs(signal),
+                BenchmarkData.outputs(1), true));
+
+        power = BenchmarkData.prepare(new Analysis.powerAM(experiment,
+                BenchmarkData.inputs(time, signal),
+                BenchmarkData.outputs(1)));
+
+        //Average of the signal on a 100x100 grid over time and signal
+        map = BenchmarkData.prepare(new Analysis.mapAM(experiment,
+                BenchmarkData.inputs(BenchmarkData.buffer(100), BenchmarkData.buffer(t[0]), BenchmarkData.buffer(t[size - 1]),
+                        BenchmarkData.buffer(100), BenchmarkData.buffer(-2.0), BenchmarkData.buffer(2.0),
+                        time, signal, signal),
+                BenchmarkData.outputs(3), Analysis.mapAM.ZMode.average));
+
+        //Order statistics: sort the time stamps by the signal
+        sort = BenchmarkData.prepare(new Analysis.sortAM(experiment,
+                BenchmarkData.inputs(signal, time),
+                BenchmarkData.outputs(2), false));
+    }
+
+    @Benchmark
+    public Analysis.AnalysisModule loess() {
+        loess.updateIfNotStatic(0);
+        return loess;
+    }
+
+    @Benchmark
+    public Analysis.AnalysisModule movingaverage() {
+        movingaverage.updateIfNotStatic(0);
+        return movingaverage;
+    }
+
+    @Benchmark
+    public Analysis.AnalysisModule binning() {
+        binning.updateIfNotStatic(0);
+        return binning;
+    }
+
+    @Benchmark
+    public Analysis.AnalysisModule rolling() {
+        rolling.updateIfNotStatic(0);
+        return rolling;
+    }
+
+    @Benchmark
+    public Analysis.AnalysisModule max() {
+        max.updateIfNotStatic(0);
+        return max;
+    }
+
+    @Benchmark
+    public Analysis.AnalysisModule sin() {
+        sin.updateIfNotStatic(0);
+        return sin;
+    }
+
+    @Benchmark
+    public Analysis.AnalysisModule power() {
+        power.updateIfNotStatic(0);
+        return power;
+    }
+
+    @Benchmark
+    public Analysis.AnalysisModule map() {
+        map.updateIfNotStatic(0);
+        return map;
+    }
+
+    @Benchmark
+    public Analysis.AnalysisModule sort() {
+        sort.updateIfNotStatic(0);
+        return sort;
+    }
+}
@@ -0,0 +1,67 @@
+package de.rwth_aachen.phyphox;
+
+import java.util.Random;
+import java.util.Vector;
+
+//Helpers to set up buffers and analysis modules like an experiment file would
+class BenchmarkData {
+    private static final long SEED = 42; //Same data in every run, so results can be compared
+
+    //Noisy oscillation, similar to an acceleration or audio signal
+    static double[] signal(int n) {
+        Random random = new Random(SEED);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++)
+            values[i] = Math.sin(2.0 * Math.PI * i / 100.0) + 0.5 * Math.sin(2.0 * Math.PI * i / 7.3) + 0.1 * random.nextGaussian();
+        return values;
+    }
+
+    //Monotonic time stamps with a little jitter, similar to a sensor at 100 Hz
+    static double[] time(int n) {
+        Random random = new Random(SEED);
+        double[] values = new double[n];
+        double t = 0.0;
+        for (int i = 0; i < n; i++) {
+            values[i] = t;
+            t += 0.01 * (1.0 + 0.01 * random.nextGaussian());
+        }
+        return values;
+    }
+
+    static DataBuffer buffer(double[] values, int size) {
+        DataBuffer buffer = new DataBuffer("buffer", size, null);
+        for (double v : values)
+            buffer.append(v);
+        return buffer;
+    }
+
+    static DataBuffer buffer(double value) {
+        DataBuffer buffer = new DataBuffer("value", 1, null);
+        buffer.append(value);
+        return buffer;
+    }
+
+    //Inputs are kept, so every update works on the same data
+    static Vector<DataInput> inputs(DataBuffer... buffers) {
+        Vector<DataInput> inputs = new Vector<>();
+        for (DataBuffer buffer : buffers)
+            inputs.add(buffer == null ? null : new DataInput(buffer, true));
+        return inputs;
+    }
+
+    static Vector<DataOutput> outputs(int n) {
+        Vector<DataOutput> outputs = new Vector<>();
+        for (int i = 0; i < n; i++)
+            outputs.add(new DataOutput(new DataBuffer("out" + i, 0, null), false));
+        return outputs;
+    }
+
+    //Modules are always calculated completely. Otherwise incremental and streaming modules would
+    //only look at the new values, which do not exist if the inputs do not change.
+    static <T extends Analysis.AnalysisModule> T prepare(T module) {
+        module.setCycles(new Vector<Analysis.AnalysisModule.CycleRange>());
+        module.incremental = false;
+        module.streaming = false;
+        return module;
+    }
+}
@@ -0,0 +1,63 @@
+package de.rwth_aachen.phyphox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//A complete update of the correlation modules
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CorrelationBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int size;
+
+    Analysis.autocorrelationAM autocorrelation;
+    Analysis.crosscorrelationAM crosscorrelation;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PhyphoxExperiment experiment = new PhyphoxExperiment();
+        double[] signal = BenchmarkData.signal(size);
+        DataBuffer time = BenchmarkData.buffer(BenchmarkData.time(size), 0);
+        DataBuffer y = BenchmarkData.buffer(signal, 0);
+
+        autocorrelation = BenchmarkData.prepare(new Analysis.autocorrelationAM(experiment,
+                BenchmarkData.inputs(time, y),
+                BenchmarkData.outputs(2)));
+
+        //The smaller input is moved along the larger one, like finding a short pattern in a recording
+        double[] pattern = new double[size / 2];
+        System.arraycopy(signal, size / 4, pattern, 0, pattern.length);
+        crosscorrelation = BenchmarkData.prepare(new Analysis.crosscorrelationAM(experiment,
+                BenchmarkData.inputs(y, BenchmarkData.buffer(pattern, 0)),
+                BenchmarkData.outputs(1)));
+    }
+
+    @Benchmark
+    public Analysis.AnalysisModule autocorrelation() {
+        autocorrelation.updateIfNotStatic(0);
+        return autocorrelation;
+    }
+
+    @Benchmark
+    public Analysis.AnalysisModule crosscorrelation() {
+        crosscorrelation.updateIfNotStatic(0);
+        return crosscorrelation;
+    }
+}
@@ -0,0 +1,115 @@
+package de.rwth_aachen.phyphox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//Appending to buffers and reading them the way graphs and analysis modules do
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DataBufferBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int size;
+
+    DataBuffer unbounded; //Collects all values, like a sensor buffer without a size limit
+    DataBuffer ring; //Full buffer with a size limit, so every append drops the oldest value
+    double[] values;
+    int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        values = BenchmarkData.signal(size);
+        unbounded = BenchmarkData.buffer(values, 0);
+        ring = BenchmarkData.buffer(values, size);
+    }
+
+    //Buffer whose cached float copy, minimum and maximum have been invalidated by a clear
+    @State(Scope.Thread)
+    public static class FreshBuffer {
+        DataBuffer buffer;
+        double[] values;
+
+        @Setup(Level.Trial)
+        public void setup(DataBufferBenchmark benchmark) {
+            values = benchmark.values;
+            buffer = BenchmarkData.buffer(values, 0);
+        }
+
+        //Refilling is not part of the measurement, but this is only reliable for the larger sizes
+        @Setup(Level.Invocation)
+        public void refill() {
+            buffer.clear(false);
+            for (double v : values)
+                buffer.append(v);
+        }
+    }
+
+    //Fill an empty buffer with all values
+    @Benchmark
+    public DataBuffer append() {
+        unbounded.clear(false);
+        for (double v : values)
+            unbounded.append(v);
+        return unbounded;
+    }
+
+    //Fill an empty buffer with all values in one bulk append, like the analysis modules do
+    @Benchmark
+    public DataBuffer appendBulk() {
+        unbounded.clear(false);
+        unbounded.append(values, 0, values.length);
+        return unbounded;
+    }
+
+    //Append a single value to a full buffer with a size limit
+    @Benchmark
+    public DataBuffer appendToFullRing() {
+        ring.append(values[next]);
+        next = (next + 1) % size;
+        return ring;
+    }
+
+    //A graph showing the last n values: append one value and get the new range
+    @Benchmark
+    public double appendToFullRingMinMax() {
+        ring.append(values[next]);
+        next = (next + 1) % size;
+        return ring.getMin() + ring.getMax();
+    }
+
+    @Benchmark
+    public Double[] getArray() {
+        return unbounded.getArray();
+    }
+
+    @Benchmark
+    public FloatBufferRepresentation getFloatBuffer(FreshBuffer fresh) {
+        return fresh.buffer.getFloatBuffer();
+    }
+
+    @Benchmark
+    public double getMin(FreshBuffer fresh) {
+        return fresh.buffer.getMin();
+    }
+
+    @Benchmark
+    public double getMax(FreshBuffer fresh) {
+        return fresh.buffer.getMax();
+    }
+}
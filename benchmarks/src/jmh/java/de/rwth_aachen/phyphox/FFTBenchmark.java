@@ -0,0 +1,60 @@
+package de.rwth_aachen.phyphox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//The Java FFT that is used if the native library is not available
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FFTBenchmark {
+
+    //Powers of two and other sizes, which use Bluestein's algorithm
+    @Param({"1024", "1000", "16384", "10000", "131072", "100000", "1048576", "1000000"})
+    int size;
+
+    FFT fft;
+    double[] signal;
+    double[] x, y;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fft = new FFT();
+        signal = BenchmarkData.signal(size);
+        x = new double[size];
+        y = new double[size];
+    }
+
+    //Complex input, like the fft module with an imaginary part
+    @Benchmark
+    public double[] complex() {
+        //The FFT works in place, so every run starts with a fresh copy like the fft module does
+        System.arraycopy(signal, 0, x, 0, size);
+        System.arraycopy(signal, 0, y, 0, size);
+        fft.transform(x, y, size);
+        return x;
+    }
+
+    //Real input, like the fft module without an imaginary part
+    @Benchmark
+    public double[] real() {
+        System.arraycopy(signal, 0, x, 0, size);
+        fft.realTransform(x, size, x, y);
+        return x;
+    }
+}
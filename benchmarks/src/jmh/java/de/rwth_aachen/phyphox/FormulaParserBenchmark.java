@@ -0,0 +1,66 @@
+package de.rwth_aachen.phyphox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+//Element-wise evaluation of formulas on whole buffers, as done by the formula module
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FormulaParserBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int size;
+
+    @Param({
+            "sqrt([1_]*[1_]+[2_]*[2_]+[3_]*[3_])", //Absolute acceleration
+            "[1_]*180/3.14159265+[2]", //Conversion with a single value
+            "atan2([2_],[1_])*(1+0*sin([3_]))", //Functions that are expensive to evaluate
+    })
+    String formula;
+
+    FormulaParser parser;
+    DataBuffer[] inputs;
+    DataOutput output;
+
+    @Setup(Level.Trial)
+    public void setup() throws FormulaParser.FormulaException {
+        parser = new FormulaParser(formula);
+        double[] signal = BenchmarkData.signal(size + 2);
+        inputs = new DataBuffer[3];
+        for (int i = 0; i < inputs.length; i++) {
+            double[] values = new double[size];
+            System.arraycopy(signal, i, values, 0, size);
+            inputs[i] = BenchmarkData.buffer(values, 0);
+        }
+        output = new DataOutput(new DataBuffer("out", 0, null), false);
+    }
+
+    @Benchmark
+    public DataOutput execute() {
+        Vector<DoubleView> views = new Vector<>();
+        for (DataBuffer buffer : inputs)
+            views.add(buffer.getView());
+        output.buffer.clear(false);
+        parser.execute(views, output);
+        for (DoubleView view : views)
+            view.release();
+        return output;
+    }
+}
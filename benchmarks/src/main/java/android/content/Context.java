@@ -0,0 +1,5 @@
+package android.content;
+
+//Replacement for the Android context on the JVM. Only used as a type by the info module.
+public class Context {
+}
@@ -0,0 +1,13 @@
+package android.os;
+
+//Replacement for the Android build information on the JVM. The benchmarks behave like a recent device.
+public class Build {
+    public static class VERSION {
+        public static final int SDK_INT = 35;
+    }
+
+    public static class VERSION_CODES {
+        public static final int JELLY_BEAN_MR1 = 17;
+        public static final int JELLY_BEAN_MR2 = 18;
+    }
+}
@@ -0,0 +1,12 @@
+package android.os;
+
+//Replacement for the Android system clock on the JVM
+public class SystemClock {
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return System.nanoTime();
+    }
+}
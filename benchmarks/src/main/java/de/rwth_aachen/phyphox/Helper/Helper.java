@@ -0,0 +1,18 @@
+package de.rwth_aachen.phyphox.Helper;
+
+import android.content.Context;
+
+//Replacement for the helper functions used by the analysis on the JVM. There is no device to ask.
+public class Helper {
+    public static double getBatteryPercentage(Context context) {
+        return Double.NaN;
+    }
+
+    public static double getWifiReceptionStrength(Context context) {
+        return Double.NaN;
+    }
+
+    public static double getSystemVolume(Context context) {
+        return Double.NaN;
+    }
+}
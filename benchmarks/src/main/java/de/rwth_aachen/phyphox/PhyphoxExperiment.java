@@ -0,0 +1,18 @@
+package de.rwth_aachen.phyphox;
+
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+
+//Replacement for the experiment on the JVM
+//The real PhyphoxExperiment holds sensors, views, audio etc. and cannot be used without Android.
+//This only has the parts the analysis modules and buffers use.
+public class PhyphoxExperiment {
+    public ExperimentTimeReference experimentTimeReference = new ExperimentTimeReference(null);
+    double analysisTime; //Experiment time at the start of the current analysis cycle
+    double analysisLinearTime;
+    int parallelThreshold = ParallelKernels.DEFAULT_THRESHOLD;
+
+    public Lock getBufferLock(Collection<DataBuffer> buffers) {
+        return new BufferLock(buffers);
+    }
+}